@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.TopicPartition;
+
+
+/**
+ * The interface for the {@link KafkaConsumer}
+ * 
+ * @see KafkaConsumer
+ */
+public interface Consumer extends Closeable {
+
+    /**
+     * Start consuming the given partitions. Partitions that are already subscribed are left as they are.
+     */
+    public void subscribe(TopicPartition... partitions);
+
+    /**
+     * Stop consuming the given partitions, discarding any records already fetched for them
+     */
+    public void unsubscribe(TopicPartition... partitions);
+
+    /**
+     * The partitions currently subscribed to
+     */
+    public Set<TopicPartition> subscriptions();
+
+    /**
+     * Fetch the next records for the subscribed partitions, waiting up to the given time if none are available.
+     * 
+     * @param timeout The maximum time in ms to wait for records
+     * @return The records fetched, which may be empty
+     */
+    public ConsumerRecords poll(long timeout);
+
+    /**
+     * Set the offset of the next record to return for the given subscribed partition
+     */
+    public void seek(TopicPartition partition, long offset);
+
+    /**
+     * The offset of the next record that will be returned for the given subscribed partition, or -1 if it is not known
+     * yet
+     */
+    public long position(TopicPartition partition);
+
+    /**
+     * Return a map of metrics maintained by the consumer
+     */
+    public Map<String, ? extends Metric> metrics();
+
+    /**
+     * Close this consumer
+     */
+    public void close();
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import static org.apache.kafka.common.config.ConfigDef.Range.atLeast;
+
+import java.util.Map;
+
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Type;
+
+
+/**
+ * The consumer configuration keys
+ */
+public class ConsumerConfig extends AbstractConfig {
+
+    private static final ConfigDef config;
+
+    /**
+     * A list of URLs to use for establishing the initial connection to the cluster. This list should be in the form
+     * <code>host1:port1,host2:port2,...</code>. These urls are just used for the initial connection to discover the
+     * full cluster membership, so this list need not contain the full set of servers.
+     */
+    public static final String BROKER_LIST_CONFIG = "metadata.broker.list";
+
+    /**
+     * The id string to pass to the server when making requests
+     */
+    public static final String CLIENT_ID_CONFIG = "client.id";
+
+    /**
+     * The minimum amount of data the server should return for a fetch request. If less data is available the server
+     * will wait up to {@link #FETCH_MAX_WAIT_MS_CONFIG} for more to accumulate before answering.
+     */
+    public static final String FETCH_MIN_BYTES_CONFIG = "fetch.min.bytes";
+
+    /**
+     * The maximum amount of time the server will block before answering a fetch request if there isn't enough data to
+     * satisfy {@link #FETCH_MIN_BYTES_CONFIG}.
+     */
+    public static final String FETCH_MAX_WAIT_MS_CONFIG = "fetch.wait.max.ms";
+
+    /**
+     * The maximum number of bytes fetched for each partition in a single request. This must be at least as large as the
+     * largest record the server allows, otherwise the consumer can get stuck on a record too large to fetch.
+     */
+    public static final String FETCH_SIZE_CONFIG = "fetch.message.max.bytes";
+
+    /**
+     * The total memory the consumer may use for fetching ahead of the application: the most that fetches in flight can
+     * return plus the records fetched but not yet returned by <code>poll()</code>. When this isn't enough to fetch
+     * every partition at once, partitions without any fetched records are served first, in the order they started
+     * waiting. This must be at least {@link #FETCH_SIZE_CONFIG}.
+     */
+    public static final String FETCH_BUFFER_MEMORY_CONFIG = "fetch.buffer.memory.bytes";
+
+    /**
+     * Where to start consuming a partition that has no position, or whose position is out of range on the server:
+     * <code>smallest</code> for the first offset the server still has or <code>largest</code> for the offset of the
+     * next record to be appended.
+     */
+    public static final String AUTO_OFFSET_RESET_CONFIG = "auto.offset.reset";
+
+    /**
+     * Force a refresh of the cluster metadata after this period of time
+     */
+    public static final String METADATA_REFRESH_MS_CONFIG = "topic.metadata.refresh.interval.ms";
+
+    /**
+     * The size of the TCP send buffer to use when sending requests
+     */
+    public static final String SEND_BUFFER_CONFIG = "send.buffer.bytes";
+
+    /**
+     * The size of the TCP receive buffer to use when reading data
+     */
+    public static final String RECEIVE_BUFFER_CONFIG = "receive.buffer.bytes";
+
+    /**
+     * The amount of time to wait before attempting to reconnect to a given host
+     */
+    public static final String RECONNECT_BACKOFF_MS_CONFIG = "reconnect.backoff.ms";
+
+    /**
+     * A list of classes to use as metrics reporters, in addition to JMX. Each must implement
+     * {@link org.apache.kafka.common.metrics.MetricsReporter} and have a public no-argument constructor; those that
+     * implement {@link org.apache.kafka.common.Configurable} are configured with this configuration, so they can read
+     * their own settings from it.
+     */
+    public static final String METRIC_REPORTER_CLASSES_CONFIG = "metric.reporters";
+
+    /**
+     * How often to take a snapshot of all the metrics and hand it to the snapshot reporters, such as
+     * {@link org.apache.kafka.common.metrics.FileReporter}. Snapshots are taken on a background thread. The default of
+     * 0 takes no snapshots, so snapshot reporters never report.
+     */
+    public static final String METRICS_SNAPSHOT_INTERVAL_MS_CONFIG = "metrics.snapshot.interval.ms";
+
+    static {
+        /* TODO: add docs */
+        config = new ConfigDef().define(BROKER_LIST_CONFIG, Type.LIST, "blah blah")
+                                .define(CLIENT_ID_CONFIG, Type.STRING, "", "blah blah")
+                                .define(FETCH_MIN_BYTES_CONFIG, Type.INT, 1, atLeast(0), "blah blah")
+                                .define(FETCH_MAX_WAIT_MS_CONFIG, Type.INT, 100, atLeast(0), "blah blah")
+                                .define(FETCH_SIZE_CONFIG, Type.INT, 1024 * 1024, atLeast(0), "blah blah")
+                                .define(FETCH_BUFFER_MEMORY_CONFIG, Type.LONG, 64 * 1024 * 1024L, atLeast(0L), "blah blah")
+                                .define(AUTO_OFFSET_RESET_CONFIG, Type.STRING, "largest", "blah blah")
+                                .define(METADATA_REFRESH_MS_CONFIG, Type.LONG, 10 * 60 * 1000, atLeast(-1L), "blah blah")
+                                .define(SEND_BUFFER_CONFIG, Type.INT, 128 * 1024, atLeast(0), "blah blah")
+                                .define(RECEIVE_BUFFER_CONFIG, Type.INT, 64 * 1024, atLeast(0), "blah blah")
+                                .define(RECONNECT_BACKOFF_MS_CONFIG, Type.LONG, 10L, atLeast(0L), "blah blah")
+                                .define(METRIC_REPORTER_CLASSES_CONFIG, Type.LIST, "", "blah blah")
+                                .define(METRICS_SNAPSHOT_INTERVAL_MS_CONFIG, Type.LONG, 0L, atLeast(0L), "blah blah");
+    }
+
+    ConsumerConfig(Map<? extends Object, ? extends Object> props) {
+        super(config, props);
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.record.Record;
+
+
+/**
+ * A record fetched from the Kafka cluster. The key and value are views of the buffer the record was received in rather
+ * than copies.
+ */
+public final class ConsumerRecord {
+
+    private final String topic;
+    private final int partition;
+    private final long offset;
+    private final Record record;
+
+    /**
+     * @param topic The topic the record was fetched from
+     * @param partition The partition the record was fetched from
+     * @param offset The offset of the record in the partition
+     * @param record The record
+     */
+    public ConsumerRecord(String topic, int partition, long offset, Record record) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+        this.record = record;
+    }
+
+    /**
+     * The topic this record was fetched from
+     */
+    public String topic() {
+        return this.topic;
+    }
+
+    /**
+     * The partition this record was fetched from
+     */
+    public int partition() {
+        return this.partition;
+    }
+
+    /**
+     * The position of this record in the partition
+     */
+    public long offset() {
+        return this.offset;
+    }
+
+    /**
+     * The time the record was sent, or -1 if the producer didn't stamp it
+     */
+    public long timestamp() {
+        return this.record.timestamp();
+    }
+
+    /**
+     * The key (or null if no key is specified)
+     */
+    public ByteBuffer key() {
+        return this.record.key();
+    }
+
+    /**
+     * The value
+     */
+    public ByteBuffer value() {
+        return this.record.value();
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerRecord(topic = " + topic + ", partition = " + partition + ", offset = " + offset + ")";
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.LogEntry;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.utils.AbstractIterator;
+
+
+/**
+ * The records returned by a single {@link Consumer#poll(long) poll()}, grouped by partition. The record sets are views
+ * of the buffers the fetch responses were received in, nothing is copied.
+ */
+public final class ConsumerRecords implements Iterable<ConsumerRecord> {
+
+    private final Map<TopicPartition, MemoryRecords> records;
+
+    public ConsumerRecords(Map<TopicPartition, MemoryRecords> records) {
+        this.records = records;
+    }
+
+    /**
+     * The partitions that have records
+     */
+    public Set<TopicPartition> partitions() {
+        return Collections.unmodifiableSet(this.records.keySet());
+    }
+
+    /**
+     * The records for the given partition, or null if there are none
+     */
+    public MemoryRecords records(TopicPartition partition) {
+        return this.records.get(partition);
+    }
+
+    /**
+     * Are there no records at all?
+     */
+    public boolean isEmpty() {
+        return this.records.isEmpty();
+    }
+
+    /**
+     * Iterate over the records of each partition in turn
+     */
+    @Override
+    public Iterator<ConsumerRecord> iterator() {
+        return new RecordsIterator(this.records.entrySet().iterator());
+    }
+
+    private static final class RecordsIterator extends AbstractIterator<ConsumerRecord> {
+        private final Iterator<Map.Entry<TopicPartition, MemoryRecords>> partitions;
+        private TopicPartition current;
+        private Iterator<LogEntry> entries;
+
+        public RecordsIterator(Iterator<Map.Entry<TopicPartition, MemoryRecords>> partitions) {
+            this.partitions = partitions;
+        }
+
+        @Override
+        protected ConsumerRecord makeNext() {
+            while (this.entries == null || !this.entries.hasNext()) {
+                if (!this.partitions.hasNext())
+                    return allDone();
+                Map.Entry<TopicPartition, MemoryRecords> entry = this.partitions.next();
+                this.current = entry.getKey();
+                this.entries = entry.getValue().iterator();
+            }
+            LogEntry entry = this.entries.next();
+            return new ConsumerRecord(this.current.topic(), this.current.partition(), entry.offset(), entry.record());
+        }
+    }
+
+}
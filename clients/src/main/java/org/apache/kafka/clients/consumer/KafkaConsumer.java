@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.kafka.clients.ClientUtils;
+import org.apache.kafka.clients.consumer.internals.Fetcher;
+import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.utils.SystemTime;
+
+
+/**
+ * A Kafka client that consumes records from the Kafka cluster.
+ * <p>
+ * The consumer is <i>not thread safe</i>. It has no background threads: all I/O happens in the thread that calls
+ * {@link #poll(long) poll()}, which fetches from every broker leading a subscribed partition at once over a single TCP
+ * connection to each. Fetches are pipelined, so the next fetch from a broker is already in flight while the records of
+ * the previous one are being processed. The memory used to fetch ahead is bounded by
+ * <code>fetch.buffer.memory.bytes</code> across all partitions.
+ * <p>
+ * The records returned are views of the buffers they were received in and are not copied. They remain valid after the
+ * next poll, but holding on to them holds on to the whole fetch response.
+ * <p>
+ * Failure to close the consumer after use will leak its connections.
+ */
+public class KafkaConsumer implements Consumer {
+
+    private final Fetcher fetcher;
+    private final Metrics metrics;
+
+    /**
+     * A consumer is instantiated by providing a set of key-value pairs as configuration. Values can be either strings
+     * or Objects of the appropriate type.
+     */
+    public KafkaConsumer(Map<String, Object> configs) {
+        this(new ConsumerConfig(configs));
+    }
+
+    /**
+     * A consumer is instantiated by providing a set of key-value pairs as configuration
+     */
+    public KafkaConsumer(Properties properties) {
+        this(new ConsumerConfig(properties));
+    }
+
+    private KafkaConsumer(ConsumerConfig config) {
+        List<MetricsReporter> reporters = config.getConfiguredInstances(ConsumerConfig.METRIC_REPORTER_CLASSES_CONFIG,
+                                                                        MetricsReporter.class);
+        reporters.add(new JmxReporter("kafka.consumer."));
+        this.metrics = new Metrics(new MetricConfig(), reporters, new SystemTime());
+        long snapshotIntervalMs = config.getLong(ConsumerConfig.METRICS_SNAPSHOT_INTERVAL_MS_CONFIG);
+        if (snapshotIntervalMs > 0)
+            this.metrics.startSnapshots(snapshotIntervalMs);
+        int fetchSize = config.getInt(ConsumerConfig.FETCH_SIZE_CONFIG);
+        long prefetchMemory = config.getLong(ConsumerConfig.FETCH_BUFFER_MEMORY_CONFIG);
+        if (prefetchMemory < fetchSize)
+            throw new ConfigException(ConsumerConfig.FETCH_BUFFER_MEMORY_CONFIG,
+                                      prefetchMemory,
+                                      "Must be at least " + ConsumerConfig.FETCH_SIZE_CONFIG + " (" + fetchSize + ").");
+        Metadata metadata = new Metadata(100L, config.getLong(ConsumerConfig.METADATA_REFRESH_MS_CONFIG));
+        metadata.update(Cluster.bootstrap(ClientUtils.parseAndValidateAddresses(config.getList(ConsumerConfig.BROKER_LIST_CONFIG))),
+                        System.currentTimeMillis());
+        this.fetcher = new Fetcher(new Selector(this.metrics, new SystemTime()),
+                                   metadata,
+                                   config.getString(ConsumerConfig.CLIENT_ID_CONFIG),
+                                   config.getInt(ConsumerConfig.FETCH_MIN_BYTES_CONFIG),
+                                   config.getInt(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG),
+                                   fetchSize,
+                                   prefetchMemory,
+                                   offsetResetTimestamp(config.getString(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG)),
+                                   config.getInt(ConsumerConfig.SEND_BUFFER_CONFIG),
+                                   config.getInt(ConsumerConfig.RECEIVE_BUFFER_CONFIG),
+                                   config.getLong(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG),
+                                   this.metrics,
+                                   new SystemTime());
+    }
+
+    private static long offsetResetTimestamp(String reset) {
+        if (reset.equals("largest"))
+            return Fetcher.LATEST_OFFSET_TIMESTAMP;
+        else if (reset.equals("smallest"))
+            return Fetcher.EARLIEST_OFFSET_TIMESTAMP;
+        else
+            throw new ConfigException(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, reset, "Expected largest or smallest.");
+    }
+
+    /**
+     * Start consuming the given partitions. Unless {@link #seek(TopicPartition, long) seek()} is called first, each
+     * partition starts from the position given by <code>auto.offset.reset</code>, which is looked up on the next poll.
+     */
+    @Override
+    public void subscribe(TopicPartition... partitions) {
+        for (TopicPartition partition : partitions)
+            this.fetcher.subscribe(partition);
+    }
+
+    @Override
+    public void unsubscribe(TopicPartition... partitions) {
+        for (TopicPartition partition : partitions)
+            this.fetcher.unsubscribe(partition);
+    }
+
+    @Override
+    public Set<TopicPartition> subscriptions() {
+        return Collections.unmodifiableSet(new HashSet<TopicPartition>(this.fetcher.subscriptions()));
+    }
+
+    /**
+     * Fetch the next records for the subscribed partitions. This returns as soon as records are available for any
+     * partition; otherwise it blocks for up to the given timeout. The position of each partition returned moves past
+     * its records.
+     * 
+     * @param timeout The maximum time in ms to block waiting for records
+     * @return The records fetched, which is empty if none arrived before the timeout
+     * @throws org.apache.kafka.common.errors.RecordTooLargeException If a partition's next record is larger than
+     *         <code>fetch.message.max.bytes</code>; seek past it to continue
+     */
+    @Override
+    public ConsumerRecords poll(long timeout) {
+        return new ConsumerRecords(this.fetcher.poll(timeout));
+    }
+
+    @Override
+    public void seek(TopicPartition partition, long offset) {
+        this.fetcher.seek(partition, offset);
+    }
+
+    @Override
+    public long position(TopicPartition partition) {
+        return this.fetcher.position(partition);
+    }
+
+    @Override
+    public Map<String, ? extends Metric> metrics() {
+        return Collections.unmodifiableMap(this.metrics.metrics());
+    }
+
+    /**
+     * Close this consumer and its connections. Any records fetched but not yet returned are discarded.
+     */
+    @Override
+    public void close() {
+        this.fetcher.close();
+        this.metrics.close();
+    }
+
+}
@@ -0,0 +1,684 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.NetworkSend;
+import org.apache.kafka.common.network.Selectable;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.ProtoUtils;
+import org.apache.kafka.common.protocol.Protocol;
+import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.Records;
+import org.apache.kafka.common.requests.FetchRequest;
+import org.apache.kafka.common.requests.FetchResponse;
+import org.apache.kafka.common.requests.MetadataRequest;
+import org.apache.kafka.common.requests.MetadataView;
+import org.apache.kafka.common.requests.RequestHeader;
+import org.apache.kafka.common.requests.RequestSend;
+import org.apache.kafka.common.requests.ResponseHeader;
+import org.apache.kafka.common.utils.Time;
+
+
+/**
+ * The network logic of the consumer. It tracks the position of each subscribed partition and drives all the I/O to the
+ * cluster from the thread calling {@link #poll(long)}: metadata refreshes, offset lookups for partitions without a
+ * position, and fetches.
+ * <p>
+ * Fetches are pipelined. Each broker has at most one fetch in flight, covering the fetchable partitions it leads, and
+ * as soon as its response arrives the fetch position of those partitions moves past the records received. Before
+ * {@link #poll(long)} returns records it sends the next fetches, so they are in flight while the application processes
+ * the records. How far each partition is fetched ahead of the application is bounded by a {@link PrefetchBudget}
+ * shared by all partitions.
+ * <p>
+ * Fetched records are returned as {@link MemoryRecords} slices of the buffer each response was received in, so nothing
+ * is copied between the socket and the application.
+ * <p>
+ * This class is not thread safe.
+ */
+public class Fetcher {
+
+    /* the timestamps to pass in an offset request for the latest and earliest offsets */
+    public static final long LATEST_OFFSET_TIMESTAMP = -1L;
+    public static final long EARLIEST_OFFSET_TIMESTAMP = -2L;
+
+    private final Selectable selector;
+    private final Metadata metadata;
+    private final String clientId;
+    private final int minBytes;
+    private final int maxWaitMs;
+    private final int fetchSize;
+    private final long offsetResetTimestamp;
+    private final int socketSendBuffer;
+    private final int socketReceiveBuffer;
+    private final long reconnectBackoffMs;
+    private final Time time;
+    private final Map<TopicPartition, PartitionState> partitions;
+    private final Map<Integer, NodeState> nodeState;
+    private final Map<Integer, Deque<InFlightRequest>> inFlightRequests;
+    private final Set<Integer> fetchesInFlight;
+    private final PrefetchBudget budget;
+    private final Sensor bytesFetched;
+    private int correlation;
+    private boolean metadataFetchInProgress;
+
+    /**
+     * Create a new fetcher
+     * 
+     * @param selector The selector to do the I/O with
+     * @param metadata The cluster metadata, shared with nothing else
+     * @param clientId The client id to put in requests
+     * @param minBytes The minimum bytes the server should accumulate before answering a fetch
+     * @param maxWaitMs The maximum time the server should wait for minBytes to accumulate
+     * @param fetchSize The maximum bytes to fetch for each partition in a single request
+     * @param prefetchMemory The maximum bytes taken up by fetches in flight and records not yet returned. This must be
+     *        at least fetchSize.
+     * @param offsetResetTimestamp {@link #LATEST_OFFSET_TIMESTAMP} or {@link #EARLIEST_OFFSET_TIMESTAMP}, where to start
+     *        a partition without a valid position
+     * @param socketSendBuffer The size of the TCP send buffer of each connection
+     * @param socketReceiveBuffer The size of the TCP receive buffer of each connection
+     * @param reconnectBackoffMs The time to wait before reconnecting to a node
+     * @param metrics The metrics registry
+     * @param time The time instance
+     */
+    public Fetcher(Selectable selector,
+                   Metadata metadata,
+                   String clientId,
+                   int minBytes,
+                   int maxWaitMs,
+                   int fetchSize,
+                   long prefetchMemory,
+                   long offsetResetTimestamp,
+                   int socketSendBuffer,
+                   int socketReceiveBuffer,
+                   long reconnectBackoffMs,
+                   Metrics metrics,
+                   Time time) {
+        this.selector = selector;
+        this.metadata = metadata;
+        this.clientId = clientId;
+        this.minBytes = minBytes;
+        this.maxWaitMs = maxWaitMs;
+        this.fetchSize = fetchSize;
+        this.offsetResetTimestamp = offsetResetTimestamp;
+        this.socketSendBuffer = socketSendBuffer;
+        this.socketReceiveBuffer = socketReceiveBuffer;
+        this.reconnectBackoffMs = reconnectBackoffMs;
+        this.time = time;
+        this.partitions = new LinkedHashMap<TopicPartition, PartitionState>();
+        this.nodeState = new HashMap<Integer, NodeState>();
+        this.inFlightRequests = new HashMap<Integer, Deque<InFlightRequest>>();
+        this.fetchesInFlight = new HashSet<Integer>();
+        this.budget = new PrefetchBudget(prefetchMemory, metrics);
+        this.bytesFetched = metrics.sensor("bytes-fetched");
+        this.bytesFetched.add("bytes_fetched_rate", "The bytes per second fetched by this consumer", new Rate());
+        this.correlation = 0;
+        this.metadataFetchInProgress = false;
+    }
+
+    /**
+     * Start fetching the given partition. Its position is looked up on the next poll unless it is set with
+     * {@link #seek(TopicPartition, long)} first.
+     */
+    public void subscribe(TopicPartition partition) {
+        if (!this.partitions.containsKey(partition)) {
+            this.partitions.put(partition, new PartitionState());
+            this.metadata.add(partition.topic());
+        }
+    }
+
+    /**
+     * Stop fetching the given partition and discard anything fetched for it
+     */
+    public void unsubscribe(TopicPartition partition) {
+        this.partitions.remove(partition);
+        this.budget.remove(partition);
+    }
+
+    /**
+     * The subscribed partitions
+     */
+    public Set<TopicPartition> subscriptions() {
+        return this.partitions.keySet();
+    }
+
+    /**
+     * Set the position of the given partition, discarding anything already fetched for it
+     */
+    public void seek(TopicPartition partition, long offset) {
+        PartitionState state = stateFor(partition);
+        state.position = offset;
+        state.fetchPosition = offset;
+        state.resetInProgress = false;
+        state.fetched.clear();
+        state.error = null;
+        this.budget.discard(partition);
+    }
+
+    /**
+     * The offset of the next record that will be returned for the given partition, or -1 if it isn't known yet
+     */
+    public long position(TopicPartition partition) {
+        return stateFor(partition).position;
+    }
+
+    private PartitionState stateFor(TopicPartition partition) {
+        PartitionState state = this.partitions.get(partition);
+        if (state == null)
+            throw new IllegalArgumentException("Partition " + partition + " is not subscribed.");
+        return state;
+    }
+
+    /**
+     * Do I/O until records are available for at least one partition or the timeout elapses, then return the records
+     * and advance the position of their partitions past them. The next fetches are sent before returning.
+     * 
+     * @param timeout The maximum time in ms to wait for records
+     * @return The records fetched for each partition, partitions without records are omitted
+     * @throws RecordTooLargeException If a partition's next record is larger than the fetch size
+     */
+    public Map<TopicPartition, MemoryRecords> poll(long timeout) {
+        long now = time.milliseconds();
+        long deadline = timeout > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout;
+        do {
+            run(Math.min(deadline - now, this.maxWaitMs), now);
+            if (hasFetchedRecords())
+                break;
+            now = time.milliseconds();
+        } while (now < deadline);
+        Map<TopicPartition, MemoryRecords> drained = drain();
+        // get the next fetches in flight while the caller processes these records
+        if (!drained.isEmpty())
+            run(0L, time.milliseconds());
+        return drained;
+    }
+
+    /**
+     * Run a single iteration of I/O
+     * 
+     * @param timeout The maximum time in ms to block waiting for I/O
+     * @param now The current time
+     */
+    public void run(long timeout, long now) {
+        Cluster cluster = this.metadata.fetch();
+        List<NetworkSend> sends = new ArrayList<NetworkSend>();
+        InFlightRequest metadataReq = maybeMetadataRequest(cluster, now);
+        if (metadataReq != null)
+            sends.add(metadataReq.send);
+        for (InFlightRequest request : offsetRequests(cluster, now))
+            sends.add(request.send);
+        for (InFlightRequest request : fetchRequests(cluster, now))
+            sends.add(request.send);
+
+        try {
+            this.selector.poll(timeout, sends);
+        } catch (IOException e) {
+            throw new KafkaException(e);
+        }
+
+        handleResponses(this.selector.completedReceives(), time.milliseconds());
+        handleDisconnects(this.selector.disconnected());
+        handleConnects(this.selector.connected());
+    }
+
+    /**
+     * Close the connections
+     */
+    public void close() {
+        this.selector.close();
+    }
+
+    private boolean hasFetchedRecords() {
+        for (PartitionState state : this.partitions.values())
+            if (!state.fetched.isEmpty() || state.error != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * Hand the oldest fetched records of each partition to the caller, moving the position of the partition past them
+     */
+    private Map<TopicPartition, MemoryRecords> drain() {
+        for (PartitionState state : this.partitions.values()) {
+            if (state.error != null) {
+                RuntimeException error = state.error;
+                state.error = null;
+                throw error;
+            }
+        }
+        Map<TopicPartition, MemoryRecords> drained = new LinkedHashMap<TopicPartition, MemoryRecords>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : this.partitions.entrySet()) {
+            PartitionState state = entry.getValue();
+            FetchedRecords fetched = state.fetched.pollFirst();
+            if (fetched == null) {
+                this.budget.drained(entry.getKey(), 0);
+            } else {
+                drained.put(entry.getKey(), fetched.records);
+                state.position = fetched.nextOffset;
+                this.budget.drained(entry.getKey(), fetched.records.sizeInBytes());
+            }
+        }
+        return drained;
+    }
+
+    private InFlightRequest maybeMetadataRequest(Cluster cluster, long now) {
+        if (this.metadataFetchInProgress || !this.metadata.needsUpdate(now))
+            return null;
+        Node node = cluster.nextNode();
+        if (!ready(node, now))
+            return null;
+        this.metadataFetchInProgress = true;
+        MetadataRequest body = new MetadataRequest(this.metadata.topics());
+        RequestSend send = new RequestSend(node.id(), new RequestHeader(ApiKeys.METADATA.id, clientId, correlation++), body);
+        return add(new InFlightRequest(send, null));
+    }
+
+    /**
+     * Create an offset request to each leader of partitions that need their position looked up
+     */
+    private List<InFlightRequest> offsetRequests(Cluster cluster, long now) {
+        Map<Node, List<TopicPartition>> collated = new HashMap<Node, List<TopicPartition>>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : this.partitions.entrySet()) {
+            PartitionState state = entry.getValue();
+            if (state.fetchPosition < 0 && !state.resetInProgress) {
+                Node leader = cluster.leaderFor(entry.getKey());
+                if (leader == null)
+                    this.metadata.forceUpdate();
+                else if (ready(leader, now))
+                    collate(collated, leader, entry.getKey());
+            }
+        }
+        List<InFlightRequest> requests = new ArrayList<InFlightRequest>(collated.size());
+        for (Map.Entry<Node, List<TopicPartition>> entry : collated.entrySet()) {
+            for (TopicPartition tp : entry.getValue())
+                this.partitions.get(tp).resetInProgress = true;
+            requests.add(add(offsetRequest(entry.getKey().id(), entry.getValue())));
+        }
+        return requests;
+    }
+
+    private InFlightRequest offsetRequest(int node, List<TopicPartition> partitions) {
+        Map<String, List<Struct>> byTopic = new LinkedHashMap<String, List<Struct>>();
+        Struct request = new Struct(Protocol.LIST_OFFSET_REQUEST_V0);
+        for (TopicPartition tp : partitions) {
+            Struct partitionData = new Struct(Protocol.PARTITION_LIST_OFFSET_DATA_V0);
+            partitionData.set(Protocol.PARTITION_LIST_OFFSET_DATA_PARTITION, tp.partition());
+            partitionData.set(Protocol.PARTITION_LIST_OFFSET_DATA_TIMESTAMP, this.offsetResetTimestamp);
+            partitionData.set(Protocol.PARTITION_LIST_OFFSET_DATA_MAX_NUM_OFFSETS, 1);
+            List<Struct> found = byTopic.get(tp.topic());
+            if (found == null) {
+                found = new ArrayList<Struct>();
+                byTopic.put(tp.topic(), found);
+            }
+            found.add(partitionData);
+        }
+        List<Struct> topics = new ArrayList<Struct>(byTopic.size());
+        for (Map.Entry<String, List<Struct>> entry : byTopic.entrySet()) {
+            Struct topicData = request.instance(Protocol.LIST_OFFSET_REQUEST_TOPICS);
+            topicData.set(Protocol.TOPIC_LIST_OFFSET_DATA_TOPIC, entry.getKey());
+            topicData.set(Protocol.TOPIC_LIST_OFFSET_DATA_PARTITIONS, entry.getValue().toArray());
+            topics.add(topicData);
+        }
+        request.set(Protocol.LIST_OFFSET_REQUEST_REPLICA_ID, FetchRequest.CONSUMER_REPLICA_ID);
+        request.set(Protocol.LIST_OFFSET_REQUEST_TOPICS, topics.toArray());
+        RequestHeader header = new RequestHeader(ApiKeys.LIST_OFFSETS.id, clientId, correlation++);
+        return new InFlightRequest(new RequestSend(node, header, request), partitions);
+    }
+
+    /**
+     * Create a fetch request to each leader that has no fetch in flight, covering those of its partitions with a
+     * position that memory can be reserved for
+     */
+    private List<InFlightRequest> fetchRequests(Cluster cluster, long now) {
+        List<TopicPartition> candidates = new ArrayList<TopicPartition>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : this.partitions.entrySet()) {
+            PartitionState state = entry.getValue();
+            if (state.fetchPosition >= 0 && state.error == null) {
+                Node leader = cluster.leaderFor(entry.getKey());
+                if (leader == null)
+                    this.metadata.forceUpdate();
+                else if (!this.fetchesInFlight.contains(leader.id()) && ready(leader, now))
+                    candidates.add(entry.getKey());
+            }
+        }
+        Map<Node, List<TopicPartition>> collated = new HashMap<Node, List<TopicPartition>>();
+        for (TopicPartition tp : this.budget.reserve(candidates, this.fetchSize))
+            collate(collated, cluster.leaderFor(tp), tp);
+        List<InFlightRequest> requests = new ArrayList<InFlightRequest>(collated.size());
+        for (Map.Entry<Node, List<TopicPartition>> entry : collated.entrySet()) {
+            Map<TopicPartition, FetchRequest.PartitionData> fetchData = new LinkedHashMap<TopicPartition, FetchRequest.PartitionData>();
+            for (TopicPartition tp : entry.getValue())
+                fetchData.put(tp, new FetchRequest.PartitionData(this.partitions.get(tp).fetchPosition, this.fetchSize));
+            FetchRequest fetch = new FetchRequest(FetchRequest.CONSUMER_REPLICA_ID, this.maxWaitMs, this.minBytes, fetchData);
+            int node = entry.getKey().id();
+            RequestHeader header = new RequestHeader(ApiKeys.FETCH.id, clientId, correlation++);
+            this.fetchesInFlight.add(node);
+            requests.add(add(new InFlightRequest(new RequestSend(node, header, fetch), entry.getValue())));
+        }
+        return requests;
+    }
+
+    private static void collate(Map<Node, List<TopicPartition>> collated, Node node, TopicPartition tp) {
+        List<TopicPartition> found = collated.get(node);
+        if (found == null) {
+            found = new ArrayList<TopicPartition>();
+            collated.put(node, found);
+        }
+        found.add(tp);
+    }
+
+    /**
+     * Is the connection to the given node ready for another request? If we aren't connected, initiate a connection
+     * (subject to the reconnect backoff).
+     */
+    private boolean ready(Node node, long now) {
+        NodeState state = this.nodeState.get(node.id());
+        if (state == null || (state.state == ConnectionState.DISCONNECTED && now - state.lastConnectAttempt > this.reconnectBackoffMs)) {
+            initiateConnect(node, now);
+            return false;
+        }
+        if (state.state != ConnectionState.CONNECTED)
+            return false;
+        Deque<InFlightRequest> requests = this.inFlightRequests.get(node.id());
+        return requests == null || requests.isEmpty() || requests.peekFirst().send.complete();
+    }
+
+    private void initiateConnect(Node node, long now) {
+        try {
+            this.selector.connect(node.id(), new InetSocketAddress(node.host(), node.port()), this.socketSendBuffer, this.socketReceiveBuffer);
+            this.nodeState.put(node.id(), new NodeState(ConnectionState.CONNECTING, now));
+        } catch (IOException e) {
+            /* attempt failed, we'll try again after the backoff */
+            this.nodeState.put(node.id(), new NodeState(ConnectionState.DISCONNECTED, now));
+            /* maybe the problem is our metadata, update it */
+            this.metadata.forceUpdate();
+        }
+    }
+
+    private InFlightRequest add(InFlightRequest request) {
+        int node = request.send.destination();
+        Deque<InFlightRequest> requests = this.inFlightRequests.get(node);
+        if (requests == null) {
+            requests = new ArrayDeque<InFlightRequest>();
+            this.inFlightRequests.put(node, requests);
+        }
+        requests.addFirst(request);
+        return request;
+    }
+
+    private void handleResponses(List<NetworkReceive> receives, long now) {
+        for (NetworkReceive receive : receives) {
+            int source = receive.source();
+            Deque<InFlightRequest> requests = this.inFlightRequests.get(source);
+            if (requests == null || requests.isEmpty())
+                throw new IllegalStateException("Response from server for which there are no in-flight requests.");
+            InFlightRequest request = requests.pollLast();
+            RequestHeader requestHeader = request.send.header();
+            ResponseHeader responseHeader = ResponseHeader.parse(receive.payload());
+            if (requestHeader.correlationId() != responseHeader.correlationId())
+                throw new IllegalStateException("Correlation id for response (" + responseHeader.correlationId()
+                                                + ") does not match request ("
+                                                + requestHeader.correlationId()
+                                                + ")");
+            short apiKey = requestHeader.apiKey();
+            if (apiKey == ApiKeys.FETCH.id)
+                handleFetchResponse(request, FetchResponse.parse(receive.payload()));
+            else if (apiKey == ApiKeys.LIST_OFFSETS.id)
+                handleOffsetResponse(request, receive.payload());
+            else if (apiKey == ApiKeys.METADATA.id)
+                handleMetadataResponse(MetadataView.parse(receive.payload()), now);
+            else
+                throw new IllegalStateException("Unexpected response type: " + apiKey);
+        }
+    }
+
+    private void handleMetadataResponse(MetadataView response, long now) {
+        this.metadataFetchInProgress = false;
+        this.metadata.update(response.cluster(), now);
+    }
+
+    private void handleFetchResponse(InFlightRequest request, FetchResponse response) {
+        this.fetchesInFlight.remove(request.send.destination());
+        FetchRequest fetch = (FetchRequest) request.send.body();
+        Map<TopicPartition, Integer> kept = new HashMap<TopicPartition, Integer>();
+        for (int i = 0; i < response.size(); i++) {
+            TopicPartition tp = response.partition(i);
+            PartitionState state = this.partitions.get(tp);
+            FetchRequest.PartitionData data = fetch.fetchData().get(tp);
+            // ignore partitions that were unsubscribed or seeked since the fetch was sent
+            if (state == null || data == null || state.fetchPosition != data.offset)
+                continue;
+            short error = response.errorCode(i);
+            if (error == Errors.NONE.code()) {
+                MemoryRecords records = response.records(i);
+                this.bytesFetched.record(records.sizeInBytes());
+                if (slice(state, records, data.offset))
+                    kept.put(tp, state.fetched.peekLast().records.sizeInBytes());
+                else if (records.sizeInBytes() >= data.maxBytes)
+                    state.error = new RecordTooLargeException("The record at offset " + data.offset + " of partition " + tp
+                                                              + " is larger than the fetch size " + data.maxBytes
+                                                              + " and can never be returned.");
+            } else if (error == Errors.OFFSET_OUT_OF_RANGE.code()) {
+                state.fetchPosition = -1L;
+            } else {
+                this.metadata.forceUpdate();
+            }
+        }
+        completeFetch(fetch, kept);
+    }
+
+    /**
+     * Release the memory reserved for a fetch except for the records kept from it
+     */
+    private void completeFetch(FetchRequest fetch, Map<TopicPartition, Integer> kept) {
+        for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetch.fetchData().entrySet()) {
+            Integer bytes = kept.get(entry.getKey());
+            this.budget.complete(entry.getKey(), entry.getValue().maxBytes, bytes == null ? 0 : bytes);
+        }
+    }
+
+    /**
+     * Add the complete records at or after the fetch offset to the partition's fetched records. The server may return
+     * records before the requested offset and a partial record at the end, neither of which are returned.
+     * 
+     * @return true if there was at least one such record
+     */
+    private static boolean slice(PartitionState state, MemoryRecords records, long fetchOffset) {
+        ByteBuffer buffer = records.buffer();
+        buffer.flip();
+        int start = -1;
+        int end = -1;
+        long next = fetchOffset;
+        while (buffer.remaining() >= Records.LOG_OVERHEAD) {
+            int position = buffer.position();
+            long offset = buffer.getLong(position);
+            int size = buffer.getInt(position + Records.OFFSET_LENGTH);
+            if (size < 0 || buffer.remaining() < Records.LOG_OVERHEAD + size)
+                break;
+            if (offset >= fetchOffset) {
+                if (start < 0)
+                    start = position;
+                end = position + Records.LOG_OVERHEAD + size;
+                next = offset + 1;
+            }
+            buffer.position(position + Records.LOG_OVERHEAD + size);
+        }
+        if (start < 0)
+            return false;
+        buffer.limit(end);
+        buffer.position(start);
+        state.fetched.addLast(new FetchedRecords(MemoryRecords.readableRecords(buffer), next));
+        state.fetchPosition = next;
+        return true;
+    }
+
+    private void handleOffsetResponse(InFlightRequest request, ByteBuffer payload) {
+        Struct response = (Struct) ProtoUtils.currentResponseSchema(ApiKeys.LIST_OFFSETS.id).read(payload);
+        for (Object topicResponse : response.getArray(Protocol.LIST_OFFSET_RESPONSE_RESPONSES)) {
+            Struct topicStruct = (Struct) topicResponse;
+            String topic = topicStruct.getString(Protocol.TOPIC_LIST_OFFSET_RESPONSE_TOPIC);
+            for (Object partitionResponse : topicStruct.getArray(Protocol.TOPIC_LIST_OFFSET_RESPONSE_PARTITION_RESPONSES)) {
+                Struct partitionStruct = (Struct) partitionResponse;
+                TopicPartition tp = new TopicPartition(topic, partitionStruct.getInt(Protocol.PARTITION_LIST_OFFSET_RESPONSE_PARTITION));
+                PartitionState state = this.partitions.get(tp);
+                if (state == null || !state.resetInProgress)
+                    continue;
+                Object[] offsets = partitionStruct.getArray(Protocol.PARTITION_LIST_OFFSET_RESPONSE_OFFSETS);
+                short error = partitionStruct.getShort(Protocol.PARTITION_LIST_OFFSET_RESPONSE_ERROR_CODE);
+                if (error == Errors.NONE.code() && offsets.length > 0) {
+                    state.position = (Long) offsets[0];
+                    state.fetchPosition = state.position;
+                    state.fetched.clear();
+                    this.budget.discard(tp);
+                } else {
+                    this.metadata.forceUpdate();
+                }
+            }
+        }
+        finishOffsetRequest(request);
+    }
+
+    /**
+     * Allow the partitions of the given offset request to be looked up again if they still have no position
+     */
+    private void finishOffsetRequest(InFlightRequest request) {
+        for (TopicPartition tp : request.partitions) {
+            PartitionState state = this.partitions.get(tp);
+            if (state != null)
+                state.resetInProgress = false;
+        }
+    }
+
+    /**
+     * Fail all the requests in flight to disconnected nodes so they are retried
+     */
+    private void handleDisconnects(List<Integer> disconnects) {
+        for (int node : disconnects) {
+            Deque<InFlightRequest> requests = this.inFlightRequests.remove(node);
+            if (requests != null) {
+                for (InFlightRequest request : requests) {
+                    short apiKey = request.send.header().apiKey();
+                    if (apiKey == ApiKeys.METADATA.id)
+                        this.metadataFetchInProgress = false;
+                    else if (apiKey == ApiKeys.LIST_OFFSETS.id)
+                        finishOffsetRequest(request);
+                    else if (apiKey == ApiKeys.FETCH.id)
+                        completeFetch((FetchRequest) request.send.body(), Collections.<TopicPartition, Integer>emptyMap());
+                }
+            }
+            this.fetchesInFlight.remove(node);
+            NodeState state = this.nodeState.get(node);
+            if (state != null)
+                state.state = ConnectionState.DISCONNECTED;
+            this.metadata.forceUpdate();
+        }
+    }
+
+    private void handleConnects(List<Integer> connects) {
+        for (Integer id : connects)
+            this.nodeState.get(id).state = ConnectionState.CONNECTED;
+    }
+
+    /**
+     * The fetch state of a subscribed partition
+     */
+    private static final class PartitionState {
+        /* the offset of the next record to return to the caller, or -1 if unknown */
+        private long position = -1L;
+        /* the offset to fetch from next, or -1 if it must be looked up */
+        private long fetchPosition = -1L;
+        private boolean resetInProgress = false;
+        /* the records fetched but not yet returned, oldest first */
+        private final Deque<FetchedRecords> fetched = new ArrayDeque<FetchedRecords>();
+        private RuntimeException error = null;
+    }
+
+    /**
+     * The records from a single fetch response for a partition
+     */
+    private static final class FetchedRecords {
+        private final MemoryRecords records;
+        /* the offset following the last record */
+        private final long nextOffset;
+
+        public FetchedRecords(MemoryRecords records, long nextOffset) {
+            this.records = records;
+            this.nextOffset = nextOffset;
+        }
+    }
+
+    /**
+     * The states of a node connection
+     */
+    private static enum ConnectionState {
+        DISCONNECTED, CONNECTING, CONNECTED
+    }
+
+    private static final class NodeState {
+        private ConnectionState state;
+        private long lastConnectAttempt;
+
+        public NodeState(ConnectionState state, long lastConnectAttempt) {
+            this.state = state;
+            this.lastConnectAttempt = lastConnectAttempt;
+        }
+    }
+
+    /**
+     * A request that hasn't received its response yet
+     */
+    private static final class InFlightRequest {
+        private final RequestSend send;
+        private final Collection<TopicPartition> partitions;
+
+        /**
+         * @param send The request
+         * @param partitions The partitions the request is for, if any
+         */
+        public InFlightRequest(RequestSend send, Collection<TopicPartition> partitions) {
+            this.send = send;
+            this.partitions = partitions;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+
+
+/**
+ * The memory budget for records fetched ahead of the application.
+ * <p>
+ * Before a partition is included in a fetch, the most the fetch can return for it is reserved from the budget. When the
+ * response arrives the reservation is reduced to the bytes actually kept, and those are released once the records are
+ * handed to the application. Memory held by fetches in flight and by records waiting to be returned therefore never
+ * exceeds the budget, however many partitions are subscribed.
+ * <p>
+ * When there isn't enough memory for every partition that could be fetched, it is handed out like the producer's
+ * {@link org.apache.kafka.clients.producer.internals.BufferPool}: fairly, in the order partitions started waiting for
+ * it. Partitions with nothing buffered come first, since the application can't make progress on them at all. The
+ * remaining memory goes to prefetching partitions that already have records buffered, and the partitions the
+ * application has been draining fastest get it first.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class PrefetchBudget {
+
+    private final long totalMemory;
+    private final Map<TopicPartition, Usage> usage;
+    private long availableMemory;
+    private long waiters;
+
+    /**
+     * Create a new budget
+     * 
+     * @param memory The maximum bytes that fetches in flight and fetched records not yet returned may take up
+     * @param metrics The metrics registry
+     */
+    public PrefetchBudget(long memory, Metrics metrics) {
+        this.totalMemory = memory;
+        this.availableMemory = memory;
+        this.usage = new HashMap<TopicPartition, Usage>();
+        this.waiters = 0L;
+        metrics.addMetric("prefetch_available_bytes",
+                          "The memory available for fetching ahead of the application",
+                          new Measurable() {
+                              public double measure(MetricConfig config, long now) {
+                                  return availableMemory;
+                              }
+                          });
+        metrics.addMetric("prefetch_total_bytes",
+                          "The memory budget for fetching ahead of the application",
+                          new Measurable() {
+                              public double measure(MetricConfig config, long now) {
+                                  return totalMemory;
+                              }
+                          });
+    }
+
+    /**
+     * Reserve memory to fetch the given partitions, granting it in priority order until it runs out
+     * 
+     * @param candidates The partitions that could be fetched
+     * @param bytes The most a fetch can return for a partition
+     * @return The partitions memory was reserved for
+     */
+    public List<TopicPartition> reserve(List<TopicPartition> candidates, int bytes) {
+        List<TopicPartition> ordered = new ArrayList<TopicPartition>(candidates.size());
+        for (TopicPartition tp : candidates) {
+            Usage candidate = usageFor(tp);
+            if (candidate.waitingSince < 0)
+                candidate.waitingSince = this.waiters++;
+            ordered.add(tp);
+        }
+        Collections.sort(ordered, new Comparator<TopicPartition>() {
+            public int compare(TopicPartition tp1, TopicPartition tp2) {
+                Usage u1 = usage.get(tp1);
+                Usage u2 = usage.get(tp2);
+                boolean empty1 = u1.buffered == 0;
+                boolean empty2 = u2.buffered == 0;
+                if (empty1 != empty2)
+                    return empty1 ? -1 : 1;
+                if (!empty1 && u1.drainRate != u2.drainRate)
+                    return u1.drainRate > u2.drainRate ? -1 : 1;
+                return u1.waitingSince < u2.waitingSince ? -1 : (u1.waitingSince == u2.waitingSince ? 0 : 1);
+            }
+        });
+        List<TopicPartition> granted = new ArrayList<TopicPartition>(ordered.size());
+        for (TopicPartition tp : ordered) {
+            // stop at the first partition that doesn't fit so that nobody overtakes it
+            if (this.availableMemory < bytes)
+                break;
+            this.availableMemory -= bytes;
+            this.usage.get(tp).waitingSince = -1L;
+            granted.add(tp);
+        }
+        return granted;
+    }
+
+    /**
+     * Record the completion of a fetch, keeping the part of the reservation taken up by records buffered for the
+     * partition and releasing the rest
+     * 
+     * @param tp The partition
+     * @param reserved The bytes reserved for the partition when the fetch was sent
+     * @param kept The bytes of records buffered from the response, 0 if the fetch failed
+     */
+    public void complete(TopicPartition tp, int reserved, int kept) {
+        this.availableMemory += reserved - kept;
+        Usage usage = this.usage.get(tp);
+        if (usage != null)
+            usage.buffered += kept;
+    }
+
+    /**
+     * Record that records were handed to the application, releasing their memory. This is called for every subscribed
+     * partition each time records are returned, with 0 bytes for partitions that had none, to keep track of which
+     * partitions are being drained.
+     */
+    public void drained(TopicPartition tp, int bytes) {
+        Usage usage = usageFor(tp);
+        usage.buffered -= bytes;
+        this.availableMemory += bytes;
+        usage.drainRate = (usage.drainRate + bytes) / 2;
+    }
+
+    /**
+     * Release the memory of all the records buffered for the given partition, which have been discarded
+     */
+    public void discard(TopicPartition tp) {
+        Usage usage = this.usage.get(tp);
+        if (usage != null) {
+            this.availableMemory += usage.buffered;
+            usage.buffered = 0;
+        }
+    }
+
+    /**
+     * Discard the given partition's buffered records and forget about it
+     */
+    public void remove(TopicPartition tp) {
+        discard(tp);
+        this.usage.remove(tp);
+    }
+
+    /**
+     * The memory not currently reserved or buffered
+     */
+    public long availableMemory() {
+        return this.availableMemory;
+    }
+
+    /**
+     * The bytes of records buffered for the given partition
+     */
+    public long buffered(TopicPartition tp) {
+        Usage usage = this.usage.get(tp);
+        return usage == null ? 0L : usage.buffered;
+    }
+
+    private Usage usageFor(TopicPartition tp) {
+        Usage usage = this.usage.get(tp);
+        if (usage == null) {
+            usage = new Usage();
+            this.usage.put(tp, usage);
+        }
+        return usage;
+    }
+
+    private static final class Usage {
+        /* the bytes of records fetched and not yet returned */
+        private long buffered = 0L;
+        /* a moving average of the bytes returned each time records are handed to the application */
+        private double drainRate = 0.0;
+        /* the order in which the partition started waiting for memory, or -1 if it isn't waiting */
+        private long waitingSince = -1L;
+    }
+
+}
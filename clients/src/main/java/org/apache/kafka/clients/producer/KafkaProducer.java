@@ -17,18 +17,25 @@
 package org.apache.kafka.clients.producer;
 
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.kafka.clients.ClientUtils;
 import org.apache.kafka.clients.producer.internals.FutureRecordMetadata;
 import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.clients.producer.internals.NodeLoad;
 import org.apache.kafka.clients.producer.internals.Partitioner;
+import org.apache.kafka.clients.producer.internals.PendingSends;
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
 import org.apache.kafka.clients.producer.internals.RecordAccumulator;
 import org.apache.kafka.clients.producer.internals.Sender;
 import org.apache.kafka.common.Cluster;
@@ -64,8 +71,11 @@ public class KafkaProducer implements Producer {
     private final int maxRequestSize;
     private final long metadataFetchTimeoutMs;
     private final long totalMemorySize;
+    private final CompressionType compression;
+    private final boolean timestamps;
     private final Metadata metadata;
     private final RecordAccumulator accumulator;
+    private final PendingSends pending;
     private final Sender sender;
     private final Metrics metrics;
     private final Thread ioThread;
@@ -89,23 +99,55 @@ public class KafkaProducer implements Producer {
     }
 
     private KafkaProducer(ProducerConfig config) {
-        this.metrics = new Metrics(new MetricConfig(),
-                                   Collections.singletonList((MetricsReporter) new JmxReporter("kafka.producer.")),
-                                   new SystemTime());
-        this.partitioner = new Partitioner();
+        List<MetricsReporter> reporters = config.getConfiguredInstances(ProducerConfig.METRIC_REPORTER_CLASSES_CONFIG,
+                                                                        MetricsReporter.class);
+        reporters.add(new JmxReporter("kafka.producer."));
+        this.metrics = new Metrics(new MetricConfig(), reporters, new SystemTime());
+        long snapshotIntervalMs = config.getLong(ProducerConfig.METRICS_SNAPSHOT_INTERVAL_MS_CONFIG);
+        if (snapshotIntervalMs > 0)
+            this.metrics.startSnapshots(snapshotIntervalMs);
+        NodeLoad load = null;
+        if (config.getBoolean(ProducerConfig.PARTITIONER_LOAD_AWARE_CONFIG))
+            load = new NodeLoad(config.getInt(ProducerConfig.MAX_PARTITION_SIZE_CONFIG));
+        this.partitioner = new Partitioner(load);
         this.metadataFetchTimeoutMs = config.getLong(ProducerConfig.METADATA_FETCH_TIMEOUT_CONFIG);
         this.metadata = new Metadata();
         this.maxRequestSize = config.getInt(ProducerConfig.MAX_REQUEST_SIZE_CONFIG);
         this.totalMemorySize = config.getLong(ProducerConfig.TOTAL_BUFFER_MEMORY_CONFIG);
+        this.compression = parseCompressionType(config.getString(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+        this.timestamps = config.getBoolean(ProducerConfig.RECORD_TIMESTAMPS_CONFIG);
         this.accumulator = new RecordAccumulator(config.getInt(ProducerConfig.MAX_PARTITION_SIZE_CONFIG),
+                                                 Math.min(config.getInt(ProducerConfig.MIN_PARTITION_SIZE_CONFIG),
+                                                          config.getInt(ProducerConfig.MAX_PARTITION_SIZE_CONFIG)),
+                                                 config.getInt(ProducerConfig.MAX_POOLED_BUFFER_SIZE_CONFIG),
                                                  this.totalMemorySize,
                                                  config.getLong(ProducerConfig.LINGER_MS_CONFIG),
                                                  config.getBoolean(ProducerConfig.BLOCK_ON_BUFFER_FULL),
+                                                 new ProduceQuotas(config.getLong(ProducerConfig.QUOTA_CLIENT_BYTES_CONFIG),
+                                                                   config.getLong(ProducerConfig.QUOTA_CLIENT_RECORDS_CONFIG),
+                                                                   config.getLong(ProducerConfig.QUOTA_TOPIC_BYTES_CONFIG),
+                                                                   config.getLong(ProducerConfig.QUOTA_TOPIC_RECORDS_CONFIG),
+                                                                   parseTopicValues(ProducerConfig.QUOTA_TOPIC_OVERRIDES_CONFIG,
+                                                                                    config.getList(ProducerConfig.QUOTA_TOPIC_OVERRIDES_CONFIG)),
+                                                                   nonEmpty(config.getList(ProducerConfig.QUOTA_REJECT_TOPICS_CONFIG)),
+                                                                   metrics,
+                                                                   new SystemTime()),
+                                                 parseTopicPriorities(config.getList(ProducerConfig.TOPIC_PRIORITIES_CONFIG)),
+                                                 config.getLong(ProducerConfig.PRIORITY_STARVATION_MS_CONFIG),
                                                  metrics,
                                                  new SystemTime());
-        List<InetSocketAddress> addresses = parseAndValidateAddresses(config.getList(ProducerConfig.BROKER_LIST_CONFIG));
+        List<InetSocketAddress> addresses = ClientUtils.parseAndValidateAddresses(config.getList(ProducerConfig.BROKER_LIST_CONFIG));
         this.metadata.update(Cluster.bootstrap(addresses), System.currentTimeMillis());
-        this.sender = new Sender(new Selector(),
+        this.pending = new PendingSends(config.getInt(ProducerConfig.MAX_PENDING_RECORDS_CONFIG),
+                                        this.metadataFetchTimeoutMs,
+                                        this.metadata,
+                                        this.partitioner,
+                                        this.accumulator,
+                                        this.compression,
+                                        this.timestamps,
+                                        this.metrics,
+                                        new SystemTime());
+        this.sender = new Sender(new Selector(this.metrics, new SystemTime()),
                                  this.metadata,
                                  this.accumulator,
                                  config.getString(ProducerConfig.CLIENT_ID_CONFIG),
@@ -113,31 +155,73 @@ public class KafkaProducer implements Producer {
                                  config.getLong(ProducerConfig.RECONNECT_BACKOFF_MS_CONFIG),
                                  (short) config.getInt(ProducerConfig.REQUIRED_ACKS_CONFIG),
                                  config.getInt(ProducerConfig.REQUEST_TIMEOUT_CONFIG),
+                                 config.getInt(ProducerConfig.SEND_BUFFER_CONFIG),
+                                 config.getInt(ProducerConfig.RECEIVE_BUFFER_CONFIG),
+                                 load,
+                                 this.pending,
+                                 this.metrics,
                                  new SystemTime());
+        Set<String> warmUpTopics = nonEmpty(config.getList(ProducerConfig.WARM_UP_TOPICS_CONFIG));
+        CountDownLatch warmUp = warmUpTopics.isEmpty() ? null : this.sender.warmUp(warmUpTopics, this.metadataFetchTimeoutMs);
         this.ioThread = new KafkaThread("kafka-network-thread", this.sender, true);
         this.ioThread.start();
+        if (warmUp != null) {
+            try {
+                warmUp.await(this.metadataFetchTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new KafkaException(e);
+            }
+        }
     }
 
-    private static List<InetSocketAddress> parseAndValidateAddresses(List<String> urls) {
-        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
-        for (String url : urls) {
-            if (url != null && url.length() > 0) {
-                String[] pieces = url.split(":");
-                if (pieces.length != 2)
-                    throw new ConfigException("Invalid url in metadata.broker.list: " + url);
+    /**
+     * Parse the compression type, of which only the ones this producer can write are allowed
+     */
+    private static CompressionType parseCompressionType(String name) {
+        CompressionType type;
+        try {
+            type = CompressionType.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigException("Invalid value for " + ProducerConfig.COMPRESSION_TYPE_CONFIG + ": " + name);
+        }
+        if (type != CompressionType.NONE && type != CompressionType.COMPACT)
+            throw new ConfigException("Unsupported value for " + ProducerConfig.COMPRESSION_TYPE_CONFIG + ": " + name);
+        return type;
+    }
+
+    /**
+     * Parse a list of per topic values given in the form <code>topic1:value1,topic2:value2,...</code>
+     */
+    private static Map<String, Long> parseTopicValues(String name, List<String> entries) {
+        Map<String, Long> values = new HashMap<String, Long>();
+        for (String entry : entries) {
+            if (entry != null && entry.length() > 0) {
+                int split = entry.lastIndexOf(':');
+                if (split <= 0)
+                    throw new ConfigException("Invalid entry in " + name + ": " + entry);
                 try {
-                    InetSocketAddress address = new InetSocketAddress(pieces[0], Integer.parseInt(pieces[1]));
-                    if (address.isUnresolved())
-                        throw new ConfigException("DNS resolution failed for metadata bootstrap url: " + url);
-                    addresses.add(address);
+                    values.put(entry.substring(0, split), Long.parseLong(entry.substring(split + 1)));
                 } catch (NumberFormatException e) {
-                    throw new ConfigException("Invalid port in metadata.broker.list: " + url);
+                    throw new ConfigException("Invalid value in " + name + ": " + entry);
                 }
             }
         }
-        if (addresses.size() < 1)
-            throw new ConfigException("No bootstrap urls given in metadata.broker.list.");
-        return addresses;
+        return values;
+    }
+
+    private static Map<String, Integer> parseTopicPriorities(List<String> entries) {
+        Map<String, Integer> priorities = new HashMap<String, Integer>();
+        for (Map.Entry<String, Long> entry : parseTopicValues(ProducerConfig.TOPIC_PRIORITIES_CONFIG, entries).entrySet())
+            priorities.put(entry.getKey(), entry.getValue().intValue());
+        return priorities;
+    }
+
+    private static Set<String> nonEmpty(List<String> values) {
+        Set<String> set = new HashSet<String>();
+        for (String value : values)
+            if (value != null && value.length() > 0)
+                set.add(value);
+        return set;
     }
 
     /**
@@ -202,7 +286,8 @@ public class KafkaProducer implements Producer {
      * I/O thread can transfer data to the brokers the buffer will eventually run out of space. The default behavior in
      * this case is to block the send call until the I/O thread catches up and more buffer space is available. However
      * in cases where non-blocking usage is desired the setting <code>block.on.buffer.full=false</code> will cause the
-     * producer to instead throw an exception when buffer memory is exhausted.
+     * producer to instead throw an exception when buffer memory is exhausted. Alternatively
+     * {@link #sendAsync(ProducerRecord, Callback) sendAsync()} never blocks whatever this setting.
      * 
      * @param record The record to send
      * @param callback A user-supplied callback to execute when the record has been acknowledged by the server (null
@@ -215,7 +300,8 @@ public class KafkaProducer implements Producer {
             int partition = partitioner.partition(record, cluster);
             ensureValidSize(record.key(), record.value());
             TopicPartition tp = new TopicPartition(record.topic(), partition);
-            FutureRecordMetadata future = accumulator.append(tp, record.key(), record.value(), CompressionType.NONE, callback);
+            long timestamp = this.timestamps ? System.currentTimeMillis() : Record.NO_TIMESTAMP;
+            FutureRecordMetadata future = accumulator.append(tp, timestamp, record.key(), record.value(), this.compression, callback);
             this.sender.wakeup();
             return future;
         } catch (Exception e) {
@@ -225,11 +311,45 @@ public class KafkaProducer implements Producer {
         }
     }
 
+    /**
+     * Send a record and invoke the provided callback when the send has been acknowledged, without ever blocking the
+     * calling thread. This suits threads that must not be parked, such as event loops.
+     * <p>
+     * Where {@link #send(ProducerRecord, Callback) send()} would block waiting for buffer memory or for the metadata of
+     * a new topic, the record is instead queued and appended by the I/O thread, in order, as memory is freed and
+     * metadata arrives. At most <code>max.pending.records</code> records can be queued; once the queue is full the send
+     * fails immediately with a {@link BufferExhaustedException}. A record that waits longer than
+     * <code>metadata.fetch.timeout.ms</code> for metadata fails with a
+     * {@link org.apache.kafka.common.errors.TimeoutException TimeoutException}, and a record that would exceed a produce
+     * quota fails with a {@link org.apache.kafka.common.metrics.QuotaViolationException QuotaViolationException} rather
+     * than waiting.
+     * <p>
+     * All failures are reported through the returned future and the callback, never thrown. Calling
+     * <code>get()</code> on the future blocks as usual, so non-blocking callers should rely on the callback.
+     * 
+     * @param record The record to send
+     * @param callback A user-supplied callback to execute when the record has been acknowledged by the server or the
+     *        send has failed (null indicates no callback)
+     */
+    @Override
+    public Future<RecordMetadata> sendAsync(ProducerRecord record, Callback callback) {
+        try {
+            ensureValidSize(record.key(), record.value());
+        } catch (Exception e) {
+            if (callback != null)
+                callback.onCompletion(null, e);
+            return new FutureFailure(e);
+        }
+        Future<RecordMetadata> future = this.pending.send(record, callback);
+        this.sender.wakeup();
+        return future;
+    }
+
     /**
      * Check that this key-value pair will have a serialized size small enough
      */
     private void ensureValidSize(byte[] key, byte[] value) {
-        int serializedSize = Records.LOG_OVERHEAD + Record.recordSize(key, value);
+        int serializedSize = Records.LOG_OVERHEAD + Record.recordSize(this.timestamps ? 0L : Record.NO_TIMESTAMP, key, value);
         if (serializedSize > this.maxRequestSize)
             throw new RecordTooLargeException("The message is " + serializedSize
                                               + " bytes when serialized which is larger than the maximum request size you have configured with the "
@@ -242,6 +362,33 @@ public class KafkaProducer implements Producer {
                                               + " configuration.");
     }
 
+    /**
+     * Make all buffered records immediately available to send, even if <code>linger.ms</code> has not yet elapsed for
+     * them, and block until the requests for them complete. A request is complete when it is acknowledged or fails,
+     * just as for the futures returned by {@link #send(ProducerRecord, Callback) send()}. Records sent by other threads
+     * while the flush is in progress are not waited for. This includes records passed to
+     * {@link #sendAsync(ProducerRecord, Callback) sendAsync()} before the flush that are still waiting for buffer
+     * memory or metadata: the flush first waits for them to be appended.
+     * <p>
+     * This is a cheaper alternative to keeping the future of every send and calling <code>get()</code> on each of
+     * them; its cost doesn't depend on the number of records outstanding.
+     */
+    @Override
+    public void flush() {
+        try {
+            long queued = this.pending.queued();
+            if (queued > 0) {
+                this.sender.wakeup();
+                this.pending.awaitAdmitted(queued);
+            }
+            long flush = this.accumulator.beginFlush();
+            this.sender.wakeup();
+            this.accumulator.awaitFlushCompletion(flush);
+        } catch (InterruptedException e) {
+            throw new KafkaException(e);
+        }
+    }
+
     public List<PartitionInfo> partitionsFor(String topic) {
         return this.metadata.fetch(topic, this.metadataFetchTimeoutMs).partitionsFor(topic);
     }
@@ -117,6 +117,17 @@ public class MockProducer implements Producer {
         return future;
     }
 
+    /**
+     * Adds the record to the list of sent records. The mock never blocks, so this is the same as
+     * {@link #send(ProducerRecord, Callback) send()}.
+     * 
+     * @see #history()
+     */
+    @Override
+    public synchronized Future<RecordMetadata> sendAsync(ProducerRecord record, Callback callback) {
+        return send(record, callback);
+    }
+
     /**
      * Get the next offset for this topic/partition
      */
@@ -132,6 +143,15 @@ public class MockProducer implements Producer {
         }
     }
 
+    /**
+     * Complete all the uncompleted calls successfully
+     */
+    @Override
+    public synchronized void flush() {
+        while (!this.completions.isEmpty())
+            completeNext();
+    }
+
     public List<PartitionInfo> partitionsFor(String topic) {
         return this.cluster.partitionsFor(topic);
     }
@@ -46,6 +46,19 @@ public interface Producer extends Closeable {
      */
     public Future<RecordMetadata> send(ProducerRecord record, Callback callback);
 
+    /**
+     * Send a record without ever blocking the calling thread and invoke the given callback when the record has been
+     * acknowledged by the server. Failures, including running out of buffer memory, are reported through the returned
+     * future and the callback rather than thrown.
+     */
+    public Future<RecordMetadata> sendAsync(ProducerRecord record, Callback callback);
+
+    /**
+     * Send all the records buffered so far immediately, regardless of <code>linger.ms</code>, and block until they have
+     * all completed. Records sent while the flush is in progress don't delay it.
+     */
+    public void flush();
+
     /**
      * Get a list of partitions for the given topic for custom partition assignment. The partition metadata will change
      * over time so this list should not be cached.
@@ -53,6 +53,22 @@ public class ProducerConfig extends AbstractConfig {
      */
     public static final String MAX_PARTITION_SIZE_CONFIG = "max.partition.bytes";
 
+    /**
+     * The smallest buffer size allocated for a partition. The producer sizes each partition's buffers between this and
+     * {@link #MAX_PARTITION_SIZE_CONFIG} based on how much data recently arrived for that partition, so that quiet
+     * partitions don't tie up a full sized buffer while they linger. Setting this equal to
+     * {@link #MAX_PARTITION_SIZE_CONFIG} always allocates the full size.
+     */
+    public static final String MIN_PARTITION_SIZE_CONFIG = "min.partition.bytes";
+
+    /**
+     * The largest buffer size the producer will keep in its buffer pool for reuse. Buffers are pooled in the batch size
+     * classes, {@link #MAX_PARTITION_SIZE_CONFIG} and its successive halves down to {@link #MIN_PARTITION_SIZE_CONFIG},
+     * and in doublings of {@link #MAX_PARTITION_SIZE_CONFIG} up to this size, so records larger than a batch can still
+     * be served from the pool rather than allocated and discarded.
+     */
+    public static final String MAX_POOLED_BUFFER_SIZE_CONFIG = "max.pooled.buffer.bytes";
+
     /**
      * The total memory used by the producer to buffer records waiting to be sent to the server. If records are sent
      * faster than they can be delivered to the server the producer will either block or throw an exception based on the
@@ -100,6 +116,11 @@ public class ProducerConfig extends AbstractConfig {
      */
     public static final String SEND_BUFFER_CONFIG = "send.buffer.bytes";
 
+    /**
+     * The size of the TCP receive buffer to use when reading responses
+     */
+    public static final String RECEIVE_BUFFER_CONFIG = "receive.buffer.bytes";
+
     /**
      * The maximum size of a request. This is also effectively a cap on the maximum record size. Note that the server
      * has its own cap on record size which may be different from this.
@@ -121,11 +142,108 @@ public class ProducerConfig extends AbstractConfig {
 
     public static final String ENABLE_JMX = "enable.jmx";
 
+    /**
+     * The maximum number of bytes per second this producer will append across all topics. Sends beyond this rate are
+     * delayed, or rejected for topics listed in {@link #QUOTA_REJECT_TOPICS_CONFIG}. Unlimited by default.
+     */
+    public static final String QUOTA_CLIENT_BYTES_CONFIG = "quota.client.bytes.per.second";
+
+    /**
+     * The maximum number of records per second this producer will append across all topics. Unlimited by default.
+     */
+    public static final String QUOTA_CLIENT_RECORDS_CONFIG = "quota.client.records.per.second";
+
+    /**
+     * The maximum number of bytes per second this producer will append to any single topic, unless overridden for that
+     * topic by {@link #QUOTA_TOPIC_OVERRIDES_CONFIG}. Unlimited by default.
+     */
+    public static final String QUOTA_TOPIC_BYTES_CONFIG = "quota.topic.bytes.per.second";
+
+    /**
+     * The maximum number of records per second this producer will append to any single topic. Unlimited by default.
+     */
+    public static final String QUOTA_TOPIC_RECORDS_CONFIG = "quota.topic.records.per.second";
+
+    /**
+     * Per topic overrides of {@link #QUOTA_TOPIC_BYTES_CONFIG} in the form <code>topic1:bytes1,topic2:bytes2,...</code>
+     */
+    public static final String QUOTA_TOPIC_OVERRIDES_CONFIG = "quota.topic.overrides";
+
+    /**
+     * The topics for which a send that exceeds a quota fails with a
+     * {@link org.apache.kafka.common.metrics.QuotaViolationException} instead of being delayed until the rate falls back
+     * under the quota.
+     */
+    public static final String QUOTA_REJECT_TOPICS_CONFIG = "quota.reject.topics";
+
+    /**
+     * The priority of topics when filling requests, in the form <code>topic1:priority1,topic2:priority2,...</code>. When
+     * more data is ready for a broker than fits in a single request, data for topics with a higher priority is sent
+     * first. Topics that aren't listed have priority 0.
+     */
+    public static final String TOPIC_PRIORITIES_CONFIG = "topic.priorities";
+
+    /**
+     * The longest time data for a low priority topic can be held back by higher priority topics. Data that has waited
+     * this long is sent ahead of all other data.
+     */
+    public static final String PRIORITY_STARVATION_MS_CONFIG = "priority.starvation.ms";
+
+    /**
+     * Steer records without a key away from brokers that have much more data queued and in flight than the others, for
+     * example because they are slow. Records with a key or an explicit partition are unaffected.
+     */
+    public static final String PARTITIONER_LOAD_AWARE_CONFIG = "partitioner.load.aware";
+
+    /**
+     * The maximum number of records passed to <code>sendAsync()</code> that can wait for buffer memory or metadata.
+     * Once this many are waiting further calls fail immediately rather than block.
+     */
+    public static final String MAX_PENDING_RECORDS_CONFIG = "max.pending.records";
+
+    /**
+     * Topics to warm up for when the producer is created. The constructor connects to all the bootstrap brokers at once,
+     * fetches metadata for these topics and connects to the leaders of their partitions before returning, waiting at
+     * most <code>metadata.fetch.timeout.ms</code>. This takes the connection setup out of the latency of the first
+     * sends.
+     */
+    public static final String WARM_UP_TOPICS_CONFIG = "warm.up.topics";
+
+    /**
+     * The format to write record batches in, either <code>none</code> for one log entry per record or
+     * <code>compact</code> for one shared header and CRC per batch with variable length offsets and sizes. The compact
+     * format saves most of the per record overhead for small records but needs a broker that can convert it.
+     */
+    public static final String COMPRESSION_TYPE_CONFIG = "compression.type";
+
+    /**
+     * Stamp each record with the time it was sent, so that consumers can look up offsets by time. Brokers that predate
+     * timestamped records can't read them, so this is off by default.
+     */
+    public static final String RECORD_TIMESTAMPS_CONFIG = "record.timestamps";
+
+    /**
+     * A list of classes to use as metrics reporters, in addition to JMX. Each must implement
+     * {@link org.apache.kafka.common.metrics.MetricsReporter} and have a public no-argument constructor; those that
+     * implement {@link org.apache.kafka.common.Configurable} are configured with this configuration, so they can read
+     * their own settings from it.
+     */
+    public static final String METRIC_REPORTER_CLASSES_CONFIG = "metric.reporters";
+
+    /**
+     * How often to take a snapshot of all the metrics and hand it to the snapshot reporters, such as
+     * {@link org.apache.kafka.common.metrics.FileReporter}. Snapshots are taken on a background thread. The default of
+     * 0 takes no snapshots, so snapshot reporters never report.
+     */
+    public static final String METRICS_SNAPSHOT_INTERVAL_MS_CONFIG = "metrics.snapshot.interval.ms";
+
     static {
         /* TODO: add docs */
         config = new ConfigDef().define(BROKER_LIST_CONFIG, Type.LIST, "blah blah")
                                 .define(METADATA_FETCH_TIMEOUT_CONFIG, Type.LONG, 60 * 1000, atLeast(0), "blah blah")
                                 .define(MAX_PARTITION_SIZE_CONFIG, Type.INT, 16384, atLeast(0), "blah blah")
+                                .define(MIN_PARTITION_SIZE_CONFIG, Type.INT, 1024, atLeast(1), "blah blah")
+                                .define(MAX_POOLED_BUFFER_SIZE_CONFIG, Type.INT, 1024 * 1024, atLeast(0), "blah blah")
                                 .define(TOTAL_BUFFER_MEMORY_CONFIG, Type.LONG, 32 * 1024 * 1024L, atLeast(0L), "blah blah")
                                 /* TODO: should be a string to handle acks=in-sync */
                                 .define(REQUIRED_ACKS_CONFIG, Type.INT, 1, between(-1, Short.MAX_VALUE), "blah blah")
@@ -134,10 +252,26 @@ public class ProducerConfig extends AbstractConfig {
                                 .define(METADATA_REFRESH_MS_CONFIG, Type.LONG, 10 * 60 * 1000, atLeast(-1L), "blah blah")
                                 .define(CLIENT_ID_CONFIG, Type.STRING, "", "blah blah")
                                 .define(SEND_BUFFER_CONFIG, Type.INT, 128 * 1024, atLeast(0), "blah blah")
+                                .define(RECEIVE_BUFFER_CONFIG, Type.INT, 32 * 1024, atLeast(0), "blah blah")
                                 .define(MAX_REQUEST_SIZE_CONFIG, Type.INT, 1 * 1024 * 1024, atLeast(0), "blah blah")
                                 .define(RECONNECT_BACKOFF_MS_CONFIG, Type.LONG, 10L, atLeast(0L), "blah blah")
                                 .define(BLOCK_ON_BUFFER_FULL, Type.BOOLEAN, true, "blah blah")
-                                .define(ENABLE_JMX, Type.BOOLEAN, true, "");
+                                .define(ENABLE_JMX, Type.BOOLEAN, true, "")
+                                .define(QUOTA_CLIENT_BYTES_CONFIG, Type.LONG, Long.MAX_VALUE, atLeast(1L), "blah blah")
+                                .define(QUOTA_CLIENT_RECORDS_CONFIG, Type.LONG, Long.MAX_VALUE, atLeast(1L), "blah blah")
+                                .define(QUOTA_TOPIC_BYTES_CONFIG, Type.LONG, Long.MAX_VALUE, atLeast(1L), "blah blah")
+                                .define(QUOTA_TOPIC_RECORDS_CONFIG, Type.LONG, Long.MAX_VALUE, atLeast(1L), "blah blah")
+                                .define(QUOTA_TOPIC_OVERRIDES_CONFIG, Type.LIST, "", "blah blah")
+                                .define(QUOTA_REJECT_TOPICS_CONFIG, Type.LIST, "", "blah blah")
+                                .define(TOPIC_PRIORITIES_CONFIG, Type.LIST, "", "blah blah")
+                                .define(PRIORITY_STARVATION_MS_CONFIG, Type.LONG, 1000L, atLeast(0L), "blah blah")
+                                .define(PARTITIONER_LOAD_AWARE_CONFIG, Type.BOOLEAN, false, "blah blah")
+                                .define(MAX_PENDING_RECORDS_CONFIG, Type.INT, 10000, atLeast(1), "blah blah")
+                                .define(WARM_UP_TOPICS_CONFIG, Type.LIST, "", "blah blah")
+                                .define(COMPRESSION_TYPE_CONFIG, Type.STRING, "none", "blah blah")
+                                .define(RECORD_TIMESTAMPS_CONFIG, Type.BOOLEAN, false, "blah blah")
+                                .define(METRIC_REPORTER_CLASSES_CONFIG, Type.LIST, "", "blah blah")
+                                .define(METRICS_SNAPSHOT_INTERVAL_MS_CONFIG, Type.LONG, 0L, atLeast(0L), "blah blah");
     }
 
     ProducerConfig(Map<? extends Object, ? extends Object> props) {
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kafka.common.TopicPartition;
+
+
+/**
+ * Chooses the size of the next batch to allocate for each partition based on how much data recently arrived for it.
+ * <p>
+ * Batch sizes are restricted to a small set of size classes: the maximum batch size and its successive halves down to
+ * the minimum batch size. Each time a batch is drained we observe how many bytes it accumulated. A batch that was
+ * followed by another batch for the same partition overflowed, so we double the estimate for that partition; otherwise
+ * the estimate moves halfway towards the number of bytes the batch actually held. The next batch is allocated at the
+ * smallest size class that covers the estimate. Busy partitions therefore quickly grow to the maximum batch size while
+ * quiet partitions tie up only a small buffer while they linger.
+ * <p>
+ * New partitions start at the minimum size.
+ */
+public final class BatchSizeEstimator {
+
+    private final int[] sizes;
+    private final ConcurrentMap<TopicPartition, Estimate> estimates;
+
+    /**
+     * Create a new estimator
+     *
+     * @param minBatchSize The smallest batch size to allocate
+     * @param maxBatchSize The largest batch size to allocate
+     */
+    public BatchSizeEstimator(int minBatchSize, int maxBatchSize) {
+        if (minBatchSize <= 0 || minBatchSize > maxBatchSize)
+            throw new IllegalArgumentException("Invalid batch size range [" + minBatchSize + "..." + maxBatchSize + "].");
+        int classes = 1;
+        for (int size = maxBatchSize / 2; size >= minBatchSize; size /= 2)
+            classes++;
+        this.sizes = new int[classes];
+        for (int i = classes - 1, size = maxBatchSize; i >= 0; i--, size /= 2)
+            this.sizes[i] = size;
+        this.estimates = new ConcurrentHashMap<TopicPartition, Estimate>();
+    }
+
+    /**
+     * The batch size classes this estimator chooses from, in ascending order
+     */
+    public int[] sizeClasses() {
+        return this.sizes.clone();
+    }
+
+    /**
+     * The size to use when allocating the next batch for the given partition
+     */
+    public int batchSize(TopicPartition tp) {
+        Estimate estimate = this.estimates.get(tp);
+        if (estimate == null)
+            return this.sizes[0];
+        int bytes = estimate.bytes;
+        for (int i = 0; i < this.sizes.length; i++)
+            if (this.sizes[i] >= bytes)
+                return this.sizes[i];
+        return this.sizes[this.sizes.length - 1];
+    }
+
+    /**
+     * Record the fill of a batch that is being drained from the accumulator
+     *
+     * @param tp The partition the batch belongs to
+     * @param bytes The number of bytes accumulated in the batch
+     * @param capacity The capacity of the batch
+     * @param overflowed True if another batch for the same partition was created behind this one
+     */
+    public void record(TopicPartition tp, int bytes, int capacity, boolean overflowed) {
+        Estimate estimate = this.estimates.get(tp);
+        if (estimate == null) {
+            this.estimates.putIfAbsent(tp, new Estimate(this.sizes[0]));
+            estimate = this.estimates.get(tp);
+        }
+        int max = this.sizes[this.sizes.length - 1];
+        // only the sender thread updates the estimate so a plain read-modify-write is safe
+        if (overflowed)
+            estimate.bytes = (int) Math.min((long) 2 * Math.max(capacity, estimate.bytes), max);
+        else
+            estimate.bytes = Math.min((estimate.bytes + bytes) / 2, max);
+    }
+
+    private static final class Estimate {
+        private volatile int bytes;
+
+        public Estimate(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+}
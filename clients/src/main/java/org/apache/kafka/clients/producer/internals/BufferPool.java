@@ -18,18 +18,35 @@ package org.apache.kafka.clients.producer.internals;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Count;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.utils.SystemTime;
+import org.apache.kafka.common.utils.Time;
 
 
 /**
  * A pool of ByteBuffers kept under a given memory limit. This class is fairly specific to the needs of the producer. In
  * particular it has the following properties:
  * <ol>
- * <li>There is a special "poolable size" and buffers of this size are kept in a free list and recycled
+ * <li>Buffers are allocated in size classes, by default the minimum poolable size and each power of two multiple of it up
+ * to the maximum poolable size. A request is rounded up to the smallest class that can hold it and the buffer is returned
+ * with its limit set to the requested size. Each class has its own free list and buffers are recycled through it.
+ * Requests larger than the largest class are allocated at exactly the requested size and are not recycled.
  * <li>It is fair. That is all memory is given to the longest waiting thread until it has sufficient memory. This
  * prevents starvation or deadlock when a thread asks for a large chunk of memory and needs to block until multiple
  * buffers are deallocated.
@@ -38,15 +55,19 @@ import org.apache.kafka.clients.producer.BufferExhaustedException;
 public final class BufferPool {
 
     private final long totalMemory;
-    private final int poolableSize;
+    private final int[] poolableSizes;
     private final boolean blockOnExhaustion;
     private final ReentrantLock lock;
-    private final Deque<ByteBuffer> free;
+    private final List<Deque<ByteBuffer>> free;
     private final Deque<Condition> waiters;
+    private final Sensor[] allocations;
+    private final Sensor waitTime;
+    private final Time time;
     private long availableMemory;
+    private long pooledMemory;
 
     /**
-     * Create a new buffer pool
+     * Create a new buffer pool with a single poolable size
      * 
      * @param memory The maximum amount of memory that this buffer pool can allocate
      * @param poolableSize The buffer size to cache in the free list rather than deallocating
@@ -55,17 +76,106 @@ public final class BufferPool {
      *        {@link #allocate(int)} will throw an exception if the buffer is out of memory.
      */
     public BufferPool(long memory, int poolableSize, boolean blockOnExhaustion) {
-        this.poolableSize = poolableSize;
+        this(memory, poolableSize, poolableSize, blockOnExhaustion, new Metrics(), new SystemTime());
+    }
+
+    /**
+     * Create a new buffer pool
+     * 
+     * @param memory The maximum amount of memory that this buffer pool can allocate
+     * @param minPoolableSize The smallest buffer size to cache in a free list rather than deallocating
+     * @param maxPoolableSize The largest buffer size to cache in a free list rather than deallocating. The size classes
+     *        are minPoolableSize and every power of two multiple of it that is no larger than this.
+     * @param blockOnExhaustion This controls the behavior when the buffer pool is out of memory. If true the
+     *        {@link #allocate(int)} call will block and wait for memory to be returned to the pool. If false
+     *        {@link #allocate(int)} will throw an exception if the buffer is out of memory.
+     * @param metrics The metrics registry to record per size class statistics with
+     * @param time The time instance used to measure how long allocations block
+     */
+    public BufferPool(long memory, int minPoolableSize, int maxPoolableSize, boolean blockOnExhaustion, Metrics metrics, Time time) {
+        this(memory, doublings(minPoolableSize, maxPoolableSize), blockOnExhaustion, metrics, time);
+    }
+
+    /**
+     * Create a new buffer pool with the given size classes
+     * 
+     * @param memory The maximum amount of memory that this buffer pool can allocate
+     * @param poolableSizes The buffer sizes to cache in free lists rather than deallocating, in ascending order
+     * @param blockOnExhaustion This controls the behavior when the buffer pool is out of memory. If true the
+     *        {@link #allocate(int)} call will block and wait for memory to be returned to the pool. If false
+     *        {@link #allocate(int)} will throw an exception if the buffer is out of memory.
+     * @param metrics The metrics registry to record per size class statistics with
+     * @param time The time instance used to measure how long allocations block
+     */
+    public BufferPool(long memory, int[] poolableSizes, boolean blockOnExhaustion, Metrics metrics, Time time) {
+        if (poolableSizes.length == 0 || poolableSizes[0] <= 0)
+            throw new IllegalArgumentException("Invalid poolable sizes " + Arrays.toString(poolableSizes) + ".");
+        for (int i = 1; i < poolableSizes.length; i++)
+            if (poolableSizes[i] <= poolableSizes[i - 1])
+                throw new IllegalArgumentException("Poolable sizes " + Arrays.toString(poolableSizes) + " are not in ascending order.");
+        int classes = poolableSizes.length;
+        this.poolableSizes = poolableSizes.clone();
+        this.free = new ArrayList<Deque<ByteBuffer>>(classes);
+        this.allocations = new Sensor[classes];
+        for (int i = 0; i < classes; i++)
+            this.free.add(new ArrayDeque<ByteBuffer>());
         this.blockOnExhaustion = blockOnExhaustion;
         this.lock = new ReentrantLock();
-        this.free = new ArrayDeque<ByteBuffer>();
         this.waiters = new ArrayDeque<Condition>();
         this.totalMemory = memory;
         this.availableMemory = memory;
+        this.pooledMemory = 0L;
+        this.time = time;
+        // allocations block in user threads so the wait time is recorded without taking the sensor lock
+        this.waitTime = metrics.sensor("buffer_pool_wait_time", new MetricConfig().stripes(Runtime.getRuntime().availableProcessors()));
+        registerMetrics(metrics);
+    }
+
+    /**
+     * The given minimum size and each power of two multiple of it up to the maximum size
+     */
+    private static int[] doublings(int minSize, int maxSize) {
+        if (minSize <= 0 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid poolable size range [" + minSize + "..." + maxSize + "].");
+        int classes = 1;
+        for (long size = 2L * minSize; size <= maxSize; size *= 2)
+            classes++;
+        int[] sizes = new int[classes];
+        for (int i = 0; i < classes; i++)
+            sizes[i] = minSize << i;
+        return sizes;
+    }
+
+    private void registerMetrics(Metrics metrics) {
+        this.waitTime.add("buffer_pool_wait_time_avg",
+                          "The average time in ms an allocation blocked waiting for memory",
+                          new Avg());
+        this.waitTime.add("buffer_pool_wait_time_max",
+                          "The longest time in ms an allocation blocked waiting for memory",
+                          new Max());
+        for (int i = 0; i < this.poolableSizes.length; i++) {
+            final int sizeClass = i;
+            String prefix = "buffer_pool_" + this.poolableSizes[i];
+            this.allocations[i] = metrics.sensor(prefix + "_allocations");
+            this.allocations[i].add(prefix + "_allocation_rate",
+                                    "The number of buffers of this size class allocated per second",
+                                    new Rate(TimeUnit.SECONDS, new Count()));
+            this.allocations[i].add(prefix + "_recycle_ratio",
+                                    "The fraction of allocations of this size class served from its free list",
+                                    new Avg());
+            metrics.addMetric(prefix + "_free_bytes",
+                              "The memory held in the free list of this size class",
+                              new Measurable() {
+                                  public double measure(MetricConfig config, long now) {
+                                      return pooledMemory(sizeClass);
+                                  }
+                              });
+        }
     }
 
     /**
-     * Allocate a buffer of the given size
+     * Allocate a buffer of the given size. The buffer's limit will be the requested size but its capacity may be larger
+     * if the size was rounded up to a size class.
      * 
      * @param size The buffer size to allocate in bytes
      * @return The buffer
@@ -81,47 +191,57 @@ public final class BufferPool {
                                                + this.totalMemory
                                                + " on memory allocations.");
 
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        boolean recycled = false;
+        boolean blocked = false;
+        long waitStart = 0L;
         this.lock.lock();
         try {
             // check if we have a free buffer of the right size pooled
-            if (size == poolableSize && !this.free.isEmpty())
-                return this.free.pollFirst();
+            if (sizeClass >= 0 && !this.free.get(sizeClass).isEmpty()) {
+                buffer = pollFree(sizeClass);
+                recycled = true;
+                return sized(buffer, size);
+            }
 
             // now check if the request is immediately satisfiable with the
             // memory on hand or if we need to block
-            int freeListSize = this.free.size() * this.poolableSize;
-            if (this.availableMemory + freeListSize >= size) {
+            int allocationSize = sizeClass >= 0 ? this.poolableSizes[sizeClass] : size;
+            if (this.availableMemory + this.pooledMemory >= allocationSize) {
                 // we have enough unallocated or pooled memory to immediately
                 // satisfy the request
-                freeUp(size);
-                this.availableMemory -= size;
+                freeUp(allocationSize);
+                this.availableMemory -= allocationSize;
                 lock.unlock();
-                return ByteBuffer.allocate(size);
+                return sized(ByteBuffer.allocate(allocationSize), size);
             } else if (!blockOnExhaustion) {
                 throw new BufferExhaustedException("You have exhausted the " + this.totalMemory
                                                    + " bytes of memory you configured for the client and the client is configured to error"
                                                    + " rather than block when memory is exhausted.");
             } else {
                 // we are out of memory and will have to block
+                blocked = true;
+                waitStart = time.nanoseconds();
                 int accumulated = 0;
-                ByteBuffer buffer = null;
                 Condition moreMemory = this.lock.newCondition();
                 this.waiters.addLast(moreMemory);
                 // loop over and over until we have a buffer or have reserved
                 // enough memory to allocate one
-                while (accumulated < size) {
+                while (accumulated < allocationSize) {
                     moreMemory.await();
                     // check if we can satisfy this request from the free list,
                     // otherwise allocate memory
-                    if (accumulated == 0 && size == this.poolableSize && !this.free.isEmpty()) {
+                    if (accumulated == 0 && sizeClass >= 0 && !this.free.get(sizeClass).isEmpty()) {
                         // just grab a buffer from the free list
-                        buffer = this.free.pollFirst();
-                        accumulated = size;
+                        buffer = pollFree(sizeClass);
+                        recycled = true;
+                        accumulated = allocationSize;
                     } else {
                         // we'll need to allocate memory, but we may only get
                         // part of what we need on this iteration
-                        freeUp(size - accumulated);
-                        int got = (int) Math.min(size - accumulated, this.availableMemory);
+                        freeUp(allocationSize - accumulated);
+                        int got = (int) Math.min(allocationSize - accumulated, this.availableMemory);
                         this.availableMemory -= got;
                         accumulated += got;
                     }
@@ -135,7 +255,7 @@ public final class BufferPool {
 
                 // signal any additional waiters if there is more memory left
                 // over for them
-                if (this.availableMemory > 0 || !this.free.isEmpty()) {
+                if (this.availableMemory > 0 || this.pooledMemory > 0) {
                     if (!this.waiters.isEmpty())
                         this.waiters.peekFirst().signal();
                 }
@@ -143,28 +263,108 @@ public final class BufferPool {
                 // unlock and return the buffer
                 lock.unlock();
                 if (buffer == null)
-                    return ByteBuffer.allocate(size);
+                    return sized(ByteBuffer.allocate(allocationSize), size);
                 else
-                    return buffer;
+                    return sized(buffer, size);
             }
         } finally {
             if (lock.isHeldByCurrentThread())
                 lock.unlock();
+            if (sizeClass >= 0)
+                this.allocations[sizeClass].record(recycled ? 1.0 : 0.0);
+            if (blocked)
+                this.waitTime.record((time.nanoseconds() - waitStart) / (1000.0 * 1000.0));
         }
     }
 
+    /**
+     * Allocate a buffer of the given size only if that can be done without blocking. Unlike {@link #allocate(int)} this
+     * never jumps ahead of threads already blocked waiting for memory, and it returns null rather than throwing when the
+     * pool is out of memory, regardless of whether the pool blocks on exhaustion.
+     * 
+     * @param size The buffer size to allocate in bytes
+     * @return The buffer, or null if the memory isn't immediately available
+     * @throws IllegalArgument if size is larger than the total memory controlled by the pool
+     */
+    public ByteBuffer tryAllocate(int size) {
+        if (size > this.totalMemory)
+            throw new IllegalArgumentException("Attempt to allocate " + size
+                                               + " bytes, but there is a hard limit of "
+                                               + this.totalMemory
+                                               + " on memory allocations.");
+
+        int sizeClass = sizeClass(size);
+        int allocationSize = sizeClass >= 0 ? this.poolableSizes[sizeClass] : size;
+        ByteBuffer buffer = null;
+        boolean allocated = false;
+        this.lock.lock();
+        try {
+            if (!this.waiters.isEmpty())
+                return null;
+            if (sizeClass >= 0 && !this.free.get(sizeClass).isEmpty()) {
+                buffer = pollFree(sizeClass);
+            } else if (this.availableMemory + this.pooledMemory >= allocationSize) {
+                freeUp(allocationSize);
+                this.availableMemory -= allocationSize;
+            } else {
+                return null;
+            }
+            allocated = true;
+        } finally {
+            lock.unlock();
+            if (allocated && sizeClass >= 0)
+                this.allocations[sizeClass].record(buffer != null ? 1.0 : 0.0);
+        }
+        return sized(buffer != null ? buffer : ByteBuffer.allocate(allocationSize), size);
+    }
+
+    /**
+     * Limit the buffer to the requested size
+     */
+    private ByteBuffer sized(ByteBuffer buffer, int size) {
+        buffer.limit(size);
+        return buffer;
+    }
+
     /**
      * Attempt to ensure we have at least the requested number of bytes of memory for allocation by deallocating pooled
-     * buffers (if needed)
+     * buffers (if needed). The largest buffers are released first so as few buffers as possible are discarded.
      */
     private void freeUp(int size) {
-        while (!this.free.isEmpty() && this.availableMemory < size)
-            this.availableMemory += this.free.pollLast().capacity();
+        for (int i = this.free.size() - 1; i >= 0 && this.availableMemory < size; i--) {
+            Deque<ByteBuffer> deque = this.free.get(i);
+            while (!deque.isEmpty() && this.availableMemory < size) {
+                int capacity = deque.pollLast().capacity();
+                this.pooledMemory -= capacity;
+                this.availableMemory += capacity;
+            }
+        }
+    }
+
+    /**
+     * Take a buffer off the free list for the given size class
+     */
+    private ByteBuffer pollFree(int sizeClass) {
+        ByteBuffer buffer = this.free.get(sizeClass).pollFirst();
+        this.pooledMemory -= buffer.capacity();
+        return buffer;
     }
 
     /**
-     * Return buffers to the pool. If they are of the poolable size add them to the free list, otherwise just mark the
-     * memory as free.
+     * The index of the smallest size class that can hold the given size, or -1 if the size is larger than every size
+     * class (or the size class would be larger than the total memory of the pool)
+     */
+    private int sizeClass(int size) {
+        for (int i = 0; i < this.poolableSizes.length; i++) {
+            if (this.poolableSizes[i] >= size)
+                return this.poolableSizes[i] <= this.totalMemory ? i : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Return buffers to the pool. If their capacity is one of the poolable sizes add them to the free list for that
+     * size, otherwise just mark the memory as free.
      * 
      * @param buffers The buffers to return
      */
@@ -173,9 +373,11 @@ public final class BufferPool {
         try {
             for (int i = 0; i < buffers.length; i++) {
                 int size = buffers[i].capacity();
-                if (size == this.poolableSize) {
+                int sizeClass = sizeClass(size);
+                if (sizeClass >= 0 && this.poolableSizes[sizeClass] == size) {
                     buffers[i].clear();
-                    this.free.add(buffers[i]);
+                    this.free.get(sizeClass).add(buffers[i]);
+                    this.pooledMemory += size;
                 } else {
                     this.availableMemory += size;
                 }
@@ -189,19 +391,19 @@ public final class BufferPool {
     }
 
     /**
-     * the total free memory both unallocated and in the free list
+     * the total free memory both unallocated and in the free lists
      */
     public long availableMemory() {
         lock.lock();
         try {
-            return this.availableMemory + this.free.size() * this.poolableSize;
+            return this.availableMemory + this.pooledMemory;
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * Get the unallocated memory (not in the free list or in use)
+     * Get the unallocated memory (not in the free lists or in use)
      */
     public long unallocatedMemory() {
         lock.lock();
@@ -212,6 +414,18 @@ public final class BufferPool {
         }
     }
 
+    /**
+     * The memory held in the free list for the given size class
+     */
+    private long pooledMemory(int sizeClass) {
+        lock.lock();
+        try {
+            return (long) this.free.get(sizeClass).size() * this.poolableSizes[sizeClass];
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * The number of threads blocked waiting on memory
      */
@@ -225,10 +439,17 @@ public final class BufferPool {
     }
 
     /**
-     * The buffer size that will be retained in the free list after use
+     * The largest buffer size that will be retained in a free list after use
      */
     public int poolableSize() {
-        return this.poolableSize;
+        return this.poolableSizes[this.poolableSizes.length - 1];
+    }
+
+    /**
+     * All the buffer sizes that will be retained in a free list after use, in ascending order
+     */
+    public int[] poolableSizes() {
+        return this.poolableSizes.clone();
     }
 
     /**
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts the record batches that have been created but not yet completed, so that a flush can wait for every batch
+ * that existed when it began.
+ * <p>
+ * Each batch belongs to the generation that was current when it was created, and each flush starts a new generation.
+ * A flush then only has to wait for the counts of the generations up to and including the one it closed to drop to
+ * zero, so batches created while the flush is in progress don't extend it. The cost of a flush is independent of the
+ * number of records or batches outstanding.
+ * <p>
+ * This class is thread safe. Flushing threads wait on a {@link Condition} rather than an object monitor.
+ */
+public final class IncompleteBatches {
+
+    private final SortedMap<Long, Integer> counts;
+    private final Lock lock;
+    private final Condition completed;
+    private long generation;
+    private volatile int flushes;
+
+    public IncompleteBatches() {
+        this.counts = new TreeMap<Long, Integer>();
+        this.lock = new ReentrantLock();
+        this.completed = this.lock.newCondition();
+        this.generation = 0L;
+        this.flushes = 0;
+    }
+
+    /**
+     * Record the creation of a batch
+     *
+     * @return The generation the batch belongs to, which must be passed to {@link #remove(long)} once it completes
+     */
+    public long add() {
+        lock.lock();
+        try {
+            Integer count = this.counts.get(this.generation);
+            this.counts.put(this.generation, count == null ? 1 : count + 1);
+            return this.generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the completion of a batch
+     *
+     * @param generation The generation returned by {@link #add()} when the batch was created
+     */
+    public void remove(long generation) {
+        lock.lock();
+        try {
+            Integer count = this.counts.get(generation);
+            if (count == null)
+                throw new IllegalStateException("No incomplete batches in generation " + generation + ".");
+            if (count == 1) {
+                this.counts.remove(generation);
+                if (this.flushes > 0)
+                    this.completed.signalAll();
+            } else {
+                this.counts.put(generation, count - 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Begin a flush of all the batches created so far. Each call must be followed by a call to
+     * {@link #awaitFlushCompletion(long)}.
+     *
+     * @return The last generation the flush has to wait for
+     */
+    public long beginFlush() {
+        lock.lock();
+        try {
+            this.flushes++;
+            return this.generation++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until every batch created before the corresponding call to {@link #beginFlush()} has completed
+     *
+     * @param generation The generation returned by {@link #beginFlush()}
+     */
+    public void awaitFlushCompletion(long generation) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!this.counts.isEmpty() && this.counts.firstKey() <= generation)
+                this.completed.await();
+        } finally {
+            this.flushes--;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Is any thread waiting on a flush?
+     */
+    public boolean flushInProgress() {
+        return this.flushes > 0;
+    }
+
+}
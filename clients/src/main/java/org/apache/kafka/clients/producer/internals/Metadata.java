@@ -17,11 +17,13 @@
 package org.apache.kafka.clients.producer.internals;
 
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.kafka.common.Cluster;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.errors.TimeoutException;
 
 
@@ -32,13 +34,18 @@ import org.apache.kafka.common.errors.TimeoutException;
  * 
  * Metadata is maintained for only a subset of topics, which can be added to over time. When we request metdata for a
  * topic we don't have any metadata for it will trigger a metadata update.
+ * <p>
+ * Threads waiting for an update block on a {@link Condition} rather than an object monitor, so that a thread parked
+ * here never holds a monitor, and reading the current cluster takes no lock at all.
  */
 public final class Metadata {
 
     private final long refreshBackoffMs;
     private final long metadataExpireMs;
+    private final Lock lock;
+    private final Condition updated;
     private long lastRefresh;
-    private Cluster cluster;
+    private volatile Cluster cluster;
     private boolean forceUpdate;
     private final Set<String> topics;
 
@@ -58,6 +65,8 @@ public final class Metadata {
     public Metadata(long refreshBackoffMs, long metadataExpireMs) {
         this.refreshBackoffMs = refreshBackoffMs;
         this.metadataExpireMs = metadataExpireMs;
+        this.lock = new ReentrantLock();
+        this.updated = this.lock.newCondition();
         this.lastRefresh = 0L;
         this.cluster = Cluster.empty();
         this.forceUpdate = false;
@@ -67,7 +76,7 @@ public final class Metadata {
     /**
      * Get the current cluster info without blocking
      */
-    public synchronized Cluster fetch() {
+    public Cluster fetch() {
         return this.cluster;
     }
 
@@ -77,25 +86,42 @@ public final class Metadata {
      * @param topic The topic we want metadata for
      * @param maxWaitMs The maximum amount of time to block waiting for metadata
      */
-    public synchronized Cluster fetch(String topic, long maxWaitMs) {
-        List<PartitionInfo> partitions = null;
-        do {
-            partitions = cluster.partitionsFor(topic);
-            if (partitions == null) {
-                long begin = System.currentTimeMillis();
+    public Cluster fetch(String topic, long maxWaitMs) {
+        Cluster cluster = this.cluster;
+        if (cluster.partitionsFor(topic) != null)
+            return cluster;
+        long remainingNs = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        lock.lock();
+        try {
+            while (true) {
+                cluster = this.cluster;
+                if (cluster.partitionsFor(topic) != null)
+                    return cluster;
                 topics.add(topic);
                 forceUpdate = true;
+                if (remainingNs <= 0)
+                    throw new TimeoutException("Failed to update metadata after " + maxWaitMs + " ms.");
                 try {
-                    wait(maxWaitMs);
+                    remainingNs = updated.awaitNanos(remainingNs);
                 } catch (InterruptedException e) { /* this is fine, just try again */
                 }
-                long ellapsed = System.currentTimeMillis() - begin;
-                if (ellapsed > maxWaitMs)
-                    throw new TimeoutException("Failed to update metadata after " + maxWaitMs + " ms.");
-            } else {
-                return cluster;
             }
-        } while (true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start maintaining metadata for the given topic without blocking. If the topic is new this will trigger an update.
+     */
+    public void add(String topic) {
+        lock.lock();
+        try {
+            if (this.topics.add(topic))
+                this.forceUpdate = true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -103,35 +129,55 @@ public final class Metadata {
      * since our last update and either (1) an update has been requested or (2) the current metadata has expired (more
      * than metadataExpireMs has passed since the last refresh)
      */
-    public synchronized boolean needsUpdate(long now) {
-        long msSinceLastUpdate = now - this.lastRefresh;
-        boolean updateAllowed = msSinceLastUpdate >= this.refreshBackoffMs;
-        boolean updateNeeded = this.forceUpdate || msSinceLastUpdate >= this.metadataExpireMs;
-        return updateAllowed && updateNeeded;
+    public boolean needsUpdate(long now) {
+        lock.lock();
+        try {
+            long msSinceLastUpdate = now - this.lastRefresh;
+            boolean updateAllowed = msSinceLastUpdate >= this.refreshBackoffMs;
+            boolean updateNeeded = this.forceUpdate || msSinceLastUpdate >= this.metadataExpireMs;
+            return updateAllowed && updateNeeded;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Force an update of the current cluster info
      */
-    public synchronized void forceUpdate() {
-        this.forceUpdate = true;
+    public void forceUpdate() {
+        lock.lock();
+        try {
+            this.forceUpdate = true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Get the list of topics we are currently maintaining metadata for
      */
-    public synchronized Set<String> topics() {
-        return new HashSet<String>(this.topics);
+    public Set<String> topics() {
+        lock.lock();
+        try {
+            return new HashSet<String>(this.topics);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Update the cluster metadata
      */
-    public synchronized void update(Cluster cluster, long now) {
-        this.forceUpdate = false;
-        this.lastRefresh = now;
-        this.cluster = cluster;
-        notifyAll();
+    public void update(Cluster cluster, long now) {
+        lock.lock();
+        try {
+            this.forceUpdate = false;
+            this.lastRefresh = now;
+            this.cluster = cluster;
+            this.updated.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
 }
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Tracks which nodes are overloaded, based on the bytes each node has queued in the accumulator plus the bytes of its
+ * produce requests that are still in flight.
+ * <p>
+ * A node becomes overloaded once its load exceeds {@link #HIGH_WATERMARK} times the mean load over all nodes and stays
+ * overloaded until its load falls to {@link #LOW_WATERMARK} times the mean. The gap between the two keeps traffic from
+ * flapping between nodes whose load is close to the threshold. Loads below a minimum number of bytes never count as
+ * overloaded, so a quiet cluster isn't rebalanced on noise.
+ * <p>
+ * The loads are updated by the sender thread, at most every 100 ms, and read by any thread that partitions records.
+ */
+public final class NodeLoad {
+
+    public static final double HIGH_WATERMARK = 2.0;
+    public static final double LOW_WATERMARK = 1.5;
+
+    private final long minBytes;
+    private volatile Set<Integer> overloaded;
+
+    /**
+     * @param minBytes The smallest load that can make a node overloaded
+     */
+    public NodeLoad(long minBytes) {
+        this.minBytes = minBytes;
+        this.overloaded = Collections.emptySet();
+    }
+
+    /**
+     * Update the loads. This must only be called by a single thread.
+     *
+     * @param bytes The bytes queued and in flight for every node in the cluster, including idle nodes
+     */
+    public void update(Map<Integer, Long> bytes) {
+        if (bytes.isEmpty())
+            return;
+        long total = 0L;
+        for (long b : bytes.values())
+            total += b;
+        double mean = total / (double) bytes.size();
+        Set<Integer> previous = this.overloaded;
+        Set<Integer> overloaded = null;
+        for (Map.Entry<Integer, Long> entry : bytes.entrySet()) {
+            long load = entry.getValue();
+            double threshold = previous.contains(entry.getKey()) ? LOW_WATERMARK * mean : HIGH_WATERMARK * mean;
+            if (load >= this.minBytes && load > threshold) {
+                if (overloaded == null)
+                    overloaded = new HashSet<Integer>();
+                overloaded.add(entry.getKey());
+            }
+        }
+        if (overloaded == null)
+            this.overloaded = Collections.emptySet();
+        else if (!overloaded.equals(previous))
+            this.overloaded = Collections.unmodifiableSet(overloaded);
+    }
+
+    /**
+     * Is any node currently overloaded?
+     */
+    public boolean anyOverloaded() {
+        return !this.overloaded.isEmpty();
+    }
+
+    /**
+     * Is the given node currently overloaded?
+     */
+    public boolean overloaded(int node) {
+        return this.overloaded.contains(node);
+    }
+
+}
@@ -22,6 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.utils.Utils;
 
@@ -31,11 +32,29 @@ import org.apache.kafka.common.utils.Utils;
  * <ul>
  * <li>If a partition is specified in the record, use it
  * <li>If no partition is specified but a key is present choose a partition based on a hash of the key
- * <li>If no partition or key is present choose a partition in a round-robin fashion
+ * <li>If no partition or key is present choose a partition in a round-robin fashion, skipping the partitions led by
+ * overloaded nodes if the partitioner was given their load
  */
 public class Partitioner {
 
     private final AtomicInteger counter = new AtomicInteger(new Random().nextInt());
+    private final NodeLoad load;
+
+    /**
+     * Create a partitioner that ignores the load of the nodes
+     */
+    public Partitioner() {
+        this(null);
+    }
+
+    /**
+     * Create a partitioner that steers records without a key away from overloaded nodes
+     *
+     * @param load The load of the nodes, or null to ignore it
+     */
+    public Partitioner(NodeLoad load) {
+        this.load = load;
+    }
 
     /**
      * Compute the partition for the given record.
@@ -55,6 +74,15 @@ public class Partitioner {
                                                    + "].");
             return record.partition();
         } else if (record.key() == null) {
+            if (this.load != null && this.load.anyOverloaded()) {
+                // choose the next available node that isn't overloaded
+                for (int i = 0; i < numPartitions; i++) {
+                    int partition = Utils.abs(counter.getAndIncrement()) % numPartitions;
+                    Node leader = partitions.get(partition).leader();
+                    if (leader != null && !this.load.overloaded(leader.id()))
+                        return partition;
+                }
+            }
             // choose the next available node in a round-robin fashion
             for (int i = 0; i < numPartitions; i++) {
                 int partition = Utils.abs(counter.getAndIncrement()) % numPartitions;
@@ -0,0 +1,314 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.Records;
+import org.apache.kafka.common.utils.Time;
+
+
+/**
+ * Sends records without ever blocking the calling thread.
+ * <p>
+ * A record is appended to the accumulator right away if there is room for it. If buffer memory is exhausted or there is
+ * no metadata for its topic yet it joins a bounded queue instead, and the sender thread appends the queued records in
+ * the order they were sent after each poll, as completed requests return memory to the pool and metadata arrives. Once
+ * the queue is full further sends fail right away with a {@link BufferExhaustedException}. A record that waits longer
+ * than the metadata fetch timeout for the metadata of its topic fails with a {@link TimeoutException}, and a record that
+ * violates a produce quota fails with a {@link org.apache.kafka.common.metrics.QuotaViolationException} rather than
+ * waiting.
+ * <p>
+ * Sends never wait on the sender thread: the queue is lock free and its size is kept in a separate counter, which a
+ * send reserves its place with before joining the queue. A record is only charged against the produce quotas once it
+ * has a place, so records rejected because the queue is full don't count towards them.
+ * <p>
+ * This class is thread safe, but only one thread may call {@link #admit(long)}.
+ */
+public final class PendingSends {
+
+    private final int capacity;
+    private final long maxMetadataWaitMs;
+    private final Metadata metadata;
+    private final Partitioner partitioner;
+    private final RecordAccumulator accumulator;
+    private final CompressionType compression;
+    private final boolean timestamps;
+    private final Queue<PendingSend> queue;
+    private final AtomicInteger size;
+    private final AtomicLong queued;
+    private volatile long admitted;
+    private final Time time;
+    private volatile boolean closed;
+
+    /**
+     * Create a new instance
+     * 
+     * @param capacity The maximum number of records waiting to be appended
+     * @param maxMetadataWaitMs The longest time a record can wait for the metadata of its topic
+     * @param metadata The producer's metadata
+     * @param partitioner The partitioner to choose the partition of each record with
+     * @param accumulator The accumulator to append records to
+     * @param compression The compression type to append records with
+     * @param timestamps Whether to stamp each record with the time it was sent
+     * @param metrics The metrics
+     * @param time The time instance to use
+     */
+    public PendingSends(int capacity,
+                        long maxMetadataWaitMs,
+                        Metadata metadata,
+                        Partitioner partitioner,
+                        RecordAccumulator accumulator,
+                        CompressionType compression,
+                        boolean timestamps,
+                        Metrics metrics,
+                        Time time) {
+        this.capacity = capacity;
+        this.maxMetadataWaitMs = maxMetadataWaitMs;
+        this.metadata = metadata;
+        this.partitioner = partitioner;
+        this.accumulator = accumulator;
+        this.compression = compression;
+        this.timestamps = timestamps;
+        this.queue = new ConcurrentLinkedQueue<PendingSend>();
+        this.size = new AtomicInteger(0);
+        this.queued = new AtomicLong(0L);
+        this.admitted = 0L;
+        this.time = time;
+        this.closed = false;
+        metrics.addMetric("pending_records",
+                          "The number of records sent without blocking that are waiting for buffer memory or metadata",
+                          new Measurable() {
+                              public double measure(MetricConfig config, long now) {
+                                  return size.get();
+                              }
+                          });
+    }
+
+    /**
+     * Send a record without blocking. Any failure, including the queue being full, is reported through the returned
+     * future and the callback rather than thrown.
+     * 
+     * @param record The record to send
+     * @param callback The user-supplied callback to execute when the request is complete (may be null)
+     * @return A future which will eventually contain the response information
+     */
+    public Future<RecordMetadata> send(ProducerRecord record, Callback callback) {
+        PendingSend send = new PendingSend(record, callback, time.milliseconds());
+        try {
+            if (closed)
+                throw new IllegalStateException("Cannot send after the producer is closed.");
+            this.metadata.add(record.topic());
+            int size = this.size.incrementAndGet();
+            boolean enqueued = false;
+            try {
+                if (size > this.capacity)
+                    throw new BufferExhaustedException("There are already " + this.capacity
+                                                       + " records waiting for buffer memory or metadata.");
+                this.accumulator.tryRecordQuota(record.topic(), Records.LOG_OVERHEAD + Record.recordSize(record.key(), record.value()));
+                // records may only skip the queue while it is empty, so a thread's records are appended in the order sent
+                if (size == 1 && tryAppend(send, send.created))
+                    return send;
+                // counted before it joins the queue, so a flush never misses a record queued before it
+                this.queued.incrementAndGet();
+                this.queue.add(send);
+                enqueued = true;
+            } finally {
+                if (!enqueued)
+                    this.size.decrementAndGet();
+            }
+        } catch (Exception e) {
+            send.onCompletion(null, e);
+        }
+        return send;
+    }
+
+    /**
+     * Append as many of the queued records to the accumulator as memory and metadata allow, in the order they were
+     * sent. This is called by the sender thread after each poll, and must not be called by any other thread.
+     * 
+     * @param now The current time
+     * @return The number of records still queued
+     */
+    public int admit(long now) {
+        long start = this.admitted;
+        long admitted = start;
+        for (PendingSend send = this.queue.peek(); send != null; send = this.queue.peek()) {
+            Exception error = null;
+            try {
+                if (!tryAppend(send, now))
+                    break;
+            } catch (Exception e) {
+                error = e;
+            }
+            this.queue.poll();
+            this.size.decrementAndGet();
+            this.admitted = ++admitted;
+            if (error != null)
+                send.onCompletion(null, error);
+        }
+        if (admitted != start) {
+            // wake any flush waiting for these records
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return this.size.get();
+    }
+
+    /**
+     * The number of records that have joined the queue so far. Passing this to {@link #awaitAdmitted(long)} waits for
+     * every record queued before the call.
+     */
+    public long queued() {
+        return this.queued.get();
+    }
+
+    /**
+     * Block until the given number of queued records have been appended to the accumulator or failed. Records leave
+     * the queue in order, so this includes every record that had joined the queue when {@link #queued()} returned
+     * the given count.
+     * 
+     * @param queued The number of queued records to wait for
+     */
+    public void awaitAdmitted(long queued) throws InterruptedException {
+        synchronized (this) {
+            while (this.admitted < queued)
+                wait();
+        }
+    }
+
+    /**
+     * The number of records waiting to be appended
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Fail any further sends. Records already queued are still appended.
+     */
+    public void close() {
+        this.closed = true;
+    }
+
+    /**
+     * Try to append the record to the accumulator
+     * 
+     * @return True if the record was appended, false if it has to wait for memory or metadata
+     * @throws TimeoutException If the record has waited too long for metadata
+     */
+    private boolean tryAppend(PendingSend send, long now) {
+        ProducerRecord record = send.record;
+        Cluster cluster = this.metadata.fetch();
+        if (cluster.partitionsFor(record.topic()) == null) {
+            if (now - send.created >= this.maxMetadataWaitMs)
+                throw new TimeoutException("Failed to update metadata after " + this.maxMetadataWaitMs + " ms.");
+            return false;
+        }
+        TopicPartition tp = new TopicPartition(record.topic(), this.partitioner.partition(record, cluster));
+        long timestamp = this.timestamps ? send.created : Record.NO_TIMESTAMP;
+        return this.accumulator.tryAppend(tp, timestamp, record.key(), record.value(), this.compression, send) != null;
+    }
+
+    /**
+     * A record sent without blocking. It is the callback of its own append and completes when that does.
+     */
+    private static final class PendingSend implements Future<RecordMetadata>, Callback {
+        private final ProducerRecord record;
+        private final Callback callback;
+        private final long created;
+        private final CountDownLatch latch;
+        private volatile RecordMetadata metadata;
+        private volatile Exception exception;
+
+        public PendingSend(ProducerRecord record, Callback callback, long created) {
+            this.record = record;
+            this.callback = callback;
+            this.created = created;
+            this.latch = new CountDownLatch(1);
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            this.metadata = metadata;
+            this.exception = exception;
+            this.latch.countDown();
+            if (this.callback != null)
+                this.callback.onCompletion(metadata, exception);
+        }
+
+        @Override
+        public boolean cancel(boolean interrupt) {
+            return false;
+        }
+
+        @Override
+        public RecordMetadata get() throws InterruptedException, ExecutionException {
+            this.latch.await();
+            return valueOrError();
+        }
+
+        @Override
+        public RecordMetadata get(long timeout, TimeUnit unit) throws InterruptedException,
+                                                                    ExecutionException,
+                                                                    java.util.concurrent.TimeoutException {
+            if (!this.latch.await(timeout, unit))
+                throw new java.util.concurrent.TimeoutException("Timeout after waiting for "
+                                                                + TimeUnit.MILLISECONDS.convert(timeout, unit)
+                                                                + " ms.");
+            return valueOrError();
+        }
+
+        private RecordMetadata valueOrError() throws ExecutionException {
+            if (this.exception != null)
+                throw new ExecutionException(this.exception);
+            else
+                return this.metadata;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.latch.getCount() == 0;
+        }
+    }
+
+}
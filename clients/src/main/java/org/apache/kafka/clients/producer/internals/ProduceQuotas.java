@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer.internals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Quota;
+import org.apache.kafka.common.metrics.QuotaViolationException;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Count;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.metrics.stats.Rate.SampledTotal;
+import org.apache.kafka.common.metrics.stats.SampledStat;
+import org.apache.kafka.common.utils.Time;
+
+
+/**
+ * Enforces upper bounds on the rate at which records are appended by this producer, both for the producer as a whole and
+ * for each topic.
+ * <p>
+ * Each bound is a {@link Quota} on a {@link Rate} metric of a {@link Sensor}. When recording a record causes a quota
+ * violation we compute how long the appending thread would have to wait for the rate to fall back to the bound. For
+ * most topics the thread simply sleeps for that long. For topics configured to reject, each quota is checked before
+ * the record is counted and an append that would violate one fails with a {@link QuotaViolationException} instead, so
+ * rejected records don't count against the rate of later ones. Rates are measured over one second samples and up to one second's worth of
+ * each quota may be appended in a burst without waiting.
+ * <p>
+ * This class is thread safe.
+ */
+public final class ProduceQuotas {
+
+    private final Metrics metrics;
+    private final Time time;
+    private final boolean enabled;
+    private final Throttle clientBytes;
+    private final Throttle clientRecords;
+    private final long topicBytesPerSec;
+    private final long topicRecordsPerSec;
+    private final Map<String, Long> topicBytesOverrides;
+    private final Set<String> rejectTopics;
+    private final ConcurrentMap<String, Throttle[]> topics;
+
+    /**
+     * Create an instance that enforces no quotas
+     */
+    public ProduceQuotas(Metrics metrics, Time time) {
+        this(Long.MAX_VALUE,
+             Long.MAX_VALUE,
+             Long.MAX_VALUE,
+             Long.MAX_VALUE,
+             Collections.<String, Long>emptyMap(),
+             Collections.<String>emptySet(),
+             metrics,
+             time);
+    }
+
+    /**
+     * Create a new instance. A bound of Long.MAX_VALUE means unlimited.
+     *
+     * @param clientBytesPerSec The maximum bytes per second appended across all topics
+     * @param clientRecordsPerSec The maximum records per second appended across all topics
+     * @param topicBytesPerSec The maximum bytes per second appended to any single topic
+     * @param topicRecordsPerSec The maximum records per second appended to any single topic
+     * @param topicBytesOverrides Topics with their own maximum bytes per second in place of topicBytesPerSec
+     * @param rejectTopics Topics for which an append that violates a quota fails rather than waits
+     * @param metrics The metrics registry in which to register the rate sensors
+     * @param time The time instance used to wait out quota violations
+     */
+    public ProduceQuotas(long clientBytesPerSec,
+                         long clientRecordsPerSec,
+                         long topicBytesPerSec,
+                         long topicRecordsPerSec,
+                         Map<String, Long> topicBytesOverrides,
+                         Set<String> rejectTopics,
+                         Metrics metrics,
+                         Time time) {
+        this.metrics = metrics;
+        this.time = time;
+        this.topicBytesPerSec = topicBytesPerSec;
+        this.topicRecordsPerSec = topicRecordsPerSec;
+        this.topicBytesOverrides = new ConcurrentHashMap<String, Long>(topicBytesOverrides);
+        this.rejectTopics = new HashSet<String>(rejectTopics);
+        this.topics = new ConcurrentHashMap<String, Throttle[]>();
+        this.clientBytes = throttle("produce_byte_rate", "The bytes per second appended by this producer", clientBytesPerSec, new SampledTotal());
+        this.clientRecords = throttle("produce_record_rate", "The records per second appended by this producer", clientRecordsPerSec, new Count());
+        this.enabled = this.clientBytes != null || this.clientRecords != null || topicBytesPerSec != Long.MAX_VALUE
+                       || topicRecordsPerSec != Long.MAX_VALUE || !topicBytesOverrides.isEmpty();
+    }
+
+    /**
+     * Record the append of a record to the given topic, waiting out or rejecting any quota violation this causes
+     *
+     * @param topic The topic the record is appended to
+     * @param bytes The serialized size of the record
+     * @throws QuotaViolationException If a quota is violated and the topic is configured to reject in that case
+     */
+    public void record(String topic, int bytes) {
+        if (this.rejectTopics.contains(topic)) {
+            tryRecord(topic, bytes);
+        } else {
+            long delayMs = recordAndDelay(topic, bytes);
+            if (delayMs > 0)
+                time.sleep(delayMs);
+        }
+    }
+
+    /**
+     * Record the append of a record to the given topic, rejecting any quota violation this causes whatever the topic is
+     * configured to do. This never blocks.
+     *
+     * @param topic The topic the record is appended to
+     * @param bytes The serialized size of the record
+     * @throws QuotaViolationException If a quota is violated
+     */
+    public void tryRecord(String topic, int bytes) {
+        if (!enabled)
+            return;
+        Throttle[] topicThrottles = throttlesFor(topic);
+        long now = time.nanoseconds();
+        if (exceeds(this.clientBytes, bytes, now) || exceeds(this.clientRecords, 1, now)
+            || exceeds(topicThrottles[0], bytes, now) || exceeds(topicThrottles[1], 1, now))
+            throw violation(topic);
+        // the record was accepted, so a violation caused by a concurrent append doesn't reject it after the fact
+        recordAndDelay(topic, bytes);
+    }
+
+    private boolean exceeds(Throttle throttle, double value, long now) {
+        return throttle != null && throttle.exceeds(value, now);
+    }
+
+    /**
+     * Record the append and return how many milliseconds to wait to stay under every quota
+     */
+    private long recordAndDelay(String topic, int bytes) {
+        if (!enabled)
+            return 0L;
+        Throttle[] topicThrottles = throttlesFor(topic);
+        long now = time.nanoseconds();
+        long delayNs = 0;
+        delayNs = Math.max(delayNs, record(this.clientBytes, bytes, now));
+        delayNs = Math.max(delayNs, record(this.clientRecords, 1, now));
+        delayNs = Math.max(delayNs, record(topicThrottles[0], bytes, now));
+        delayNs = Math.max(delayNs, record(topicThrottles[1], 1, now));
+        return TimeUnit.MILLISECONDS.convert(delayNs, TimeUnit.NANOSECONDS);
+    }
+
+    private QuotaViolationException violation(String topic) {
+        return new QuotaViolationException("Producing to topic " + topic + " would exceed the configured produce quota.");
+    }
+
+    /**
+     * Record the value and return how many nanoseconds to wait to stay under the quota
+     */
+    private long record(Throttle throttle, double value, long now) {
+        if (throttle == null)
+            return 0L;
+        try {
+            throttle.sensor.record(value);
+            return 0L;
+        } catch (QuotaViolationException e) {
+            return throttle.delayNs(now);
+        }
+    }
+
+    private Throttle[] throttlesFor(String topic) {
+        Throttle[] throttles = this.topics.get(topic);
+        if (throttles == null) {
+            Long bytesOverride = this.topicBytesOverrides.get(topic);
+            long bytesPerSec = bytesOverride == null ? this.topicBytesPerSec : bytesOverride;
+            throttles = new Throttle[2];
+            synchronized (this) {
+                if (!this.topics.containsKey(topic)) {
+                    throttles[0] = throttle("topic." + topic + ".produce_byte_rate",
+                                            "The bytes per second appended to this topic",
+                                            bytesPerSec,
+                                            new SampledTotal());
+                    throttles[1] = throttle("topic." + topic + ".produce_record_rate",
+                                            "The records per second appended to this topic",
+                                            this.topicRecordsPerSec,
+                                            new Count());
+                    this.topics.put(topic, throttles);
+                }
+            }
+            throttles = this.topics.get(topic);
+        }
+        return throttles;
+    }
+
+    /**
+     * Create a throttle on the rate of the given stat, or return null if the bound is unlimited
+     */
+    private Throttle throttle(String name, String description, long bound, SampledStat stat) {
+        if (bound == Long.MAX_VALUE)
+            return null;
+        MetricConfig config = new MetricConfig().timeWindow(1, TimeUnit.SECONDS).quota(Quota.lessThan(bound));
+        Sensor sensor = this.metrics.sensor(name, config);
+        Rate rate = new Rate(TimeUnit.SECONDS, stat);
+        sensor.add(name, description, rate, config);
+        return new Throttle(sensor, rate, stat, config, bound);
+    }
+
+    /**
+     * A rate sensor with an upper bound
+     */
+    private static final class Throttle {
+        private final Sensor sensor;
+        private final Rate rate;
+        private final SampledStat total;
+        private final MetricConfig config;
+        private final double bound;
+
+        public Throttle(Sensor sensor, Rate rate, SampledStat total, MetricConfig config, double bound) {
+            this.sensor = sensor;
+            this.rate = rate;
+            this.total = total;
+            this.config = config;
+            this.bound = bound;
+        }
+
+        /**
+         * Would recording the given value push the observed rate over the bound? The window is taken to be at least
+         * one sample long as in {@link #delayNs(long)}.
+         */
+        public boolean exceeds(double value, long now) {
+            synchronized (this.sensor) {
+                double total = this.total.measure(this.config, now) + value;
+                long window = Math.max(this.rate.windowSize(this.config, now), this.config.timeWindowNs());
+                return total / window * TimeUnit.SECONDS.toNanos(1) > this.bound;
+            }
+        }
+
+        /**
+         * The time in nanoseconds until the observed rate drops to the bound if nothing more is recorded. The window is
+         * taken to be at least one sample long so a fresh sensor doesn't report an unbounded rate.
+         */
+        public long delayNs(long now) {
+            synchronized (this.sensor) {
+                double total = this.total.measure(this.config, now);
+                long window = Math.max(this.rate.windowSize(this.config, now), this.config.timeWindowNs());
+                return Math.max(0L, (long) (total / this.bound * TimeUnit.SECONDS.toNanos(1)) - window);
+            }
+        }
+    }
+
+}
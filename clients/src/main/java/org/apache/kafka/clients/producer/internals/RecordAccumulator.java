@@ -19,23 +19,34 @@ package org.apache.kafka.clients.producer.internals;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 
 import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.metrics.Measurable;
 import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.QuotaViolationException;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.LogLinearPercentiles;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.Records;
-import org.apache.kafka.common.utils.CopyOnWriteMap;
+import org.apache.kafka.common.utils.PartitionIndex;
 import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Utils;
 
@@ -51,37 +62,115 @@ public final class RecordAccumulator {
 
     private volatile boolean closed;
     private int drainIndex;
-    private final int batchSize;
+    private long[] drainOrder;
+    private final Map<Integer, Integer> drainSizes;
+    private final Set<Integer> drainFull;
     private final long lingerMs;
-    private final ConcurrentMap<TopicPartition, Deque<RecordBatch>> batches;
+    private final PartitionIndex<Deque<RecordBatch>> batches;
+    private final BatchSizeEstimator batchSizes;
     private final BufferPool free;
+    private final IncompleteBatches incomplete;
+    private final ProduceQuotas quotas;
+    private final Map<String, Integer> priorities;
+    private final long starvationMs;
+    private final Sensor enqueueTime;
+    private final Sensor queueTime;
+    private final Sensor batchSize;
+    private final Sensor compressionRatio;
     private final Time time;
 
     /**
      * Create a new record accumulator
      * 
-     * @param batchSize The size to use when allocating {@link org.apache.kafka.common.record.MemoryRecords} instances
+     * @param batchSize The largest size to use when allocating {@link org.apache.kafka.common.record.MemoryRecords}
+     *        instances
+     * @param minBatchSize The smallest size to use when allocating {@link org.apache.kafka.common.record.MemoryRecords}
+     *        instances. Each partition's batches are sized between this and batchSize based on how much data recently
+     *        arrived for it. Setting this equal to batchSize disables the adaptive sizing.
+     * @param maxPooledSize The largest buffer size the accumulator's buffer pool will recycle rather than deallocate.
+     *        Buffers are recycled in the batch size classes and, above batchSize, in power of two multiples of batchSize
+     *        up to this.
      * @param totalSize The maximum memory the record accumulator can use.
      * @param lingerMs An artificial delay time to add before declaring a records instance that isn't full ready for
      *        sending. This allows time for more records to arrive. Setting a non-zero lingerMs will trade off some
      *        latency for potentially better throughput due to more batching (and hence fewer, larger requests).
      * @param blockOnBufferFull If true block when we are out of memory; if false throw an exception when we are out of
      *        memory
+     * @param quotas The produce rate quotas to enforce on appends
+     * @param priorities The drain priority of each topic; a higher value is drained first and unlisted topics have
+     *        priority 0
+     * @param starvationMs The longest time a batch can be held back by the data of higher priority topics
      * @param metrics The metrics
      * @param time The time instance to use
      */
-    public RecordAccumulator(int batchSize, long totalSize, long lingerMs, boolean blockOnBufferFull, Metrics metrics, Time time) {
+    public RecordAccumulator(int batchSize,
+                             int minBatchSize,
+                             int maxPooledSize,
+                             long totalSize,
+                             long lingerMs,
+                             boolean blockOnBufferFull,
+                             ProduceQuotas quotas,
+                             Map<String, Integer> priorities,
+                             long starvationMs,
+                             Metrics metrics,
+                             Time time) {
         this.drainIndex = 0;
+        this.drainOrder = new long[0];
+        this.drainSizes = new HashMap<Integer, Integer>();
+        this.drainFull = new HashSet<Integer>();
         this.closed = false;
-        this.batchSize = batchSize;
         this.lingerMs = lingerMs;
-        this.batches = new CopyOnWriteMap<TopicPartition, Deque<RecordBatch>>();
-        this.free = new BufferPool(totalSize, batchSize, blockOnBufferFull);
+        this.batches = new PartitionIndex<Deque<RecordBatch>>();
+        this.batchSizes = new BatchSizeEstimator(minBatchSize, batchSize);
+        this.free = new BufferPool(totalSize, poolableSizes(this.batchSizes.sizeClasses(), maxPooledSize), blockOnBufferFull, metrics, time);
+        this.incomplete = new IncompleteBatches();
+        this.quotas = quotas;
+        this.priorities = new HashMap<String, Integer>(priorities);
+        this.starvationMs = starvationMs;
         this.time = time;
+        // appends are recorded by every user thread so that sensor records without taking the sensor lock
+        this.enqueueTime = metrics.sensor("record_enqueue_time", new MetricConfig().stripes(Runtime.getRuntime().availableProcessors()));
+        this.queueTime = metrics.sensor("record_queue_time");
+        this.batchSize = metrics.sensor("batch_size");
+        this.compressionRatio = metrics.sensor("compression_ratio");
         registerMetrics(metrics);
     }
 
+    /**
+     * The buffer pool's size classes: the batch size classes, so every batch fits its buffer exactly, followed by
+     * doublings of the largest batch size for the records too large for a batch
+     */
+    private static int[] poolableSizes(int[] batchSizes, int maxPooledSize) {
+        int largest = batchSizes[batchSizes.length - 1];
+        int extra = 0;
+        for (long size = 2L * largest; size <= maxPooledSize; size *= 2)
+            extra++;
+        int[] sizes = Arrays.copyOf(batchSizes, batchSizes.length + extra);
+        for (int i = 1; i <= extra; i++)
+            sizes[batchSizes.length - 1 + i] = largest << i;
+        return sizes;
+    }
+
     private void registerMetrics(Metrics metrics) {
+        this.enqueueTime.add("record_enqueue_time_avg",
+                             "The average time in ms an append took, including time blocked on memory or quotas",
+                             new Avg());
+        this.enqueueTime.add("record_enqueue_time_max",
+                             "The longest time in ms an append took, including time blocked on memory or quotas",
+                             new Max());
+        this.queueTime.add("record_queue_time_avg", "The average time in ms a batch waited in the accumulator", new Avg());
+        this.queueTime.add("record_queue_time_max", "The longest time in ms a batch waited in the accumulator", new Max());
+        this.queueTime.add(new LogLinearPercentiles(0.05,
+                                                    30 * 1000.0,
+                                                    7,
+                                                    new Percentile("record_queue_time_p99",
+                                                                   "The 99th percentile of the time in ms a batch waited in the accumulator",
+                                                                   99.0)));
+        this.batchSize.add("batch_size_avg", "The average number of bytes sent per partition per request", new Avg());
+        this.batchSize.add("batch_size_max", "The largest number of bytes sent per partition per request", new Max());
+        this.compressionRatio.add("compression_ratio_avg",
+                                  "The average ratio of the compressed to the uncompressed size of a batch",
+                                  new Avg());
         metrics.addMetric("blocked_threads",
                           "The number of user threads blocked waiting for buffer memory to enqueue their records",
                           new Measurable() {
@@ -108,35 +197,73 @@ public final class RecordAccumulator {
     /**
      * Add a record to the accumulator.
      * <p>
-     * This method will block if sufficient memory isn't available for the record unless blocking has been disabled.
+     * This method will block if sufficient memory isn't available for the record unless blocking has been disabled. It
+     * will also block, or fail for topics configured to reject, if the record exceeds a produce quota.
      * 
      * @param tp The topic/partition to which this record is being sent
      * @param key The key for the record
      * @param value The value for the record
      * @param compression The compression codec for the record
      * @param callback The user-supplied callback to execute when the request is complete
+     * @throws QuotaViolationException if the record exceeds a produce quota for a topic configured to reject
      */
     public FutureRecordMetadata append(TopicPartition tp, byte[] key, byte[] value, CompressionType compression, Callback callback) throws InterruptedException {
+        return append(tp, Record.NO_TIMESTAMP, key, value, compression, callback);
+    }
+
+    /**
+     * Add a record with the given timestamp to the accumulator. This blocks in the same way as
+     * {@link #append(TopicPartition, byte[], byte[], CompressionType, Callback)}.
+     * 
+     * @param tp The topic/partition to which this record is being sent
+     * @param timestamp The timestamp of the record, or {@link Record#NO_TIMESTAMP}
+     * @param key The key for the record
+     * @param value The value for the record
+     * @param compression The compression codec for the record
+     * @param callback The user-supplied callback to execute when the request is complete
+     * @throws QuotaViolationException if the record exceeds a produce quota for a topic configured to reject
+     */
+    public FutureRecordMetadata append(TopicPartition tp,
+                                       long timestamp,
+                                       byte[] key,
+                                       byte[] value,
+                                       CompressionType compression,
+                                       Callback callback) throws InterruptedException {
         if (closed)
             throw new IllegalStateException("Cannot send after the producer is closed.");
+        long start = time.nanoseconds();
+        try {
+            return doAppend(tp, timestamp, key, value, compression, callback);
+        } finally {
+            this.enqueueTime.record((time.nanoseconds() - start) / (1000.0 * 1000.0));
+        }
+    }
+
+    private FutureRecordMetadata doAppend(TopicPartition tp,
+                                          long timestamp,
+                                          byte[] key,
+                                          byte[] value,
+                                          CompressionType compression,
+                                          Callback callback) throws InterruptedException {
+        this.quotas.record(tp.topic(), Records.LOG_OVERHEAD + Record.recordSize(key, value));
         // check if we have an in-progress batch
         Deque<RecordBatch> dq = dequeFor(tp);
         synchronized (dq) {
             RecordBatch batch = dq.peekLast();
             if (batch != null) {
-                FutureRecordMetadata future = batch.tryAppend(key, value, compression, callback);
+                FutureRecordMetadata future = batch.tryAppend(timestamp, key, value, compression, callback);
                 if (future != null)
                     return future;
             }
         }
 
         // we don't have an in-progress record batch try to allocate a new batch
-        int size = Math.max(this.batchSize, Records.LOG_OVERHEAD + Record.recordSize(key, value));
+        int size = Math.max(this.batchSizes.batchSize(tp), MemoryRecords.sizeFor(compression, timestamp, key, value));
         ByteBuffer buffer = free.allocate(size);
         synchronized (dq) {
             RecordBatch first = dq.peekLast();
             if (first != null) {
-                FutureRecordMetadata future = first.tryAppend(key, value, compression, callback);
+                FutureRecordMetadata future = first.tryAppend(timestamp, key, value, compression, callback);
                 if (future != null) {
                     // Somebody else found us a batch, return the one we waited for! Hopefully this doesn't happen
                     // often...
@@ -144,13 +271,80 @@ public final class RecordAccumulator {
                     return future;
                 }
             }
-            RecordBatch batch = new RecordBatch(tp, new MemoryRecords(buffer), time.milliseconds());
-            FutureRecordMetadata future = Utils.notNull(batch.tryAppend(key, value, compression, callback));
+            RecordBatch batch = new RecordBatch(tp, new MemoryRecords(buffer, compression), this.incomplete.add(), time.milliseconds());
+            FutureRecordMetadata future = Utils.notNull(batch.tryAppend(timestamp, key, value, compression, callback));
             dq.addLast(batch);
             return future;
         }
     }
 
+    /**
+     * Add a record to the accumulator only if that can be done without blocking.
+     * <p>
+     * Produce quotas are not applied here, since a record that can't be appended yet is usually tried again; callers
+     * record it against the quotas once with {@link #tryRecordQuota(String, int)}. Appends are still accepted after
+     * {@link #close()} so that records accepted before the producer was closed can be sent.
+     * 
+     * @param tp The topic/partition to which this record is being sent
+     * @param key The key for the record
+     * @param value The value for the record
+     * @param compression The compression codec for the record
+     * @param callback The user-supplied callback to execute when the request is complete
+     * @return The future for the record, or null if there was no room in a batch and not enough free memory for a new
+     *         one
+     */
+    public FutureRecordMetadata tryAppend(TopicPartition tp, byte[] key, byte[] value, CompressionType compression, Callback callback) {
+        return tryAppend(tp, Record.NO_TIMESTAMP, key, value, compression, callback);
+    }
+
+    /**
+     * Add a record with the given timestamp, which may be {@link Record#NO_TIMESTAMP}, to the accumulator only if that
+     * can be done without blocking, as {@link #tryAppend(TopicPartition, byte[], byte[], CompressionType, Callback)}
+     * does.
+     */
+    public FutureRecordMetadata tryAppend(TopicPartition tp,
+                                          long timestamp,
+                                          byte[] key,
+                                          byte[] value,
+                                          CompressionType compression,
+                                          Callback callback) {
+        int size = Math.max(this.batchSizes.batchSize(tp), MemoryRecords.sizeFor(compression, timestamp, key, value));
+        Deque<RecordBatch> dq = dequeFor(tp);
+        ByteBuffer buffer = null;
+        while (true) {
+            synchronized (dq) {
+                RecordBatch last = dq.peekLast();
+                if (last != null) {
+                    FutureRecordMetadata future = last.tryAppend(timestamp, key, value, compression, callback);
+                    if (future != null) {
+                        if (buffer != null)
+                            free.deallocate(buffer);
+                        return future;
+                    }
+                }
+                if (buffer != null) {
+                    RecordBatch batch = new RecordBatch(tp, new MemoryRecords(buffer, compression), this.incomplete.add(), time.milliseconds());
+                    FutureRecordMetadata future = Utils.notNull(batch.tryAppend(timestamp, key, value, compression, callback));
+                    dq.addLast(batch);
+                    return future;
+                }
+            }
+            buffer = free.tryAllocate(size);
+            if (buffer == null)
+                return null;
+        }
+    }
+
+    /**
+     * Record the append of a record against the produce quotas without blocking
+     * 
+     * @throws QuotaViolationException if the record exceeds a produce quota, whether or not its topic is configured to
+     *         reject
+     */
+    public void tryRecordQuota(String topic, int bytes) {
+        this.quotas.tryRecord(topic, bytes);
+    }
+
     /**
      * Get a list of topic-partitions which are ready to be sent.
      * <p>
@@ -158,22 +352,34 @@ public final class RecordAccumulator {
      * <ol>
      * <li>The record set is full
      * <li>The record set has sat in the accumulator for at least lingerMs milliseconds
-     * <li>The accumulator is out of memory and threads are blocking waiting for data (in this case all partitions are
-     * immediately considered ready).
+     * <li>The accumulator is out of memory and threads are blocking waiting for data, or records sent without blocking
+     * are waiting to be appended (in this case all partitions are immediately considered ready).
+     * <li>A thread is waiting on a flush (in this case all partitions are immediately considered ready)
      * <li>The accumulator has been closed
      * </ol>
      */
     public List<TopicPartition> ready(long now) {
+        return ready(now, false);
+    }
+
+    /**
+     * Get a list of topic-partitions which are ready to be sent, as {@link #ready(long)}
+     * 
+     * @param now The current time
+     * @param appendsWaiting Whether records sent without blocking are queued waiting to be appended
+     */
+    public List<TopicPartition> ready(long now, boolean appendsWaiting) {
         List<TopicPartition> ready = new ArrayList<TopicPartition>();
-        boolean exhausted = this.free.queued() > 0;
-        for (Map.Entry<TopicPartition, Deque<RecordBatch>> entry : this.batches.entrySet()) {
-            Deque<RecordBatch> deque = entry.getValue();
+        boolean exhausted = appendsWaiting || this.free.queued() > 0;
+        boolean flushing = this.incomplete.flushInProgress();
+        for (PartitionIndex.Entry<Deque<RecordBatch>> entry : this.batches) {
+            Deque<RecordBatch> deque = entry.value();
             synchronized (deque) {
                 RecordBatch batch = deque.peekFirst();
                 if (batch != null) {
                     boolean full = deque.size() > 1 || !batch.records.buffer().hasRemaining();
                     boolean expired = now - batch.created >= lingerMs;
-                    if (full | expired | exhausted | closed)
+                    if (full | expired | exhausted | flushing | closed)
                         ready.add(batch.topicPartition);
                 }
             }
@@ -182,54 +388,142 @@ public final class RecordAccumulator {
     }
 
     /**
-     * Drain all the data for the given topic-partitions that will fit within the specified size. This method attempts
-     * to avoid choosing the same topic-partitions over and over.
+     * Drain the data for the given topic-partitions that will fit within the specified size for each node's request.
+     * <p>
+     * Partitions of topics with a higher priority are drained before those of lower priority topics, so when a node's
+     * request fills up it is the lowest priority data that waits. A batch that has waited more than the starvation
+     * bound is drained as if it had the highest priority, which bounds how long low priority topics can be starved.
+     * Within a priority this method attempts to avoid choosing the same topic-partitions over and over.
      * 
+     * @param cluster The current cluster metadata, used to find the leader each partition will be sent to
      * @param partitions The list of partitions to drain
-     * @param maxSize The maximum number of bytes to drain
-     * @return A list of {@link RecordBatch} for partitions specified with total size less than the requested maxSize.
-     *         TODO: There may be a starvation issue due to iteration order
+     * @param maxSize The maximum number of bytes to drain for any single node
+     * @param now The current time
+     * @return A list of {@link RecordBatch} for partitions specified with total size less than the requested maxSize
+     *         for each node.
      */
-    public List<RecordBatch> drain(List<TopicPartition> partitions, int maxSize) {
+    public List<RecordBatch> drain(Cluster cluster, List<TopicPartition> partitions, int maxSize, long now) {
         if (partitions.isEmpty())
             return Collections.emptyList();
-        int size = 0;
         List<RecordBatch> ready = new ArrayList<RecordBatch>();
-        /* to make starvation less likely this loop doesn't start at 0 */
-        int start = drainIndex = drainIndex % partitions.size();
-        do {
-            TopicPartition tp = partitions.get(drainIndex);
+        Map<Integer, Integer> sizes = this.drainSizes;
+        Set<Integer> full = this.drainFull;
+        sizes.clear();
+        full.clear();
+        int n = partitions.size();
+        /* to make starvation less likely this loop doesn't start at 0 but where the last drain stopped */
+        int start = this.drainIndex % n;
+        int stop = -1;
+        long[] order = drainOrder(partitions, start, now);
+        for (int i = 0; i < n; i++) {
+            int position = (start + (int) order[i]) % n;
+            TopicPartition tp = partitions.get(position);
+            Node leader = cluster.leaderFor(tp);
+            if (leader == null || full.contains(leader.id()))
+                continue;
             Deque<RecordBatch> deque = dequeFor(tp);
-            if (deque != null) {
-                synchronized (deque) {
-                    if (size + deque.peekFirst().records.sizeInBytes() > maxSize) {
-                        return ready;
-                    } else {
-                        RecordBatch batch = deque.pollFirst();
-                        size += batch.records.sizeInBytes();
-                        ready.add(batch);
-                    }
+            synchronized (deque) {
+                RecordBatch first = deque.peekFirst();
+                if (first == null)
+                    continue;
+                Integer size = sizes.get(leader.id());
+                int nodeSize = size == null ? 0 : size;
+                if (nodeSize > 0 && nodeSize + first.records.sizeInBytes() > maxSize) {
+                    // leave the rest of this node's data for the next request rather than let lower priority data
+                    // jump ahead of this batch, and start the next drain from here
+                    full.add(leader.id());
+                    if (stop < 0)
+                        stop = position;
+                } else {
+                    RecordBatch batch = deque.pollFirst();
+                    batch.records.close();
+                    sizes.put(leader.id(), nodeSize + batch.records.sizeInBytes());
+                    ready.add(batch);
+                    this.batchSizes.record(tp, batch.records.sizeInBytes(), batch.records.capacity(), !deque.isEmpty());
+                    this.queueTime.record(now - batch.created);
+                    this.batchSize.record(batch.records.sizeInBytes());
+                    if (batch.uncompressedBytes > 0)
+                        this.compressionRatio.record(batch.records.sizeInBytes() / (double) batch.uncompressedBytes);
                 }
             }
-            this.drainIndex = (this.drainIndex + 1) % partitions.size();
-        } while (start != drainIndex);
+        }
+        this.drainIndex = stop < 0 ? start : stop;
         return ready;
     }
 
     /**
-     * Get the deque for the given topic-partition, creating it if necessary. Since new topics will only be added rarely
-     * we copy-on-write the hashmap
+     * Add the number of bytes queued for each node to the given map
+     *
+     * @param cluster The current cluster metadata, used to find the leader of each partition
+     * @param bytes The bytes per node to add to
+     */
+    public void queuedBytes(Cluster cluster, Map<Integer, Long> bytes) {
+        for (PartitionIndex.Entry<Deque<RecordBatch>> entry : this.batches) {
+            Node leader = cluster.leaderFor(entry.topicPartition());
+            if (leader == null)
+                continue;
+            long queued = 0L;
+            Deque<RecordBatch> deque = entry.value();
+            synchronized (deque) {
+                for (RecordBatch batch : deque)
+                    queued += batch.records.sizeInBytes();
+            }
+            Long current = bytes.get(leader.id());
+            bytes.put(leader.id(), current == null ? queued : current + queued);
+        }
+    }
+
+    /**
+     * Order the partitions for draining: by descending priority, rotating through the partitions starting at the given
+     * index within each priority. The low 32 bits of each of the first partitions.size() elements of the returned array
+     * hold the position of a partition relative to the start index. The array is reused by the next drain.
+     */
+    private long[] drainOrder(List<TopicPartition> partitions, int start, long now) {
+        int n = partitions.size();
+        if (this.drainOrder.length < n)
+            this.drainOrder = new long[Math.max(n, 2 * this.drainOrder.length)];
+        long[] order = this.drainOrder;
+        if (this.priorities.isEmpty()) {
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+        } else {
+            // ~priority sorts the highest priority first and the position keeps the sort stable within a priority
+            for (int i = 0; i < n; i++)
+                order[i] = ((long) ~effectivePriority(partitions.get((start + i) % n), now) << 32) | i;
+            Arrays.sort(order, 0, n);
+        }
+        return order;
+    }
+
+    /**
+     * The priority of the topic, or the highest possible priority if the oldest batch for this partition has been
+     * waiting longer than the starvation bound
+     */
+    private int effectivePriority(TopicPartition tp, long now) {
+        Deque<RecordBatch> deque = dequeFor(tp);
+        synchronized (deque) {
+            RecordBatch first = deque.peekFirst();
+            if (first != null && now - first.created >= this.starvationMs)
+                return Integer.MAX_VALUE;
+        }
+        Integer priority = this.priorities.get(tp.topic());
+        return priority == null ? 0 : priority;
+    }
+
+    /**
+     * Get the deque for the given topic-partition, creating it if necessary
      */
     private Deque<RecordBatch> dequeFor(TopicPartition tp) {
         Deque<RecordBatch> d = this.batches.get(tp);
         if (d != null)
             return d;
-        this.batches.putIfAbsent(tp, new ArrayDeque<RecordBatch>());
-        return this.batches.get(tp);
+        d = new ArrayDeque<RecordBatch>();
+        Deque<RecordBatch> previous = this.batches.putIfAbsent(tp, d);
+        return previous == null ? d : previous;
     }
 
     /**
-     * Deallocate the list of record batches
+     * Deallocate the list of record batches, which are complete
      */
     public void deallocate(Collection<RecordBatch> batches) {
         ByteBuffer[] buffers = new ByteBuffer[batches.size()];
@@ -239,6 +533,28 @@ public final class RecordAccumulator {
             i++;
         }
         free.deallocate(buffers);
+        for (RecordBatch batch : batches)
+            this.incomplete.remove(batch.generation);
+    }
+
+    /**
+     * Begin flushing the accumulator: every partition is considered ready, regardless of lingerMs, until the flush
+     * completes. Each call must be followed by a call to {@link #awaitFlushCompletion(long)}.
+     *
+     * @return A token identifying the batches the flush has to wait for
+     */
+    public long beginFlush() {
+        return this.incomplete.beginFlush();
+    }
+
+    /**
+     * Block until all the batches that existed when the corresponding call to {@link #beginFlush()} was made have
+     * completed. Batches created after that call don't delay the flush.
+     *
+     * @param flush The token returned by {@link #beginFlush()}
+     */
+    public void awaitFlushCompletion(long flush) throws InterruptedException {
+        this.incomplete.awaitFlushCompletion(flush);
     }
 
     /**
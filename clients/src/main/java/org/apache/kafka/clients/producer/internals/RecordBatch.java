@@ -24,6 +24,8 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.Records;
 
 
 /**
@@ -33,14 +35,17 @@ import org.apache.kafka.common.record.MemoryRecords;
  */
 public final class RecordBatch {
     public int recordCount = 0;
+    public int uncompressedBytes = 0;
     public final long created;
+    public final long generation;
     public final MemoryRecords records;
     public final TopicPartition topicPartition;
     private final ProduceRequestResult produceFuture;
     private final List<Thunk> thunks;
 
-    public RecordBatch(TopicPartition tp, MemoryRecords records, long now) {
+    public RecordBatch(TopicPartition tp, MemoryRecords records, long generation, long now) {
         this.created = now;
+        this.generation = generation;
         this.records = records;
         this.topicPartition = tp;
         this.produceFuture = new ProduceRequestResult();
@@ -52,11 +57,12 @@ public final class RecordBatch {
      * 
      * @return The RecordSend corresponding to this record or null if there isn't sufficient room.
      */
-    public FutureRecordMetadata tryAppend(byte[] key, byte[] value, CompressionType compression, Callback callback) {
-        if (!this.records.hasRoomFor(key, value)) {
+    public FutureRecordMetadata tryAppend(long timestamp, byte[] key, byte[] value, CompressionType compression, Callback callback) {
+        if (!this.records.hasRoomFor(timestamp, key, value)) {
             return null;
         } else {
-            this.records.append(0L, key, value, compression);
+            this.records.append(0L, timestamp, key, value, compression);
+            this.uncompressedBytes += Records.LOG_OVERHEAD + Record.recordSize(timestamp, key, value);
             FutureRecordMetadata future = new FutureRecordMetadata(this.produceFuture, this.recordCount);
             if (callback != null)
                 thunks.add(new Thunk(callback, this.recordCount));
@@ -21,24 +21,36 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.NetworkException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.LogLinearPercentiles;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
 import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.network.NetworkSend;
 import org.apache.kafka.common.network.Selectable;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.Errors;
-import org.apache.kafka.common.protocol.ProtoUtils;
-import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.requests.MetadataRequest;
+import org.apache.kafka.common.requests.MetadataView;
+import org.apache.kafka.common.requests.ProduceRequest;
+import org.apache.kafka.common.requests.ProduceResponse;
 import org.apache.kafka.common.requests.RequestHeader;
 import org.apache.kafka.common.requests.RequestSend;
 import org.apache.kafka.common.requests.ResponseHeader;
@@ -51,6 +63,9 @@ import org.apache.kafka.common.utils.Time;
  */
 public class Sender implements Runnable {
 
+    /* how often to recompute the node loads, which walks every queued batch */
+    private static final long LOAD_UPDATE_INTERVAL_MS = 100L;
+
     private final Map<Integer, NodeState> nodeState;
     private final RecordAccumulator accumulator;
     private final Selectable selector;
@@ -59,11 +74,24 @@ public class Sender implements Runnable {
     private final long reconnectBackoffMs;
     private final short acks;
     private final int requestTimeout;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
     private final InFlightRequests inFlightRequests;
     private final Metadata metadata;
+    private final Metrics metrics;
+    private final Sensor requestLatency;
+    private final Sensor metadataLatency;
+    private final Sensor requestSize;
+    private final Sensor recordsPerRequest;
+    private final Map<Integer, Sensor> nodeLatency;
+    private final NodeLoad load;
+    private final Map<Integer, Long> loadBytes;
+    private long lastLoadUpdate;
+    private final PendingSends pending;
     private final Time time;
     private int correlation;
     private boolean metadataFetchInProgress;
+    private volatile WarmUp warmUp;
     private volatile boolean running;
 
     public Sender(Selectable selector,
@@ -74,6 +102,11 @@ public class Sender implements Runnable {
                   long reconnectBackoffMs,
                   short acks,
                   int requestTimeout,
+                  int sendBufferSize,
+                  int receiveBufferSize,
+                  NodeLoad load,
+                  PendingSends pending,
+                  Metrics metrics,
                   Time time) {
         this.nodeState = new HashMap<Integer, NodeState>();
         this.accumulator = accumulator;
@@ -84,11 +117,61 @@ public class Sender implements Runnable {
         this.clientId = clientId;
         this.running = true;
         this.requestTimeout = requestTimeout;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
         this.acks = acks;
         this.inFlightRequests = new InFlightRequests();
         this.correlation = 0;
         this.metadataFetchInProgress = false;
+        this.metrics = metrics;
+        this.requestLatency = metrics.sensor("request_latency");
+        this.metadataLatency = metrics.sensor("metadata_request_latency");
+        this.requestSize = metrics.sensor("request_size");
+        this.recordsPerRequest = metrics.sensor("records_per_request");
+        this.nodeLatency = new HashMap<Integer, Sensor>();
+        this.load = load;
+        this.loadBytes = new HashMap<Integer, Long>();
+        this.lastLoadUpdate = -LOAD_UPDATE_INTERVAL_MS;
+        this.pending = pending;
         this.time = time;
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        this.requestLatency.add("request_latency_avg", "The average time in ms from sending a request to its response", new Avg());
+        this.requestLatency.add("request_latency_max", "The longest time in ms from sending a request to its response", new Max());
+        this.requestLatency.add(new LogLinearPercentiles(0.05,
+                                                         30 * 1000.0,
+                                                         7,
+                                                         new Percentile("request_latency_p50", 50.0),
+                                                         new Percentile("request_latency_p99", 99.0),
+                                                         new Percentile("request_latency_p999", 99.9)));
+        this.metadataLatency.add("metadata_request_latency_avg",
+                                 "The average time in ms from sending a metadata request to its response",
+                                 new Avg());
+        this.metadataLatency.add("metadata_request_latency_max",
+                                 "The longest time in ms from sending a metadata request to its response",
+                                 new Max());
+        this.requestSize.add("request_size_avg", "The average size in bytes of a produce request", new Avg());
+        this.requestSize.add("request_size_max", "The largest size in bytes of a produce request", new Max());
+        this.recordsPerRequest.add("records_per_request_avg", "The average number of records in a produce request", new Avg());
+        this.recordsPerRequest.add("records_per_request_max", "The largest number of records in a produce request", new Max());
+    }
+
+    /**
+     * The request latency sensor of the given node, whose values are also recorded by the overall request latency
+     * sensor
+     */
+    private Sensor nodeLatency(int node) {
+        Sensor sensor = this.nodeLatency.get(node);
+        if (sensor == null) {
+            String prefix = "node." + node + ".request_latency";
+            sensor = this.metrics.sensor(prefix, this.requestLatency);
+            sensor.add(prefix + "_avg", "The average time in ms from sending a request to this node to its response", new Avg());
+            sensor.add(prefix + "_max", "The longest time in ms from sending a request to this node to its response", new Max());
+            this.nodeLatency.put(node, sensor);
+        }
+        return sensor;
     }
 
     /**
@@ -122,12 +205,15 @@ public class Sender implements Runnable {
      * Run a single iteration of sending
      * 
      * @param now The current time
-     * @return The total number of topic/partitions that had data ready (regardless of what we actually sent)
+     * @return The total number of topic/partitions that had data ready (regardless of what we actually sent) plus the
+     *         number of records still waiting to be appended to the accumulator
      */
     public int run(long now) {
         Cluster cluster = metadata.fetch();
+        if (this.warmUp != null)
+            warmUp(cluster, now);
         // get the list of partitions with data ready to send
-        List<TopicPartition> ready = this.accumulator.ready(now);
+        List<TopicPartition> ready = this.accumulator.ready(now, this.pending != null && this.pending.size() > 0);
 
         // prune the list of ready topics to eliminate any that we aren't ready to send yet
         List<TopicPartition> sendable = processReadyPartitions(cluster, ready, now);
@@ -141,7 +227,7 @@ public class Sender implements Runnable {
         }
 
         // create produce requests
-        List<RecordBatch> batches = this.accumulator.drain(sendable, this.maxRequestSize);
+        List<RecordBatch> batches = this.accumulator.drain(cluster, sendable, this.maxRequestSize, now);
         List<InFlightRequest> requests = collate(cluster, batches);
         for (int i = 0; i < requests.size(); i++) {
             InFlightRequest request = requests.get(i);
@@ -158,17 +244,37 @@ public class Sender implements Runnable {
 
         // handle responses, connections, and disconnections
         handleSends(this.selector.completedSends());
-        handleResponses(this.selector.completedReceives(), now);
+        handleResponses(this.selector.completedReceives(), time.milliseconds());
         handleDisconnects(this.selector.disconnected());
         handleConnects(this.selector.connected());
 
-        return ready.size();
+        if (this.load != null && now - this.lastLoadUpdate >= LOAD_UPDATE_INTERVAL_MS)
+            updateLoad(cluster, now);
+
+        // append the records sent without blocking that can now be, using any memory the responses returned
+        int pending = this.pending == null ? 0 : this.pending.admit(time.milliseconds());
+
+        return ready.size() + pending;
+    }
+
+    /**
+     * Update the load of each node with the bytes queued for it and the bytes of its in-flight produce requests
+     */
+    private void updateLoad(Cluster cluster, long now) {
+        this.loadBytes.clear();
+        for (Node node : cluster.nodes())
+            this.loadBytes.put(node.id(), this.inFlightRequests.inFlightBytes(node.id()));
+        this.accumulator.queuedBytes(cluster, this.loadBytes);
+        this.load.update(this.loadBytes);
+        this.lastLoadUpdate = now;
     }
 
     private InFlightRequest maybeMetadataRequest(Cluster cluster, long now) {
         if (this.metadataFetchInProgress || !metadata.needsUpdate(now))
             return null;
-        Node node = cluster.nextNode();
+        Node node = connectedNode(cluster);
+        if (node == null)
+            node = cluster.nextNode();
         NodeState state = nodeState.get(node.id());
         if (state == null || (state.state == ConnectionState.DISCONNECTED && now - state.lastConnectAttempt > this.reconnectBackoffMs)) {
             // we don't have a connection to this node right now, make one
@@ -182,11 +288,74 @@ public class Sender implements Runnable {
         }
     }
 
+    /**
+     * Any node of the cluster we have a connection to, or null if there is none
+     */
+    private Node connectedNode(Cluster cluster) {
+        for (Node node : cluster.nodes()) {
+            NodeState state = nodeState.get(node.id());
+            if (state != null && state.state == ConnectionState.CONNECTED)
+                return node;
+        }
+        return null;
+    }
+
+    /**
+     * Begin warming up the producer's connections for the given topics. Instead of dialing one node at a time, the
+     * sender connects to every known node at once until it has metadata for all the topics, then connects to the
+     * leader of each of their partitions.
+     * 
+     * @param topics The topics to warm up
+     * @param timeoutMs The longest time to spend warming up
+     * @return A latch released once all the leaders are connected or the warm-up times out
+     */
+    public CountDownLatch warmUp(Collection<String> topics, long timeoutMs) {
+        for (String topic : topics)
+            this.metadata.add(topic);
+        WarmUp warmUp = new WarmUp(new HashSet<String>(topics), time.milliseconds() + timeoutMs);
+        this.warmUp = warmUp;
+        return warmUp.complete;
+    }
+
+    /**
+     * Make progress on the warm-up: connect to every node we aren't connected or connecting to that we will need
+     */
+    private void warmUp(Cluster cluster, long now) {
+        WarmUp warmUp = this.warmUp;
+        Set<Node> nodes = new HashSet<Node>();
+        boolean haveMetadata = true;
+        for (String topic : warmUp.topics) {
+            List<PartitionInfo> partitions = cluster.partitionsFor(topic);
+            if (partitions == null) {
+                haveMetadata = false;
+            } else {
+                for (PartitionInfo partition : partitions)
+                    if (partition.leader() != null)
+                        nodes.add(partition.leader());
+            }
+        }
+        if (!haveMetadata)
+            nodes.addAll(cluster.nodes());
+        boolean connected = haveMetadata;
+        for (Node node : nodes) {
+            NodeState state = nodeState.get(node.id());
+            if (state == null || (state.state == ConnectionState.DISCONNECTED && now - state.lastConnectAttempt > this.reconnectBackoffMs))
+                initiateConnect(node, now);
+            connected &= state != null && state.state == ConnectionState.CONNECTED;
+        }
+        if (connected || now >= warmUp.deadline) {
+            this.warmUp = null;
+            warmUp.complete.countDown();
+        }
+    }
+
     /**
      * Start closing the sender (won't actually complete until all data is sent out)
      */
     public void initiateClose() {
         this.running = false;
+        if (this.pending != null)
+            this.pending.close();
         this.accumulator.close();
     }
 
@@ -221,9 +390,7 @@ public class Sender implements Runnable {
      */
     private void initiateConnect(Node node, long now) {
         try {
-            selector.connect(node.id(), new InetSocketAddress(node.host(), node.port()), 64 * 1024 * 1024, 64 * 1024 * 1024); // TODO
-                                                                                                                              // socket
-                                                                                                                              // buffers
+            selector.connect(node.id(), new InetSocketAddress(node.host(), node.port()), this.sendBufferSize, this.receiveBufferSize);
             nodeState.put(node.id(), new NodeState(ConnectionState.CONNECTING, now));
         } catch (IOException e) {
             /* attempt failed, we'll try again after the backoff */
@@ -286,39 +453,29 @@ public class Sender implements Runnable {
             int source = receive.source();
             InFlightRequest req = inFlightRequests.nextCompleted(source);
             ResponseHeader header = ResponseHeader.parse(receive.payload());
-            short apiKey = req.request.header().apiKey();
-            Struct body = (Struct) ProtoUtils.currentResponseSchema(apiKey).read(receive.payload());
             correlate(req.request.header(), header);
+            req.latency.record(now - req.created);
             if (req.request.header().apiKey() == ApiKeys.PRODUCE.id)
-                handleProduceResponse(req, body);
+                handleProduceResponse(req, ProduceResponse.parse(receive.payload()));
             else if (req.request.header().apiKey() == ApiKeys.METADATA.id)
-                handleMetadataResponse(body, now);
+                handleMetadataResponse(MetadataView.parse(receive.payload()), now);
             else
                 throw new IllegalStateException("Unexpected response type: " + req.request.header().apiKey());
         }
     }
 
-    private void handleMetadataResponse(Struct body, long now) {
+    private void handleMetadataResponse(MetadataView response, long now) {
         this.metadataFetchInProgress = false;
-        Cluster cluster = ProtoUtils.parseMetadataResponse(body);
-        this.metadata.update(cluster, now);
+        this.metadata.update(response.cluster(), now);
     }
 
     /**
      * Handle a produce response
      */
-    private void handleProduceResponse(InFlightRequest request, Struct response) {
-        for (Object topicResponse : (Object[]) response.get("responses")) {
-            Struct topicRespStruct = (Struct) topicResponse;
-            String topic = (String) topicRespStruct.get("topic");
-            for (Object partResponse : (Object[]) topicRespStruct.get("partition_responses")) {
-                Struct partRespStruct = (Struct) partResponse;
-                int partition = (Integer) partRespStruct.get("partition");
-                short errorCode = (Short) partRespStruct.get("error_code");
-                long offset = (Long) partRespStruct.get("base_offset");
-                RecordBatch batch = request.batches.get(new TopicPartition(topic, partition));
-                batch.done(offset, Errors.forCode(errorCode).exception());
-            }
+    private void handleProduceResponse(InFlightRequest request, ProduceResponse response) {
+        for (int i = 0; i < response.size(); i++) {
+            RecordBatch batch = request.batches.get(response.partition(i));
+            batch.done(response.baseOffset(i), Errors.forCode(response.errorCode(i)).exception());
         }
         this.accumulator.deallocate(request.batches.values());
     }
@@ -338,12 +495,9 @@ public class Sender implements Runnable {
      * Create a metadata request for the given topics
      */
     private InFlightRequest metadataRequest(int node, Set<String> topics) {
-        String[] ts = new String[topics.size()];
-        topics.toArray(ts);
-        Struct body = new Struct(ProtoUtils.currentRequestSchema(ApiKeys.METADATA.id));
-        body.set("topics", topics.toArray());
+        MetadataRequest body = new MetadataRequest(topics);
         RequestSend send = new RequestSend(node, new RequestHeader(ApiKeys.METADATA.id, clientId, correlation++), body);
-        return new InFlightRequest(true, send, null);
+        return new InFlightRequest(true, send, null, this.metadataLatency, time.milliseconds());
     }
 
     /**
@@ -371,41 +525,22 @@ public class Sender implements Runnable {
      */
     private InFlightRequest produceRequest(int destination, short acks, int timeout, List<RecordBatch> batches) {
         Map<TopicPartition, RecordBatch> batchesByPartition = new HashMap<TopicPartition, RecordBatch>();
-        Map<String, List<RecordBatch>> batchesByTopic = new HashMap<String, List<RecordBatch>>();
+        Map<TopicPartition, ByteBuffer> recordSets = new HashMap<TopicPartition, ByteBuffer>();
+        int records = 0;
         for (RecordBatch batch : batches) {
             batchesByPartition.put(batch.topicPartition, batch);
-            List<RecordBatch> found = batchesByTopic.get(batch.topicPartition.topic());
-            if (found == null) {
-                found = new ArrayList<RecordBatch>();
-                batchesByTopic.put(batch.topicPartition.topic(), found);
-            }
-            found.add(batch);
+            ByteBuffer buffer = batch.records.buffer();
+            buffer.flip();
+            recordSets.put(batch.topicPartition, buffer);
+            records += batch.recordCount;
         }
-        Struct produce = new Struct(ProtoUtils.currentRequestSchema(ApiKeys.PRODUCE.id));
-        produce.set("acks", acks);
-        produce.set("timeout", timeout);
-        List<Struct> topicDatas = new ArrayList<Struct>(batchesByTopic.size());
-        for (Map.Entry<String, List<RecordBatch>> entry : batchesByTopic.entrySet()) {
-            Struct topicData = produce.instance("topic_data");
-            topicData.set("topic", entry.getKey());
-            List<RecordBatch> parts = entry.getValue();
-            Object[] partitionData = new Object[parts.size()];
-            for (int i = 0; i < parts.size(); i++) {
-                ByteBuffer buffer = parts.get(i).records.buffer();
-                buffer.flip();
-                Struct part = topicData.instance("data")
-                                       .set("partition", parts.get(i).topicPartition.partition())
-                                       .set("record_set", buffer);
-                partitionData[i] = part;
-            }
-            topicData.set("data", partitionData);
-            topicDatas.add(topicData);
-        }
-        produce.set("topic_data", topicDatas.toArray());
+        ProduceRequest produce = new ProduceRequest(acks, timeout, recordSets);
 
         RequestHeader header = new RequestHeader(ApiKeys.PRODUCE.id, clientId, correlation++);
         RequestSend send = new RequestSend(destination, header, produce);
-        return new InFlightRequest(acks != 0, send, batchesByPartition);
+        this.requestSize.record(send.remaining());
+        this.recordsPerRequest.record(records);
+        return new InFlightRequest(acks != 0, send, batchesByPartition, nodeLatency(destination), time.milliseconds());
     }
 
     /**
@@ -439,6 +574,21 @@ public class Sender implements Runnable {
         }
     }
 
+    /**
+     * The topics being warmed up and when to give up
+     */
+    private static final class WarmUp {
+        private final Set<String> topics;
+        private final long deadline;
+        private final CountDownLatch complete;
+
+        public WarmUp(Set<String> topics, long deadline) {
+            this.topics = topics;
+            this.deadline = deadline;
+            this.complete = new CountDownLatch(1);
+        }
+    }
+
     /**
      * An request that hasn't been fully processed yet
      */
@@ -446,16 +596,28 @@ public class Sender implements Runnable {
         public boolean expectResponse;
         public Map<TopicPartition, RecordBatch> batches;
         public RequestSend request;
+        public Sensor latency;
+        public long created;
+        public int size;
 
         /**
          * @param expectResponse Should we expect a response message or is this request complete once it is sent?
          * @param request The request
          * @param batches The record batches contained in the request if it is a produce request
+         * @param latency The sensor to record the time until the response with
+         * @param created The time the request was created
          */
-        public InFlightRequest(boolean expectResponse, RequestSend request, Map<TopicPartition, RecordBatch> batches) {
+        public InFlightRequest(boolean expectResponse,
+                               RequestSend request,
+                               Map<TopicPartition, RecordBatch> batches,
+                               Sensor latency,
+                               long created) {
             this.batches = batches;
             this.request = request;
             this.expectResponse = expectResponse;
+            this.latency = latency;
+            this.created = created;
+            this.size = request.remaining();
         }
     }
 
@@ -502,6 +664,20 @@ public class Sender implements Runnable {
             return queue == null || queue.isEmpty() || queue.peekFirst().request.complete();
         }
 
+        /**
+         * The total size of the produce requests in flight to the given node
+         */
+        public long inFlightBytes(int node) {
+            Deque<InFlightRequest> queue = requests.get(node);
+            long bytes = 0L;
+            if (queue != null) {
+                for (InFlightRequest request : queue)
+                    if (request.batches != null)
+                        bytes += request.size;
+            }
+            return bytes;
+        }
+
         /**
          * Clear out all the in-flight requests for the given node and return them
          * 
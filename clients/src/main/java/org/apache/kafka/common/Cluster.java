@@ -23,6 +23,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kafka.common.utils.Utils;
@@ -30,13 +32,17 @@ import org.apache.kafka.common.utils.Utils;
 
 /**
  * A representation of a subset of the nodes, topics, and partitions in the Kafka cluster.
+ * <p>
+ * The partitions of a cluster can either be given up front or be loaded one topic at a time, the first time the
+ * topic is queried, from a {@link PartitionLoader}. The latter lets a cluster be backed directly by a large metadata
+ * response without materializing the partitions of topics nobody asks about.
  */
 public final class Cluster {
 
     private final AtomicInteger counter = new AtomicInteger(0);
     private final List<Node> nodes;
-    private final Map<TopicPartition, PartitionInfo> partitionsByTopicPartition;
-    private final Map<String, List<PartitionInfo>> partitionsByTopic;
+    private final ConcurrentMap<String, TopicPartitions> partitionsByTopic;
+    private final PartitionLoader loader;
 
     /**
      * Create a new cluster with the given nodes and partitions
@@ -44,28 +50,45 @@ public final class Cluster {
      * @param partitions Information about a subset of the topic-partitions this cluster hosts
      */
     public Cluster(Collection<Node> nodes, Collection<PartitionInfo> partitions) {
-        // make a randomized, unmodifiable copy of the nodes
-        List<Node> copy = new ArrayList<Node>(nodes);
-        Collections.shuffle(copy);
-        this.nodes = Collections.unmodifiableList(copy);
+        this(nodes, (PartitionLoader) null);
 
-        // index the partitions by topic/partition for quick lookup
-        this.partitionsByTopicPartition = new HashMap<TopicPartition, PartitionInfo>(partitions.size());
-        for (PartitionInfo p : partitions)
-            this.partitionsByTopicPartition.put(new TopicPartition(p.topic(), p.partition()), p);
-
-        // index the partitions by topic and make the lists unmodifiable so we can handle them out in
-        // user-facing apis without risk of the client modifying the contents
+        // index the partitions by topic. Partitions usually arrive grouped by topic so only look up the topic's list
+        // when the topic changes
         HashMap<String, List<PartitionInfo>> parts = new HashMap<String, List<PartitionInfo>>();
+        String topic = null;
+        List<PartitionInfo> ps = null;
         for (PartitionInfo p : partitions) {
-            if (!parts.containsKey(p.topic()))
-                parts.put(p.topic(), new ArrayList<PartitionInfo>());
-            List<PartitionInfo> ps = parts.get(p.topic());
+            if (!p.topic().equals(topic)) {
+                topic = p.topic();
+                ps = parts.get(topic);
+                if (ps == null) {
+                    ps = new ArrayList<PartitionInfo>();
+                    parts.put(topic, ps);
+                }
+            }
             ps.add(p);
         }
-        this.partitionsByTopic = new HashMap<String, List<PartitionInfo>>(parts.size());
         for (Map.Entry<String, List<PartitionInfo>> entry : parts.entrySet())
-            this.partitionsByTopic.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            this.partitionsByTopic.put(entry.getKey(), new TopicPartitions(entry.getValue()));
+    }
+
+    private Cluster(Collection<Node> nodes, PartitionLoader loader) {
+        // make a randomized, unmodifiable copy of the nodes
+        List<Node> copy = new ArrayList<Node>(nodes);
+        Collections.shuffle(copy);
+        this.nodes = Collections.unmodifiableList(copy);
+        this.partitionsByTopic = new ConcurrentHashMap<String, TopicPartitions>();
+        this.loader = loader;
+    }
+
+    /**
+     * Create a cluster that loads the partitions of each topic from the given loader the first time that topic is
+     * queried
+     * @param nodes The nodes in the cluster
+     * @param loader The source of the partitions of each topic
+     */
+    public static Cluster lazy(Collection<Node> nodes, PartitionLoader loader) {
+        return new Cluster(nodes, loader);
     }
 
     /**
@@ -101,7 +124,7 @@ public final class Cluster {
      * @return The node that is the leader for this topic-partition, or null if there is currently no leader
      */
     public Node leaderFor(TopicPartition topicPartition) {
-        PartitionInfo info = partitionsByTopicPartition.get(topicPartition);
+        PartitionInfo info = partition(topicPartition);
         if (info == null)
             return null;
         else
@@ -114,7 +137,8 @@ public final class Cluster {
      * @return The metadata about the given topic and partition
      */
     public PartitionInfo partition(TopicPartition topicPartition) {
-        return partitionsByTopicPartition.get(topicPartition);
+        TopicPartitions partitions = partitions(topicPartition.topic());
+        return partitions == null ? null : partitions.get(topicPartition.partition());
     }
 
     /**
@@ -123,7 +147,21 @@ public final class Cluster {
      * @return A list of partitions
      */
     public List<PartitionInfo> partitionsFor(String topic) {
-        return this.partitionsByTopic.get(topic);
+        TopicPartitions partitions = partitions(topic);
+        return partitions == null ? null : partitions.list;
+    }
+
+    private TopicPartitions partitions(String topic) {
+        TopicPartitions partitions = this.partitionsByTopic.get(topic);
+        if (partitions == null && this.loader != null) {
+            List<PartitionInfo> loaded = this.loader.partitionsFor(topic);
+            if (loaded == null)
+                return null;
+            // concurrent loads of the same topic are harmless, keep whichever wins
+            this.partitionsByTopic.putIfAbsent(topic, new TopicPartitions(loaded));
+            partitions = this.partitionsByTopic.get(topic);
+        }
+        return partitions;
     }
 
     /**
@@ -137,4 +175,42 @@ public final class Cluster {
         return this.nodes.get(idx);
     }
 
+    /**
+     * A source of the partitions of a topic, read on demand
+     */
+    public static interface PartitionLoader {
+
+        /**
+         * The partitions of the given topic, or null if there is no metadata for the topic
+         */
+        public List<PartitionInfo> partitionsFor(String topic);
+
+    }
+
+    /**
+     * The partitions of a single topic, indexed by partition id
+     */
+    private static final class TopicPartitions {
+        private final List<PartitionInfo> list;
+        private final PartitionInfo[] byId;
+
+        public TopicPartitions(List<PartitionInfo> partitions) {
+            // make the list unmodifiable so we can hand it out in user-facing apis without risk of the client
+            // modifying the contents
+            this.list = Collections.unmodifiableList(partitions);
+            int max = -1;
+            for (PartitionInfo p : partitions)
+                max = Math.max(max, p.partition());
+            this.byId = new PartitionInfo[max + 1];
+            for (PartitionInfo p : partitions)
+                this.byId[p.partition()] = p;
+        }
+
+        public PartitionInfo get(int partition) {
+            if (partition < 0 || partition >= this.byId.length)
+                return null;
+            return this.byId[partition];
+        }
+    }
+
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.kafka.common.config;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -99,6 +100,34 @@ public class AbstractConfig {
         Class<?> c = getClass(key);
         if (c == null)
             return null;
+        return configuredInstance(c, t);
+    }
+
+    /**
+     * Get a list of configured instances of the classes named by the given list configuration key, in the order they
+     * are listed. Each object that implements Configurable is configured using the configuration.
+     * 
+     * @param key The configuration key for the list of class names
+     * @param t The interface the classes should implement
+     * @return A list of configured instances, empty if no classes are given
+     */
+    public <T> List<T> getConfiguredInstances(String key, Class<T> t) {
+        List<T> objects = new ArrayList<T>();
+        for (String name : getList(key)) {
+            if (name.isEmpty())
+                continue;
+            Class<?> c;
+            try {
+                c = Class.forName(name);
+            } catch (ClassNotFoundException e) {
+                throw new ConfigException(key, name, "Class " + name + " could not be found.");
+            }
+            objects.add(configuredInstance(c, t));
+        }
+        return objects;
+    }
+
+    private <T> T configuredInstance(Class<?> c, Class<T> t) {
         Object o = Utils.newInstance(c);
         if (!t.isInstance(o))
             throw new KafkaException(c.getName() + " is not an instance of " + t.getName());
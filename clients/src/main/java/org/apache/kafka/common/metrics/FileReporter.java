@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.Configurable;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.config.ConfigException;
+
+
+/**
+ * Writes each metrics snapshot to a local file in the Graphite plaintext format (see
+ * {@link MetricsSnapshot#writeTo(Writer)}). The snapshot is written to a temporary file that then replaces the target,
+ * so a reader always sees a complete snapshot.
+ * <p>
+ * When created from the <code>metric.reporters</code> setting the file is given by {@link #FILE_CONFIG}.
+ */
+public class FileReporter implements SnapshotReporter, Configurable {
+
+    /**
+     * The file to write snapshots to
+     */
+    public static final String FILE_CONFIG = "metric.reporter.file";
+
+    private File file;
+    private File tmp;
+
+    public FileReporter() {}
+
+    public FileReporter(File file) {
+        configure(file);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object file = configs.get(FILE_CONFIG);
+        if (file == null)
+            throw new ConfigException(FILE_CONFIG, null, "Must be set to use " + getClass().getName() + ".");
+        configure(new File(file.toString()));
+    }
+
+    private void configure(File file) {
+        this.file = file;
+        this.tmp = new File(file.getPath() + ".tmp");
+    }
+
+    @Override
+    public void init(List<KafkaMetric> metrics) {}
+
+    @Override
+    public void metricChange(KafkaMetric metric) {}
+
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.tmp), "UTF-8"));
+            try {
+                snapshot.writeTo(writer);
+            } finally {
+                writer.close();
+            }
+            // renameTo won't replace an existing file on some platforms
+            if (!this.tmp.renameTo(this.file) && !(this.file.delete() && this.tmp.renameTo(this.file)))
+                throw new IOException("Failed to rename " + this.tmp + " to " + this.file);
+        } catch (IOException e) {
+            throw new KafkaException("Error writing metrics to " + this.file, e);
+        }
+    }
+
+    @Override
+    public void close() {}
+
+}
@@ -39,12 +39,16 @@ import org.apache.kafka.common.KafkaException;
 
 
 /**
- * Register metrics in JMX as dynamic mbeans based on the metric names
+ * Register metrics in JMX as dynamic mbeans based on the metric names.
+ * <p>
+ * Once {@link Metrics#startSnapshots(long) snapshots} are started attributes are read from the latest snapshot, so JMX
+ * clients never take the locks used to record values.
  */
-public class JmxReporter implements MetricsReporter {
+public class JmxReporter implements SnapshotReporter {
 
     private final String prefix;
     private final Map<String, KafkaMbean> mbeans = new HashMap<String, KafkaMbean>();
+    private volatile MetricsSnapshot snapshot;
 
     public JmxReporter() {
         this("");
@@ -86,6 +90,11 @@ public class JmxReporter implements MetricsReporter {
         }
     }
 
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public synchronized void close() {
         for (KafkaMbean mbean : this.mbeans.values())
             unregister(mbean);
@@ -125,7 +134,7 @@ public class JmxReporter implements MetricsReporter {
         return new String[] { packageName, beanName, attributeName };
     }
 
-    private static class KafkaMbean implements DynamicMBean {
+    private class KafkaMbean implements DynamicMBean {
         private final String beanName;
         private final ObjectName objectName;
         private final Map<String, KafkaMetric> metrics;
@@ -146,9 +155,13 @@ public class JmxReporter implements MetricsReporter {
 
         @Override
         public Object getAttribute(String name) throws AttributeNotFoundException, MBeanException, ReflectionException {
-            if (this.metrics.containsKey(name))
-                return this.metrics.get(name).value();
-            else
+            KafkaMetric metric = this.metrics.get(name);
+            if (metric != null) {
+                MetricsSnapshot snapshot = JmxReporter.this.snapshot;
+                if (snapshot != null && snapshot.contains(metric.name()))
+                    return snapshot.value(metric.name());
+                return metric.value();
+            } else
                 throw new AttributeNotFoundException("Could not find attribute " + name);
         }
 
@@ -28,6 +28,7 @@ public class MetricConfig {
     private long eventWindow;
     private long timeWindowNs;
     private TimeUnit unit;
+    private int stripes;
 
     public MetricConfig() {
         super();
@@ -36,6 +37,7 @@ public class MetricConfig {
         this.eventWindow = Long.MAX_VALUE;
         this.timeWindowNs = TimeUnit.NANOSECONDS.convert(30, TimeUnit.SECONDS);
         this.unit = TimeUnit.SECONDS;
+        this.stripes = 1;
     }
 
     public Quota quota() {
@@ -84,4 +86,20 @@ public class MetricConfig {
         this.unit = unit;
         return this;
     }
+
+    public int stripes() {
+        return this.stripes;
+    }
+
+    /**
+     * Record the stats of sensors created with this configuration over the given number of stripes instead of under the
+     * sensor lock, see {@link StripedStat}. Quotas of striped sensors are checked at most once every
+     * {@link Sensor#QUOTA_CHECK_INTERVAL_NS} nanoseconds rather than on every recording.
+     */
+    public MetricConfig stripes(int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("The number of stripes must be at least 1.");
+        this.stripes = stripes;
+        return this;
+    }
 }
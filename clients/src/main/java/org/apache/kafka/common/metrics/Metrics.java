@@ -21,7 +21,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.utils.KafkaThread;
 import org.apache.kafka.common.utils.SystemTime;
 import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Utils;
@@ -47,6 +50,10 @@ import org.apache.kafka.common.utils.Utils;
  * // as messages are sent we record the sizes
  * sensor.record(messageSize);
  * </pre>
+ * <p>
+ * Reading a metric computes its value under the same lock its sensor records with. Reporters that read many metrics
+ * often can instead use the {@link MetricsSnapshot snapshots} that a background thread takes of all metrics once
+ * {@link #startSnapshots(long)} is called, which doesn't contend with recording at all.
  */
 public class Metrics {
 
@@ -55,6 +62,8 @@ public class Metrics {
     private final ConcurrentMap<String, Sensor> sensors;
     private final List<MetricsReporter> reporters;
     private final Time time;
+    private volatile MetricsSnapshot snapshot;
+    private Thread snapshotThread;
 
     /**
      * Create a metrics repository with no metric reporters and default configuration.
@@ -89,7 +98,7 @@ public class Metrics {
         this.config = defaultConfig;
         this.sensors = new ConcurrentHashMap<String, Sensor>();
         this.metrics = new ConcurrentHashMap<String, KafkaMetric>();
-        this.reporters = Utils.notNull(reporters);
+        this.reporters = new CopyOnWriteArrayList<MetricsReporter>(Utils.notNull(reporters));
         this.time = time;
         for (MetricsReporter reporter : reporters)
             reporter.init(new ArrayList<KafkaMetric>());
@@ -196,10 +205,83 @@ public class Metrics {
         return this.metrics;
     }
 
+    /**
+     * Compute the current value of every metric. Each metric's lock is held only while its own value is computed.
+     */
+    public MetricsSnapshot snapshot() {
+        List<KafkaMetric> metrics = new ArrayList<KafkaMetric>(this.metrics.values());
+        String[] names = new String[metrics.size()];
+        double[] values = new double[metrics.size()];
+        for (int i = 0; i < names.length; i++) {
+            KafkaMetric metric = metrics.get(i);
+            names[i] = metric.name();
+            values[i] = metric.value();
+        }
+        return new MetricsSnapshot(time.milliseconds(), names, values);
+    }
+
+    /**
+     * The snapshot most recently taken by the snapshot thread, or null if none has been taken
+     */
+    public MetricsSnapshot latestSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Start a daemon thread that takes a {@link #snapshot()} at the given interval, makes it available through
+     * {@link #latestSnapshot()} and hands it to every {@link SnapshotReporter}. The thread is stopped by
+     * {@link #close()}.
+     * 
+     * @param intervalMs The time between snapshots
+     */
+    public synchronized void startSnapshots(final long intervalMs) {
+        if (this.snapshotThread != null)
+            throw new IllegalStateException("Snapshots have already been started.");
+        this.snapshotThread = new KafkaThread("kafka-metrics-snapshot", new Runnable() {
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        takeSnapshot();
+                        Thread.sleep(intervalMs);
+                    }
+                } catch (InterruptedException e) {
+                    /* we're being closed */
+                }
+            }
+        }, true);
+        this.snapshotThread.start();
+    }
+
+    private void takeSnapshot() {
+        MetricsSnapshot snapshot = snapshot();
+        this.snapshot = snapshot;
+        for (MetricsReporter reporter : this.reporters) {
+            if (reporter instanceof SnapshotReporter) {
+                try {
+                    ((SnapshotReporter) reporter).report(snapshot);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
     /**
      * Close this metrics repository.
      */
     public void close() {
+        Thread snapshotThread;
+        synchronized (this) {
+            snapshotThread = this.snapshotThread;
+        }
+        if (snapshotThread != null) {
+            snapshotThread.interrupt();
+            try {
+                snapshotThread.join();
+            } catch (InterruptedException e) {
+                throw new KafkaException(e);
+            }
+        }
         for (MetricsReporter reporter : this.reporters)
             reporter.close();
     }
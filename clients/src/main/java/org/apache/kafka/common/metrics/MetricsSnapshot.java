@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The values of all metrics at a point in time. A snapshot is immutable, so reading it doesn't take any of the locks
+ * that recording values does.
+ */
+public final class MetricsSnapshot {
+
+    private final long time;
+    private final String[] names;
+    private final double[] values;
+    private final Map<String, Integer> index;
+
+    /**
+     * Create a snapshot. The arrays are not copied and must not be modified afterwards.
+     * 
+     * @param time The time in ms the values were computed at
+     * @param names The metric names
+     * @param values The value of each metric, in the same order as the names
+     */
+    public MetricsSnapshot(long time, String[] names, double[] values) {
+        if (names.length != values.length)
+            throw new IllegalArgumentException("Mismatched metric names and values.");
+        this.time = time;
+        this.names = names;
+        this.values = values;
+        this.index = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++)
+            this.index.put(names[i], i);
+    }
+
+    /**
+     * The time in ms the values were computed at
+     */
+    public long time() {
+        return this.time;
+    }
+
+    /**
+     * The number of metrics
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+    public String name(int i) {
+        return this.names[i];
+    }
+
+    public double value(int i) {
+        return this.values[i];
+    }
+
+    /**
+     * The value of the metric with the given name, or NaN if there was no such metric when the snapshot was taken
+     */
+    public double value(String name) {
+        Integer i = this.index.get(name);
+        return i == null ? Double.NaN : this.values[i];
+    }
+
+    /**
+     * Does this snapshot have a value for the given metric?
+     */
+    public boolean contains(String name) {
+        return this.index.containsKey(name);
+    }
+
+    /**
+     * Write the snapshot in the Graphite plaintext format, one <code>name value timestamp</code> line per metric with
+     * the timestamp in seconds
+     */
+    public void writeTo(Writer writer) throws IOException {
+        long seconds = this.time / 1000;
+        for (int i = 0; i < this.names.length; i++) {
+            writer.write(this.names[i]);
+            writer.write(' ');
+            writer.write(Double.toString(this.values[i]));
+            writer.write(' ');
+            writer.write(Long.toString(seconds));
+            writer.write('\n');
+        }
+    }
+
+}
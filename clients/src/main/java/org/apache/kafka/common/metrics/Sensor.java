@@ -16,11 +16,13 @@
  */
 package org.apache.kafka.common.metrics;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.kafka.common.metrics.CompoundStat.NamedMeasurable;
 import org.apache.kafka.common.utils.Time;
@@ -31,9 +33,19 @@ import org.apache.kafka.common.utils.Utils;
  * A sensor applies a continuous sequence of numerical values to a set of associated metrics. For example a sensor on
  * message size would record a sequence of message sizes using the {@link #record(double)} api and would maintain a set
  * of metrics about request sizes such as the average or max.
+ * <p>
+ * A sensor whose configuration has more than one stripe records without taking the sensor lock: each of its stats is
+ * a {@link StripedStat} that spreads the recordings of concurrent threads over its stripes. Such a sensor checks its
+ * quotas at most once every {@link #QUOTA_CHECK_INTERVAL_NS} nanoseconds and rejects every recording in between if the
+ * last check found a violation.
  */
 public final class Sensor {
 
+    /**
+     * The minimum time between two quota checks of a striped sensor
+     */
+    public static final long QUOTA_CHECK_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final Metrics registry;
     private final String name;
     private final Sensor[] parents;
@@ -41,16 +53,20 @@ public final class Sensor {
     private final List<KafkaMetric> metrics;
     private final MetricConfig config;
     private final Time time;
+    private final AtomicLong nextQuotaCheck;
+    private volatile String quotaViolation;
 
     Sensor(Metrics registry, String name, Sensor[] parents, MetricConfig config, Time time) {
         super();
         this.registry = registry;
         this.name = Utils.notNull(name);
         this.parents = parents;
-        this.metrics = new ArrayList<KafkaMetric>();
-        this.stats = new ArrayList<Stat>();
+        this.metrics = new CopyOnWriteArrayList<KafkaMetric>();
+        this.stats = new CopyOnWriteArrayList<Stat>();
         this.config = config;
         this.time = time;
+        this.nextQuotaCheck = new AtomicLong(time.nanoseconds());
+        this.quotaViolation = null;
         checkForest(new HashSet<Sensor>());
     }
 
@@ -87,18 +103,39 @@ public final class Sensor {
     }
 
     private void record(double value, long time) {
-        synchronized (this) {
-            // increment all the stats
+        if (striped()) {
             for (int i = 0; i < this.stats.size(); i++)
                 this.stats.get(i).record(config, value, time);
-            checkQuotas(time);
-
+            checkQuotasPeriodically(time);
+        } else {
+            synchronized (this) {
+                // increment all the stats
+                for (int i = 0; i < this.stats.size(); i++)
+                    this.stats.get(i).record(config, value, time);
+                checkQuotas(time);
+            }
         }
         for (int i = 0; i < parents.length; i++)
             parents[i].record(value, time);
     }
 
     private void checkQuotas(long time) {
+        String violation = quotaViolation(time);
+        if (violation != null)
+            throw new QuotaViolationException(violation);
+    }
+
+    /* Only the thread that claims the next check measures the metrics, everyone else reuses the outcome of the last one */
+    private void checkQuotasPeriodically(long time) {
+        long due = this.nextQuotaCheck.get();
+        if (time - due >= 0 && this.nextQuotaCheck.compareAndSet(due, time + QUOTA_CHECK_INTERVAL_NS))
+            this.quotaViolation = quotaViolation(time);
+        String violation = this.quotaViolation;
+        if (violation != null)
+            throw new QuotaViolationException(violation);
+    }
+
+    private String quotaViolation(long time) {
         for (int i = 0; i < this.metrics.size(); i++) {
             KafkaMetric metric = this.metrics.get(i);
             MetricConfig config = metric.config();
@@ -106,9 +143,14 @@ public final class Sensor {
                 Quota quota = config.quota();
                 if (quota != null)
                     if (!quota.acceptable(metric.value(time)))
-                        throw new QuotaViolationException("Metric " + metric.name() + " is in violation of its quota of " + quota.bound());
+                        return "Metric " + metric.name() + " is in violation of its quota of " + quota.bound();
             }
         }
+        return null;
+    }
+
+    private boolean striped() {
+        return this.config.stripes() > 1;
     }
 
     /**
@@ -125,7 +167,8 @@ public final class Sensor {
      *        sensor.
      */
     public synchronized void add(CompoundStat stat, MetricConfig config) {
-        this.stats.add(Utils.notNull(stat));
+        stripe(Utils.notNull(stat));
+        this.stats.add(stat);
         for (NamedMeasurable m : stat.stats()) {
             KafkaMetric metric = new KafkaMetric(this, m.name(), m.description(), m.stat(), config == null ? this.config : config, time);
             this.registry.registerMetric(metric);
@@ -176,11 +219,22 @@ public final class Sensor {
                                              Utils.notNull(stat),
                                              config == null ? this.config : config,
                                              time);
+        stripe(stat);
         this.registry.registerMetric(metric);
         this.metrics.add(metric);
         this.stats.add(stat);
     }
 
+    /* Striped sensors can only record stats that can be striped */
+    private void stripe(Stat stat) {
+        if (!striped())
+            return;
+        if (!(stat instanceof StripedStat))
+            throw new IllegalArgumentException("Sensor " + name() + " is striped but " + stat.getClass().getSimpleName()
+                                               + " can't be striped.");
+        ((StripedStat) stat).stripe(this.config.stripes());
+    }
+
     synchronized List<KafkaMetric> metrics() {
         return Collections.unmodifiableList(this.metrics);
     }
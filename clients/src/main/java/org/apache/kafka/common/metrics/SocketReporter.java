@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.Configurable;
+import org.apache.kafka.common.config.ConfigException;
+
+
+/**
+ * Sends each metrics snapshot over a TCP connection in the Graphite plaintext format (see
+ * {@link MetricsSnapshot#writeTo(Writer)}), so it can be pointed directly at a Graphite server or any agent that speaks
+ * that format. If the connection fails the snapshot is dropped and the connection is retried with the next one.
+ * <p>
+ * When created from the <code>metric.reporters</code> setting the server is given by {@link #HOST_CONFIG} and
+ * {@link #PORT_CONFIG}.
+ */
+public class SocketReporter implements SnapshotReporter, Configurable {
+
+    /**
+     * The host to send snapshots to
+     */
+    public static final String HOST_CONFIG = "metric.reporter.socket.host";
+
+    /**
+     * The port to send snapshots to
+     */
+    public static final String PORT_CONFIG = "metric.reporter.socket.port";
+
+    /**
+     * How long to wait for the connection before dropping a snapshot, 5 seconds if not set
+     */
+    public static final String CONNECT_TIMEOUT_MS_CONFIG = "metric.reporter.socket.connect.timeout.ms";
+
+    private String host;
+    private int port;
+    private int connectTimeoutMs;
+    private Socket socket;
+    private Writer writer;
+
+    public SocketReporter() {}
+
+    public SocketReporter(String host, int port, int connectTimeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object host = configs.get(HOST_CONFIG);
+        if (host == null)
+            throw new ConfigException(HOST_CONFIG, null, "Must be set to use " + getClass().getName() + ".");
+        this.host = host.toString();
+        this.port = parseInt(configs, PORT_CONFIG, null);
+        this.connectTimeoutMs = parseInt(configs, CONNECT_TIMEOUT_MS_CONFIG, 5000);
+    }
+
+    private static int parseInt(Map<String, ?> configs, String key, Integer defaultValue) {
+        Object value = configs.get(key);
+        if (value == null) {
+            if (defaultValue == null)
+                throw new ConfigException(key, null, "Must be set to use " + SocketReporter.class.getName() + ".");
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigException(key, value, "Not a number of type INT");
+        }
+    }
+
+    @Override
+    public void init(List<KafkaMetric> metrics) {}
+
+    @Override
+    public void metricChange(KafkaMetric metric) {}
+
+    @Override
+    public synchronized void report(MetricsSnapshot snapshot) {
+        try {
+            if (this.socket == null) {
+                Socket socket = new Socket();
+                this.socket = socket;
+                socket.connect(new InetSocketAddress(this.host, this.port), this.connectTimeoutMs);
+                this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            }
+            snapshot.writeTo(this.writer);
+            this.writer.flush();
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private void disconnect() {
+        if (this.socket != null) {
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                /* we're done with it either way */
+            }
+        }
+        this.socket = null;
+        this.writer = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+
+}
@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics;
+
+/**
+ * A StripedStat is a {@link Stat} that can spread the values it records over several independently locked stripes and
+ * merge them when it is measured. This lets a sensor record from many threads at once without holding the sensor lock.
+ */
+public interface StripedStat extends Stat {
+
+    /**
+     * Spread all future recordings over the given number of stripes, chosen by the id of the recording thread. This
+     * must be called before anything is recorded.
+     * @param stripes The number of stripes
+     */
+    public void stripe(int stripes);
+
+}
@@ -154,4 +154,64 @@ public class Histogram {
         }
     }
 
+    /**
+     * A log-linear bin scheme: the range from min to max is divided into powers of two and each power of two is divided
+     * into 2^precisionBits equal sub-bins. Each bin therefore covers at most 1/2^precisionBits of the values in it and
+     * reporting its midpoint gives a relative error of at most 1/2^(precisionBits + 1), whatever the magnitude of the
+     * value. Values below min (and NaN) are reported as 0.0 and values beyond the bin of max as infinity.
+     */
+    public static class LogLinearBinScheme implements BinScheme {
+        private final double min;
+        private final double max;
+        private final int precisionBits;
+        private final int bins;
+
+        public LogLinearBinScheme(double min, double max, int precisionBits) {
+            if (min <= 0.0d || max <= min)
+                throw new IllegalArgumentException("Invalid range [" + min + "..." + max + "], min must be positive and less than max.");
+            if (precisionBits < 1 || precisionBits > 16)
+                throw new IllegalArgumentException("The precision must be between 1 and 16 bits.");
+            this.min = min;
+            this.max = max;
+            this.precisionBits = precisionBits;
+            this.bins = bin(max) + 2;
+        }
+
+        public int bins() {
+            return this.bins;
+        }
+
+        public double fromBin(int b) {
+            if (b == 0) {
+                return 0.0d;
+            } else if (b == this.bins - 1) {
+                return Double.POSITIVE_INFINITY;
+            } else {
+                int exponent = (b - 1) >> this.precisionBits;
+                int sub = (b - 1) & ((1 << this.precisionBits) - 1);
+                return Math.scalb(this.min, exponent) * (1.0d + (sub + 0.5d) / (1 << this.precisionBits));
+            }
+        }
+
+        public int toBin(double x) {
+            if (x < this.min || Double.isNaN(x))
+                return 0;
+            else if (x > this.max)
+                return Math.min(bin(x), this.bins - 1);
+            else
+                return bin(x);
+        }
+
+        private int bin(double x) {
+            double scaled = x / this.min;
+            int exponent = Math.getExponent(scaled);
+            if (exponent > Double.MAX_EXPONENT)
+                return Integer.MAX_VALUE;
+            // the leading bits of the mantissa select the sub-bin within the power of two
+            long mantissa = Double.doubleToRawLongBits(scaled) & 0x000fffffffffffffL;
+            int sub = (int) (mantissa >>> (52 - this.precisionBits));
+            return (exponent << this.precisionBits) + sub + 1;
+        }
+    }
+
 }
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics.stats;
+
+import java.util.Arrays;
+
+import org.apache.kafka.common.metrics.stats.Histogram.LogLinearBinScheme;
+
+/**
+ * A histogram over a {@link LogLinearBinScheme} that keeps exact counts. Recording a value doesn't allocate and two
+ * histograms over the same bin scheme can be merged by adding their counts.
+ * <p>
+ * This class is not thread safe.
+ */
+public class LogLinearHistogram {
+
+    private final LogLinearBinScheme binScheme;
+    private final long[] counts;
+    private long count;
+
+    public LogLinearHistogram(LogLinearBinScheme binScheme) {
+        this.binScheme = binScheme;
+        this.counts = new long[binScheme.bins()];
+        this.count = 0L;
+    }
+
+    public void record(double value) {
+        this.counts[this.binScheme.toBin(value)]++;
+        this.count++;
+    }
+
+    /**
+     * Add the counts of the given histogram to this one
+     * @param other A histogram over the same bin scheme
+     */
+    public void add(LogLinearHistogram other) {
+        if (other.counts.length != this.counts.length)
+            throw new IllegalArgumentException("Can't merge histograms with " + other.counts.length + " and " + this.counts.length
+                                               + " bins.");
+        for (int i = 0; i < this.counts.length; i++)
+            this.counts[i] += other.counts[i];
+        this.count += other.count;
+    }
+
+    /**
+     * The smallest value such that at least the given fraction of the recorded values are at or below it, up to the
+     * resolution of the bin scheme. NaN if nothing has been recorded.
+     * @param quantile The fraction, between 0.0 and 1.0
+     */
+    public double value(double quantile) {
+        if (this.count == 0L)
+            return Double.NaN;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * this.count));
+        long sum = 0L;
+        for (int i = 0; i < this.counts.length; i++) {
+            sum += this.counts[i];
+            if (sum >= rank)
+                return this.binScheme.fromBin(i);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    public long count() {
+        return this.count;
+    }
+
+    public long[] counts() {
+        return this.counts;
+    }
+
+    public LogLinearBinScheme binScheme() {
+        return this.binScheme;
+    }
+
+    public void clear() {
+        Arrays.fill(this.counts, 0L);
+        this.count = 0L;
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.metrics.CompoundStat;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.stats.Histogram.LogLinearBinScheme;
+
+
+/**
+ * A compound stat that reports one or more percentiles of values, such as latencies, that span several orders of
+ * magnitude. Each sample keeps a {@link LogLinearHistogram}, so every percentile is accurate to a bounded relative
+ * error over the whole range between min and max and the samples are merged by adding up their exact counts.
+ */
+public class LogLinearPercentiles extends SampledStat implements CompoundStat {
+
+    private final LogLinearBinScheme binScheme;
+    private final Percentile[] percentiles;
+    private final LogLinearHistogram merged;
+
+    /**
+     * Create a new stat
+     * @param min The smallest value to distinguish, smaller values are reported as 0.0
+     * @param max The largest value to distinguish, larger values are reported as infinity
+     * @param precisionBits The relative error of each percentile is at most 1/2^(precisionBits + 1)
+     * @param percentiles The percentiles to report
+     */
+    public LogLinearPercentiles(double min, double max, int precisionBits, Percentile... percentiles) {
+        super(0.0);
+        this.binScheme = new LogLinearBinScheme(min, max, precisionBits);
+        this.percentiles = percentiles;
+        this.merged = new LogLinearHistogram(this.binScheme);
+    }
+
+    @Override
+    public List<NamedMeasurable> stats() {
+        List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(this.percentiles.length);
+        for (Percentile percentile : this.percentiles) {
+            final double pct = percentile.percentile();
+            ms.add(new NamedMeasurable(percentile.name(), percentile.description(), new Measurable() {
+                public double measure(MetricConfig config, long now) {
+                    return value(config, now, pct / 100.0);
+                }
+            }));
+        }
+        return ms;
+    }
+
+    public double value(MetricConfig config, long now, double quantile) {
+        List<Sample> samples = lockSamples(config, now);
+        try {
+            return value(samples, quantile);
+        } finally {
+            unlockSamples();
+        }
+    }
+
+    /**
+     * A copy of the histogram over all the current samples, e.g. to merge with the histograms of other sensors
+     */
+    public LogLinearHistogram histogram(MetricConfig config, long now) {
+        LogLinearHistogram histogram = new LogLinearHistogram(this.binScheme);
+        List<Sample> samples = lockSamples(config, now);
+        try {
+            for (int i = 0; i < samples.size(); i++)
+                histogram.add(((HistogramSample) samples.get(i)).histogram);
+        } finally {
+            unlockSamples();
+        }
+        return histogram;
+    }
+
+    private double value(List<Sample> samples, double quantile) {
+        // quota checks of striped sensors measure without the sensor lock
+        synchronized (this.merged) {
+            this.merged.clear();
+            for (int i = 0; i < samples.size(); i++)
+                this.merged.add(((HistogramSample) samples.get(i)).histogram);
+            return this.merged.value(quantile);
+        }
+    }
+
+    public double combine(List<Sample> samples, MetricConfig config, long now) {
+        return value(samples, 0.5);
+    }
+
+    @Override
+    protected HistogramSample newSample(long now) {
+        return new HistogramSample(this.binScheme, now);
+    }
+
+    @Override
+    protected void update(Sample sample, MetricConfig config, double value, long now) {
+        ((HistogramSample) sample).histogram.record(value);
+    }
+
+    private static class HistogramSample extends SampledStat.Sample {
+        private final LogLinearHistogram histogram;
+
+        private HistogramSample(LogLinearBinScheme scheme, long now) {
+            super(0.0, now);
+            this.histogram = new LogLinearHistogram(scheme);
+        }
+
+        @Override
+        public void reset(long now) {
+            super.reset(now);
+            this.histogram.clear();
+        }
+    }
+
+}
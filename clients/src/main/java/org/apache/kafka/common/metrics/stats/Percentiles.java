@@ -74,17 +74,25 @@ public class Percentiles extends SampledStat implements CompoundStat {
     }
 
     public double value(MetricConfig config, long now, double quantile) {
-        timeoutObsoleteSamples(config, now);
+        List<Sample> samples = lockSamples(config, now);
+        try {
+            return value(samples, quantile);
+        } finally {
+            unlockSamples();
+        }
+    }
+
+    private double value(List<Sample> samples, double quantile) {
         float count = 0.0f;
-        for (Sample sample : this.samples)
+        for (Sample sample : samples)
             count += sample.eventCount;
         if (count == 0.0f)
             return Double.NaN;
         float sum = 0.0f;
         float quant = (float) quantile;
         for (int b = 0; b < buckets; b++) {
-            for (int s = 0; s < this.samples.size(); s++) {
-                HistogramSample sample = (HistogramSample) this.samples.get(s);
+            for (int s = 0; s < samples.size(); s++) {
+                HistogramSample sample = (HistogramSample) samples.get(s);
                 float[] hist = sample.histogram.counts();
                 sum += hist[b];
                 if (sum / count > quant)
@@ -95,7 +103,7 @@ public class Percentiles extends SampledStat implements CompoundStat {
     }
 
     public double combine(List<Sample> samples, MetricConfig config, long now) {
-        return value(config, now, 0.5);
+        return value(samples, 0.5);
     }
 
     @Override
@@ -21,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.common.metrics.MeasurableStat;
 import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.StripedStat;
 
 
 /**
@@ -29,7 +30,7 @@ import org.apache.kafka.common.metrics.MetricConfig;
  * provided, however, to record the rate of occurences (e.g. the count of values measured over the time interval) or
  * other such values.
  */
-public class Rate implements MeasurableStat {
+public class Rate implements MeasurableStat, StripedStat {
 
     private final TimeUnit unit;
     private final SampledStat stat;
@@ -51,6 +52,11 @@ public class Rate implements MeasurableStat {
         return unit.name().substring(0, unit.name().length() - 2).toLowerCase();
     }
 
+    @Override
+    public void stripe(int stripes) {
+        this.stat.stripe(stripes);
+    }
+
     @Override
     public void record(MetricConfig config, double value, long time) {
         this.stat.record(config, value, time);
@@ -58,10 +64,17 @@ public class Rate implements MeasurableStat {
 
     @Override
     public double measure(MetricConfig config, long now) {
-        double ellapsed = convert(now - stat.oldest().lastWindow);
+        double ellapsed = convert(windowSize(config, now));
         return stat.measure(config, now) / ellapsed;
     }
 
+    /**
+     * The time in nanoseconds covered by the samples this rate is currently computed over
+     */
+    public long windowSize(MetricConfig config, long now) {
+        return now - stat.oldest(now).lastWindow;
+    }
+
     private double convert(long time) {
         switch (unit) {
             case NANOSECONDS:
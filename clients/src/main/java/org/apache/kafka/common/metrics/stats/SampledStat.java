@@ -18,9 +18,11 @@ package org.apache.kafka.common.metrics.stats;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.kafka.common.metrics.MeasurableStat;
 import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.StripedStat;
 
 
 /**
@@ -30,39 +32,44 @@ import org.apache.kafka.common.metrics.MetricConfig;
  * <p>
  * All the samples are combined to produce the measurement. When a window is complete the oldest sample is cleared and
  * recycled to begin recording the next sample.
+ * <p>
+ * A striped stat keeps a separate set of samples for each stripe, each guarded by its own lock, and combines the samples
+ * of all the stripes to produce the measurement. The event window then applies to each stripe separately.
  * 
  * Subclasses of this class define different statistics measured using this basic pattern.
  */
-public abstract class SampledStat implements MeasurableStat {
+public abstract class SampledStat implements MeasurableStat, StripedStat {
 
     private double initialValue;
-    private int current = 0;
-    protected List<Sample> samples;
+    private Stripe[] stripes;
 
     public SampledStat(double initialValue) {
         this.initialValue = initialValue;
-        this.samples = new ArrayList<Sample>(2);
+        this.stripes = new Stripe[] { new Stripe() };
     }
 
     @Override
-    public void record(MetricConfig config, double value, long now) {
-        Sample sample = current(now);
-        if (sample.isComplete(now, config))
-            sample = advance(config, now);
-        update(sample, config, value, now);
-        sample.eventCount += 1;
+    public void stripe(int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("The number of stripes must be at least 1.");
+        Stripe[] striped = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++)
+            striped[i] = new Stripe();
+        this.stripes = striped;
     }
 
-    private Sample advance(MetricConfig config, long now) {
-        this.current = (this.current + 1) % config.samples();
-        if (this.current >= samples.size()) {
-            Sample sample = newSample(now);
-            this.samples.add(sample);
-            return sample;
+    @Override
+    public void record(MetricConfig config, double value, long now) {
+        Stripe stripe = stripe();
+        if (this.stripes.length == 1) {
+            stripe.record(config, value, now);
         } else {
-            Sample sample = current(now);
-            sample.reset(now);
-            return sample;
+            stripe.lock.lock();
+            try {
+                stripe.record(config, value, now);
+            } finally {
+                stripe.lock.unlock();
+            }
         }
     }
 
@@ -72,31 +79,131 @@ public abstract class SampledStat implements MeasurableStat {
 
     @Override
     public double measure(MetricConfig config, long now) {
-        timeoutObsoleteSamples(config, now);
-        return combine(this.samples, config, now);
+        List<Sample> samples = lockSamples(config, now);
+        try {
+            return combine(samples, config, now);
+        } finally {
+            unlockSamples();
+        }
     }
 
+    /**
+     * The current sample of the stripe of the calling thread
+     */
     public Sample current(long now) {
-        if (samples.size() == 0)
-            this.samples.add(newSample(now));
-        return this.samples.get(this.current);
+        return stripe().current(now);
     }
 
-    public Sample oldest() {
-        return this.samples.get((this.current + 1) % this.samples.size());
+    /**
+     * The oldest sample over all the stripes
+     */
+    public Sample oldest(long now) {
+        if (this.stripes.length == 1)
+            return this.stripes[0].oldest(now);
+        Sample oldest = null;
+        for (int i = 0; i < this.stripes.length; i++) {
+            Stripe stripe = this.stripes[i];
+            stripe.lock.lock();
+            try {
+                if (!stripe.samples.isEmpty()) {
+                    Sample sample = stripe.oldest(now);
+                    if (oldest == null || sample.lastWindow < oldest.lastWindow)
+                        oldest = sample;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return oldest == null ? current(now) : oldest;
     }
 
     protected abstract void update(Sample sample, MetricConfig config, double value, long now);
 
     public abstract double combine(List<Sample> samples, MetricConfig config, long now);
 
-    /* Timeout any windows that have expired in the absense of any events */
-    protected void timeoutObsoleteSamples(MetricConfig config, long now) {
-        for (int i = 0; i < samples.size(); i++) {
-            int idx = (this.current + i) % samples.size();
-            Sample sample = this.samples.get(idx);
-            if (now - sample.lastWindow >= (i + 1) * config.timeWindowNs())
+    /**
+     * Timeout any obsolete samples and return the samples of all the stripes. If the stat is striped every stripe stays
+     * locked until {@link #unlockSamples()} is called, so the samples must not be used after that.
+     */
+    protected List<Sample> lockSamples(MetricConfig config, long now) {
+        if (this.stripes.length == 1) {
+            this.stripes[0].timeoutObsoleteSamples(config, now);
+            return this.stripes[0].samples;
+        }
+        List<Sample> samples = new ArrayList<Sample>(this.stripes.length * config.samples());
+        // recording threads only ever hold the lock of a single stripe so taking them all in order can't deadlock
+        for (int i = 0; i < this.stripes.length; i++) {
+            Stripe stripe = this.stripes[i];
+            stripe.lock.lock();
+            stripe.timeoutObsoleteSamples(config, now);
+            samples.addAll(stripe.samples);
+        }
+        return samples;
+    }
+
+    /**
+     * Release the stripes locked by {@link #lockSamples(MetricConfig, long)}
+     */
+    protected void unlockSamples() {
+        if (this.stripes.length > 1)
+            for (int i = 0; i < this.stripes.length; i++)
+                this.stripes[i].lock.unlock();
+    }
+
+    private Stripe stripe() {
+        Stripe[] stripes = this.stripes;
+        if (stripes.length == 1)
+            return stripes[0];
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    /* The samples recorded by one stripe */
+    private final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<Sample> samples = new ArrayList<Sample>(2);
+        private int current = 0;
+
+        public void record(MetricConfig config, double value, long now) {
+            Sample sample = current(now);
+            if (sample.isComplete(now, config))
+                sample = advance(config, now);
+            update(sample, config, value, now);
+            sample.eventCount += 1;
+        }
+
+        private Sample advance(MetricConfig config, long now) {
+            this.current = (this.current + 1) % config.samples();
+            if (this.current >= samples.size()) {
+                Sample sample = newSample(now);
+                this.samples.add(sample);
+                return sample;
+            } else {
+                Sample sample = current(now);
                 sample.reset(now);
+                return sample;
+            }
+        }
+
+        public Sample current(long now) {
+            if (samples.size() == 0)
+                this.samples.add(newSample(now));
+            return this.samples.get(this.current);
+        }
+
+        public Sample oldest(long now) {
+            if (samples.size() == 0)
+                return current(now);
+            return this.samples.get((this.current + 1) % this.samples.size());
+        }
+
+        /* Timeout any windows that have expired in the absense of any events */
+        public void timeoutObsoleteSamples(MetricConfig config, long now) {
+            for (int i = 0; i < samples.size(); i++) {
+                int idx = (this.current + i) % samples.size();
+                Sample sample = this.samples.get(idx);
+                if (now - sample.lastWindow >= (i + 1) * config.timeWindowNs())
+                    sample.reset(now);
+            }
         }
     }
 
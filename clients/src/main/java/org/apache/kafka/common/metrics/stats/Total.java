@@ -18,30 +18,64 @@ package org.apache.kafka.common.metrics.stats;
 
 import org.apache.kafka.common.metrics.MeasurableStat;
 import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.StripedStat;
 
 /**
- * An un-windowed cumulative total maintained over all time.
+ * An un-windowed cumulative total maintained over all time. A striped total keeps a separate sum for each stripe.
  */
-public class Total implements MeasurableStat {
+public class Total implements MeasurableStat, StripedStat {
 
     private double total;
+    private Cell[] cells;
 
     public Total() {
-        this.total = 0.0;
+        this(0.0);
     }
 
     public Total(double value) {
         this.total = value;
+        this.cells = null;
+    }
+
+    @Override
+    public void stripe(int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("The number of stripes must be at least 1.");
+        Cell[] cells = new Cell[stripes];
+        for (int i = 0; i < stripes; i++)
+            cells[i] = new Cell();
+        this.cells = cells;
     }
 
     @Override
     public void record(MetricConfig config, double value, long time) {
-        this.total += value;
+        Cell[] cells = this.cells;
+        if (cells == null) {
+            this.total += value;
+        } else {
+            Cell cell = cells[(int) (Thread.currentThread().getId() % cells.length)];
+            synchronized (cell) {
+                cell.value += value;
+            }
+        }
     }
 
     @Override
     public double measure(MetricConfig config, long now) {
-        return this.total;
+        Cell[] cells = this.cells;
+        double total = this.total;
+        if (cells != null) {
+            for (int i = 0; i < cells.length; i++) {
+                synchronized (cells[i]) {
+                    total += cells[i].value;
+                }
+            }
+        }
+        return total;
+    }
+
+    private static final class Cell {
+        private double value = 0.0;
     }
 
 }
@@ -29,8 +29,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Count;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.utils.SystemTime;
+import org.apache.kafka.common.utils.Time;
 
 
 /**
@@ -58,6 +66,10 @@ import org.apache.kafka.common.KafkaException;
  * 
  * The selector maintains several lists that are reset by each call to <code>poll()</code> which are available via
  * various getters. These are reset by each call to <code>poll()</code>.
+ * <p>
+ * The selector records the bytes sent and received over each connection and in total, the rate at which connections
+ * are created and closed, and how much of its time is spent blocked in select versus doing I/O. Comparing the I/O wait
+ * ratio with the I/O ratio shows whether the client is waiting on the network or the network is waiting on the client.
  * 
  * This class is not thread safe!
  */
@@ -69,11 +81,30 @@ public class Selector implements Selectable {
     private final List<NetworkReceive> completedReceives;
     private final List<Integer> disconnected;
     private final List<Integer> connected;
+    private final Metrics metrics;
+    private final Time time;
+    private final Sensor connectionsCreated;
+    private final Sensor connectionsClosed;
+    private final Sensor bytesSent;
+    private final Sensor bytesReceived;
+    private final Sensor selectTime;
+    private final Sensor ioTime;
+    private final Map<Integer, Sensor[]> nodeSensors;
 
     /**
-     * Create a new selector
+     * Create a new selector whose metrics aren't reported anywhere
      */
     public Selector() {
+        this(new Metrics(), new SystemTime());
+    }
+
+    /**
+     * Create a new selector
+     * 
+     * @param metrics The metrics registry to record connection and I/O statistics with
+     * @param time The time instance used to measure select and I/O time
+     */
+    public Selector(Metrics metrics, Time time) {
         try {
             this.selector = java.nio.channels.Selector.open();
         } catch (IOException e) {
@@ -84,6 +115,52 @@ public class Selector implements Selectable {
         this.completedReceives = new ArrayList<NetworkReceive>();
         this.connected = new ArrayList<Integer>();
         this.disconnected = new ArrayList<Integer>();
+        this.metrics = metrics;
+        this.time = time;
+        this.connectionsCreated = metrics.sensor("connections_created");
+        this.connectionsClosed = metrics.sensor("connections_closed");
+        this.bytesSent = metrics.sensor("bytes_sent");
+        this.bytesReceived = metrics.sensor("bytes_received");
+        this.selectTime = metrics.sensor("select_time");
+        this.ioTime = metrics.sensor("io_time");
+        this.nodeSensors = new HashMap<Integer, Sensor[]>();
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        this.connectionsCreated.add("connection_creation_rate",
+                                    "The number of new connections established per second",
+                                    new Rate(TimeUnit.SECONDS, new Count()));
+        this.connectionsClosed.add("connection_close_rate",
+                                   "The number of connections closed per second",
+                                   new Rate(TimeUnit.SECONDS, new Count()));
+        this.bytesSent.add("bytes_sent_rate", "The bytes per second sent over all connections", new Rate());
+        this.bytesReceived.add("bytes_received_rate", "The bytes per second received over all connections", new Rate());
+        this.selectTime.add("io_wait_time_ns_avg",
+                            "The average time in ns a poll spent blocked in select waiting for I/O",
+                            new Avg());
+        this.selectTime.add("io_wait_ratio",
+                            "The fraction of time spent blocked in select waiting for I/O",
+                            new Rate(TimeUnit.NANOSECONDS));
+        this.ioTime.add("io_time_ns_avg", "The average time in ns a poll spent doing I/O on the ready connections", new Avg());
+        this.ioTime.add("io_ratio", "The fraction of time spent doing I/O on the ready connections", new Rate(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * The byte count sensors of the given node, whose values are also recorded by the aggregate sensors
+     */
+    private Sensor[] nodeSensors(int id) {
+        Sensor[] sensors = this.nodeSensors.get(id);
+        if (sensors == null) {
+            String prefix = "node." + id;
+            Sensor sent = this.metrics.sensor(prefix + ".bytes_sent", this.bytesSent);
+            sent.add(prefix + ".bytes_sent_rate", "The bytes per second sent to this node", new Rate());
+            Sensor received = this.metrics.sensor(prefix + ".bytes_received", this.bytesReceived);
+            received.add(prefix + ".bytes_received_rate", "The bytes per second received from this node", new Rate());
+            sensors = new Sensor[] { sent, received };
+            this.nodeSensors.put(id, sensors);
+        }
+        return sensors;
     }
 
     /**
@@ -115,7 +192,8 @@ public class Selector implements Selectable {
             throw e;
         }
         SelectionKey key = channel.register(this.selector, SelectionKey.OP_CONNECT);
-        key.attach(new Transmissions(id));
+        Sensor[] sensors = nodeSensors(id);
+        key.attach(new Transmissions(id, sensors[0], sensors[1]));
         if (this.keys.containsKey(key))
             throw new IllegalStateException("There is already a connection for id " + id);
         this.keys.put(id, key);
@@ -195,7 +273,10 @@ public class Selector implements Selectable {
         }
 
         /* check ready keys */
+        long startSelect = time.nanoseconds();
         int readyKeys = select(timeout);
+        long endSelect = time.nanoseconds();
+        this.selectTime.record(endSelect - startSelect);
         if (readyKeys > 0) {
             Set<SelectionKey> keys = this.selector.selectedKeys();
             Iterator<SelectionKey> iter = keys.iterator();
@@ -213,13 +294,14 @@ public class Selector implements Selectable {
                         channel.finishConnect();
                         key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT | SelectionKey.OP_READ);
                         this.connected.add(transmissions.id);
+                        this.connectionsCreated.record();
                     }
 
                     /* read from any connections that have readable data */
                     if (key.isReadable()) {
                         if (!transmissions.hasReceive())
                             transmissions.receive = new NetworkReceive(transmissions.id);
-                        transmissions.receive.readFrom(channel);
+                        transmissions.bytesReceived.record(transmissions.receive.readFrom(channel));
                         if (transmissions.receive.complete()) {
                             transmissions.receive.payload().rewind();
                             this.completedReceives.add(transmissions.receive);
@@ -231,7 +313,7 @@ public class Selector implements Selectable {
                      * write to any sockets that have space in their buffer and for which we have data
                      */
                     if (key.isWritable()) {
-                        transmissions.send.writeTo(channel);
+                        transmissions.bytesSent.record(transmissions.send.writeTo(channel));
                         if (transmissions.send.remaining() <= 0) {
                             this.completedSends.add(transmissions.send);
                             transmissions.clearSend();
@@ -247,6 +329,7 @@ public class Selector implements Selectable {
                     close(key);
                 }
             }
+            this.ioTime.record(time.nanoseconds() - endSelect);
         }
     }
 
@@ -302,8 +385,10 @@ public class Selector implements Selectable {
     private void close(SelectionKey key) throws IOException {
         SocketChannel channel = channel(key);
         Transmissions trans = transmissions(key);
-        if (trans != null)
+        if (trans != null) {
             this.disconnected.add(trans.id);
+            this.connectionsClosed.record();
+        }
         key.attach(null);
         key.cancel();
         channel.socket().close();
@@ -335,15 +420,19 @@ public class Selector implements Selectable {
     }
 
     /**
-     * The id and in-progress send and receive associated with a connection
+     * The id, in-progress send and receive, and byte count sensors associated with a connection
      */
     private static class Transmissions {
         public int id;
         public NetworkSend send;
         public NetworkReceive receive;
+        public final Sensor bytesSent;
+        public final Sensor bytesReceived;
 
-        public Transmissions(int id) {
+        public Transmissions(int id, Sensor bytesSent, Sensor bytesReceived) {
             this.id = id;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
         }
 
         public boolean hasSend() {
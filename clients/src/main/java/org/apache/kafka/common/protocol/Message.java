@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Anything that can be serialized as a request or response in the Kafka protocol, whether a generic
+ * {@link org.apache.kafka.common.protocol.types.Struct Struct} or one of the type-specialized codecs in
+ * {@link org.apache.kafka.common.requests}
+ */
+public interface Message {
+
+    /**
+     * The size of this message in bytes when serialized
+     */
+    public int sizeOf();
+
+    /**
+     * Write this message to the buffer
+     */
+    public void writeTo(ByteBuffer buffer);
+
+}
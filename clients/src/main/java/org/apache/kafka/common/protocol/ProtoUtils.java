@@ -16,6 +16,20 @@
  */
 package org.apache.kafka.common.protocol;
 
+import static org.apache.kafka.common.protocol.Protocol.BROKER_HOST;
+import static org.apache.kafka.common.protocol.Protocol.BROKER_NODE_ID;
+import static org.apache.kafka.common.protocol.Protocol.BROKER_PORT;
+import static org.apache.kafka.common.protocol.Protocol.METADATA_RESPONSE_BROKERS;
+import static org.apache.kafka.common.protocol.Protocol.METADATA_RESPONSE_TOPIC_METADATA;
+import static org.apache.kafka.common.protocol.Protocol.PARTITION_METADATA_ERROR_CODE;
+import static org.apache.kafka.common.protocol.Protocol.PARTITION_METADATA_ISR;
+import static org.apache.kafka.common.protocol.Protocol.PARTITION_METADATA_LEADER;
+import static org.apache.kafka.common.protocol.Protocol.PARTITION_METADATA_PARTITION_ID;
+import static org.apache.kafka.common.protocol.Protocol.PARTITION_METADATA_REPLICAS;
+import static org.apache.kafka.common.protocol.Protocol.TOPIC_METADATA_ERROR_CODE;
+import static org.apache.kafka.common.protocol.Protocol.TOPIC_METADATA_PARTITION_METADATA;
+import static org.apache.kafka.common.protocol.Protocol.TOPIC_METADATA_TOPIC;
+
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,10 +46,10 @@ import org.apache.kafka.common.protocol.types.Struct;
 public class ProtoUtils {
 
     private static Schema schemaFor(Schema[][] schemas, int apiKey, int version) {
-        if (apiKey < 0 || apiKey > schemas.length)
+        if (apiKey < 0 || apiKey >= schemas.length)
             throw new IllegalArgumentException("Invalid api key: " + apiKey);
         Schema[] versions = schemas[apiKey];
-        if (version < 0 || version > versions.length)
+        if (version < 0 || version >= versions.length)
             throw new IllegalArgumentException("Invalid version for API key " + apiKey + ": " + version);
         return versions[version];
     }
@@ -72,34 +86,34 @@ public class ProtoUtils {
 
     public static Cluster parseMetadataResponse(Struct response) {
         Map<Integer, Node> brokers = new HashMap<Integer, Node>();
-        Object[] brokerStructs = (Object[]) response.get("brokers");
+        Object[] brokerStructs = response.getArray(METADATA_RESPONSE_BROKERS.index());
         for (int i = 0; i < brokerStructs.length; i++) {
             Struct broker = (Struct) brokerStructs[i];
-            int nodeId = (Integer) broker.get("node_id");
-            String host = (String) broker.get("host");
-            int port = (Integer) broker.get("port");
+            int nodeId = broker.getInt(BROKER_NODE_ID.index());
+            String host = broker.getString(BROKER_HOST.index());
+            int port = broker.getInt(BROKER_PORT.index());
             brokers.put(nodeId, new Node(nodeId, host, port));
         }
         List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
-        Object[] topicInfos = (Object[]) response.get("topic_metadata");
+        Object[] topicInfos = response.getArray(METADATA_RESPONSE_TOPIC_METADATA.index());
         for (int i = 0; i < topicInfos.length; i++) {
             Struct topicInfo = (Struct) topicInfos[i];
-            short topicError = topicInfo.getShort("topic_error_code");
+            short topicError = topicInfo.getShort(TOPIC_METADATA_ERROR_CODE.index());
             if (topicError == Errors.NONE.code()) {
-                String topic = topicInfo.getString("topic");
-                Object[] partitionInfos = (Object[]) topicInfo.get("partition_metadata");
+                String topic = topicInfo.getString(TOPIC_METADATA_TOPIC.index());
+                Object[] partitionInfos = topicInfo.getArray(TOPIC_METADATA_PARTITION_METADATA.index());
                 for (int j = 0; j < partitionInfos.length; j++) {
                     Struct partitionInfo = (Struct) partitionInfos[j];
-                    short partError = partitionInfo.getShort("partition_error_code");
+                    short partError = partitionInfo.getShort(PARTITION_METADATA_ERROR_CODE.index());
                     if (partError == Errors.NONE.code()) {
-                        int partition = partitionInfo.getInt("partition_id");
-                        int leader = partitionInfo.getInt("leader");
+                        int partition = partitionInfo.getInt(PARTITION_METADATA_PARTITION_ID.index());
+                        int leader = partitionInfo.getInt(PARTITION_METADATA_LEADER.index());
                         Node leaderNode = leader == -1 ? null : brokers.get(leader);
-                        Object[] replicas = (Object[]) partitionInfo.get("replicas");
+                        Object[] replicas = partitionInfo.getArray(PARTITION_METADATA_REPLICAS.index());
                         Node[] replicaNodes = new Node[replicas.length];
                         for (int k = 0; k < replicas.length; k++)
                             replicaNodes[k] = brokers.get(replicas[k]);
-                        Object[] isr = (Object[]) partitionInfo.get("isr");
+                        Object[] isr = partitionInfo.getArray(PARTITION_METADATA_ISR.index());
                         Node[] isrNodes = new Node[isr.length];
                         for (int k = 0; k < isr.length; k++)
                             isrNodes[k] = brokers.get(isr[k]);
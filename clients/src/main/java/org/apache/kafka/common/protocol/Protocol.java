@@ -26,6 +26,12 @@ import org.apache.kafka.common.protocol.types.ArrayOf;
 import org.apache.kafka.common.protocol.types.Field;
 import org.apache.kafka.common.protocol.types.Schema;
 
+/**
+ * The schemas of all the requests and responses in the Kafka protocol.
+ * <p>
+ * Each field of each schema is also exposed as a static {@link Field} handle. Accessing a {@link org.apache.kafka.common.protocol.types.Struct Struct} through a
+ * handle, or through the handle's index in trusted code, avoids looking the field up by name.
+ */
 public class Protocol {
 
     public static Schema REQUEST_HEADER = new Schema(new Field("api_key", INT16, "The id of the request type."),
@@ -41,6 +47,13 @@ public class Protocol {
                                                                 INT32,
                                                                 "The user-supplied value passed in with the request"));
 
+    public static final Field REQUEST_HEADER_API_KEY = REQUEST_HEADER.get("api_key");
+    public static final Field REQUEST_HEADER_API_VERSION = REQUEST_HEADER.get("api_version");
+    public static final Field REQUEST_HEADER_CORRELATION_ID = REQUEST_HEADER.get("correlation_id");
+    public static final Field REQUEST_HEADER_CLIENT_ID = REQUEST_HEADER.get("client_id");
+
+    public static final Field RESPONSE_HEADER_CORRELATION_ID = RESPONSE_HEADER.get("correlation_id");
+
     /* Metadata api */
 
     public static Schema METADATA_REQUEST_V0 = new Schema(new Field("topics",
@@ -79,11 +92,31 @@ public class Protocol {
     public static Schema[] METADATA_REQUEST = new Schema[] { METADATA_REQUEST_V0 };
     public static Schema[] METADATA_RESPONSE = new Schema[] { METADATA_RESPONSE_V0 };
 
+    public static final Field METADATA_REQUEST_TOPICS = METADATA_REQUEST_V0.get("topics");
+
+    public static final Field BROKER_NODE_ID = BROKER.get("node_id");
+    public static final Field BROKER_HOST = BROKER.get("host");
+    public static final Field BROKER_PORT = BROKER.get("port");
+
+    public static final Field PARTITION_METADATA_ERROR_CODE = PARTITION_METADATA_V0.get("partition_error_code");
+    public static final Field PARTITION_METADATA_PARTITION_ID = PARTITION_METADATA_V0.get("partition_id");
+    public static final Field PARTITION_METADATA_LEADER = PARTITION_METADATA_V0.get("leader");
+    public static final Field PARTITION_METADATA_REPLICAS = PARTITION_METADATA_V0.get("replicas");
+    public static final Field PARTITION_METADATA_ISR = PARTITION_METADATA_V0.get("isr");
+
+    public static final Field TOPIC_METADATA_ERROR_CODE = TOPIC_METADATA_V0.get("topic_error_code");
+    public static final Field TOPIC_METADATA_TOPIC = TOPIC_METADATA_V0.get("topic");
+    public static final Field TOPIC_METADATA_PARTITION_METADATA = TOPIC_METADATA_V0.get("partition_metadata");
+
+    public static final Field METADATA_RESPONSE_BROKERS = METADATA_RESPONSE_V0.get("brokers");
+    public static final Field METADATA_RESPONSE_TOPIC_METADATA = METADATA_RESPONSE_V0.get("topic_metadata");
+
     /* Produce api */
 
+    public static Schema PARTITION_PRODUCE_DATA_V0 = new Schema(new Field("partition", INT32), new Field("record_set", BYTES));
+
     public static Schema TOPIC_PRODUCE_DATA_V0 = new Schema(new Field("topic", STRING),
-                                                            new Field("data", new ArrayOf(new Schema(new Field("partition", INT32),
-                                                                                                     new Field("record_set", BYTES)))));
+                                                            new Field("data", new ArrayOf(PARTITION_PRODUCE_DATA_V0)));
 
     public static Schema PRODUCE_REQUEST_V0 = new Schema(new Field("acks",
                                                                    INT16,
@@ -91,19 +124,255 @@ public class Protocol {
                                                          new Field("timeout", INT32, "The time to await a response in ms."),
                                                          new Field("topic_data", new ArrayOf(TOPIC_PRODUCE_DATA_V0)));
 
-    public static Schema PRODUCE_RESPONSE_V0 = new Schema(new Field("responses",
-                                                                    new ArrayOf(new Schema(new Field("topic", STRING),
-                                                                                           new Field("partition_responses",
-                                                                                                     new ArrayOf(new Schema(new Field("partition",
-                                                                                                                                      INT32),
-                                                                                                                            new Field("error_code",
-                                                                                                                                      INT16),
-                                                                                                                            new Field("base_offset",
-                                                                                                                                      INT64))))))));
+    public static Schema PARTITION_PRODUCE_RESPONSE_V0 = new Schema(new Field("partition", INT32),
+                                                                    new Field("error_code", INT16),
+                                                                    new Field("base_offset", INT64));
+
+    public static Schema TOPIC_PRODUCE_RESPONSE_V0 = new Schema(new Field("topic", STRING),
+                                                                new Field("partition_responses", new ArrayOf(PARTITION_PRODUCE_RESPONSE_V0)));
+
+    public static Schema PRODUCE_RESPONSE_V0 = new Schema(new Field("responses", new ArrayOf(TOPIC_PRODUCE_RESPONSE_V0)));
 
     public static Schema[] PRODUCE_REQUEST = new Schema[] { PRODUCE_REQUEST_V0 };
     public static Schema[] PRODUCE_RESPONSE = new Schema[] { PRODUCE_RESPONSE_V0 };
 
+    public static final Field PARTITION_PRODUCE_DATA_PARTITION = PARTITION_PRODUCE_DATA_V0.get("partition");
+    public static final Field PARTITION_PRODUCE_DATA_RECORD_SET = PARTITION_PRODUCE_DATA_V0.get("record_set");
+
+    public static final Field TOPIC_PRODUCE_DATA_TOPIC = TOPIC_PRODUCE_DATA_V0.get("topic");
+    public static final Field TOPIC_PRODUCE_DATA_DATA = TOPIC_PRODUCE_DATA_V0.get("data");
+
+    public static final Field PRODUCE_REQUEST_ACKS = PRODUCE_REQUEST_V0.get("acks");
+    public static final Field PRODUCE_REQUEST_TIMEOUT = PRODUCE_REQUEST_V0.get("timeout");
+    public static final Field PRODUCE_REQUEST_TOPIC_DATA = PRODUCE_REQUEST_V0.get("topic_data");
+
+    public static final Field PARTITION_PRODUCE_RESPONSE_PARTITION = PARTITION_PRODUCE_RESPONSE_V0.get("partition");
+    public static final Field PARTITION_PRODUCE_RESPONSE_ERROR_CODE = PARTITION_PRODUCE_RESPONSE_V0.get("error_code");
+    public static final Field PARTITION_PRODUCE_RESPONSE_BASE_OFFSET = PARTITION_PRODUCE_RESPONSE_V0.get("base_offset");
+
+    public static final Field TOPIC_PRODUCE_RESPONSE_TOPIC = TOPIC_PRODUCE_RESPONSE_V0.get("topic");
+    public static final Field TOPIC_PRODUCE_RESPONSE_PARTITION_RESPONSES = TOPIC_PRODUCE_RESPONSE_V0.get("partition_responses");
+
+    public static final Field PRODUCE_RESPONSE_RESPONSES = PRODUCE_RESPONSE_V0.get("responses");
+
+    /* Fetch api */
+
+    public static Schema PARTITION_FETCH_DATA_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                              new Field("fetch_offset", INT64, "Message offset."),
+                                                              new Field("max_bytes",
+                                                                        INT32,
+                                                                        "Maximum bytes to fetch."));
+
+    public static Schema TOPIC_FETCH_DATA_V0 = new Schema(new Field("topic", STRING, "Topic to fetch."),
+                                                          new Field("partitions",
+                                                                    new ArrayOf(PARTITION_FETCH_DATA_V0),
+                                                                    "Partitions to fetch."));
+
+    public static Schema FETCH_REQUEST_V0 = new Schema(new Field("replica_id",
+                                                                 INT32,
+                                                                 "Broker id of the follower. For normal consumers, use -1."),
+                                                       new Field("max_wait_time",
+                                                                 INT32,
+                                                                 "Maximum time in ms to wait for the response."),
+                                                       new Field("min_bytes",
+                                                                 INT32,
+                                                                 "Minimum bytes to accumulate in the response."),
+                                                       new Field("topics",
+                                                                 new ArrayOf(TOPIC_FETCH_DATA_V0),
+                                                                 "Topics to fetch."));
+
+    public static Schema PARTITION_FETCH_RESPONSE_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                  new Field("error_code", INT16),
+                                                                  new Field("high_watermark",
+                                                                            INT64,
+                                                                            "Last committed offset."),
+                                                                  new Field("record_set", BYTES));
+
+    public static Schema TOPIC_FETCH_RESPONSE_V0 = new Schema(new Field("topic", STRING),
+                                                              new Field("partition_responses",
+                                                                        new ArrayOf(PARTITION_FETCH_RESPONSE_V0)));
+
+    public static Schema FETCH_RESPONSE_V0 = new Schema(new Field("responses", new ArrayOf(TOPIC_FETCH_RESPONSE_V0)));
+
+    public static Schema[] FETCH_REQUEST = new Schema[] { FETCH_REQUEST_V0 };
+    public static Schema[] FETCH_RESPONSE = new Schema[] { FETCH_RESPONSE_V0 };
+
+    public static final Field PARTITION_FETCH_DATA_PARTITION = PARTITION_FETCH_DATA_V0.get("partition");
+    public static final Field PARTITION_FETCH_DATA_FETCH_OFFSET = PARTITION_FETCH_DATA_V0.get("fetch_offset");
+    public static final Field PARTITION_FETCH_DATA_MAX_BYTES = PARTITION_FETCH_DATA_V0.get("max_bytes");
+
+    public static final Field TOPIC_FETCH_DATA_TOPIC = TOPIC_FETCH_DATA_V0.get("topic");
+    public static final Field TOPIC_FETCH_DATA_PARTITIONS = TOPIC_FETCH_DATA_V0.get("partitions");
+
+    public static final Field FETCH_REQUEST_REPLICA_ID = FETCH_REQUEST_V0.get("replica_id");
+    public static final Field FETCH_REQUEST_MAX_WAIT_TIME = FETCH_REQUEST_V0.get("max_wait_time");
+    public static final Field FETCH_REQUEST_MIN_BYTES = FETCH_REQUEST_V0.get("min_bytes");
+    public static final Field FETCH_REQUEST_TOPICS = FETCH_REQUEST_V0.get("topics");
+
+    public static final Field PARTITION_FETCH_RESPONSE_PARTITION = PARTITION_FETCH_RESPONSE_V0.get("partition");
+    public static final Field PARTITION_FETCH_RESPONSE_ERROR_CODE = PARTITION_FETCH_RESPONSE_V0.get("error_code");
+    public static final Field PARTITION_FETCH_RESPONSE_HIGH_WATERMARK = PARTITION_FETCH_RESPONSE_V0.get("high_watermark");
+    public static final Field PARTITION_FETCH_RESPONSE_RECORD_SET = PARTITION_FETCH_RESPONSE_V0.get("record_set");
+
+    public static final Field TOPIC_FETCH_RESPONSE_TOPIC = TOPIC_FETCH_RESPONSE_V0.get("topic");
+    public static final Field TOPIC_FETCH_RESPONSE_PARTITION_RESPONSES = TOPIC_FETCH_RESPONSE_V0.get("partition_responses");
+
+    public static final Field FETCH_RESPONSE_RESPONSES = FETCH_RESPONSE_V0.get("responses");
+
+    /* List offsets api */
+
+    public static Schema PARTITION_LIST_OFFSET_DATA_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                    new Field("timestamp",
+                                                                              INT64,
+                                                                              "Only offsets of segments older than this time in ms are returned. -1 means the latest offset, -2 the earliest."),
+                                                                    new Field("max_num_offsets",
+                                                                              INT32,
+                                                                              "Maximum offsets to return."));
+
+    public static Schema TOPIC_LIST_OFFSET_DATA_V0 = new Schema(new Field("topic", STRING, "Topic to list offset."),
+                                                                new Field("partitions",
+                                                                          new ArrayOf(PARTITION_LIST_OFFSET_DATA_V0),
+                                                                          "Partitions to list offset."));
+
+    public static Schema LIST_OFFSET_REQUEST_V0 = new Schema(new Field("replica_id",
+                                                                       INT32,
+                                                                       "Broker id of the follower. For normal consumers, use -1."),
+                                                             new Field("topics",
+                                                                       new ArrayOf(TOPIC_LIST_OFFSET_DATA_V0),
+                                                                       "Topics to list offsets."));
+
+    public static Schema PARTITION_LIST_OFFSET_RESPONSE_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                        new Field("error_code", INT16),
+                                                                        new Field("offsets",
+                                                                                  new ArrayOf(INT64),
+                                                                                  "A list of offsets."));
+
+    public static Schema TOPIC_LIST_OFFSET_RESPONSE_V0 = new Schema(new Field("topic", STRING),
+                                                                    new Field("partition_responses",
+                                                                              new ArrayOf(PARTITION_LIST_OFFSET_RESPONSE_V0)));
+
+    public static Schema LIST_OFFSET_RESPONSE_V0 = new Schema(new Field("responses", new ArrayOf(TOPIC_LIST_OFFSET_RESPONSE_V0)));
+
+    public static Schema[] LIST_OFFSET_REQUEST = new Schema[] { LIST_OFFSET_REQUEST_V0 };
+    public static Schema[] LIST_OFFSET_RESPONSE = new Schema[] { LIST_OFFSET_RESPONSE_V0 };
+
+    public static final Field PARTITION_LIST_OFFSET_DATA_PARTITION = PARTITION_LIST_OFFSET_DATA_V0.get("partition");
+    public static final Field PARTITION_LIST_OFFSET_DATA_TIMESTAMP = PARTITION_LIST_OFFSET_DATA_V0.get("timestamp");
+    public static final Field PARTITION_LIST_OFFSET_DATA_MAX_NUM_OFFSETS = PARTITION_LIST_OFFSET_DATA_V0.get("max_num_offsets");
+
+    public static final Field TOPIC_LIST_OFFSET_DATA_TOPIC = TOPIC_LIST_OFFSET_DATA_V0.get("topic");
+    public static final Field TOPIC_LIST_OFFSET_DATA_PARTITIONS = TOPIC_LIST_OFFSET_DATA_V0.get("partitions");
+
+    public static final Field LIST_OFFSET_REQUEST_REPLICA_ID = LIST_OFFSET_REQUEST_V0.get("replica_id");
+    public static final Field LIST_OFFSET_REQUEST_TOPICS = LIST_OFFSET_REQUEST_V0.get("topics");
+
+    public static final Field PARTITION_LIST_OFFSET_RESPONSE_PARTITION = PARTITION_LIST_OFFSET_RESPONSE_V0.get("partition");
+    public static final Field PARTITION_LIST_OFFSET_RESPONSE_ERROR_CODE = PARTITION_LIST_OFFSET_RESPONSE_V0.get("error_code");
+    public static final Field PARTITION_LIST_OFFSET_RESPONSE_OFFSETS = PARTITION_LIST_OFFSET_RESPONSE_V0.get("offsets");
+
+    public static final Field TOPIC_LIST_OFFSET_RESPONSE_TOPIC = TOPIC_LIST_OFFSET_RESPONSE_V0.get("topic");
+    public static final Field TOPIC_LIST_OFFSET_RESPONSE_PARTITION_RESPONSES = TOPIC_LIST_OFFSET_RESPONSE_V0.get("partition_responses");
+
+    public static final Field LIST_OFFSET_RESPONSE_RESPONSES = LIST_OFFSET_RESPONSE_V0.get("responses");
+
+    /* Offset commit api */
+
+    public static Schema PARTITION_OFFSET_COMMIT_DATA_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                      new Field("offset", INT64, "Message offset to be committed."),
+                                                                      new Field("metadata",
+                                                                                STRING,
+                                                                                "Any associated metadata the client wants to keep."));
+
+    public static Schema TOPIC_OFFSET_COMMIT_DATA_V0 = new Schema(new Field("topic", STRING, "Topic to commit."),
+                                                                  new Field("partitions",
+                                                                            new ArrayOf(PARTITION_OFFSET_COMMIT_DATA_V0),
+                                                                            "Partitions to commit offsets."));
+
+    public static Schema OFFSET_COMMIT_REQUEST_V0 = new Schema(new Field("group_id", STRING, "The consumer group id."),
+                                                               new Field("topics",
+                                                                         new ArrayOf(TOPIC_OFFSET_COMMIT_DATA_V0),
+                                                                         "Topics to commit offsets."));
+
+    public static Schema PARTITION_OFFSET_COMMIT_RESPONSE_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                          new Field("error_code", INT16));
+
+    public static Schema TOPIC_OFFSET_COMMIT_RESPONSE_V0 = new Schema(new Field("topic", STRING),
+                                                                      new Field("partition_responses",
+                                                                                new ArrayOf(PARTITION_OFFSET_COMMIT_RESPONSE_V0)));
+
+    public static Schema OFFSET_COMMIT_RESPONSE_V0 = new Schema(new Field("responses", new ArrayOf(TOPIC_OFFSET_COMMIT_RESPONSE_V0)));
+
+    public static Schema[] OFFSET_COMMIT_REQUEST = new Schema[] { OFFSET_COMMIT_REQUEST_V0 };
+    public static Schema[] OFFSET_COMMIT_RESPONSE = new Schema[] { OFFSET_COMMIT_RESPONSE_V0 };
+
+    public static final Field PARTITION_OFFSET_COMMIT_DATA_PARTITION = PARTITION_OFFSET_COMMIT_DATA_V0.get("partition");
+    public static final Field PARTITION_OFFSET_COMMIT_DATA_OFFSET = PARTITION_OFFSET_COMMIT_DATA_V0.get("offset");
+    public static final Field PARTITION_OFFSET_COMMIT_DATA_METADATA = PARTITION_OFFSET_COMMIT_DATA_V0.get("metadata");
+
+    public static final Field TOPIC_OFFSET_COMMIT_DATA_TOPIC = TOPIC_OFFSET_COMMIT_DATA_V0.get("topic");
+    public static final Field TOPIC_OFFSET_COMMIT_DATA_PARTITIONS = TOPIC_OFFSET_COMMIT_DATA_V0.get("partitions");
+
+    public static final Field OFFSET_COMMIT_REQUEST_GROUP_ID = OFFSET_COMMIT_REQUEST_V0.get("group_id");
+    public static final Field OFFSET_COMMIT_REQUEST_TOPICS = OFFSET_COMMIT_REQUEST_V0.get("topics");
+
+    public static final Field PARTITION_OFFSET_COMMIT_RESPONSE_PARTITION = PARTITION_OFFSET_COMMIT_RESPONSE_V0.get("partition");
+    public static final Field PARTITION_OFFSET_COMMIT_RESPONSE_ERROR_CODE = PARTITION_OFFSET_COMMIT_RESPONSE_V0.get("error_code");
+
+    public static final Field TOPIC_OFFSET_COMMIT_RESPONSE_TOPIC = TOPIC_OFFSET_COMMIT_RESPONSE_V0.get("topic");
+    public static final Field TOPIC_OFFSET_COMMIT_RESPONSE_PARTITION_RESPONSES = TOPIC_OFFSET_COMMIT_RESPONSE_V0.get("partition_responses");
+
+    public static final Field OFFSET_COMMIT_RESPONSE_RESPONSES = OFFSET_COMMIT_RESPONSE_V0.get("responses");
+
+    /* Offset fetch api */
+
+    public static Schema PARTITION_OFFSET_FETCH_DATA_V0 = new Schema(new Field("partition", INT32, "Topic partition id."));
+
+    public static Schema TOPIC_OFFSET_FETCH_DATA_V0 = new Schema(new Field("topic", STRING, "Topic to fetch offset."),
+                                                                 new Field("partitions",
+                                                                           new ArrayOf(PARTITION_OFFSET_FETCH_DATA_V0),
+                                                                           "Partitions to fetch offsets."));
+
+    public static Schema OFFSET_FETCH_REQUEST_V0 = new Schema(new Field("group_id", STRING, "The consumer group id."),
+                                                              new Field("topics",
+                                                                        new ArrayOf(TOPIC_OFFSET_FETCH_DATA_V0),
+                                                                        "Topics to fetch offsets."));
+
+    public static Schema PARTITION_OFFSET_FETCH_RESPONSE_V0 = new Schema(new Field("partition", INT32, "Topic partition id."),
+                                                                         new Field("offset",
+                                                                                   INT64,
+                                                                                   "Last committed message offset."),
+                                                                         new Field("metadata",
+                                                                                   STRING,
+                                                                                   "Any associated metadata the client wants to keep."),
+                                                                         new Field("error_code", INT16));
+
+    public static Schema TOPIC_OFFSET_FETCH_RESPONSE_V0 = new Schema(new Field("topic", STRING),
+                                                                     new Field("partition_responses",
+                                                                               new ArrayOf(PARTITION_OFFSET_FETCH_RESPONSE_V0)));
+
+    public static Schema OFFSET_FETCH_RESPONSE_V0 = new Schema(new Field("responses", new ArrayOf(TOPIC_OFFSET_FETCH_RESPONSE_V0)));
+
+    public static Schema[] OFFSET_FETCH_REQUEST = new Schema[] { OFFSET_FETCH_REQUEST_V0 };
+    public static Schema[] OFFSET_FETCH_RESPONSE = new Schema[] { OFFSET_FETCH_RESPONSE_V0 };
+
+    public static final Field PARTITION_OFFSET_FETCH_DATA_PARTITION = PARTITION_OFFSET_FETCH_DATA_V0.get("partition");
+
+    public static final Field TOPIC_OFFSET_FETCH_DATA_TOPIC = TOPIC_OFFSET_FETCH_DATA_V0.get("topic");
+    public static final Field TOPIC_OFFSET_FETCH_DATA_PARTITIONS = TOPIC_OFFSET_FETCH_DATA_V0.get("partitions");
+
+    public static final Field OFFSET_FETCH_REQUEST_GROUP_ID = OFFSET_FETCH_REQUEST_V0.get("group_id");
+    public static final Field OFFSET_FETCH_REQUEST_TOPICS = OFFSET_FETCH_REQUEST_V0.get("topics");
+
+    public static final Field PARTITION_OFFSET_FETCH_RESPONSE_PARTITION = PARTITION_OFFSET_FETCH_RESPONSE_V0.get("partition");
+    public static final Field PARTITION_OFFSET_FETCH_RESPONSE_OFFSET = PARTITION_OFFSET_FETCH_RESPONSE_V0.get("offset");
+    public static final Field PARTITION_OFFSET_FETCH_RESPONSE_METADATA = PARTITION_OFFSET_FETCH_RESPONSE_V0.get("metadata");
+    public static final Field PARTITION_OFFSET_FETCH_RESPONSE_ERROR_CODE = PARTITION_OFFSET_FETCH_RESPONSE_V0.get("error_code");
+
+    public static final Field TOPIC_OFFSET_FETCH_RESPONSE_TOPIC = TOPIC_OFFSET_FETCH_RESPONSE_V0.get("topic");
+    public static final Field TOPIC_OFFSET_FETCH_RESPONSE_PARTITION_RESPONSES = TOPIC_OFFSET_FETCH_RESPONSE_V0.get("partition_responses");
+
+    public static final Field OFFSET_FETCH_RESPONSE_RESPONSES = OFFSET_FETCH_RESPONSE_V0.get("responses");
+
     /* an array of all requests and responses with all schema versions */
     public static Schema[][] REQUESTS = new Schema[ApiKeys.MAX_API_KEY + 1][];
     public static Schema[][] RESPONSES = new Schema[ApiKeys.MAX_API_KEY + 1][];
@@ -113,22 +382,22 @@ public class Protocol {
 
     static {
         REQUESTS[ApiKeys.PRODUCE.id] = PRODUCE_REQUEST;
-        REQUESTS[ApiKeys.FETCH.id] = new Schema[] {};
-        REQUESTS[ApiKeys.LIST_OFFSETS.id] = new Schema[] {};
+        REQUESTS[ApiKeys.FETCH.id] = FETCH_REQUEST;
+        REQUESTS[ApiKeys.LIST_OFFSETS.id] = LIST_OFFSET_REQUEST;
         REQUESTS[ApiKeys.METADATA.id] = METADATA_REQUEST;
         REQUESTS[ApiKeys.LEADER_AND_ISR.id] = new Schema[] {};
         REQUESTS[ApiKeys.STOP_REPLICA.id] = new Schema[] {};
-        REQUESTS[ApiKeys.OFFSET_COMMIT.id] = new Schema[] {};
-        REQUESTS[ApiKeys.OFFSET_FETCH.id] = new Schema[] {};
+        REQUESTS[ApiKeys.OFFSET_COMMIT.id] = OFFSET_COMMIT_REQUEST;
+        REQUESTS[ApiKeys.OFFSET_FETCH.id] = OFFSET_FETCH_REQUEST;
 
         RESPONSES[ApiKeys.PRODUCE.id] = PRODUCE_RESPONSE;
-        RESPONSES[ApiKeys.FETCH.id] = new Schema[] {};
-        RESPONSES[ApiKeys.LIST_OFFSETS.id] = new Schema[] {};
+        RESPONSES[ApiKeys.FETCH.id] = FETCH_RESPONSE;
+        RESPONSES[ApiKeys.LIST_OFFSETS.id] = LIST_OFFSET_RESPONSE;
         RESPONSES[ApiKeys.METADATA.id] = METADATA_RESPONSE;
         RESPONSES[ApiKeys.LEADER_AND_ISR.id] = new Schema[] {};
         RESPONSES[ApiKeys.STOP_REPLICA.id] = new Schema[] {};
-        RESPONSES[ApiKeys.OFFSET_COMMIT.id] = new Schema[] {};
-        RESPONSES[ApiKeys.OFFSET_FETCH.id] = new Schema[] {};
+        RESPONSES[ApiKeys.OFFSET_COMMIT.id] = OFFSET_COMMIT_RESPONSE;
+        RESPONSES[ApiKeys.OFFSET_FETCH.id] = OFFSET_FETCH_RESPONSE;
 
         /* set the maximum version of each api */
         for (ApiKeys api : ApiKeys.values())
@@ -61,4 +61,11 @@ public class Field {
         return type;
     }
 
+    /**
+     * The position of this field in its schema
+     */
+    public int index() {
+        return index;
+    }
+
 }
@@ -19,10 +19,12 @@ package org.apache.kafka.common.protocol.types;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+import org.apache.kafka.common.protocol.Message;
+
 /**
  * A record that can be serialized and deserialized according to a pre-defined schema
  */
-public class Struct {
+public class Struct implements Message {
     private final Schema schema;
     private final Object[] values;
 
@@ -83,6 +85,43 @@ public class Struct {
         return getFieldOrDefault(field);
     }
 
+    /**
+     * Get the value at the given index with no check that the index belongs to this struct's schema (fastest!). This
+     * is only for trusted code that takes the index from a {@link Field} of this struct's schema, such as the field
+     * handles in {@link org.apache.kafka.common.protocol.Protocol}.
+     * 
+     * @param index The index of the field
+     * @return The value for that field, or its default if it has no value
+     */
+    public Object get(int index) {
+        Object value = this.values[index];
+        return value != null ? value : getFieldOrDefault(this.schema.get(index));
+    }
+
+    public Struct getStruct(int index) {
+        return (Struct) get(index);
+    }
+
+    public short getShort(int index) {
+        return (Short) get(index);
+    }
+
+    public int getInt(int index) {
+        return (Integer) get(index);
+    }
+
+    public long getLong(int index) {
+        return (Long) get(index);
+    }
+
+    public Object[] getArray(int index) {
+        return (Object[]) get(index);
+    }
+
+    public String getString(int index) {
+        return (String) get(index);
+    }
+
     public Struct getStruct(Field field) {
         return (Struct) get(field);
     }
@@ -107,6 +146,14 @@ public class Struct {
         return (Integer) get(name);
     }
 
+    public Long getLong(Field field) {
+        return (Long) get(field);
+    }
+
+    public Long getLong(String name) {
+        return (Long) get(name);
+    }
+
     public Object[] getArray(Field field) {
         return (Object[]) get(field);
     }
@@ -135,6 +182,18 @@ public class Struct {
         return this;
     }
 
+    /**
+     * Set the value at the given index with no check that the index belongs to this struct's schema. This is only for
+     * trusted code, see {@link #get(int)}.
+     * 
+     * @param index The index of the field
+     * @param value The value
+     */
+    public Struct set(int index, Object value) {
+        this.values[index] = value;
+        return this;
+    }
+
     /**
      * Set the field specified by the given name to the value
      * 
@@ -18,9 +18,12 @@ package org.apache.kafka.common.record;
 
 /**
  * The compression type to use
+ * <p>
+ * {@link #COMPACT} isn't a compression codec as such: a compact record holds a batch of records in the shared-header
+ * format written by {@link MemoryRecords} rather than a compressed record set.
  */
 public enum CompressionType {
-    NONE(0, "none"), GZIP(1, "gzip"), SNAPPY(2, "snappy");
+    NONE(0, "none"), GZIP(1, "gzip"), SNAPPY(2, "snappy"), COMPACT(3, "compact");
 
     public final int id;
     public final String name;
@@ -38,6 +41,8 @@ public enum CompressionType {
                 return GZIP;
             case 2:
                 return SNAPPY;
+            case 3:
+                return COMPACT;
             default:
                 throw new IllegalArgumentException("Unknown compression type id: " + id);
         }
@@ -50,6 +55,8 @@ public enum CompressionType {
             return GZIP;
         else if (SNAPPY.name.equals(name))
             return SNAPPY;
+        else if (COMPACT.name.equals(name))
+            return COMPACT;
         else
             throw new IllegalArgumentException("Unknown compression name: " + name);
     }
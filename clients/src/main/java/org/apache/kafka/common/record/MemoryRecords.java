@@ -22,47 +22,223 @@ import java.nio.channels.GatheringByteChannel;
 import java.util.Iterator;
 
 import org.apache.kafka.common.utils.AbstractIterator;
+import org.apache.kafka.common.utils.Utils;
 
 
 /**
  * A {@link Records} implementation backed by a ByteBuffer.
+ * <p>
+ * Records are normally written one log entry each, which costs {@link Records#LOG_OVERHEAD} plus
+ * {@link Record#RECORD_OVERHEAD} bytes per record. A record set created with {@link CompressionType#COMPACT} instead
+ * writes a single log entry whose record has the compact codec and no key, so the whole batch shares one offset, size,
+ * CRC and header. The value of that record holds each record in turn as
+ * 
+ * <pre>
+ * varlong offset delta from the offset of the log entry
+ * varlong timestamp delta from the timestamp of the log entry, only if the entry has a timestamp
+ * varint key length (-1 for a null key), key bytes
+ * varint value length (-1 for a null value), value bytes
+ * </pre>
+ * 
+ * where the varints are zig-zag encoded as written by {@link Utils#writeVarint(int, ByteBuffer)}. The log entry takes
+ * the offset and timestamp of the first record appended, and has a timestamp only if that record does. A compact record set
+ * reserves room for its header when created and fills it in when {@link #close() closed}, after which it can't be
+ * appended to. Iteration expands compact entries into ordinary records.
  */
 public class MemoryRecords implements Records {
 
+    /** The size of the shared header of a compact record set */
+    public static final int COMPACT_HEADER_SIZE = Records.LOG_OVERHEAD + Record.RECORD_OVERHEAD;
+
+    /* the most bytes the offset or timestamp delta of a record in a compact set can take */
+    private static final int MAX_DELTA_SIZE = 10;
+
     private final ByteBuffer buffer;
+    private final boolean compact;
+    private final int start;
+    private long baseOffset;
+    private long baseTimestamp;
+    private int compactCount;
+    private boolean closed;
 
     public MemoryRecords(int size) {
         this(ByteBuffer.allocate(size));
     }
 
     public MemoryRecords(ByteBuffer buffer) {
+        this(buffer, CompressionType.NONE);
+    }
+
+    /**
+     * Create a record set to append to
+     * 
+     * @param buffer The buffer to write to, from its current position
+     * @param type {@link CompressionType#COMPACT} to write a compact record set, anything else to write one log entry per
+     *        record
+     */
+    public MemoryRecords(ByteBuffer buffer, CompressionType type) {
         this.buffer = buffer;
+        this.compact = type == CompressionType.COMPACT;
+        this.start = buffer.position();
+        this.compactCount = 0;
+        this.closed = false;
+        if (this.compact)
+            buffer.position(this.start + COMPACT_HEADER_SIZE);
+    }
+
+    /**
+     * Create a records instance over the complete record set between the buffer's position and its limit, such as one
+     * received from the server. The buffer is shared, not copied.
+     */
+    public static MemoryRecords readableRecords(ByteBuffer buffer) {
+        ByteBuffer records = buffer.slice();
+        records.position(records.limit());
+        return new MemoryRecords(records);
+    }
+
+    /**
+     * The number of bytes a record set of the given type needs to hold just the given record
+     */
+    public static int sizeFor(CompressionType type, byte[] key, byte[] value) {
+        return sizeFor(type, Record.NO_TIMESTAMP, key, value);
+    }
+
+    /**
+     * The number of bytes a record set of the given type needs to hold just the given record with the given timestamp
+     */
+    public static int sizeFor(CompressionType type, long timestamp, byte[] key, byte[] value) {
+        if (type == CompressionType.COMPACT)
+            return COMPACT_HEADER_SIZE + timestampSize(timestamp) + compactSize(timestamp != Record.NO_TIMESTAMP, key, value);
+        else
+            return Records.LOG_OVERHEAD + Record.recordSize(timestamp, key, value);
     }
 
     /**
      * Append the given record and offset to the buffer
      */
     public void append(long offset, Record record) {
-        buffer.putLong(offset);
-        buffer.putInt(record.size());
-        buffer.put(record.buffer());
-        record.buffer().rewind();
+        if (this.compact) {
+            appendCompact(offset, record.timestamp(), record.key(), record.value());
+        } else {
+            buffer.putLong(offset);
+            buffer.putInt(record.size());
+            buffer.put(record.buffer());
+            record.buffer().rewind();
+        }
     }
 
     /**
-     * Append a new record and offset to the buffer
+     * Append a new record and offset to the buffer. Records appended to a compact record set are always written
+     * uncompressed within it.
      */
     public void append(long offset, byte[] key, byte[] value, CompressionType type) {
-        buffer.putLong(offset);
-        buffer.putInt(Record.recordSize(key, value));
-        Record.write(this.buffer, key, value, type);
+        append(offset, Record.NO_TIMESTAMP, key, value, type);
+    }
+
+    /**
+     * Append a new record with the given timestamp, which may be NO_TIMESTAMP, and offset to the buffer
+     */
+    public void append(long offset, long timestamp, byte[] key, byte[] value, CompressionType type) {
+        if (this.compact) {
+            appendCompact(offset,
+                          timestamp,
+                          key == null ? null : ByteBuffer.wrap(key),
+                          value == null ? null : ByteBuffer.wrap(value));
+        } else {
+            buffer.putLong(offset);
+            buffer.putInt(Record.recordSize(timestamp, key, value));
+            Record.write(this.buffer, timestamp, key, value, type);
+        }
+    }
+
+    private void appendCompact(long offset, long timestamp, ByteBuffer key, ByteBuffer value) {
+        if (this.closed)
+            throw new IllegalStateException("Can't append to a compact record set that has been closed.");
+        if (this.compactCount == 0) {
+            this.baseOffset = offset;
+            this.baseTimestamp = timestamp;
+            // the shared header holds the timestamp too
+            this.buffer.position(this.buffer.position() + timestampSize(timestamp));
+        }
+        Utils.writeVarlong(offset - this.baseOffset, this.buffer);
+        if (this.baseTimestamp != Record.NO_TIMESTAMP)
+            Utils.writeVarlong(timestamp - this.baseTimestamp, this.buffer);
+        writeDelimited(key);
+        writeDelimited(value);
+        this.compactCount++;
+    }
+
+    private void writeDelimited(ByteBuffer bytes) {
+        if (bytes == null) {
+            Utils.writeVarint(-1, this.buffer);
+        } else {
+            Utils.writeVarint(bytes.remaining(), this.buffer);
+            this.buffer.put(bytes.duplicate());
+        }
     }
 
     /**
      * Check if we have room for a new record containing the given key/value pair
      */
     public boolean hasRoomFor(byte[] key, byte[] value) {
-        return this.buffer.remaining() >= Records.LOG_OVERHEAD + Record.recordSize(key, value);
+        return hasRoomFor(Record.NO_TIMESTAMP, key, value);
+    }
+
+    /**
+     * Check if we have room for a new record containing the given timestamp and key/value pair
+     */
+    public boolean hasRoomFor(long timestamp, byte[] key, byte[] value) {
+        if (this.compact) {
+            if (this.closed)
+                return false;
+            else if (this.compactCount == 0)
+                return this.buffer.remaining() >= timestampSize(timestamp) + compactSize(timestamp != Record.NO_TIMESTAMP, key, value);
+            else
+                return this.buffer.remaining() >= compactSize(this.baseTimestamp != Record.NO_TIMESTAMP, key, value);
+        } else
+            return this.buffer.remaining() >= Records.LOG_OVERHEAD + Record.recordSize(timestamp, key, value);
+    }
+
+    /**
+     * The most bytes a record takes within a compact record set, which has a timestamp delta if the set is timestamped
+     */
+    private static int compactSize(boolean timestamped, byte[] key, byte[] value) {
+        int keySize = key == null ? -1 : key.length;
+        int valueSize = value == null ? -1 : value.length;
+        return (timestamped ? 2 : 1) * MAX_DELTA_SIZE + Utils.sizeOfVarint(keySize) + Math.max(0, keySize)
+               + Utils.sizeOfVarint(valueSize) + Math.max(0, valueSize);
+    }
+
+    private static int timestampSize(long timestamp) {
+        return timestamp == Record.NO_TIMESTAMP ? 0 : Record.TIMESTAMP_LENGTH;
+    }
+
+    /**
+     * Finish writing this record set. This fills in the shared header of a compact record set, after which nothing more
+     * can be appended to it, and does nothing for any other record set. Closing more than once has no further effect.
+     */
+    public void close() {
+        if (!this.compact || this.closed)
+            return;
+        this.closed = true;
+        if (this.compactCount == 0) {
+            // don't send a header with nothing behind it
+            this.buffer.position(this.start);
+            return;
+        }
+        int end = this.buffer.position();
+        int record = this.start + Records.LOG_OVERHEAD;
+        int timestampSize = timestampSize(this.baseTimestamp);
+        this.buffer.putLong(this.start, this.baseOffset);
+        this.buffer.putInt(this.start + Records.OFFSET_LENGTH, end - record);
+        this.buffer.put(record + Record.MAGIC_OFFSET, timestampSize == 0 ? Record.CURRENT_MAGIC_VALUE : Record.MAGIC_VALUE_V1);
+        this.buffer.put(record + Record.ATTRIBUTES_OFFSET, (byte) (Record.COMPRESSION_CODEC_MASK & CompressionType.COMPACT.id));
+        if (timestampSize > 0)
+            this.buffer.putLong(record + Record.TIMESTAMP_OFFSET, this.baseTimestamp);
+        this.buffer.putInt(record + Record.KEY_SIZE_OFFSET + timestampSize, -1);
+        this.buffer.putInt(record + Record.KEY_OFFSET + timestampSize, end - record - Record.RECORD_OVERHEAD - timestampSize);
+        long crc = Record.computeChecksum(this.buffer, record + Record.MAGIC_OFFSET, end - record - Record.MAGIC_OFFSET);
+        Utils.writeUnsignedInt(this.buffer, record + Record.CRC_OFFSET, crc);
     }
 
     /** Write the records in this set to the given channel */
@@ -77,6 +253,13 @@ public class MemoryRecords implements Records {
         return this.buffer.position();
     }
 
+    /**
+     * The maximum number of bytes this record set can hold
+     */
+    public int capacity() {
+        return this.buffer.limit();
+    }
+
     /**
      * Get the byte buffer that backs this records instance
      */
@@ -84,6 +267,9 @@ public class MemoryRecords implements Records {
         return buffer.duplicate();
     }
 
+    /**
+     * Iterate over the records in this set, expanding compact entries. A compact record set must be closed first.
+     */
     @Override
     public Iterator<LogEntry> iterator() {
         return new RecordsIterator(this.buffer);
@@ -92,6 +278,9 @@ public class MemoryRecords implements Records {
     /* TODO: allow reuse of the buffer used for iteration */
     public static class RecordsIterator extends AbstractIterator<LogEntry> {
         private final ByteBuffer buffer;
+        private ByteBuffer compact;
+        private long compactOffset;
+        private long compactTimestamp;
 
         public RecordsIterator(ByteBuffer buffer) {
             ByteBuffer copy = buffer.duplicate();
@@ -101,18 +290,42 @@ public class MemoryRecords implements Records {
 
         @Override
         protected LogEntry makeNext() {
-            if (buffer.remaining() < Records.LOG_OVERHEAD)
-                return allDone();
-            long offset = buffer.getLong();
-            int size = buffer.getInt();
+            while (this.compact == null || !this.compact.hasRemaining()) {
+                this.compact = null;
+                if (buffer.remaining() < Records.LOG_OVERHEAD)
+                    return allDone();
+                long offset = buffer.getLong();
+                int size = buffer.getInt();
+                if (size < 0)
+                    throw new IllegalStateException("Record with size " + size);
+                if (buffer.remaining() < size)
+                    return allDone();
+                ByteBuffer rec = buffer.slice();
+                rec.limit(size);
+                this.buffer.position(this.buffer.position() + size);
+                Record record = new Record(rec);
+                if (record.compressionType() != CompressionType.COMPACT)
+                    return new LogEntry(offset, record);
+                this.compact = record.value();
+                this.compactOffset = offset;
+                this.compactTimestamp = record.timestamp();
+            }
+            long offset = this.compactOffset + Utils.readVarlong(this.compact);
+            long timestamp = Record.NO_TIMESTAMP;
+            if (this.compactTimestamp != Record.NO_TIMESTAMP)
+                timestamp = this.compactTimestamp + Utils.readVarlong(this.compact);
+            byte[] key = readDelimited(this.compact);
+            byte[] value = readDelimited(this.compact);
+            return new LogEntry(offset, new Record(timestamp, key, value, CompressionType.NONE));
+        }
+
+        private static byte[] readDelimited(ByteBuffer buffer) {
+            int size = Utils.readVarint(buffer);
             if (size < 0)
-                throw new IllegalStateException("Record with size " + size);
-            if (buffer.remaining() < size)
-                return allDone();
-            ByteBuffer rec = buffer.slice();
-            rec.limit(size);
-            this.buffer.position(this.buffer.position() + size);
-            return new LogEntry(offset, new Record(rec));
+                return null;
+            byte[] bytes = new byte[size];
+            buffer.get(bytes);
+            return bytes;
         }
     }
 
@@ -23,6 +23,9 @@ import org.apache.kafka.common.utils.Utils;
 
 /**
  * A record: a serialized key and value along with the associated CRC and other fields
+ * <p>
+ * Records with magic value 0 have no timestamp. Records with magic value 1 hold an 8 byte timestamp between the
+ * attributes and the key; they are only written when a timestamp is given.
  */
 public final class Record {
 
@@ -36,6 +39,8 @@ public final class Record {
     public static final int ATTRIBUTES_OFFSET = MAGIC_OFFSET + MAGIC_LENGTH;
     public static final int ATTRIBUTE_LENGTH = 1;
     public static final int KEY_SIZE_OFFSET = ATTRIBUTES_OFFSET + ATTRIBUTE_LENGTH;
+    public static final int TIMESTAMP_OFFSET = ATTRIBUTES_OFFSET + ATTRIBUTE_LENGTH;
+    public static final int TIMESTAMP_LENGTH = 8;
     public static final int KEY_SIZE_LENGTH = 4;
     public static final int KEY_OFFSET = KEY_SIZE_OFFSET + KEY_SIZE_LENGTH;
     public static final int VALUE_SIZE_LENGTH = 4;
@@ -53,6 +58,16 @@ public final class Record {
      */
     public static final byte CURRENT_MAGIC_VALUE = 0;
 
+    /**
+     * The magic value of records that have a timestamp
+     */
+    public static final byte MAGIC_VALUE_V1 = 1;
+
+    /**
+     * The timestamp of a record that doesn't have one
+     */
+    public static final long NO_TIMESTAMP = -1L;
+
     /**
      * Specifies the mask for the compression code. 2 bits to hold the compression codec. 0 is reserved to indicate no
      * compression
@@ -80,12 +95,31 @@ public final class Record {
      * @param valueSize The size of the payload to use
      */
     public Record(byte[] key, byte[] value, CompressionType codec, int valueOffset, int valueSize) {
-        this(ByteBuffer.allocate(recordSize(key == null ? 0 : key.length, value == null ? 0 : valueSize >= 0 ? valueSize
-                                                                                                            : value.length - valueOffset)));
-        write(this.buffer, key, value, codec, valueOffset, valueSize);
+        this(NO_TIMESTAMP, key, value, codec, valueOffset, valueSize);
+    }
+
+    /**
+     * A constructor to create a LogRecord with a timestamp
+     * 
+     * @param timestamp The timestamp of the record, or NO_TIMESTAMP to write a record without one
+     * @param key The key of the record (null, if none)
+     * @param value The record value
+     * @param codec The compression codec used on the contents of the record (if any)
+     * @param valueOffset The offset into the payload array used to extract payload
+     * @param valueSize The size of the payload to use
+     */
+    public Record(long timestamp, byte[] key, byte[] value, CompressionType codec, int valueOffset, int valueSize) {
+        this(ByteBuffer.allocate(recordSize(timestamp,
+                                            key == null ? 0 : key.length,
+                                            value == null ? 0 : valueSize >= 0 ? valueSize : value.length - valueOffset)));
+        write(this.buffer, timestamp, key, value, codec, valueOffset, valueSize);
         this.buffer.rewind();
     }
 
+    public Record(long timestamp, byte[] key, byte[] value, CompressionType codec) {
+        this(timestamp, key, value, codec, 0, -1);
+    }
+
     public Record(byte[] key, byte[] value, CompressionType codec) {
         this(key, value, codec, 0, -1);
     }
@@ -103,14 +137,26 @@ public final class Record {
     }
 
     public static void write(ByteBuffer buffer, byte[] key, byte[] value, CompressionType codec, int valueOffset, int valueSize) {
+        write(buffer, NO_TIMESTAMP, key, value, codec, valueOffset, valueSize);
+    }
+
+    public static void write(ByteBuffer buffer,
+                             long timestamp,
+                             byte[] key,
+                             byte[] value,
+                             CompressionType codec,
+                             int valueOffset,
+                             int valueSize) {
         // skip crc, we will fill that in at the end
         int pos = buffer.position();
         buffer.position(pos + MAGIC_OFFSET);
-        buffer.put(CURRENT_MAGIC_VALUE);
+        buffer.put(timestamp == NO_TIMESTAMP ? CURRENT_MAGIC_VALUE : MAGIC_VALUE_V1);
         byte attributes = 0;
         if (codec.id > 0)
             attributes = (byte) (attributes | (COMPRESSION_CODEC_MASK & codec.id));
         buffer.put(attributes);
+        if (timestamp != NO_TIMESTAMP)
+            buffer.putLong(timestamp);
         // write the key
         if (key == null) {
             buffer.putInt(-1);
@@ -128,9 +174,7 @@ public final class Record {
         }
 
         // now compute the checksum and fill it in
-        long crc = computeChecksum(buffer,
-                                   buffer.arrayOffset() + pos + MAGIC_OFFSET,
-                                   buffer.position() - pos - MAGIC_OFFSET - buffer.arrayOffset());
+        long crc = computeChecksum(buffer, pos + MAGIC_OFFSET, buffer.position() - pos - MAGIC_OFFSET);
         Utils.writeUnsignedInt(buffer, pos + CRC_OFFSET, crc);
     }
 
@@ -138,6 +182,10 @@ public final class Record {
         write(buffer, key, value, codec, 0, -1);
     }
 
+    public static void write(ByteBuffer buffer, long timestamp, byte[] key, byte[] value, CompressionType codec) {
+        write(buffer, timestamp, key, value, codec, 0, -1);
+    }
+
     public static int recordSize(byte[] key, byte[] value) {
         return recordSize(key == null ? 0 : key.length, value == null ? 0 : value.length);
     }
@@ -146,15 +194,24 @@ public final class Record {
         return CRC_LENGTH + MAGIC_LENGTH + ATTRIBUTE_LENGTH + KEY_SIZE_LENGTH + keySize + VALUE_SIZE_LENGTH + valueSize;
     }
 
+    public static int recordSize(long timestamp, byte[] key, byte[] value) {
+        return recordSize(timestamp, key == null ? 0 : key.length, value == null ? 0 : value.length);
+    }
+
+    public static int recordSize(long timestamp, int keySize, int valueSize) {
+        return recordSize(keySize, valueSize) + (timestamp == NO_TIMESTAMP ? 0 : TIMESTAMP_LENGTH);
+    }
+
     public ByteBuffer buffer() {
         return this.buffer;
     }
 
     /**
-     * Compute the checksum of the record from the record contents
+     * Compute the checksum of the given number of bytes of the buffer starting at the given position, which is relative
+     * to the start of the buffer rather than of its backing array
      */
     public static long computeChecksum(ByteBuffer buffer, int position, int size) {
-        return Utils.crc32(buffer.array(), buffer.arrayOffset() + position, size - buffer.arrayOffset());
+        return Utils.crc32(buffer.array(), buffer.arrayOffset() + position, size);
     }
 
     /**
@@ -200,7 +257,14 @@ public final class Record {
      * The length of the key in bytes
      */
     public int keySize() {
-        return buffer.getInt(KEY_SIZE_OFFSET);
+        return buffer.getInt(keySizeOffset());
+    }
+
+    /**
+     * The position where the key size is stored, which follows the timestamp if there is one
+     */
+    private int keySizeOffset() {
+        return magic() == CURRENT_MAGIC_VALUE ? KEY_SIZE_OFFSET : KEY_SIZE_OFFSET + TIMESTAMP_LENGTH;
     }
 
     /**
@@ -214,7 +278,7 @@ public final class Record {
      * The position where the value size is stored
      */
     private int valueSizeOffset() {
-        return KEY_OFFSET + Math.max(0, keySize());
+        return keySizeOffset() + KEY_SIZE_LENGTH + Math.max(0, keySize());
     }
 
     /**
@@ -238,6 +302,13 @@ public final class Record {
         return buffer.get(ATTRIBUTES_OFFSET);
     }
 
+    /**
+     * The timestamp of this record, or NO_TIMESTAMP if it doesn't have one
+     */
+    public long timestamp() {
+        return magic() == CURRENT_MAGIC_VALUE ? NO_TIMESTAMP : buffer.getLong(TIMESTAMP_OFFSET);
+    }
+
     /**
      * The compression codec used with this record
      */
@@ -256,7 +327,7 @@ public final class Record {
      * A ByteBuffer containing the message key
      */
     public ByteBuffer key() {
-        return sliceDelimited(KEY_SIZE_OFFSET);
+        return sliceDelimited(keySizeOffset());
     }
 
     /**
@@ -277,9 +348,10 @@ public final class Record {
     }
 
     public String toString() {
-        return String.format("Record(magic = %d, attributes = %d, crc = %d, key = %d bytes, value = %d bytes)",
+        return String.format("Record(magic = %d, attributes = %d, timestamp = %d, crc = %d, key = %d bytes, value = %d bytes)",
                              magic(),
                              attributes(),
+                             timestamp(),
                              checksum(),
                              key().limit(),
                              value().limit());
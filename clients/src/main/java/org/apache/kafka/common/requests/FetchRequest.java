@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#FETCH_REQUEST_V0}
+ */
+public class FetchRequest implements Message {
+
+    /** The replica id used by ordinary consumers */
+    public static final int CONSUMER_REPLICA_ID = -1;
+
+    private final int replicaId;
+    private final int maxWait;
+    private final int minBytes;
+    private final Map<TopicPartition, PartitionData> fetchData;
+    private final Map<String, List<TopicPartition>> partitionsByTopic;
+
+    /**
+     * The offset to fetch from and maximum bytes to fetch for a single partition
+     */
+    public static final class PartitionData {
+        public final long offset;
+        public final int maxBytes;
+
+        public PartitionData(long offset, int maxBytes) {
+            this.offset = offset;
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Create a fetch request
+     * 
+     * @param replicaId The broker id of the follower, or {@link #CONSUMER_REPLICA_ID} for consumers
+     * @param maxWait The maximum time in ms the server should wait for minBytes to accumulate
+     * @param minBytes The minimum number of bytes the server should return
+     * @param fetchData The partitions to fetch and where to fetch them from
+     */
+    public FetchRequest(int replicaId, int maxWait, int minBytes, Map<TopicPartition, PartitionData> fetchData) {
+        this.replicaId = replicaId;
+        this.maxWait = maxWait;
+        this.minBytes = minBytes;
+        this.fetchData = fetchData;
+        this.partitionsByTopic = new LinkedHashMap<String, List<TopicPartition>>();
+        for (TopicPartition tp : fetchData.keySet()) {
+            List<TopicPartition> parts = this.partitionsByTopic.get(tp.topic());
+            if (parts == null) {
+                parts = new ArrayList<TopicPartition>();
+                this.partitionsByTopic.put(tp.topic(), parts);
+            }
+            parts.add(tp);
+        }
+    }
+
+    public int replicaId() {
+        return this.replicaId;
+    }
+
+    public int maxWait() {
+        return this.maxWait;
+    }
+
+    public int minBytes() {
+        return this.minBytes;
+    }
+
+    public Map<TopicPartition, PartitionData> fetchData() {
+        return this.fetchData;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(this.replicaId);
+        buffer.putInt(this.maxWait);
+        buffer.putInt(this.minBytes);
+        buffer.putInt(this.partitionsByTopic.size());
+        for (Map.Entry<String, List<TopicPartition>> entry : this.partitionsByTopic.entrySet()) {
+            Type.STRING.write(buffer, entry.getKey());
+            List<TopicPartition> parts = entry.getValue();
+            buffer.putInt(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                TopicPartition tp = parts.get(i);
+                PartitionData data = this.fetchData.get(tp);
+                buffer.putInt(tp.partition());
+                buffer.putLong(data.offset);
+                buffer.putInt(data.maxBytes);
+            }
+        }
+    }
+
+    public int sizeOf() {
+        int size = 4 + 4 + 4 + 4;
+        for (Map.Entry<String, List<TopicPartition>> entry : this.partitionsByTopic.entrySet())
+            size += Type.STRING.sizeOf(entry.getKey()) + 4 + entry.getValue().size() * (4 + 8 + 4);
+        return size;
+    }
+
+    public static FetchRequest parse(ByteBuffer buffer) {
+        int replicaId = buffer.getInt();
+        int maxWait = buffer.getInt();
+        int minBytes = buffer.getInt();
+        Map<TopicPartition, PartitionData> fetchData = new LinkedHashMap<TopicPartition, PartitionData>();
+        int topicCount = buffer.getInt();
+        for (int i = 0; i < topicCount; i++) {
+            String topic = (String) Type.STRING.read(buffer);
+            int partitionCount = buffer.getInt();
+            for (int j = 0; j < partitionCount; j++) {
+                int partition = buffer.getInt();
+                long offset = buffer.getLong();
+                int maxBytes = buffer.getInt();
+                fetchData.put(new TopicPartition(topic, partition), new PartitionData(offset, maxBytes));
+            }
+        }
+        return new FetchRequest(replicaId, maxWait, minBytes, fetchData);
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+import org.apache.kafka.common.record.MemoryRecords;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#FETCH_RESPONSE_V0}.
+ * <p>
+ * Parsing is zero-copy: the record set of each partition is a {@link MemoryRecords} over a slice of the buffer the
+ * response was read from, so the buffer must not be reused while the records are in use. As with
+ * {@link ProduceResponse} the partition responses are held in parallel arrays and consecutive partitions of the same
+ * topic are written as a single topic response.
+ */
+public class FetchResponse implements Message {
+
+    private final TopicPartition[] partitions;
+    private final short[] errorCodes;
+    private final long[] highWatermarks;
+    private final MemoryRecords[] recordSets;
+
+    public FetchResponse(TopicPartition[] partitions, short[] errorCodes, long[] highWatermarks, MemoryRecords[] recordSets) {
+        if (partitions.length != errorCodes.length || partitions.length != highWatermarks.length
+            || partitions.length != recordSets.length)
+            throw new IllegalArgumentException("Mismatched partition response arrays.");
+        this.partitions = partitions;
+        this.errorCodes = errorCodes;
+        this.highWatermarks = highWatermarks;
+        this.recordSets = recordSets;
+    }
+
+    /**
+     * The number of partition responses
+     */
+    public int size() {
+        return this.partitions.length;
+    }
+
+    public TopicPartition partition(int i) {
+        return this.partitions[i];
+    }
+
+    public short errorCode(int i) {
+        return this.errorCodes[i];
+    }
+
+    public long highWatermark(int i) {
+        return this.highWatermarks[i];
+    }
+
+    /**
+     * The records fetched for the i-th partition. The last record may be incomplete if it didn't fit in the fetch size,
+     * iteration stops before it.
+     */
+    public MemoryRecords records(int i) {
+        return this.recordSets[i];
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(topicCount());
+        int i = 0;
+        while (i < this.partitions.length) {
+            int end = endOfTopic(i);
+            Type.STRING.write(buffer, this.partitions[i].topic());
+            buffer.putInt(end - i);
+            for (; i < end; i++) {
+                buffer.putInt(this.partitions[i].partition());
+                buffer.putShort(this.errorCodes[i]);
+                buffer.putLong(this.highWatermarks[i]);
+                ByteBuffer records = this.recordSets[i].buffer();
+                records.flip();
+                Type.BYTES.write(buffer, records);
+            }
+        }
+    }
+
+    public int sizeOf() {
+        int size = 4;
+        for (int i = 0; i < this.partitions.length; i = endOfTopic(i))
+            size += Type.STRING.sizeOf(this.partitions[i].topic()) + 4;
+        for (int i = 0; i < this.partitions.length; i++)
+            size += 4 + 2 + 8 + 4 + this.recordSets[i].sizeInBytes();
+        return size;
+    }
+
+    private int topicCount() {
+        int count = 0;
+        for (int i = 0; i < this.partitions.length; i = endOfTopic(i))
+            count++;
+        return count;
+    }
+
+    /**
+     * The index just past the run of partitions of the same topic starting at the given index
+     */
+    private int endOfTopic(int start) {
+        String topic = this.partitions[start].topic();
+        int end = start + 1;
+        while (end < this.partitions.length && this.partitions[end].topic().equals(topic))
+            end++;
+        return end;
+    }
+
+    public static FetchResponse parse(ByteBuffer buffer) {
+        int topicCount = buffer.getInt();
+        TopicPartition[] partitions = new TopicPartition[topicCount];
+        short[] errorCodes = new short[topicCount];
+        long[] highWatermarks = new long[topicCount];
+        MemoryRecords[] recordSets = new MemoryRecords[topicCount];
+        int size = 0;
+        for (int i = 0; i < topicCount; i++) {
+            String topic = (String) Type.STRING.read(buffer);
+            int partitionCount = buffer.getInt();
+            if (size + partitionCount > partitions.length) {
+                int capacity = Math.max(2 * partitions.length, size + partitionCount);
+                partitions = Arrays.copyOf(partitions, capacity);
+                errorCodes = Arrays.copyOf(errorCodes, capacity);
+                highWatermarks = Arrays.copyOf(highWatermarks, capacity);
+                recordSets = Arrays.copyOf(recordSets, capacity);
+            }
+            for (int j = 0; j < partitionCount; j++, size++) {
+                partitions[size] = new TopicPartition(topic, buffer.getInt());
+                errorCodes[size] = buffer.getShort();
+                highWatermarks[size] = buffer.getLong();
+                int recordsSize = buffer.getInt();
+                int end = buffer.position() + recordsSize;
+                int limit = buffer.limit();
+                buffer.limit(end);
+                recordSets[size] = MemoryRecords.readableRecords(buffer);
+                buffer.limit(limit);
+                buffer.position(end);
+            }
+        }
+        if (size < partitions.length) {
+            partitions = Arrays.copyOf(partitions, size);
+            errorCodes = Arrays.copyOf(errorCodes, size);
+            highWatermarks = Arrays.copyOf(highWatermarks, size);
+            recordSets = Arrays.copyOf(recordSets, size);
+        }
+        return new FetchResponse(partitions, errorCodes, highWatermarks, recordSets);
+    }
+
+}
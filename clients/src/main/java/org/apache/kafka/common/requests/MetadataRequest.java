@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#METADATA_REQUEST_V0}
+ */
+public class MetadataRequest implements Message {
+
+    private final List<String> topics;
+
+    public MetadataRequest(Collection<String> topics) {
+        this.topics = new ArrayList<String>(topics);
+    }
+
+    /**
+     * The topics to fetch metadata for, all topics if empty
+     */
+    public List<String> topics() {
+        return this.topics;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(this.topics.size());
+        for (int i = 0; i < this.topics.size(); i++)
+            Type.STRING.write(buffer, this.topics.get(i));
+    }
+
+    public int sizeOf() {
+        int size = 4;
+        for (int i = 0; i < this.topics.size(); i++)
+            size += Type.STRING.sizeOf(this.topics.get(i));
+        return size;
+    }
+
+    public static MetadataRequest parse(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> topics = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            topics.add((String) Type.STRING.read(buffer));
+        return new MetadataRequest(topics);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#METADATA_RESPONSE_V0}.
+ * <p>
+ * Parsing decodes every partition of the response; see {@link MetadataView} to decode topics only on demand. Topics
+ * and partitions that have an error are skipped when parsing, just as in
+ * {@link org.apache.kafka.common.protocol.ProtoUtils#parseMetadataResponse(org.apache.kafka.common.protocol.types.Struct)
+ * ProtoUtils.parseMetadataResponse()}.
+ */
+public class MetadataResponse implements Message {
+
+    private final List<Node> brokers;
+    private final List<PartitionInfo> partitions;
+
+    public MetadataResponse(List<Node> brokers, List<PartitionInfo> partitions) {
+        this.brokers = brokers;
+        this.partitions = partitions;
+    }
+
+    public List<Node> brokers() {
+        return this.brokers;
+    }
+
+    public List<PartitionInfo> partitions() {
+        return this.partitions;
+    }
+
+    /**
+     * The cluster described by this response
+     */
+    public Cluster cluster() {
+        return new Cluster(this.brokers, this.partitions);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(this.brokers.size());
+        for (int i = 0; i < this.brokers.size(); i++) {
+            Node broker = this.brokers.get(i);
+            buffer.putInt(broker.id());
+            Type.STRING.write(buffer, broker.host());
+            buffer.putInt(broker.port());
+        }
+        Map<String, List<PartitionInfo>> topics = partitionsByTopic();
+        buffer.putInt(topics.size());
+        for (Map.Entry<String, List<PartitionInfo>> entry : topics.entrySet()) {
+            buffer.putShort(Errors.NONE.code());
+            Type.STRING.write(buffer, entry.getKey());
+            List<PartitionInfo> parts = entry.getValue();
+            buffer.putInt(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                PartitionInfo part = parts.get(i);
+                buffer.putShort(Errors.NONE.code());
+                buffer.putInt(part.partition());
+                buffer.putInt(part.leader() == null ? -1 : part.leader().id());
+                writeNodeIds(buffer, part.replicas());
+                writeNodeIds(buffer, part.inSyncReplicas());
+            }
+        }
+    }
+
+    public int sizeOf() {
+        int size = 4;
+        for (int i = 0; i < this.brokers.size(); i++)
+            size += 4 + Type.STRING.sizeOf(this.brokers.get(i).host()) + 4;
+        size += 4;
+        for (Map.Entry<String, List<PartitionInfo>> entry : partitionsByTopic().entrySet()) {
+            size += 2 + Type.STRING.sizeOf(entry.getKey()) + 4;
+            for (PartitionInfo part : entry.getValue())
+                size += 2 + 4 + 4 + 4 + 4 * part.replicas().length + 4 + 4 * part.inSyncReplicas().length;
+        }
+        return size;
+    }
+
+    private Map<String, List<PartitionInfo>> partitionsByTopic() {
+        Map<String, List<PartitionInfo>> topics = new LinkedHashMap<String, List<PartitionInfo>>();
+        for (PartitionInfo part : this.partitions) {
+            List<PartitionInfo> parts = topics.get(part.topic());
+            if (parts == null) {
+                parts = new ArrayList<PartitionInfo>();
+                topics.put(part.topic(), parts);
+            }
+            parts.add(part);
+        }
+        return topics;
+    }
+
+    private static void writeNodeIds(ByteBuffer buffer, Node[] nodes) {
+        buffer.putInt(nodes.length);
+        for (int i = 0; i < nodes.length; i++)
+            buffer.putInt(nodes[i].id());
+    }
+
+    public static MetadataResponse parse(ByteBuffer buffer) {
+        MetadataView view = MetadataView.parse(buffer);
+        List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
+        for (String topic : view.topics()) {
+            List<PartitionInfo> parts = view.partitionsFor(topic);
+            if (parts != null)
+                partitions.addAll(parts);
+        }
+        return new MetadataResponse(view.brokers(), partitions);
+    }
+
+}
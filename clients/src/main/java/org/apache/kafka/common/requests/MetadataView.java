@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A flyweight view of a serialized {@link org.apache.kafka.common.protocol.Protocol#METADATA_RESPONSE_V0}.
+ * <p>
+ * Parsing only decodes the brokers and the name and position of each topic, skipping over the partitions. The
+ * partitions of a topic are decoded straight from the response buffer when they are first asked for, so a
+ * {@link #cluster() cluster} backed by this view only ever materializes the topics that are actually used. The view
+ * keeps a reference to the response buffer for as long as it is reachable.
+ * <p>
+ * Topics and partitions that have an error are skipped, just as in {@link MetadataResponse}.
+ * <p>
+ * This class is thread safe.
+ */
+public class MetadataView implements Cluster.PartitionLoader {
+
+    private final ByteBuffer buffer;
+    private final List<Node> brokers;
+    private final Map<Integer, Node> brokersById;
+    private final Map<String, Integer> topicPositions;
+
+    private MetadataView(ByteBuffer buffer, List<Node> brokers, Map<Integer, Node> brokersById, Map<String, Integer> topicPositions) {
+        this.buffer = buffer;
+        this.brokers = brokers;
+        this.brokersById = brokersById;
+        this.topicPositions = topicPositions;
+    }
+
+    /**
+     * Create a view of the metadata response at the buffer's position. The buffer's position is advanced past the
+     * response but its contents must not be changed while the view is in use.
+     */
+    public static MetadataView parse(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        int brokerCount = buffer.getInt();
+        List<Node> brokers = new ArrayList<Node>(brokerCount);
+        Map<Integer, Node> brokersById = new HashMap<Integer, Node>();
+        for (int i = 0; i < brokerCount; i++) {
+            int nodeId = buffer.getInt();
+            String host = (String) Type.STRING.read(buffer);
+            int port = buffer.getInt();
+            Node node = new Node(nodeId, host, port);
+            brokers.add(node);
+            brokersById.put(nodeId, node);
+        }
+        Map<String, Integer> topicPositions = new LinkedHashMap<String, Integer>();
+        int topicCount = buffer.getInt();
+        for (int i = 0; i < topicCount; i++) {
+            short topicError = buffer.getShort();
+            String topic = (String) Type.STRING.read(buffer);
+            if (topicError == Errors.NONE.code())
+                topicPositions.put(topic, buffer.position());
+            int partitionCount = buffer.getInt();
+            for (int j = 0; j < partitionCount; j++) {
+                // skip the error code, partition id and leader, then the replica and isr arrays
+                buffer.position(buffer.position() + 2 + 4 + 4);
+                skipInt32Array(buffer);
+                skipInt32Array(buffer);
+            }
+        }
+        return new MetadataView(view, brokers, brokersById, topicPositions);
+    }
+
+    private static void skipInt32Array(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        buffer.position(buffer.position() + 4 * size);
+    }
+
+    /**
+     * The brokers in the response
+     */
+    public List<Node> brokers() {
+        return this.brokers;
+    }
+
+    /**
+     * The topics in the response that have no error
+     */
+    public Set<String> topics() {
+        return Collections.unmodifiableSet(this.topicPositions.keySet());
+    }
+
+    /**
+     * Decode the partitions of the given topic that have no error
+     * 
+     * @return The partitions, or null if the topic isn't in the response, has an error or has no partitions without
+     *         an error
+     */
+    public List<PartitionInfo> partitionsFor(String topic) {
+        Integer position = this.topicPositions.get(topic);
+        if (position == null)
+            return null;
+        ByteBuffer buffer = this.buffer.duplicate();
+        buffer.position(position);
+        int partitionCount = buffer.getInt();
+        List<PartitionInfo> partitions = new ArrayList<PartitionInfo>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            short partError = buffer.getShort();
+            int partition = buffer.getInt();
+            int leader = buffer.getInt();
+            Node[] replicas = readNodes(buffer);
+            Node[] isr = readNodes(buffer);
+            if (partError == Errors.NONE.code())
+                partitions.add(new PartitionInfo(topic, partition, leader == -1 ? null : this.brokersById.get(leader), replicas, isr));
+        }
+        return partitions.isEmpty() ? null : partitions;
+    }
+
+    private Node[] readNodes(ByteBuffer buffer) {
+        Node[] nodes = new Node[buffer.getInt()];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = this.brokersById.get(buffer.getInt());
+        return nodes;
+    }
+
+    /**
+     * A cluster backed by this view, which decodes each topic the first time it is queried
+     */
+    public Cluster cluster() {
+        return Cluster.lazy(this.brokers, this);
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#PRODUCE_REQUEST_V0}
+ */
+public class ProduceRequest implements Message {
+
+    private final short acks;
+    private final int timeout;
+    private final Map<TopicPartition, ByteBuffer> recordSets;
+    private final Map<String, List<TopicPartition>> partitionsByTopic;
+
+    /**
+     * Create a produce request
+     * 
+     * @param acks The number of acknowledgments the server should wait for
+     * @param timeout The time in ms the server should wait for the acknowledgments
+     * @param recordSets The records to append to each partition, from their position to their limit
+     */
+    public ProduceRequest(short acks, int timeout, Map<TopicPartition, ByteBuffer> recordSets) {
+        this.acks = acks;
+        this.timeout = timeout;
+        this.recordSets = recordSets;
+        this.partitionsByTopic = new LinkedHashMap<String, List<TopicPartition>>();
+        for (TopicPartition tp : recordSets.keySet()) {
+            List<TopicPartition> parts = this.partitionsByTopic.get(tp.topic());
+            if (parts == null) {
+                parts = new ArrayList<TopicPartition>();
+                this.partitionsByTopic.put(tp.topic(), parts);
+            }
+            parts.add(tp);
+        }
+    }
+
+    public short acks() {
+        return this.acks;
+    }
+
+    public int timeout() {
+        return this.timeout;
+    }
+
+    public Map<TopicPartition, ByteBuffer> recordSets() {
+        return this.recordSets;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putShort(this.acks);
+        buffer.putInt(this.timeout);
+        buffer.putInt(this.partitionsByTopic.size());
+        for (Map.Entry<String, List<TopicPartition>> entry : this.partitionsByTopic.entrySet()) {
+            Type.STRING.write(buffer, entry.getKey());
+            List<TopicPartition> parts = entry.getValue();
+            buffer.putInt(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                TopicPartition tp = parts.get(i);
+                buffer.putInt(tp.partition());
+                Type.BYTES.write(buffer, this.recordSets.get(tp));
+            }
+        }
+    }
+
+    public int sizeOf() {
+        int size = 2 + 4 + 4;
+        for (Map.Entry<String, List<TopicPartition>> entry : this.partitionsByTopic.entrySet()) {
+            size += Type.STRING.sizeOf(entry.getKey()) + 4;
+            List<TopicPartition> parts = entry.getValue();
+            for (int i = 0; i < parts.size(); i++)
+                size += 4 + 4 + this.recordSets.get(parts.get(i)).remaining();
+        }
+        return size;
+    }
+
+    public static ProduceRequest parse(ByteBuffer buffer) {
+        short acks = buffer.getShort();
+        int timeout = buffer.getInt();
+        Map<TopicPartition, ByteBuffer> recordSets = new LinkedHashMap<TopicPartition, ByteBuffer>();
+        int topicCount = buffer.getInt();
+        for (int i = 0; i < topicCount; i++) {
+            String topic = (String) Type.STRING.read(buffer);
+            int partitionCount = buffer.getInt();
+            for (int j = 0; j < partitionCount; j++) {
+                int partition = buffer.getInt();
+                recordSets.put(new TopicPartition(topic, partition), (ByteBuffer) Type.BYTES.read(buffer));
+            }
+        }
+        return new ProduceRequest(acks, timeout, recordSets);
+    }
+
+}
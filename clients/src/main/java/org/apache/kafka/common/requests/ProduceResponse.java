@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.types.Type;
+
+
+/**
+ * A type-specialized codec for {@link org.apache.kafka.common.protocol.Protocol#PRODUCE_RESPONSE_V0}.
+ * <p>
+ * The partition responses are held in parallel arrays so that the error code and offset of each partition are never
+ * boxed. Consecutive partitions of the same topic are written as a single topic response.
+ */
+public class ProduceResponse implements Message {
+
+    private final TopicPartition[] partitions;
+    private final short[] errorCodes;
+    private final long[] baseOffsets;
+
+    public ProduceResponse(TopicPartition[] partitions, short[] errorCodes, long[] baseOffsets) {
+        if (partitions.length != errorCodes.length || partitions.length != baseOffsets.length)
+            throw new IllegalArgumentException("Mismatched partition response arrays.");
+        this.partitions = partitions;
+        this.errorCodes = errorCodes;
+        this.baseOffsets = baseOffsets;
+    }
+
+    /**
+     * The number of partition responses
+     */
+    public int size() {
+        return this.partitions.length;
+    }
+
+    public TopicPartition partition(int i) {
+        return this.partitions[i];
+    }
+
+    public short errorCode(int i) {
+        return this.errorCodes[i];
+    }
+
+    public long baseOffset(int i) {
+        return this.baseOffsets[i];
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(topicCount());
+        int i = 0;
+        while (i < this.partitions.length) {
+            String topic = this.partitions[i].topic();
+            int end = endOfTopic(i);
+            Type.STRING.write(buffer, topic);
+            buffer.putInt(end - i);
+            for (; i < end; i++) {
+                buffer.putInt(this.partitions[i].partition());
+                buffer.putShort(this.errorCodes[i]);
+                buffer.putLong(this.baseOffsets[i]);
+            }
+        }
+    }
+
+    public int sizeOf() {
+        int size = 4;
+        for (int i = 0; i < this.partitions.length; i = endOfTopic(i))
+            size += Type.STRING.sizeOf(this.partitions[i].topic()) + 4;
+        return size + this.partitions.length * (4 + 2 + 8);
+    }
+
+    private int topicCount() {
+        int count = 0;
+        for (int i = 0; i < this.partitions.length; i = endOfTopic(i))
+            count++;
+        return count;
+    }
+
+    /**
+     * The index just past the run of partitions of the same topic starting at the given index
+     */
+    private int endOfTopic(int start) {
+        String topic = this.partitions[start].topic();
+        int end = start + 1;
+        while (end < this.partitions.length && this.partitions[end].topic().equals(topic))
+            end++;
+        return end;
+    }
+
+    public static ProduceResponse parse(ByteBuffer buffer) {
+        int topicCount = buffer.getInt();
+        TopicPartition[] partitions = new TopicPartition[topicCount];
+        short[] errorCodes = new short[topicCount];
+        long[] baseOffsets = new long[topicCount];
+        int size = 0;
+        for (int i = 0; i < topicCount; i++) {
+            String topic = (String) Type.STRING.read(buffer);
+            int partitionCount = buffer.getInt();
+            if (size + partitionCount > partitions.length) {
+                int capacity = Math.max(2 * partitions.length, size + partitionCount);
+                partitions = Arrays.copyOf(partitions, capacity);
+                errorCodes = Arrays.copyOf(errorCodes, capacity);
+                baseOffsets = Arrays.copyOf(baseOffsets, capacity);
+            }
+            for (int j = 0; j < partitionCount; j++, size++) {
+                partitions[size] = new TopicPartition(topic, buffer.getInt());
+                errorCodes[size] = buffer.getShort();
+                baseOffsets[size] = buffer.getLong();
+            }
+        }
+        if (size < partitions.length) {
+            partitions = Arrays.copyOf(partitions, size);
+            errorCodes = Arrays.copyOf(errorCodes, size);
+            baseOffsets = Arrays.copyOf(baseOffsets, size);
+        }
+        return new ProduceResponse(partitions, errorCodes, baseOffsets);
+    }
+
+}
@@ -16,31 +16,35 @@
  */
 package org.apache.kafka.common.requests;
 
-import static org.apache.kafka.common.protocol.Protocol.REQUEST_HEADER;
+import static org.apache.kafka.common.protocol.Protocol.REQUEST_HEADER_API_KEY;
+import static org.apache.kafka.common.protocol.Protocol.REQUEST_HEADER_API_VERSION;
+import static org.apache.kafka.common.protocol.Protocol.REQUEST_HEADER_CLIENT_ID;
+import static org.apache.kafka.common.protocol.Protocol.REQUEST_HEADER_CORRELATION_ID;
 
 import java.nio.ByteBuffer;
 
+import org.apache.kafka.common.protocol.Message;
 import org.apache.kafka.common.protocol.ProtoUtils;
 import org.apache.kafka.common.protocol.Protocol;
-import org.apache.kafka.common.protocol.types.Field;
 import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.protocol.types.Type;
 
 
 /**
  * The header for a request in the Kafka protocol
  */
-public class RequestHeader {
+public class RequestHeader implements Message {
 
-    private static Field API_KEY_FIELD = REQUEST_HEADER.get("api_key");
-    private static Field API_VERSION_FIELD = REQUEST_HEADER.get("api_version");
-    private static Field CLIENT_ID_FIELD = REQUEST_HEADER.get("client_id");
-    private static Field CORRELATION_ID_FIELD = REQUEST_HEADER.get("correlation_id");
-
-    private final Struct header;
+    private final short apiKey;
+    private final short apiVersion;
+    private final String clientId;
+    private final int correlationId;
 
     public RequestHeader(Struct header) {
-        super();
-        this.header = header;
+        this((Short) header.get(REQUEST_HEADER_API_KEY),
+             (Short) header.get(REQUEST_HEADER_API_VERSION),
+             (String) header.get(REQUEST_HEADER_CLIENT_ID),
+             (Integer) header.get(REQUEST_HEADER_CORRELATION_ID));
     }
 
     public RequestHeader(short apiKey, String client, int correlation) {
@@ -48,38 +52,56 @@ public class RequestHeader {
     }
 
     public RequestHeader(short apiKey, short version, String client, int correlation) {
-        this(new Struct(Protocol.REQUEST_HEADER));
-        this.header.set(API_KEY_FIELD, apiKey);
-        this.header.set(API_VERSION_FIELD, version);
-        this.header.set(CLIENT_ID_FIELD, client);
-        this.header.set(CORRELATION_ID_FIELD, correlation);
+        this.apiKey = apiKey;
+        this.apiVersion = version;
+        this.clientId = client;
+        this.correlationId = correlation;
     }
 
     public short apiKey() {
-        return (Short) this.header.get(API_KEY_FIELD);
+        return this.apiKey;
     }
 
     public short apiVersion() {
-        return (Short) this.header.get(API_VERSION_FIELD);
+        return this.apiVersion;
     }
 
     public String clientId() {
-        return (String) this.header.get(CLIENT_ID_FIELD);
+        return this.clientId;
     }
 
     public int correlationId() {
-        return (Integer) this.header.get(CORRELATION_ID_FIELD);
+        return this.correlationId;
+    }
+
+    /**
+     * The generic representation of this header
+     */
+    public Struct toStruct() {
+        Struct header = new Struct(Protocol.REQUEST_HEADER);
+        header.set(REQUEST_HEADER_API_KEY, this.apiKey);
+        header.set(REQUEST_HEADER_API_VERSION, this.apiVersion);
+        header.set(REQUEST_HEADER_CLIENT_ID, this.clientId);
+        header.set(REQUEST_HEADER_CORRELATION_ID, this.correlationId);
+        return header;
     }
 
     public static RequestHeader parse(ByteBuffer buffer) {
-        return new RequestHeader((Struct) Protocol.REQUEST_HEADER.read(buffer));
+        short apiKey = buffer.getShort();
+        short apiVersion = buffer.getShort();
+        int correlationId = buffer.getInt();
+        String clientId = (String) Type.STRING.read(buffer);
+        return new RequestHeader(apiKey, apiVersion, clientId, correlationId);
     }
 
     public void writeTo(ByteBuffer buffer) {
-        header.writeTo(buffer);
+        buffer.putShort(this.apiKey);
+        buffer.putShort(this.apiVersion);
+        buffer.putInt(this.correlationId);
+        Type.STRING.write(buffer, this.clientId);
     }
 
     public int sizeOf() {
-        return header.sizeOf();
+        return 2 + 2 + 4 + Type.STRING.sizeOf(this.clientId);
     }
 }
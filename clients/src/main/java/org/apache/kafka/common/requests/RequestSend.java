@@ -19,7 +19,7 @@ package org.apache.kafka.common.requests;
 import java.nio.ByteBuffer;
 
 import org.apache.kafka.common.network.NetworkSend;
-import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.protocol.Message;
 
 
 /**
@@ -28,15 +28,15 @@ import org.apache.kafka.common.protocol.types.Struct;
 public class RequestSend extends NetworkSend {
 
     private final RequestHeader header;
-    private final Struct body;
+    private final Message body;
 
-    public RequestSend(int destination, RequestHeader header, Struct body) {
+    public RequestSend(int destination, RequestHeader header, Message body) {
         super(destination, serialize(header, body));
         this.header = header;
         this.body = body;
     }
 
-    private static ByteBuffer serialize(RequestHeader header, Struct body) {
+    private static ByteBuffer serialize(RequestHeader header, Message body) {
         ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + body.sizeOf());
         header.writeTo(buffer);
         body.writeTo(buffer);
@@ -48,7 +48,7 @@ public class RequestSend extends NetworkSend {
         return this.header;
     }
 
-    public Struct body() {
+    public Message body() {
         return body;
     }
 
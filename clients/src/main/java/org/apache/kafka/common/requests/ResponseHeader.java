@@ -16,47 +16,51 @@
  */
 package org.apache.kafka.common.requests;
 
-import static org.apache.kafka.common.protocol.Protocol.RESPONSE_HEADER;
+import static org.apache.kafka.common.protocol.Protocol.RESPONSE_HEADER_CORRELATION_ID;
 
 import java.nio.ByteBuffer;
 
+import org.apache.kafka.common.protocol.Message;
 import org.apache.kafka.common.protocol.Protocol;
-import org.apache.kafka.common.protocol.types.Field;
 import org.apache.kafka.common.protocol.types.Struct;
 
 
 /**
  * A response header in the kafka protocol.
  */
-public class ResponseHeader {
+public class ResponseHeader implements Message {
 
-    private static Field CORRELATION_KEY_FIELD = RESPONSE_HEADER.get("correlation_id");
-
-    private final Struct header;
+    private final int correlationId;
 
     public ResponseHeader(Struct header) {
-        this.header = header;
+        this((Integer) header.get(RESPONSE_HEADER_CORRELATION_ID));
     }
 
     public ResponseHeader(int correlationId) {
-        this(new Struct(Protocol.RESPONSE_HEADER));
-        this.header.set(CORRELATION_KEY_FIELD, correlationId);
+        this.correlationId = correlationId;
     }
 
     public int correlationId() {
-        return (Integer) header.get(CORRELATION_KEY_FIELD);
+        return this.correlationId;
+    }
+
+    /**
+     * The generic representation of this header
+     */
+    public Struct toStruct() {
+        return new Struct(Protocol.RESPONSE_HEADER).set(RESPONSE_HEADER_CORRELATION_ID, this.correlationId);
     }
 
     public void writeTo(ByteBuffer buffer) {
-        header.writeTo(buffer);
+        buffer.putInt(this.correlationId);
     }
 
     public int sizeOf() {
-        return header.sizeOf();
+        return 4;
     }
 
     public static ResponseHeader parse(ByteBuffer buffer) {
-        return new ResponseHeader(((Struct) Protocol.RESPONSE_HEADER.read(buffer)));
+        return new ResponseHeader(buffer.getInt());
     }
 
 }
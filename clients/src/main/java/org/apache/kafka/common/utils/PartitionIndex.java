@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * A concurrent map from topic-partitions to values for very large numbers of partitions.
+ * <p>
+ * Topics are kept in a concurrent hash map and each topic keeps its values in an array indexed by partition number,
+ * since partition numbers are dense. Lookups take no locks. Adding a partition takes the lock of its topic only, and is
+ * amortized O(1): the topic's array doubles whenever a partition beyond its end is added. Values are never removed.
+ * <p>
+ * Iteration is weakly consistent: it sees every value added before it started and may or may not see values added
+ * while it is in progress.
+ */
+public final class PartitionIndex<V> implements Iterable<PartitionIndex.Entry<V>> {
+
+    private final ConcurrentMap<String, Topic<V>> topics;
+    private final AtomicInteger size;
+
+    public PartitionIndex() {
+        this.topics = new ConcurrentHashMap<String, Topic<V>>();
+        this.size = new AtomicInteger(0);
+    }
+
+    /**
+     * The value for the given partition, or null if there is none
+     */
+    public V get(TopicPartition tp) {
+        Topic<V> topic = this.topics.get(tp.topic());
+        if (topic == null)
+            return null;
+        Entry<V> entry = topic.get(tp.partition());
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Add the value for the given partition unless it already has one
+     *
+     * @return The previous value for the partition, or null if the given value was added
+     */
+    public V putIfAbsent(TopicPartition tp, V value) {
+        if (tp.partition() < 0)
+            throw new IllegalArgumentException("Invalid partition " + tp.partition() + ".");
+        Topic<V> topic = this.topics.get(tp.topic());
+        if (topic == null) {
+            this.topics.putIfAbsent(tp.topic(), new Topic<V>());
+            topic = this.topics.get(tp.topic());
+        }
+        Entry<V> entry = topic.putIfAbsent(tp, value);
+        if (entry != null)
+            return entry.value;
+        this.size.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * The number of partitions with a value
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public Iterator<Entry<V>> iterator() {
+        final Iterator<Topic<V>> topics = this.topics.values().iterator();
+        return new AbstractIterator<Entry<V>>() {
+            private AtomicReferenceArray<Entry<V>> entries = null;
+            private int next = 0;
+
+            @Override
+            protected Entry<V> makeNext() {
+                while (true) {
+                    while (entries != null && next < entries.length()) {
+                        Entry<V> entry = entries.get(next++);
+                        if (entry != null)
+                            return entry;
+                    }
+                    if (!topics.hasNext())
+                        return allDone();
+                    entries = topics.next().entries;
+                    next = 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * A partition and its value
+     */
+    public static final class Entry<V> {
+        private final TopicPartition topicPartition;
+        private final V value;
+
+        private Entry(TopicPartition topicPartition, V value) {
+            this.topicPartition = topicPartition;
+            this.value = value;
+        }
+
+        public TopicPartition topicPartition() {
+            return this.topicPartition;
+        }
+
+        public V value() {
+            return this.value;
+        }
+    }
+
+    /**
+     * The entries of one topic, indexed by partition
+     */
+    private static final class Topic<V> {
+        private volatile AtomicReferenceArray<Entry<V>> entries = new AtomicReferenceArray<Entry<V>>(1);
+
+        public Entry<V> get(int partition) {
+            AtomicReferenceArray<Entry<V>> entries = this.entries;
+            return partition < entries.length() ? entries.get(partition) : null;
+        }
+
+        public synchronized Entry<V> putIfAbsent(TopicPartition tp, V value) {
+            int partition = tp.partition();
+            AtomicReferenceArray<Entry<V>> entries = this.entries;
+            if (partition >= entries.length()) {
+                // readers of the old array that miss the new partition fall back to this synchronized method
+                AtomicReferenceArray<Entry<V>> grown = new AtomicReferenceArray<Entry<V>>(Math.max(partition + 1, 2 * entries.length()));
+                for (int i = 0; i < entries.length(); i++)
+                    grown.set(i, entries.get(i));
+                this.entries = grown;
+                entries = grown;
+            }
+            Entry<V> existing = entries.get(partition);
+            if (existing != null)
+                return existing;
+            entries.set(partition, new Entry<V>(tp, value));
+            return null;
+        }
+    }
+
+}
@@ -94,6 +94,105 @@ public class Utils {
         buffer.putInt(index, (int) (value & 0xffffffffL));
     }
 
+    /**
+     * Write the given integer as a zig-zag encoded variable length integer, which takes between 1 and 5 bytes. Small
+     * values of either sign take fewer bytes.
+     * 
+     * @param value The value to write
+     * @param buffer The buffer to write to
+     */
+    public static void writeVarint(int value, ByteBuffer buffer) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & 0xffffff80) != 0) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Read a zig-zag encoded variable length integer written by {@link #writeVarint(int, ByteBuffer)}
+     * 
+     * @param buffer The buffer to read from
+     * @return The integer read
+     * @throws IllegalArgumentException If the encoding is longer than 5 bytes
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28)
+                throw new IllegalArgumentException("Varint is too long.");
+            b = buffer.get();
+            v |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Write the given long as a zig-zag encoded variable length integer, which takes between 1 and 10 bytes
+     * 
+     * @param value The value to write
+     * @param buffer The buffer to write to
+     */
+    public static void writeVarlong(long value, ByteBuffer buffer) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & 0xffffffffffffff80L) != 0L) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Read a zig-zag encoded variable length long written by {@link #writeVarlong(long, ByteBuffer)}
+     * 
+     * @param buffer The buffer to read from
+     * @return The long read
+     * @throws IllegalArgumentException If the encoding is longer than 10 bytes
+     */
+    public static long readVarlong(ByteBuffer buffer) {
+        long v = 0L;
+        int shift = 0;
+        long b;
+        do {
+            if (shift > 63)
+                throw new IllegalArgumentException("Varlong is too long.");
+            b = buffer.get();
+            v |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * The number of bytes {@link #writeVarint(int, ByteBuffer)} takes to write the given value
+     */
+    public static int sizeOfVarint(int value) {
+        int v = (value << 1) ^ (value >> 31);
+        int bytes = 1;
+        while ((v & 0xffffff80) != 0) {
+            bytes++;
+            v >>>= 7;
+        }
+        return bytes;
+    }
+
+    /**
+     * The number of bytes {@link #writeVarlong(long, ByteBuffer)} takes to write the given value
+     */
+    public static int sizeOfVarlong(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        int bytes = 1;
+        while ((v & 0xffffffffffffff80L) != 0L) {
+            bytes++;
+            v >>>= 7;
+        }
+        return bytes;
+    }
+
     /**
      * Compute the CRC32 of the byte array
      * 
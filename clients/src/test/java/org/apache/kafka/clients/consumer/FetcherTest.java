@@ -0,0 +1,296 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.internals.Fetcher;
+import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.NetworkSend;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.Protocol;
+import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.LogEntry;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.requests.FetchRequest;
+import org.apache.kafka.common.requests.FetchResponse;
+import org.apache.kafka.common.requests.RequestSend;
+import org.apache.kafka.common.requests.ResponseHeader;
+import org.apache.kafka.common.utils.MockTime;
+import org.apache.kafka.test.MockSelector;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FetcherTest {
+
+    private MockTime time = new MockTime();
+    private MockSelector selector = new MockSelector(time);
+    private Metadata metadata = new Metadata(0, Long.MAX_VALUE);
+    private Node node0 = new Node(0, "localhost", 1969);
+    private Node node1 = new Node(1, "localhost", 1970);
+    private TopicPartition tp0 = new TopicPartition("test", 0);
+    private TopicPartition tp1 = new TopicPartition("test", 1);
+    private Cluster cluster = new Cluster(asList(node0, node1),
+                                          asList(new PartitionInfo("test", 0, node0, new Node[] { node0 }, new Node[] { node0 }),
+                                                 new PartitionInfo("test", 1, node1, new Node[] { node1 }, new Node[] { node1 })));
+    private int fetchSize = 1024;
+    private Metrics metrics;
+    private Fetcher fetcher = fetcher(16 * fetchSize);
+
+    @Before
+    public void setup() {
+        metadata.update(cluster, time.milliseconds());
+    }
+
+    @Test
+    public void testResetAndFetch() {
+        subscribe(tp0);
+        fetcher.poll(0);
+        assertEquals("We should have connected", 1, selector.connected().size());
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend offsetRequest = single(sent(ApiKeys.LIST_OFFSETS));
+        selector.clear();
+        selector.completeReceive(offsetResponse(offsetRequest, tp0, 5L));
+        assertTrue(fetcher.poll(0).isEmpty());
+        assertEquals(5L, fetcher.position(tp0));
+
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend fetch = single(sent(ApiKeys.FETCH));
+        assertEquals(5L, ((FetchRequest) fetch.body()).fetchData().get(tp0).offset);
+        selector.clear();
+        // the server may return a record before the fetch offset and a partial record at the end
+        selector.completeReceive(fetchResponse(fetch, tp0, Errors.NONE.code(), records(4L, 5L, 6L, 7L), true));
+        Map<TopicPartition, MemoryRecords> fetched = fetcher.poll(0);
+        assertEquals(1, fetched.size());
+        Iterator<LogEntry> iter = fetched.get(tp0).iterator();
+        assertEquals(5L, iter.next().offset());
+        assertEquals(6L, iter.next().offset());
+        assertFalse(iter.hasNext());
+        assertEquals(7L, fetcher.position(tp0));
+        assertEquals("The next fetch should be sent before the records are returned", 7L, ((FetchRequest) single(sent(ApiKeys.FETCH)).body()).fetchData().get(tp0).offset);
+    }
+
+    @Test
+    public void testPipelinedFetches() {
+        subscribe(tp0, tp1);
+        fetcher.seek(tp0, 0L);
+        fetcher.seek(tp1, 0L);
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        List<RequestSend> fetches = sent(ApiKeys.FETCH);
+        assertEquals("Both leaders should be fetched from at once", 2, fetches.size());
+        selector.clear();
+        fetcher.poll(0);
+        assertEquals("Only one fetch should be in flight per broker", 0, sent(ApiKeys.FETCH).size());
+
+        RequestSend fetch0 = fetches.get(0).destination() == 0 ? fetches.get(0) : fetches.get(1);
+        selector.completeReceive(fetchResponse(fetch0, tp0, Errors.NONE.code(), records(0L, 1L), false));
+        Map<TopicPartition, MemoryRecords> fetched = fetcher.poll(0);
+        assertEquals(1, fetched.size());
+        assertTrue(fetched.containsKey(tp0));
+        assertEquals(2L, fetcher.position(tp0));
+        assertEquals(0L, fetcher.position(tp1));
+        RequestSend next = single(sent(ApiKeys.FETCH));
+        assertEquals(0, next.destination());
+        assertEquals(2L, ((FetchRequest) next.body()).fetchData().get(tp0).offset);
+    }
+
+    @Test
+    public void testOffsetOutOfRange() {
+        subscribe(tp0);
+        fetcher.seek(tp0, 10L);
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend fetch = single(sent(ApiKeys.FETCH));
+        selector.clear();
+        selector.completeReceive(fetchResponse(fetch, tp0, Errors.OFFSET_OUT_OF_RANGE.code(), new MemoryRecords(0), false));
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        assertEquals("The position should be looked up again", 1, sent(ApiKeys.LIST_OFFSETS).size());
+    }
+
+    @Test
+    public void testSeekDiscardsFetchInFlight() {
+        subscribe(tp0);
+        fetcher.seek(tp0, 0L);
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend fetch = single(sent(ApiKeys.FETCH));
+        selector.clear();
+        fetcher.seek(tp0, 10L);
+        selector.completeReceive(fetchResponse(fetch, tp0, Errors.NONE.code(), records(0L, 1L), false));
+        assertTrue(fetcher.poll(0).isEmpty());
+        assertEquals(10L, fetcher.position(tp0));
+        selector.clear();
+        fetcher.poll(0);
+        assertEquals(10L, ((FetchRequest) single(sent(ApiKeys.FETCH)).body()).fetchData().get(tp0).offset);
+    }
+
+    @Test(expected = RecordTooLargeException.class)
+    public void testRecordTooLarge() {
+        subscribe(tp0);
+        fetcher.seek(tp0, 0L);
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend fetch = single(sent(ApiKeys.FETCH));
+        selector.clear();
+        MemoryRecords records = new MemoryRecords(2 * fetchSize);
+        records.append(0L, new byte[0], new byte[fetchSize], CompressionType.NONE);
+        ByteBuffer buffer = records.buffer();
+        buffer.flip();
+        buffer.limit(fetchSize);
+        selector.completeReceive(fetchResponse(fetch, tp0, Errors.NONE.code(), MemoryRecords.readableRecords(buffer), false));
+        fetcher.poll(0);
+    }
+
+    @Test
+    public void testPrefetchBudget() {
+        fetcher = fetcher(fetchSize);
+        subscribe(tp0, tp1);
+        fetcher.seek(tp0, 0L);
+        fetcher.seek(tp1, 0L);
+        fetcher.poll(0);
+        selector.clear();
+        fetcher.poll(0);
+        RequestSend fetch = single(sent(ApiKeys.FETCH));
+        assertEquals("Only one partition fits in the budget", 1, ((FetchRequest) fetch.body()).fetchData().size());
+        assertEquals(0.0, availableMemory(), 0.0);
+        TopicPartition first = fetch.destination() == 0 ? tp0 : tp1;
+        TopicPartition second = first == tp0 ? tp1 : tp0;
+
+        selector.clear();
+        selector.completeReceive(fetchResponse(fetch, first, Errors.NONE.code(), records(0L), false));
+        assertTrue(fetcher.poll(0).containsKey(first));
+        fetch = single(sent(ApiKeys.FETCH));
+        assertTrue("The partition that waited should be fetched next", ((FetchRequest) fetch.body()).fetchData().containsKey(second));
+
+        selector.clear();
+        selector.completeReceive(fetchResponse(fetch, second, Errors.NONE.code(), new MemoryRecords(0), false));
+        fetcher.poll(0);
+        assertEquals("The reservation should be released", fetchSize, availableMemory(), 0.0);
+    }
+
+    private Fetcher fetcher(long prefetchMemory) {
+        metrics = new Metrics(time);
+        return new Fetcher(selector,
+                           metadata,
+                           "",
+                           1,
+                           100,
+                           fetchSize,
+                           prefetchMemory,
+                           Fetcher.EARLIEST_OFFSET_TIMESTAMP,
+                           1024,
+                           1024,
+                           0L,
+                           metrics,
+                           time);
+    }
+
+    private double availableMemory() {
+        return metrics.metrics().get("prefetch_available_bytes").value();
+    }
+
+    private void subscribe(TopicPartition... partitions) {
+        for (TopicPartition tp : partitions)
+            fetcher.subscribe(tp);
+        // clear the update the new topic triggers
+        metadata.update(cluster, time.milliseconds());
+    }
+
+    private List<RequestSend> sent(ApiKeys key) {
+        List<RequestSend> sends = new ArrayList<RequestSend>();
+        for (NetworkSend send : selector.completedSends())
+            if (((RequestSend) send).header().apiKey() == key.id)
+                sends.add((RequestSend) send);
+        return sends;
+    }
+
+    private RequestSend single(List<RequestSend> sends) {
+        assertEquals("A single request should be sent", 1, sends.size());
+        return sends.get(0);
+    }
+
+    private MemoryRecords records(long... offsets) {
+        MemoryRecords records = new MemoryRecords(1024);
+        for (long offset : offsets)
+            records.append(offset, "key".getBytes(), "value".getBytes(), CompressionType.NONE);
+        return records;
+    }
+
+    private NetworkReceive fetchResponse(RequestSend request, TopicPartition tp, short error, MemoryRecords records, boolean truncate) {
+        if (truncate) {
+            ByteBuffer buffer = records.buffer();
+            buffer.flip();
+            buffer.limit(buffer.limit() - 1);
+            records = MemoryRecords.readableRecords(buffer);
+        }
+        return receive(request, new FetchResponse(new TopicPartition[] { tp },
+                                                  new short[] { error },
+                                                  new long[] { 100L },
+                                                  new MemoryRecords[] { records }));
+    }
+
+    private NetworkReceive offsetResponse(RequestSend request, TopicPartition tp, long offset) {
+        Struct struct = new Struct(Protocol.LIST_OFFSET_RESPONSE_V0);
+        Struct topicResponse = struct.instance(Protocol.LIST_OFFSET_RESPONSE_RESPONSES);
+        topicResponse.set(Protocol.TOPIC_LIST_OFFSET_RESPONSE_TOPIC, tp.topic());
+        Struct partitionResponse = topicResponse.instance(Protocol.TOPIC_LIST_OFFSET_RESPONSE_PARTITION_RESPONSES);
+        partitionResponse.set(Protocol.PARTITION_LIST_OFFSET_RESPONSE_PARTITION, tp.partition());
+        partitionResponse.set(Protocol.PARTITION_LIST_OFFSET_RESPONSE_ERROR_CODE, Errors.NONE.code());
+        partitionResponse.set(Protocol.PARTITION_LIST_OFFSET_RESPONSE_OFFSETS, new Object[] { offset });
+        topicResponse.set(Protocol.TOPIC_LIST_OFFSET_RESPONSE_PARTITION_RESPONSES, new Object[] { partitionResponse });
+        struct.set(Protocol.LIST_OFFSET_RESPONSE_RESPONSES, new Object[] { topicResponse });
+        return receive(request, struct);
+    }
+
+    private NetworkReceive receive(RequestSend request, Message body) {
+        ResponseHeader header = new ResponseHeader(request.header().correlationId());
+        ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + body.sizeOf());
+        header.writeTo(buffer);
+        body.writeTo(buffer);
+        buffer.rewind();
+        return new NetworkReceive(request.destination(), buffer);
+    }
+
+}
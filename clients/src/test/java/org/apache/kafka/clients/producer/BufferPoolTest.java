@@ -17,6 +17,7 @@
 package org.apache.kafka.clients.producer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -29,6 +30,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.kafka.clients.producer.BufferExhaustedException;
 import org.apache.kafka.clients.producer.internals.BufferPool;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.MockTime;
+import org.apache.kafka.common.utils.SystemTime;
 import org.apache.kafka.test.TestUtils;
 import org.junit.Test;
 
@@ -63,6 +67,52 @@ public class BufferPoolTest {
         assertEquals("Non-standard size didn't go to the free list.", totalMemory - size, pool.unallocatedMemory());
     }
 
+    /**
+     * Test that tryAllocate returns null rather than blocking or throwing when memory is exhausted
+     */
+    @Test
+    public void testTryAllocate() throws Exception {
+        BufferPool pool = new BufferPool(2048, 1024, true);
+        ByteBuffer first = pool.tryAllocate(1024);
+        ByteBuffer second = pool.tryAllocate(1000);
+        assertEquals(1000, second.limit());
+        assertNull("The pool is exhausted", pool.tryAllocate(1));
+        pool.deallocate(first);
+        assertTrue("The freed buffer is recycled", first == pool.tryAllocate(1024));
+        pool.deallocate(first, second);
+        assertEquals("All memory should be available", 2048, pool.availableMemory());
+    }
+
+    /**
+     * Test that requests are rounded up to a size class and recycled through that class's free list
+     */
+    @Test
+    public void testSizeClasses() throws Exception {
+        int totalMemory = 64 * 1024;
+        Metrics metrics = new Metrics();
+        BufferPool pool = new BufferPool(totalMemory, 256, 1024, false, metrics, new MockTime());
+        assertEquals("Largest poolable size", 1024, pool.poolableSize());
+        ByteBuffer small = pool.allocate(200);
+        assertEquals("Buffer limit should equal requested size.", 200, small.limit());
+        assertEquals("Buffer should be rounded up to its size class.", 256, small.capacity());
+        ByteBuffer medium = pool.allocate(512);
+        assertEquals("Memory is accounted by size class.", totalMemory - 768, pool.availableMemory());
+        pool.deallocate(small, medium);
+        assertEquals("All memory should be available", totalMemory, pool.availableMemory());
+        assertEquals("Both buffers are on the free lists", totalMemory - 768, pool.unallocatedMemory());
+        assertEquals("Free list memory per size class", 256.0, metrics.metrics().get("buffer_pool_256_free_bytes").value(), 0.0);
+        ByteBuffer recycled = pool.allocate(256);
+        assertTrue("The pooled buffer should be reused", small == recycled);
+        assertEquals("Recycled buffer should be cleared.", 256, recycled.limit());
+        assertTrue("The pooled buffer should be reused", medium == pool.allocate(300));
+        assertEquals("Half of the allocations came from the free list", 0.5,
+                     metrics.metrics().get("buffer_pool_256_recycle_ratio").value(), 0.0);
+        ByteBuffer large = pool.allocate(2000);
+        assertEquals("Sizes above the largest class are not rounded up.", 2000, large.capacity());
+        pool.deallocate(large);
+        assertEquals("Non-standard size didn't go to the free list.", totalMemory - 768, pool.unallocatedMemory());
+    }
+
     /**
      * Test that we cannot try to allocate more memory then we have in the whole pool
      */
@@ -92,13 +142,19 @@ public class BufferPoolTest {
      */
     @Test
     public void testDelayedAllocation() throws Exception {
-        BufferPool pool = new BufferPool(5 * 1024, 1024, true);
+        Metrics metrics = new Metrics();
+        BufferPool pool = new BufferPool(5 * 1024, 1024, 1024, true, metrics, new SystemTime());
         ByteBuffer buffer = pool.allocate(1024);
+        assertEquals("Nothing has blocked yet", Double.NEGATIVE_INFINITY,
+                     metrics.metrics().get("buffer_pool_wait_time_max").value(), 0.0);
         CountDownLatch doDealloc = asyncDeallocate(pool, buffer);
         CountDownLatch allocation = asyncAllocate(pool, 5 * 1024);
         assertEquals("Allocation shouldn't have happened yet, waiting on memory.", 1, allocation.getCount());
+        while (pool.queued() == 0)
+            Thread.sleep(1);
         doDealloc.countDown(); // return the memory
         allocation.await();
+        assertTrue("The blocked allocation should be timed", metrics.metrics().get("buffer_pool_wait_time_max").value() >= 0.0);
     }
 
     private CountDownLatch asyncDeallocate(final BufferPool pool, final ByteBuffer buffer) {
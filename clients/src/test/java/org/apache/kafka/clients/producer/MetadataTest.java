@@ -18,9 +18,15 @@ package org.apache.kafka.clients.producer;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.clients.producer.internals.Metadata;
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.test.TestUtils;
 import org.junit.Test;
 
@@ -52,6 +58,32 @@ public class MetadataTest {
         assertTrue("Update needed due to stale metadata.", metadata.needsUpdate(time));
     }
 
+    @Test
+    public void testManyWaiters() throws Exception {
+        String topic = "my-topic";
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 500; i++)
+            threads.add(asyncFetch(topic));
+        metadata.update(TestUtils.singletonCluster(topic, 1), 0L);
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse("Every waiter should be released by the update", thread.isAlive());
+        }
+    }
+
+    @Test
+    public void testFetchTimeout() throws Exception {
+        long start = System.nanoTime();
+        try {
+            metadata.fetch("my-topic", 20);
+            fail("There is no metadata for the topic");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertTrue("We should wait out the whole timeout", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue("The topic should be added", metadata.topics().contains("my-topic"));
+    }
+
     private Thread asyncFetch(final String topic) {
         Thread thread = new Thread() {
             public void run() {
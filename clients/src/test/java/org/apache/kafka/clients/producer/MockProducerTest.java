@@ -71,6 +71,17 @@ public class MockProducerTest {
         assertFalse("No more requests to complete", producer.completeNext());
     }
 
+    @Test
+    public void testFlush() throws Exception {
+        MockProducer producer = new MockProducer(false);
+        Future<RecordMetadata> md1 = producer.send(new ProducerRecord(topic, "key1".getBytes(), "value1".getBytes()));
+        Future<RecordMetadata> md2 = producer.send(new ProducerRecord(topic, "key2".getBytes(), "value2".getBytes()));
+        producer.flush();
+        assertTrue("Flush should complete the first request", md1.isDone());
+        assertTrue("Flush should complete the second request", md2.isDone());
+        assertFalse("No more requests to complete", producer.completeNext());
+    }
+
     private boolean isError(Future<?> future) {
         try {
             future.get();
@@ -18,12 +18,16 @@ package org.apache.kafka.clients.producer;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.internals.NodeLoad;
 import org.apache.kafka.clients.producer.internals.Partitioner;
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.Node;
@@ -68,4 +72,47 @@ public class PartitionerTest {
 
         }
     }
+
+    @Test
+    public void testLoadAwarePartitioning() {
+        NodeLoad load = new NodeLoad(100);
+        Partitioner partitioner = new Partitioner(load);
+        load.update(loads(1000, 10, 10));
+        for (int i = 0; i < partitions.size(); i++)
+            assertEquals("Keyless records should avoid the overloaded node",
+                         1,
+                         partitioner.partition(new ProducerRecord("test", value), cluster));
+        assertEquals("Keyed records should be unaffected",
+                     this.partitioner.partition(new ProducerRecord("test", key, value), cluster),
+                     partitioner.partition(new ProducerRecord("test", key, value), cluster));
+        load.update(loads(10, 1000, 10));
+        for (int i = 0; i < partitions.size(); i++)
+            assertEquals("Keyless records should move with the load",
+                         0,
+                         partitioner.partition(new ProducerRecord("test", value), cluster));
+    }
+
+    @Test
+    public void testNodeLoadHysteresis() {
+        NodeLoad load = new NodeLoad(100);
+        load.update(loads(1000, 10, 10));
+        assertTrue(load.overloaded(0));
+        load.update(loads(300, 100, 100));
+        assertTrue("A node stays overloaded until its load falls to the low watermark", load.overloaded(0));
+        NodeLoad fresh = new NodeLoad(100);
+        fresh.update(loads(300, 100, 100));
+        assertFalse("The same load doesn't make a node overloaded", fresh.overloaded(0));
+        load.update(loads(200, 100, 100));
+        assertFalse(load.overloaded(0));
+        assertFalse(load.anyOverloaded());
+        load.update(loads(90, 0, 0));
+        assertFalse("Loads below the minimum never count", load.overloaded(0));
+    }
+
+    private Map<Integer, Long> loads(long... bytes) {
+        Map<Integer, Long> loads = new HashMap<Integer, Long>();
+        for (int i = 0; i < bytes.length; i++)
+            loads.put(i, bytes[i]);
+        return loads;
+    }
 }
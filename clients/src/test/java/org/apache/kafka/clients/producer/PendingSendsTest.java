@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.clients.producer.internals.Partitioner;
+import org.apache.kafka.clients.producer.internals.PendingSends;
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
+import org.apache.kafka.clients.producer.internals.RecordAccumulator;
+import org.apache.kafka.clients.producer.internals.RecordBatch;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.Records;
+import org.apache.kafka.common.utils.MockTime;
+import org.apache.kafka.test.TestUtils;
+import org.junit.Test;
+
+public class PendingSendsTest {
+
+    private MockTime time = new MockTime();
+    private Metrics metrics = new Metrics(time);
+    private Cluster cluster = TestUtils.singletonCluster("test", 1);
+    private Metadata metadata = new Metadata(0, Long.MAX_VALUE);
+    private TopicPartition tp = new TopicPartition("test", 0);
+    private byte[] value = new byte[400];
+    private RecordAccumulator accumulator = new RecordAccumulator(1024,
+                                                                  1024,
+                                                                  1024,
+                                                                  1024,
+                                                                  0L,
+                                                                  true,
+                                                                  new ProduceQuotas(metrics, time),
+                                                                  Collections.<String, Integer>emptyMap(),
+                                                                  0L,
+                                                                  metrics,
+                                                                  time);
+    private PendingSends pending = new PendingSends(2, 1000L, metadata, new Partitioner(), accumulator, CompressionType.NONE, false, metrics, time);
+
+    @Test
+    public void testQueueWhenMemoryExhausted() throws Exception {
+        metadata.update(cluster, time.milliseconds());
+        final List<Integer> completed = new ArrayList<Integer>();
+        List<Future<RecordMetadata>> futures = new ArrayList<Future<RecordMetadata>>();
+        for (int i = 0; i < 4; i++) {
+            final int record = i;
+            futures.add(pending.send(new ProducerRecord("test", value), new Callback() {
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    completed.add(record);
+                }
+            }));
+        }
+        assertEquals("Only two records fit in memory, the other two wait", 2, pending.size());
+        Future<RecordMetadata> rejected = pending.send(new ProducerRecord("test", value), null);
+        assertTrue("The queue is full so the send fails at once", rejected.isDone());
+        try {
+            rejected.get();
+            fail("The send should have failed");
+        } catch (ExecutionException e) {
+            assertEquals(BufferExhaustedException.class, e.getCause().getClass());
+        }
+        assertEquals("Nothing can be admitted until memory is freed", 2, pending.admit(time.milliseconds()));
+
+        List<RecordBatch> batches = accumulator.drain(cluster, Collections.singletonList(tp), Integer.MAX_VALUE, time.milliseconds());
+        for (RecordBatch batch : batches)
+            batch.done(0L, null);
+        accumulator.deallocate(batches);
+        assertEquals("Both waiting records fit in the freed memory", 0, pending.admit(time.milliseconds()));
+        batches = accumulator.drain(cluster, Collections.singletonList(tp), Integer.MAX_VALUE, time.milliseconds());
+        for (RecordBatch batch : batches)
+            batch.done(2L, null);
+        assertEquals(Arrays.asList(0, 1, 2, 3), completed);
+        for (int i = 0; i < futures.size(); i++)
+            assertEquals("Records should be appended in order", i, futures.get(i).get().offset());
+    }
+
+    @Test
+    public void testAwaitAdmittedWhileMemoryExhausted() throws Exception {
+        metadata.update(cluster, time.milliseconds());
+        for (int i = 0; i < 4; i++)
+            pending.send(new ProducerRecord("test", value), null);
+        assertEquals("Only two records fit in memory, the other two wait", 2, pending.size());
+        final long queued = pending.queued();
+        Thread flusher = new Thread() {
+            public void run() {
+                try {
+                    pending.awaitAdmitted(queued);
+                } catch (InterruptedException e) {
+                    // the test fails below
+                }
+            }
+        };
+        flusher.start();
+        flusher.join(100);
+        assertTrue("The queued records haven't been appended yet", flusher.isAlive());
+
+        List<RecordBatch> batches = accumulator.drain(cluster, Collections.singletonList(tp), Integer.MAX_VALUE, time.milliseconds());
+        for (RecordBatch batch : batches)
+            batch.done(0L, null);
+        accumulator.deallocate(batches);
+        assertEquals(0, pending.admit(time.milliseconds()));
+        flusher.join(5000);
+        assertFalse("Admitting the queued records should release the wait", flusher.isAlive());
+    }
+
+    @Test
+    public void testQueueFullDoesNotChargeQuota() throws Exception {
+        int size = Records.LOG_OVERHEAD + Record.recordSize(null, value);
+        Metrics metrics = new Metrics(time);
+        RecordAccumulator accumulator = new RecordAccumulator(1024,
+                                                              1024,
+                                                              1024,
+                                                              1024,
+                                                              0L,
+                                                              true,
+                                                              new ProduceQuotas(Long.MAX_VALUE,
+                                                                                Long.MAX_VALUE,
+                                                                                5L * size,
+                                                                                Long.MAX_VALUE,
+                                                                                Collections.<String, Long>emptyMap(),
+                                                                                Collections.<String>emptySet(),
+                                                                                metrics,
+                                                                                time),
+                                                              Collections.<String, Integer>emptyMap(),
+                                                              0L,
+                                                              metrics,
+                                                              time);
+        PendingSends pending = new PendingSends(2, 1000L, metadata, new Partitioner(), accumulator, CompressionType.NONE, false, metrics, time);
+        metadata.update(cluster, time.milliseconds());
+        for (int i = 0; i < 4; i++)
+            assertFalse(pending.send(new ProducerRecord("test", value), null).isDone());
+        for (int i = 0; i < 3; i++) {
+            try {
+                pending.send(new ProducerRecord("test", value), null).get();
+                fail("The send should have failed");
+            } catch (ExecutionException e) {
+                assertEquals(BufferExhaustedException.class, e.getCause().getClass());
+            }
+        }
+        List<RecordBatch> batches = accumulator.drain(cluster, Collections.singletonList(tp), Integer.MAX_VALUE, time.milliseconds());
+        for (RecordBatch batch : batches)
+            batch.done(0L, null);
+        accumulator.deallocate(batches);
+        assertEquals(0, pending.admit(time.milliseconds()));
+        // had the rejected records been charged this would be over the quota
+        assertFalse(pending.send(new ProducerRecord("test", value), null).isDone());
+    }
+
+    @Test
+    public void testMetadataTimeout() throws Exception {
+        Future<RecordMetadata> future = pending.send(new ProducerRecord("test", value), null);
+        assertEquals("The record waits for metadata", 1, pending.size());
+        assertTrue("The topic's metadata was requested", metadata.topics().contains("test"));
+        time.sleep(999);
+        assertEquals(1, pending.admit(time.milliseconds()));
+        time.sleep(1);
+        assertEquals(0, pending.admit(time.milliseconds()));
+        try {
+            future.get();
+            fail("The send should have timed out");
+        } catch (ExecutionException e) {
+            assertEquals(TimeoutException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testAdmitAfterClose() throws Exception {
+        Future<RecordMetadata> future = pending.send(new ProducerRecord("test", value), null);
+        pending.close();
+        accumulator.close();
+        assertFalse("Records sent before the close are still appended", future.isDone());
+        metadata.update(cluster, time.milliseconds());
+        assertEquals(0, pending.admit(time.milliseconds()));
+        assertEquals(1, accumulator.ready(time.milliseconds()).size());
+        try {
+            pending.send(new ProducerRecord("test", value), null).get();
+            fail("Sends after the close should fail");
+        } catch (ExecutionException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.QuotaViolationException;
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.Test;
+
+public class ProduceQuotasTest {
+
+    private MockTime time = new MockTime();
+    private Metrics metrics = new Metrics(time);
+
+    @Test
+    public void testUnlimited() {
+        ProduceQuotas quotas = new ProduceQuotas(metrics, time);
+        long start = time.milliseconds();
+        for (int i = 0; i < 1000; i++)
+            quotas.record("test", 1024 * 1024);
+        assertEquals("No quota should never delay", start, time.milliseconds());
+        assertTrue("No sensors should be registered", metrics.metrics().isEmpty());
+    }
+
+    @Test
+    public void testDelayOnByteQuota() {
+        ProduceQuotas quotas = new ProduceQuotas(Long.MAX_VALUE,
+                                                 Long.MAX_VALUE,
+                                                 1000L,
+                                                 Long.MAX_VALUE,
+                                                 Collections.<String, Long>emptyMap(),
+                                                 Collections.<String>emptySet(),
+                                                 metrics,
+                                                 time);
+        long start = time.milliseconds();
+        quotas.record("test", 500);
+        quotas.record("test", 500);
+        assertEquals("One second's worth of the quota can be sent in a burst", start, time.milliseconds());
+        for (int i = 0; i < 198; i++)
+            quotas.record("test", 500);
+        long ellapsed = time.milliseconds() - start;
+        assertTrue("100000 bytes at 1000 bytes/sec should take 99 seconds after the burst, took " + ellapsed,
+                   ellapsed >= 99000 && ellapsed <= 100000);
+
+        start = time.milliseconds();
+        quotas.record("other", 500);
+        assertEquals("Other topics have their own quota", start, time.milliseconds());
+    }
+
+    @Test
+    public void testClientQuotaAndTopicOverride() {
+        ProduceQuotas quotas = new ProduceQuotas(Long.MAX_VALUE,
+                                                 10L,
+                                                 1000L,
+                                                 Long.MAX_VALUE,
+                                                 Collections.singletonMap("big", 1000000L),
+                                                 Collections.<String>emptySet(),
+                                                 metrics,
+                                                 time);
+        long start = time.milliseconds();
+        for (int i = 0; i < 10; i++)
+            quotas.record("big", 5000);
+        assertEquals("The override replaces the topic quota", start, time.milliseconds());
+        quotas.record("small", 1);
+        assertTrue("But the client record quota still applies", time.milliseconds() > start);
+    }
+
+    @Test
+    public void testRejectOnQuota() {
+        ProduceQuotas quotas = new ProduceQuotas(Long.MAX_VALUE,
+                                                 Long.MAX_VALUE,
+                                                 1000L,
+                                                 Long.MAX_VALUE,
+                                                 Collections.<String, Long>emptyMap(),
+                                                 Collections.singleton("test"),
+                                                 metrics,
+                                                 time);
+        quotas.record("test", 500);
+        quotas.record("test", 500);
+        try {
+            quotas.record("test", 500);
+            fail("Should have rejected the record over the quota.");
+        } catch (QuotaViolationException e) {
+            // this is good
+        }
+        time.sleep(2000);
+        quotas.record("test", 500);
+    }
+
+    @Test
+    public void testRejectedRecordsDontCount() {
+        ProduceQuotas quotas = new ProduceQuotas(Long.MAX_VALUE,
+                                                 Long.MAX_VALUE,
+                                                 1000L,
+                                                 Long.MAX_VALUE,
+                                                 Collections.<String, Long>emptyMap(),
+                                                 Collections.singleton("test"),
+                                                 metrics,
+                                                 time);
+        quotas.record("test", 500);
+        for (int i = 0; i < 3; i++) {
+            try {
+                quotas.tryRecord("test", 600);
+                fail("Should have rejected the record over the quota.");
+            } catch (QuotaViolationException e) {
+                // this is good
+            }
+        }
+        // had the rejected bytes been counted this would be over the quota too
+        quotas.record("test", 400);
+    }
+
+}
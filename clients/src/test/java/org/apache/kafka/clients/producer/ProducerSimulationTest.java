@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.kafka.test.ProducerSimulation;
+import org.apache.kafka.test.ProducerSimulation.Result;
+import org.junit.Test;
+
+public class ProducerSimulationTest {
+
+    @Test
+    public void testDeterministic() throws Exception {
+        Result first = new ProducerSimulation(3, 6, 100, 10, 2L, 16 * 1024, 256 * 1024L, 5L, 1024.0, 0.1, 17L).run(200L);
+        Result second = new ProducerSimulation(3, 6, 100, 10, 2L, 16 * 1024, 256 * 1024L, 5L, 1024.0, 0.1, 17L).run(200L);
+        assertEquals(first.toString(), second.toString());
+        assertEquals(first.sent, second.sent);
+        assertEquals(first.elapsedMs, second.elapsedMs);
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        Result result = new ProducerSimulation(2, 4, 100, 10, 0L, 16 * 1024, 1024 * 1024L, 10L, 1024.0, 0.0, 17L).run(200L);
+        assertEquals("Every record should be sent without stalling", 2000, result.sent);
+        assertEquals("Every record should be acknowledged", result.sent, result.acknowledged);
+        assertEquals(0, result.stalledMs);
+        assertTrue("No record can complete faster than the broker latency", result.latency(0.0) >= 10.0);
+        assertTrue(result.memoryHighWater > 0 && result.memoryHighWater <= 1024 * 1024L);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        Result result = new ProducerSimulation(1, 1, 100, 1, 0L, 16 * 1024, 1024 * 1024L, 1L, 1024.0, 1.0, 17L).run(50L);
+        assertEquals("Every record should fail", result.sent, result.failed);
+        assertEquals(0, result.acknowledged);
+    }
+
+    @Test
+    public void testStallWhenOutOfMemory() throws Exception {
+        // each of the 16 partitions needs a whole batch but memory only holds 4
+        Result result = new ProducerSimulation(1, 16, 100, 16, 0L, 16 * 1024, 64 * 1024L, 10L, 1024.0, 0.0, 17L).run(100L);
+        assertTrue("The producer should stall waiting for memory", result.stalledMs > 0);
+        assertTrue("Fewer records than offered are sent", result.sent < 1600);
+        assertEquals(64 * 1024L, result.memoryHighWater);
+    }
+
+}
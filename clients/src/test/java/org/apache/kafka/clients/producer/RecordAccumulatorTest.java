@@ -19,15 +19,23 @@ package org.apache.kafka.clients.producer;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
 import org.apache.kafka.clients.producer.internals.RecordAccumulator;
 import org.apache.kafka.clients.producer.internals.RecordBatch;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.record.CompressionType;
@@ -35,6 +43,7 @@ import org.apache.kafka.common.record.LogEntry;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.Records;
 import org.apache.kafka.common.utils.MockTime;
+import org.apache.kafka.test.TestUtils;
 import org.junit.Test;
 
 public class RecordAccumulatorTest {
@@ -45,11 +54,12 @@ public class RecordAccumulatorTest {
     private byte[] value = "value".getBytes();
     private int msgSize = Records.LOG_OVERHEAD + Record.recordSize(key, value);
     private Metrics metrics = new Metrics(time);
+    private Cluster cluster = TestUtils.singletonCluster("test", 10);
 
     @Test
     public void testFull() throws Exception {
         long now = time.milliseconds();
-        RecordAccumulator accum = new RecordAccumulator(1024, 10 * 1024, 10L, false, metrics, time);
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 10L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
         int appends = 1024 / msgSize;
         for (int i = 0; i < appends; i++) {
             accum.append(tp, key, value, CompressionType.NONE, null);
@@ -57,7 +67,7 @@ public class RecordAccumulatorTest {
         }
         accum.append(tp, key, value, CompressionType.NONE, null);
         assertEquals("Our partition should be ready", asList(tp), accum.ready(time.milliseconds()));
-        List<RecordBatch> batches = accum.drain(asList(tp), Integer.MAX_VALUE);
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
         assertEquals(1, batches.size());
         RecordBatch batch = batches.get(0);
         Iterator<LogEntry> iter = batch.records.iterator();
@@ -69,10 +79,33 @@ public class RecordAccumulatorTest {
         assertFalse("No more records", iter.hasNext());
     }
 
+    @Test
+    public void testCompact() throws Exception {
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 10L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+        int appends = 1024 / msgSize;
+        for (int i = 0; i < 2 * appends; i++)
+            accum.append(tp, key, value, CompressionType.COMPACT, null);
+        time.sleep(10);
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+        assertEquals("Compact records should all fit in one batch", 1, batches.size());
+        RecordBatch batch = batches.get(0);
+        assertEquals(2 * appends, batch.recordCount);
+        ByteBuffer buffer = batch.records.buffer();
+        buffer.flip();
+        assertEquals("The batch should be a single log entry", batch.records.sizeInBytes() - Records.LOG_OVERHEAD, buffer.getInt(Records.OFFSET_LENGTH));
+        Iterator<LogEntry> iter = batch.records.iterator();
+        for (int i = 0; i < 2 * appends; i++) {
+            LogEntry entry = iter.next();
+            assertEquals("Keys should match", ByteBuffer.wrap(key), entry.record().key());
+            assertEquals("Values should match", ByteBuffer.wrap(value), entry.record().value());
+        }
+        assertFalse("No more records", iter.hasNext());
+    }
+
     @Test
     public void testAppendLarge() throws Exception {
         int batchSize = 512;
-        RecordAccumulator accum = new RecordAccumulator(batchSize, 10 * 1024, 0L, false, metrics, time);
+        RecordAccumulator accum = new RecordAccumulator(batchSize, batchSize, batchSize, 10 * 1024, 0L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
         accum.append(tp, key, new byte[2 * batchSize], CompressionType.NONE, null);
         assertEquals("Our partition should be ready", asList(tp), accum.ready(time.milliseconds()));
     }
@@ -80,12 +113,13 @@ public class RecordAccumulatorTest {
     @Test
     public void testLinger() throws Exception {
         long lingerMs = 10L;
-        RecordAccumulator accum = new RecordAccumulator(1024, 10 * 1024, lingerMs, false, metrics, time);
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, lingerMs, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
         accum.append(tp, key, value, CompressionType.NONE, null);
         assertEquals("No partitions should be ready", 0, accum.ready(time.milliseconds()).size());
+        assertEquals("Queued appends should make every partition ready", asList(tp), accum.ready(time.milliseconds(), true));
         time.sleep(10);
         assertEquals("Our partition should be ready", asList(tp), accum.ready(time.milliseconds()));
-        List<RecordBatch> batches = accum.drain(asList(tp), Integer.MAX_VALUE);
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
         assertEquals(1, batches.size());
         RecordBatch batch = batches.get(0);
         Iterator<LogEntry> iter = batch.records.iterator();
@@ -97,7 +131,7 @@ public class RecordAccumulatorTest {
 
     @Test
     public void testPartialDrain() throws Exception {
-        RecordAccumulator accum = new RecordAccumulator(1024, 10 * 1024, 10L, false, metrics, time);
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 10L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
         int appends = 1024 / msgSize + 1;
         List<TopicPartition> partitions = asList(new TopicPartition("test", 0), new TopicPartition("test", 1));
         for (TopicPartition tp : partitions) {
@@ -106,16 +140,142 @@ public class RecordAccumulatorTest {
         }
         assertEquals("Both partitions should be ready", 2, accum.ready(time.milliseconds()).size());
 
-        List<RecordBatch> batches = accum.drain(partitions, 1024);
+        List<RecordBatch> batches = accum.drain(cluster, partitions, 1024, time.milliseconds());
         assertEquals("But due to size bound only one partition should have been retrieved", 1, batches.size());
     }
 
+    @Test
+    public void testDrainResumesWhereItStopped() throws Exception {
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 10L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+        int appends = 1024 / msgSize;
+        List<TopicPartition> partitions = new ArrayList<TopicPartition>();
+        for (int p = 0; p < 4; p++) {
+            partitions.add(new TopicPartition("test", p));
+            for (int i = 0; i < appends; i++)
+                accum.append(partitions.get(p), key, value, CompressionType.NONE, null);
+        }
+        List<RecordBatch> batches = accum.drain(cluster, partitions, 2048, time.milliseconds());
+        assertEquals(asList(partitions.get(0), partitions.get(1)), asList(batches.get(0).topicPartition, batches.get(1).topicPartition));
+        batches = accum.drain(cluster, partitions, 2048, time.milliseconds());
+        assertEquals("The next drain should start with the partition the last one stopped at",
+                     asList(partitions.get(2), partitions.get(3)),
+                     asList(batches.get(0).topicPartition, batches.get(1).topicPartition));
+    }
+
+    @Test
+    public void testDrainPriority() throws Exception {
+        Node node = new Node(0, "localhost", 1969);
+        Node[] nodes = new Node[] { node };
+        Cluster cluster = new Cluster(asList(node), asList(new PartitionInfo("low", 0, node, nodes, nodes),
+                                                           new PartitionInfo("high", 0, node, nodes, nodes)));
+        TopicPartition low = new TopicPartition("low", 0);
+        TopicPartition high = new TopicPartition("high", 0);
+        Map<String, Integer> priorities = new HashMap<String, Integer>();
+        priorities.put("high", 10);
+        long starvationMs = 100L;
+        RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 0L, false, new ProduceQuotas(metrics, time), priorities, starvationMs, metrics, time);
+        List<TopicPartition> partitions = asList(low, high);
+        for (int i = 0; i < 2; i++) {
+            accum.append(low, key, value, CompressionType.NONE, null);
+            accum.append(high, key, value, CompressionType.NONE, null);
+            List<RecordBatch> batches = accum.drain(cluster, partitions, 1, time.milliseconds());
+            assertEquals("Only one batch fits in the request", 1, batches.size());
+            assertEquals("The high priority topic should be drained first", high, batches.get(0).topicPartition);
+            accum.deallocate(batches);
+        }
+
+        time.sleep(starvationMs);
+        accum.append(high, key, value, CompressionType.NONE, null);
+        List<RecordBatch> batches = accum.drain(cluster, partitions, 1, time.milliseconds());
+        assertEquals("A starved batch should be drained ahead of higher priorities", low, batches.get(0).topicPartition);
+        accum.deallocate(batches);
+        batches = accum.drain(cluster, partitions, 1, time.milliseconds());
+        assertEquals(high, batches.get(0).topicPartition);
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        final RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, Long.MAX_VALUE, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+        accum.append(tp, key, value, CompressionType.NONE, null);
+        assertEquals("No partitions should be ready", 0, accum.ready(time.milliseconds()).size());
+
+        final long flush = accum.beginFlush();
+        assertEquals("A flush should make the partition ready", asList(tp), accum.ready(time.milliseconds()));
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+        // a batch created during the flush shouldn't delay it
+        TopicPartition other = new TopicPartition("test", 1);
+        accum.append(other, key, value, CompressionType.NONE, null);
+
+        final AtomicBoolean flushed = new AtomicBoolean(false);
+        Thread flusher = new Thread() {
+            public void run() {
+                try {
+                    accum.awaitFlushCompletion(flush);
+                    flushed.set(true);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        flusher.start();
+        Thread.sleep(10);
+        assertFalse("The flush shouldn't complete until the batch does", flushed.get());
+        accum.deallocate(batches);
+        flusher.join();
+        assertTrue("The flush should complete with the batch", flushed.get());
+        assertEquals("Once the flush completes linger applies again", 0, accum.ready(time.milliseconds()).size());
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() throws Exception {
+        RecordAccumulator accum = new RecordAccumulator(1024, 128, 1024, 10 * 1024, 0L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+        accum.append(tp, key, value, CompressionType.NONE, null);
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+        assertEquals("A new partition should start with the smallest batch", 128, batches.get(0).records.capacity());
+        accum.deallocate(batches);
+
+        // fill the partition fast enough that each batch overflows into the next one
+        int[] expected = { 128, 256, 512, 1024, 1024 };
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i] / msgSize + 1; j++)
+                accum.append(tp, key, value, CompressionType.NONE, null);
+            batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+            assertEquals("Busy partitions should grow their batches", expected[i], batches.get(0).records.capacity());
+            accum.deallocate(batches);
+            accum.deallocate(accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds()));
+        }
+
+        // and shrink back once the traffic dies down
+        for (int i = 0; i < 10; i++) {
+            accum.append(tp, key, value, CompressionType.NONE, null);
+            accum.deallocate(accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds()));
+        }
+        accum.append(tp, key, value, CompressionType.NONE, null);
+        batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+        assertEquals("Quiet partitions should shrink their batches", 128, batches.get(0).records.capacity());
+    }
+
+    @Test
+    public void testPoolMatchesBatchSizes() throws Exception {
+        // the batch sizes are 1000, 500 and 250, which aren't power of two multiples of the smallest
+        RecordAccumulator accum = new RecordAccumulator(1000, 250, 4000, 10 * 1024, 0L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+        for (int i = 0; i < 1000 / msgSize + 1; i++)
+            accum.append(tp, key, value, CompressionType.NONE, null);
+        List<RecordBatch> batches = accum.drain(cluster, asList(tp), Integer.MAX_VALUE, time.milliseconds());
+        assertEquals("The batch should get a buffer of exactly its size", 250, batches.get(0).records.capacity());
+        accum.deallocate(batches);
+        assertEquals("The buffer should be pooled", 250.0, metrics.metrics().get("buffer_pool_250_free_bytes").value(), 0.0);
+        assertTrue("Records larger than a batch are pooled in doublings of the batch size",
+                   metrics.metrics().containsKey("buffer_pool_4000_free_bytes"));
+        assertFalse(metrics.metrics().containsKey("buffer_pool_8000_free_bytes"));
+    }
+
     @Test
     public void testStressfulSituation() throws Exception {
         final int numThreads = 5;
         final int msgs = 10000;
         final int numParts = 10;
-        final RecordAccumulator accum = new RecordAccumulator(1024, 10 * 1024, 0L, true, metrics, time);
+        final RecordAccumulator accum = new RecordAccumulator(1024, 1024, 1024, 10 * 1024, 0L, true, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
         List<Thread> threads = new ArrayList<Thread>();
         for (int i = 0; i < numThreads; i++) {
             threads.add(new Thread() {
@@ -136,7 +296,7 @@ public class RecordAccumulatorTest {
         long now = time.milliseconds();
         while (read < numThreads * msgs) {
             List<TopicPartition> tps = accum.ready(now);
-            List<RecordBatch> batches = accum.drain(tps, 5 * 1024);
+            List<RecordBatch> batches = accum.drain(cluster, tps, 5 * 1024, time.milliseconds());
             for (RecordBatch batch : batches) {
                 for (LogEntry entry : batch.records)
                     read++;
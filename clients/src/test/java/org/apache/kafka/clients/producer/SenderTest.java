@@ -17,25 +17,36 @@
 package org.apache.kafka.clients.producer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 
 
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
 import org.apache.kafka.clients.producer.internals.RecordAccumulator;
 import org.apache.kafka.clients.producer.internals.Sender;
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.protocol.ProtoUtils;
+import org.apache.kafka.common.protocol.Protocol;
 import org.apache.kafka.common.protocol.types.Struct;
 import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.requests.MetadataResponse;
 import org.apache.kafka.common.requests.RequestSend;
 import org.apache.kafka.common.requests.ResponseHeader;
 import org.apache.kafka.common.utils.MockTime;
@@ -52,8 +63,8 @@ public class SenderTest {
     private Metadata metadata = new Metadata(0, Long.MAX_VALUE);
     private Cluster cluster = TestUtils.singletonCluster("test", 1);
     private Metrics metrics = new Metrics(time);
-    private RecordAccumulator accumulator = new RecordAccumulator(batchSize, 1024 * 1024, 0L, false, metrics, time);
-    private Sender sender = new Sender(selector, metadata, this.accumulator, "", 1024 * 1024, 0L, (short) -1, 10000, time);
+    private RecordAccumulator accumulator = new RecordAccumulator(batchSize, batchSize, batchSize, 1024 * 1024, 0L, false, new ProduceQuotas(metrics, time), Collections.<String, Integer>emptyMap(), 0L, metrics, time);
+    private Sender sender = new Sender(selector, metadata, this.accumulator, "", 1024 * 1024, 0L, (short) -1, 10000, 64 * 1024, 64 * 1024, null, null, metrics, time);
 
     @Before
     public void setup() {
@@ -83,16 +94,98 @@ public class SenderTest {
         assertEquals(offset, future.get().offset());
     }
 
+    @Test
+    public void testMetrics() throws Exception {
+        TopicPartition tp = new TopicPartition("test", 0);
+        accumulator.append(tp, "key".getBytes(), "value".getBytes(), CompressionType.NONE, null);
+        accumulator.append(tp, "key".getBytes(), "value".getBytes(), CompressionType.NONE, null);
+        sender.run(time.milliseconds());
+        selector.clear();
+        time.sleep(5);
+        sender.run(time.milliseconds());
+        RequestSend request = (RequestSend) selector.completedSends().get(0);
+        selector.clear();
+        time.sleep(20);
+        int node = cluster.leaderFor(tp).id();
+        selector.completeReceive(produceResponse(request.header().correlationId(), node, tp.topic(), tp.partition(), 0L, Errors.NONE.code()));
+        sender.run(time.milliseconds());
+        // each poll of the mock selector also takes 5 ms
+        assertEquals(10.0, metrics.metrics().get("record_queue_time_max").value(), 0.0);
+        assertEquals(2.0, metrics.metrics().get("records_per_request_max").value(), 0.0);
+        assertEquals(request.remaining(), metrics.metrics().get("request_size_max").value(), 0.0);
+        assertEquals(1.0, metrics.metrics().get("compression_ratio_avg").value(), 0.0);
+        assertEquals(30.0, metrics.metrics().get("request_latency_max").value(), 0.0);
+        assertEquals(30.0, metrics.metrics().get("request_latency_p99").value(), 30.0 / 256);
+        assertEquals(30.0, metrics.metrics().get("node." + node + ".request_latency_avg").value(), 0.0);
+        assertEquals(0.0, metrics.metrics().get("record_enqueue_time_max").value(), 0.0);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < 3; i++)
+            addresses.add(new InetSocketAddress("localhost", 9092 + i));
+        metadata.update(Cluster.bootstrap(addresses), time.milliseconds());
+        CountDownLatch warmUp = sender.warmUp(Arrays.asList("test"), 1000L);
+        assertTrue("Metadata should be requested for the topic", metadata.topics().contains("test"));
+        sender.run(time.milliseconds());
+        assertEquals("We should connect to every bootstrap node at once", 3, selector.connected().size());
+        selector.clear();
+        metadata.update(cluster, time.milliseconds());
+        sender.run(time.milliseconds());
+        assertEquals("We should connect to the leader", Arrays.asList(0), selector.connected());
+        assertEquals("The warm-up completes once the leader is connected", 1, warmUp.getCount());
+        selector.clear();
+        sender.run(time.milliseconds());
+        assertEquals(0, warmUp.getCount());
+    }
+
+    @Test
+    public void testWarmUpTimeout() throws Exception {
+        CountDownLatch warmUp = sender.warmUp(Arrays.asList("unknown"), 10L);
+        sender.run(time.milliseconds());
+        assertEquals("There is no metadata for the topic yet", 1, warmUp.getCount());
+        time.sleep(10);
+        sender.run(time.milliseconds());
+        assertEquals("The warm-up should give up", 0, warmUp.getCount());
+    }
+
+    @Test
+    public void testMetadataLatency() throws Exception {
+        sender.warmUp(Arrays.asList("unknown"), 1000L);
+        sender.run(time.milliseconds());
+        selector.clear();
+        sender.run(time.milliseconds());
+        assertEquals("A metadata request should be sent", 1, selector.completedSends().size());
+        RequestSend request = (RequestSend) selector.completedSends().get(0);
+        selector.clear();
+        time.sleep(20);
+        MetadataResponse response = new MetadataResponse(cluster.nodes(), Collections.<PartitionInfo>emptyList());
+        ResponseHeader header = new ResponseHeader(request.header().correlationId());
+        ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + response.sizeOf());
+        header.writeTo(buffer);
+        response.writeTo(buffer);
+        buffer.rewind();
+        selector.completeReceive(new NetworkReceive(request.destination(), buffer));
+        sender.run(time.milliseconds());
+        assertEquals(30.0, metrics.metrics().get("metadata_request_latency_max").value(), 0.0);
+        assertEquals("Metadata requests aren't produce requests",
+                     Double.NEGATIVE_INFINITY,
+                     metrics.metrics().get("request_latency_max").value(),
+                     0.0);
+        assertNull(metrics.metrics().get("node." + request.destination() + ".request_latency_avg"));
+    }
+
     private NetworkReceive produceResponse(int correlation, int source, String topic, int part, long offset, int error) {
         Struct struct = new Struct(ProtoUtils.currentResponseSchema(ApiKeys.PRODUCE.id));
-        Struct response = struct.instance("responses");
-        response.set("topic", topic);
-        Struct partResp = response.instance("partition_responses");
-        partResp.set("partition", part);
-        partResp.set("error_code", (short) error);
-        partResp.set("base_offset", offset);
-        response.set("partition_responses", new Object[] { partResp });
-        struct.set("responses", new Object[] { response });
+        Struct response = struct.instance(Protocol.PRODUCE_RESPONSE_RESPONSES);
+        response.set(Protocol.TOPIC_PRODUCE_RESPONSE_TOPIC, topic);
+        Struct partResp = response.instance(Protocol.TOPIC_PRODUCE_RESPONSE_PARTITION_RESPONSES);
+        partResp.set(Protocol.PARTITION_PRODUCE_RESPONSE_PARTITION, part);
+        partResp.set(Protocol.PARTITION_PRODUCE_RESPONSE_ERROR_CODE, (short) error);
+        partResp.set(Protocol.PARTITION_PRODUCE_RESPONSE_BASE_OFFSET, offset);
+        response.set(Protocol.TOPIC_PRODUCE_RESPONSE_PARTITION_RESPONSES, new Object[] { partResp });
+        struct.set(Protocol.PRODUCE_RESPONSE_RESPONSES, new Object[] { response });
         ResponseHeader header = new ResponseHeader(correlation);
         ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + struct.sizeOf());
         header.writeTo(buffer);
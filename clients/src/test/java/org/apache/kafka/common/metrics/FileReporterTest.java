@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.metrics;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Type;
+import org.junit.Test;
+
+public class FileReporterTest {
+
+    @Test
+    public void testReport() throws Exception {
+        File file = File.createTempFile("metrics", ".txt");
+        file.deleteOnExit();
+        FileReporter reporter = new FileReporter(file);
+        reporter.report(new MetricsSnapshot(5000L, new String[] { "a.b", "c" }, new double[] { 1.5, 2.0 }));
+        assertEquals(asList("a.b 1.5 5", "c 2.0 5"), lines(file));
+        reporter.report(new MetricsSnapshot(6000L, new String[] { "c" }, new double[] { 3.0 }));
+        assertEquals("The file should be replaced", asList("c 3.0 6"), lines(file));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testConfiguredFromReporterList() throws Exception {
+        File file = File.createTempFile("metrics", ".txt");
+        file.deleteOnExit();
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("metric.reporters", FileReporter.class.getName());
+        props.put(FileReporter.FILE_CONFIG, file.getPath());
+        AbstractConfig config = new AbstractConfig(new ConfigDef().define("metric.reporters", Type.LIST, "", "docs"), props);
+        List<MetricsReporter> reporters = config.getConfiguredInstances("metric.reporters", MetricsReporter.class);
+        assertEquals(1, reporters.size());
+        ((FileReporter) reporters.get(0)).report(new MetricsSnapshot(5000L, new String[] { "c" }, new double[] { 2.0 }));
+        assertEquals(asList("c 2.0 5"), lines(file));
+        props.put("metric.reporters", "");
+        config = new AbstractConfig(new ConfigDef().define("metric.reporters", Type.LIST, "", "docs"), props);
+        assertEquals(0, config.getConfiguredInstances("metric.reporters", MetricsReporter.class).size());
+    }
+
+    private List<String> lines(File file) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+                lines.add(line);
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+}
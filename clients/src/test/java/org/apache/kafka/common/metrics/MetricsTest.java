@@ -17,9 +17,14 @@
 package org.apache.kafka.common.metrics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 
@@ -34,6 +39,7 @@ import org.apache.kafka.common.metrics.QuotaViolationException;
 import org.apache.kafka.common.metrics.Sensor;
 import org.apache.kafka.common.metrics.stats.Avg;
 import org.apache.kafka.common.metrics.stats.Count;
+import org.apache.kafka.common.metrics.stats.LogLinearPercentiles;
 import org.apache.kafka.common.metrics.stats.Max;
 import org.apache.kafka.common.metrics.stats.Min;
 import org.apache.kafka.common.metrics.stats.Percentile;
@@ -221,6 +227,136 @@ public class MetricsTest {
         assertEquals(0.0, p75.value(), 1.0);
     }
 
+    @Test
+    public void testLogLinearPercentiles() {
+        LogLinearPercentiles percs = new LogLinearPercentiles(0.05,
+                                                              30000.0,
+                                                              7,
+                                                              new Percentile("test.p50", 50),
+                                                              new Percentile("test.p99", 99),
+                                                              new Percentile("test.p999", 99.9));
+        Sensor sensor = metrics.sensor("test", new MetricConfig().eventWindow(1000).samples(2));
+        sensor.add(percs);
+        Metric p50 = this.metrics.metrics().get("test.p50");
+        Metric p99 = this.metrics.metrics().get("test.p99");
+        Metric p999 = this.metrics.metrics().get("test.p999");
+
+        // two windows of latencies from 0.1 to 1000
+        for (int i = 1; i <= 2000; i++)
+            sensor.record(i / 2.0);
+        assertEquals(500.0, p50.value(), 500.0 / 256);
+        assertEquals(990.0, p99.value(), 990.0 / 256);
+        assertEquals(999.0, p999.value(), 999.0 / 256);
+
+        // recycled samples forget what they recorded before
+        for (int i = 0; i < 2000; i++)
+            sensor.record(0.1);
+        assertEquals(0.1, p50.value(), 0.1 / 200);
+        assertEquals(0.1, p999.value(), 0.1 / 200);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Sensor s = metrics.sensor("test.sensor");
+        s.add("test.total", new Total());
+        s.record(5.0);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        s.record(5.0);
+        assertEquals(5.0, snapshot.value("test.total"), EPS);
+        assertTrue(Double.isNaN(snapshot.value("test.missing")));
+        assertEquals(10.0, metrics.snapshot().value("test.total"), EPS);
+
+        final BlockingQueue<MetricsSnapshot> reported = new LinkedBlockingQueue<MetricsSnapshot>();
+        metrics.addReporter(new SnapshotReporter() {
+            public void init(List<KafkaMetric> metrics) {}
+
+            public void metricChange(KafkaMetric metric) {}
+
+            public void report(MetricsSnapshot snapshot) {
+                reported.add(snapshot);
+            }
+
+            public void close() {}
+        });
+        metrics.startSnapshots(10L);
+        MetricsSnapshot taken = reported.poll(5, TimeUnit.SECONDS);
+        assertNotNull("A snapshot should be reported", taken);
+        assertEquals(10.0, taken.value("test.total"), EPS);
+        assertNotNull(metrics.latestSnapshot());
+        metrics.close();
+    }
+
+    @Test
+    public void testStripedStats() throws Exception {
+        MetricConfig config = new MetricConfig().stripes(4);
+        Sensor parent = metrics.sensor("parent", config);
+        parent.add("parent.count", new Count());
+        final Sensor s = metrics.sensor("test.sensor", config, parent);
+        s.add("test.avg", new Avg());
+        s.add("test.max", new Max());
+        s.add("test.min", new Min());
+        s.add("test.count", new Count());
+        s.add("test.total", new Total());
+        s.add("test.rate", new Rate(TimeUnit.SECONDS));
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10; i++)
+                        s.record(i);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        time.sleep(10000);
+        assertEquals(4.5, metrics.metrics().get("test.avg").value(), EPS);
+        assertEquals(9.0, metrics.metrics().get("test.max").value(), EPS);
+        assertEquals(0.0, metrics.metrics().get("test.min").value(), EPS);
+        assertEquals(80.0, metrics.metrics().get("test.count").value(), EPS);
+        assertEquals(80.0, metrics.metrics().get("parent.count").value(), EPS);
+        assertEquals(360.0, metrics.metrics().get("test.total").value(), EPS);
+        assertEquals(36.0, metrics.metrics().get("test.rate").value(), EPS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripedSensorRejectsUnstripedStat() {
+        metrics.sensor("test", new MetricConfig().stripes(2)).add("test.constant", new MeasurableStat() {
+            public void record(MetricConfig config, double value, long time) {}
+
+            public double measure(MetricConfig config, long now) {
+                return 0.0;
+            }
+        });
+    }
+
+    @Test
+    public void testStripedQuotas() {
+        Sensor sensor = metrics.sensor("test", new MetricConfig().stripes(2));
+        sensor.add("test.total", new Total(), new MetricConfig().quota(Quota.lessThan(5.0)));
+        sensor.record(5.0);
+        // the violation is only noticed once the next check is due
+        sensor.record(1.0);
+        time.sleep(TimeUnit.NANOSECONDS.toMillis(Sensor.QUOTA_CHECK_INTERVAL_NS));
+        try {
+            sensor.record(1.0);
+            fail("Should have gotten a quota violation.");
+        } catch (QuotaViolationException e) {
+            // this is good
+        }
+        // and until the one after that every recording is rejected
+        try {
+            sensor.record(-6.0);
+            fail("Should have gotten a quota violation.");
+        } catch (QuotaViolationException e) {
+            // this is good
+        }
+        time.sleep(TimeUnit.NANOSECONDS.toMillis(Sensor.QUOTA_CHECK_INTERVAL_NS));
+        sensor.record(1.0);
+        assertEquals(2.0, metrics.metrics().get("test.total").value(), EPS);
+    }
+
     public static class ConstantMeasurable implements Measurable {
         public double value = 0.0;
 
@@ -17,6 +17,7 @@
 package org.apache.kafka.common.metrics.stats;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Random;
@@ -26,6 +27,7 @@ import org.apache.kafka.common.metrics.stats.Histogram;
 import org.apache.kafka.common.metrics.stats.Histogram.BinScheme;
 import org.apache.kafka.common.metrics.stats.Histogram.ConstantBinScheme;
 import org.apache.kafka.common.metrics.stats.Histogram.LinearBinScheme;
+import org.apache.kafka.common.metrics.stats.Histogram.LogLinearBinScheme;
 import org.junit.Test;
 
 public class HistogramTest {
@@ -60,6 +62,41 @@ public class HistogramTest {
         checkBinningConsistency(scheme);
     }
 
+    @Test
+    public void testLogLinearBinScheme() {
+        LogLinearBinScheme scheme = new LogLinearBinScheme(0.05, 30000, 7);
+        assertEquals("A value below the lower bound should map to the first bin", 0, scheme.toBin(0.04));
+        assertEquals("A value above the upper bound should map to the last bin", scheme.bins() - 1, scheme.toBin(30500));
+        assertEquals("NaN should map to the first bin", 0, scheme.toBin(Double.NaN));
+        assertEquals("-Infinity should map to the first bin", 0, scheme.toBin(Double.NEGATIVE_INFINITY));
+        assertEquals("Infinity should map to the last bin", scheme.bins() - 1, scheme.toBin(Double.POSITIVE_INFINITY));
+        checkBinningConsistency(scheme);
+        double maxError = 1.0 / (1 << 8) + EPS;
+        for (double x = 0.05; x <= 30000; x *= 1.001) {
+            double error = Math.abs(scheme.fromBin(scheme.toBin(x)) - x) / x;
+            assertTrue("Relative error " + error + " of " + x + " exceeds " + maxError, error <= maxError);
+        }
+    }
+
+    @Test
+    public void testLogLinearHistogram() {
+        LogLinearBinScheme scheme = new LogLinearBinScheme(1, 100000, 7);
+        LogLinearHistogram low = new LogLinearHistogram(scheme);
+        LogLinearHistogram high = new LogLinearHistogram(scheme);
+        for (int i = 1; i <= 5000; i++)
+            low.record(i);
+        for (int i = 5001; i <= 10000; i++)
+            high.record(i);
+        assertEquals(2500, low.value(0.5), 2500 / 256.0);
+        low.add(high);
+        assertEquals(10000, low.count());
+        assertEquals(5000, low.value(0.5), 5000 / 256.0);
+        assertEquals(9900, low.value(0.99), 9900 / 256.0);
+        assertEquals(9990, low.value(0.999), 9990 / 256.0);
+        low.clear();
+        assertTrue(Double.isNaN(low.value(0.5)));
+    }
+
     private void checkBinningConsistency(BinScheme scheme) {
         for (int bin = 0; bin < scheme.bins(); bin++) {
             double fromBin = scheme.fromBin(bin);
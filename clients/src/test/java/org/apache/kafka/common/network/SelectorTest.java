@@ -37,6 +37,8 @@ import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.network.NetworkSend;
 import org.apache.kafka.common.network.Selectable;
 import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.MockTime;
 import org.apache.kafka.common.utils.Utils;
 import org.apache.kafka.test.TestUtils;
 import org.junit.After;
@@ -52,13 +54,15 @@ public class SelectorTest {
     private static final int BUFFER_SIZE = 4 * 1024;
 
     private EchoServer server;
+    private MockTime time = new MockTime();
+    private Metrics metrics = new Metrics(time);
     private Selectable selector;
 
     @Before
     public void setup() throws Exception {
         this.server = new EchoServer();
         this.server.start();
-        this.selector = new Selector();
+        this.selector = new Selector(metrics, time);
     }
 
     @After
@@ -213,6 +217,26 @@ public class SelectorTest {
         assertEquals("", blockingRequest(node, ""));
     }
 
+    /**
+     * Test that bytes are counted per node and in total and connections are counted as they are created and closed
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        int node = 0;
+        blockingConnect(node);
+        assertEquals("hello", blockingRequest(node, "hello"));
+        selector.disconnect(node);
+        selector.poll(10, asList(createSend(node, "hello")));
+        time.sleep(1000);
+        // each direction carries a 4 byte size followed by the 5 byte payload
+        assertEquals(9.0, metrics.metrics().get("node.0.bytes_sent_rate").value(), 0.0);
+        assertEquals(9.0, metrics.metrics().get("node.0.bytes_received_rate").value(), 0.0);
+        assertEquals(9.0, metrics.metrics().get("bytes_sent_rate").value(), 0.0);
+        assertEquals(9.0, metrics.metrics().get("bytes_received_rate").value(), 0.0);
+        assertEquals(1.0, metrics.metrics().get("connection_creation_rate").value(), 0.0);
+        assertEquals(1.0, metrics.metrics().get("connection_close_rate").value(), 0.0);
+    }
+
     private String blockingRequest(int node, String s) throws IOException {
         selector.poll(1000L, asList(createSend(node, s)));
         while (true) {
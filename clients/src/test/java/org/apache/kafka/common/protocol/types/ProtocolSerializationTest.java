@@ -96,6 +96,18 @@ public class ProtocolSerializationTest {
         struct.validate(); // should be valid even with missing value
     }
 
+    @Test
+    public void testIndexAccess() {
+        for (Field f : this.schema.fields())
+            assertEquals("Index access should match field access", this.struct.get(f), this.struct.get(f.index()));
+        assertEquals(1, this.struct.getInt(this.schema.get("int32").index()));
+        assertEquals(1L, this.struct.getLong(this.schema.get("int64").index()));
+        this.struct.set(this.schema.get("int16").index(), (short) 2);
+        assertEquals((short) 2, this.struct.getShort(this.schema.get("int16").index()));
+        Schema schema = new Schema(new Field("field", Type.INT32, "doc", 42));
+        assertEquals("Should get the default value", 42, new Struct(schema).getInt(0));
+    }
+
     private Object roundtrip(Type type, Object obj) {
         ByteBuffer buffer = ByteBuffer.allocate(type.sizeOf(obj));
         type.write(buffer, obj);
@@ -20,6 +20,7 @@ import static org.apache.kafka.common.utils.Utils.toArray;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -60,4 +61,98 @@ public class MemoryRecordsTest {
         }
     }
 
+    @Test
+    public void testCompact() {
+        MemoryRecords standard = new MemoryRecords(ByteBuffer.allocate(1024));
+        MemoryRecords compact = new MemoryRecords(ByteBuffer.allocate(1024), CompressionType.COMPACT);
+        List<Record> list = Arrays.asList(new Record("a".getBytes(), "1".getBytes()),
+                                          new Record(null, "2".getBytes()),
+                                          new Record("c".getBytes(), (byte[]) null),
+                                          new Record(new byte[300], new byte[0]));
+        for (int i = 0; i < list.size(); i++) {
+            standard.append(i, list.get(i));
+            compact.append(i + 5, list.get(i));
+        }
+        compact.close();
+        // varint offset deltas and lengths leave 3 bytes of overhead per record, or 4 for the 300 byte key
+        assertEquals(MemoryRecords.COMPACT_HEADER_SIZE + 5 + 4 + 4 + 304, compact.sizeInBytes());
+        assertEquals(4 * (Records.LOG_OVERHEAD + Record.RECORD_OVERHEAD) + 2 + 1 + 1 + 300, standard.sizeInBytes());
+
+        ByteBuffer buffer = compact.buffer();
+        buffer.flip();
+        assertEquals(5L, buffer.getLong());
+        assertEquals(compact.sizeInBytes() - Records.LOG_OVERHEAD, buffer.getInt());
+        Record wrapper = new Record(buffer.slice());
+        assertEquals(CompressionType.COMPACT, wrapper.compressionType());
+        assertFalse(wrapper.hasKey());
+        assertTrue(wrapper.isValid());
+
+        Iterator<LogEntry> iter = compact.iterator();
+        for (int i = 0; i < list.size(); i++) {
+            assertTrue(iter.hasNext());
+            LogEntry entry = iter.next();
+            assertEquals(i + 5L, entry.offset());
+            assertEquals(list.get(i), entry.record());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testTimestamps() {
+        long now = 1400000000000L;
+        for (CompressionType type : Arrays.asList(CompressionType.NONE, CompressionType.COMPACT)) {
+            MemoryRecords recs = new MemoryRecords(ByteBuffer.allocate(1024), type);
+            for (int i = 0; i < 3; i++) {
+                assertTrue(recs.hasRoomFor(now + i, "a".getBytes(), "1".getBytes()));
+                recs.append(i, now + 10 * i, "a".getBytes(), "1".getBytes(), CompressionType.NONE);
+            }
+            recs.close();
+            Iterator<LogEntry> iter = recs.iterator();
+            for (int i = 0; i < 3; i++) {
+                LogEntry entry = iter.next();
+                assertEquals((long) i, entry.offset());
+                assertEquals(now + 10 * i, entry.record().timestamp());
+                assertEquals(ByteBuffer.wrap("a".getBytes()), entry.record().key());
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testCompactClose() {
+        MemoryRecords empty = new MemoryRecords(ByteBuffer.allocate(1024), CompressionType.COMPACT);
+        empty.close();
+        assertEquals(0, empty.sizeInBytes());
+        assertFalse(empty.iterator().hasNext());
+
+        MemoryRecords compact = new MemoryRecords(ByteBuffer.allocate(1024), CompressionType.COMPACT);
+        compact.append(0L, "a".getBytes(), "1".getBytes(), CompressionType.NONE);
+        compact.close();
+        int size = compact.sizeInBytes();
+        compact.close();
+        assertEquals(size, compact.sizeInBytes());
+        assertFalse(compact.hasRoomFor("b".getBytes(), "2".getBytes()));
+        try {
+            compact.append(1L, "b".getBytes(), "2".getBytes(), CompressionType.NONE);
+            fail("Appending to a closed compact record set should fail.");
+        } catch (IllegalStateException e) {
+            // this is good
+        }
+        LogEntry entry = compact.iterator().next();
+        assertEquals(new Record("a".getBytes(), "1".getBytes()), entry.record());
+    }
+
+    @Test
+    public void testCompactSizeFor() {
+        byte[] key = new byte[100];
+        byte[] value = new byte[1000];
+        MemoryRecords compact = new MemoryRecords(ByteBuffer.allocate(MemoryRecords.sizeFor(CompressionType.COMPACT, key, value)),
+                                                  CompressionType.COMPACT);
+        assertTrue(compact.hasRoomFor(key, value));
+        compact.append(0L, key, value, CompressionType.NONE);
+        compact.close();
+        assertEquals(new Record(key, value), compact.iterator().next().record());
+    }
+
+
 }
@@ -38,16 +38,18 @@ import org.junit.runners.Parameterized.Parameters;
 @RunWith(value = Parameterized.class)
 public class RecordTest {
 
+    private long timestamp;
     private ByteBuffer key;
     private ByteBuffer value;
     private CompressionType compression;
     private Record record;
 
-    public RecordTest(byte[] key, byte[] value, CompressionType compression) {
+    public RecordTest(long timestamp, byte[] key, byte[] value, CompressionType compression) {
+        this.timestamp = timestamp;
         this.key = key == null ? null : ByteBuffer.wrap(key);
         this.value = value == null ? null : ByteBuffer.wrap(value);
         this.compression = compression;
-        this.record = new Record(key, value, compression);
+        this.record = new Record(timestamp, key, value, compression);
     }
 
     @Test
@@ -57,7 +59,8 @@ public class RecordTest {
         assertEquals(key, record.key());
         if (key != null)
             assertEquals(key.limit(), record.keySize());
-        assertEquals(Record.CURRENT_MAGIC_VALUE, record.magic());
+        assertEquals(timestamp, record.timestamp());
+        assertEquals(timestamp == Record.NO_TIMESTAMP ? Record.CURRENT_MAGIC_VALUE : Record.MAGIC_VALUE_V1, record.magic());
         assertEquals(value, record.value());
         if (value != null)
             assertEquals(value.limit(), record.valueSize());
@@ -96,10 +99,11 @@ public class RecordTest {
     @Parameters
     public static Collection<Object[]> data() {
         List<Object[]> values = new ArrayList<Object[]>();
-        for (byte[] key : Arrays.asList(null, "".getBytes(), "key".getBytes()))
-            for (byte[] value : Arrays.asList(null, "".getBytes(), "value".getBytes()))
-                for (CompressionType compression : CompressionType.values())
-                    values.add(new Object[] { key, value, compression });
+        for (long timestamp : Arrays.asList(Record.NO_TIMESTAMP, 1400000000000L))
+            for (byte[] key : Arrays.asList(null, "".getBytes(), "key".getBytes()))
+                for (byte[] value : Arrays.asList(null, "".getBytes(), "value".getBytes()))
+                    for (CompressionType compression : CompressionType.values())
+                        values.add(new Object[] { timestamp, key, value, compression });
         return values;
     }
 
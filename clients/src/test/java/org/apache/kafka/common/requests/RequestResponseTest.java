@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.requests;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.ProtoUtils;
+import org.apache.kafka.common.protocol.Protocol;
+import org.apache.kafka.common.protocol.types.Schema;
+import org.apache.kafka.common.protocol.types.Struct;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.LogEntry;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.junit.Test;
+
+/**
+ * Check that each codec is wire compatible with the generic schema it implements
+ */
+public class RequestResponseTest {
+
+    @Test
+    public void testRequestHeader() {
+        RequestHeader header = new RequestHeader((short) 3, (short) 0, "client", 42);
+        Struct struct = (Struct) Protocol.REQUEST_HEADER.read(serialize(header, Protocol.REQUEST_HEADER));
+        RequestHeader parsed = RequestHeader.parse(serialize(struct, Protocol.REQUEST_HEADER));
+        assertEquals(header.apiKey(), parsed.apiKey());
+        assertEquals(header.apiVersion(), parsed.apiVersion());
+        assertEquals(header.clientId(), parsed.clientId());
+        assertEquals(header.correlationId(), parsed.correlationId());
+    }
+
+    @Test
+    public void testResponseHeader() {
+        Struct struct = (Struct) Protocol.RESPONSE_HEADER.read(serialize(new ResponseHeader(42), Protocol.RESPONSE_HEADER));
+        assertEquals(42, ResponseHeader.parse(serialize(struct, Protocol.RESPONSE_HEADER)).correlationId());
+    }
+
+    @Test
+    public void testMetadataRequest() {
+        MetadataRequest request = new MetadataRequest(asList("a", "b"));
+        Schema schema = ProtoUtils.currentRequestSchema(3);
+        Struct struct = (Struct) schema.read(serialize(request, schema));
+        assertArrayEquals(new Object[] { "a", "b" }, struct.getArray("topics"));
+        assertEquals(asList("a", "b"), MetadataRequest.parse(serialize(struct, schema)).topics());
+    }
+
+    @Test
+    public void testMetadataResponse() {
+        Node node0 = new Node(0, "host0", 1969);
+        Node node1 = new Node(1, "host1", 1970);
+        Node[] nodes = new Node[] { node0, node1 };
+        MetadataResponse response = new MetadataResponse(asList(node0, node1),
+                                                         asList(new PartitionInfo("a", 0, node0, nodes, nodes),
+                                                                new PartitionInfo("a", 1, null, nodes, new Node[] { node1 }),
+                                                                new PartitionInfo("b", 0, node1, nodes, nodes)));
+        Schema schema = ProtoUtils.currentResponseSchema(3);
+        Struct struct = (Struct) schema.read(serialize(response, schema));
+        Cluster expected = ProtoUtils.parseMetadataResponse(struct);
+        Cluster cluster = MetadataResponse.parse(serialize(struct, schema)).cluster();
+        assertEquals(new HashSet<Node>(expected.nodes()), new HashSet<Node>(cluster.nodes()));
+        for (String topic : asList("a", "b")) {
+            assertEquals(expected.partitionsFor(topic).size(), cluster.partitionsFor(topic).size());
+            for (PartitionInfo part : cluster.partitionsFor(topic)) {
+                PartitionInfo other = expected.partition(new TopicPartition(topic, part.partition()));
+                assertEquals(other.leader(), part.leader());
+                assertArrayEquals(other.replicas(), part.replicas());
+                assertArrayEquals(other.inSyncReplicas(), part.inSyncReplicas());
+            }
+        }
+        assertNull(cluster.leaderFor(new TopicPartition("a", 1)));
+    }
+
+    @Test
+    public void testMetadataView() {
+        Node node = new Node(0, "host0", 1969);
+        Node[] nodes = new Node[] { node };
+        MetadataResponse response = new MetadataResponse(asList(node),
+                                                         asList(new PartitionInfo("a", 0, node, nodes, nodes),
+                                                                new PartitionInfo("a", 1, node, nodes, nodes),
+                                                                new PartitionInfo("b", 0, null, nodes, nodes)));
+        Schema schema = ProtoUtils.currentResponseSchema(3);
+        Struct struct = (Struct) schema.read(serialize(response, schema));
+        // give topic b an error
+        Struct topicB = (Struct) struct.getArray(Protocol.METADATA_RESPONSE_TOPIC_METADATA)[1];
+        topicB.set(Protocol.TOPIC_METADATA_ERROR_CODE, Errors.LEADER_NOT_AVAILABLE.code());
+        ByteBuffer buffer = serialize(struct, schema);
+
+        MetadataView view = MetadataView.parse(buffer);
+        assertEquals("The whole response should be consumed", 0, buffer.remaining());
+        assertEquals(asList(node), view.brokers());
+        assertEquals(Collections.singleton("a"), view.topics());
+        assertNull("Topics with an error should be skipped", view.partitionsFor("b"));
+        assertNull(view.partitionsFor("unknown"));
+        Cluster cluster = view.cluster();
+        assertEquals(2, cluster.partitionsFor("a").size());
+        assertEquals(node, cluster.leaderFor(new TopicPartition("a", 1)));
+        assertNull(cluster.leaderFor(new TopicPartition("a", 2)));
+        assertNull(cluster.partitionsFor("b"));
+        assertSame("Each topic should be decoded only once", cluster.partitionsFor("a"), cluster.partitionsFor("a"));
+    }
+
+    @Test
+    public void testProduceRequest() {
+        Map<TopicPartition, ByteBuffer> recordSets = new LinkedHashMap<TopicPartition, ByteBuffer>();
+        recordSets.put(new TopicPartition("a", 0), ByteBuffer.wrap("a0".getBytes()));
+        recordSets.put(new TopicPartition("b", 0), ByteBuffer.wrap("b0".getBytes()));
+        recordSets.put(new TopicPartition("a", 1), ByteBuffer.wrap("a1".getBytes()));
+        ProduceRequest request = new ProduceRequest((short) -1, 1000, recordSets);
+        Schema schema = ProtoUtils.currentRequestSchema(0);
+        Struct struct = (Struct) schema.read(serialize(request, schema));
+        assertEquals((short) -1, struct.getShort("acks").shortValue());
+        assertEquals("Partitions should be grouped by topic", 2, struct.getArray("topic_data").length);
+        ProduceRequest parsed = ProduceRequest.parse(serialize(struct, schema));
+        assertEquals(request.acks(), parsed.acks());
+        assertEquals(request.timeout(), parsed.timeout());
+        assertEquals(recordSets, parsed.recordSets());
+    }
+
+    @Test
+    public void testProduceResponse() {
+        TopicPartition[] partitions = new TopicPartition[] { new TopicPartition("a", 0),
+                                                             new TopicPartition("a", 1),
+                                                             new TopicPartition("b", 0) };
+        ProduceResponse response = new ProduceResponse(partitions, new short[] { 0, 3, 0 }, new long[] { 5L, -1L, 7L });
+        Schema schema = ProtoUtils.currentResponseSchema(0);
+        Struct struct = (Struct) schema.read(serialize(response, schema));
+        assertEquals(2, struct.getArray("responses").length);
+        ProduceResponse parsed = ProduceResponse.parse(serialize(struct, schema));
+        assertEquals(3, parsed.size());
+        for (int i = 0; i < partitions.length; i++) {
+            assertEquals(partitions[i], parsed.partition(i));
+            assertEquals(response.errorCode(i), parsed.errorCode(i));
+            assertEquals(response.baseOffset(i), parsed.baseOffset(i));
+        }
+    }
+
+    @Test
+    public void testFetchRequest() {
+        Map<TopicPartition, FetchRequest.PartitionData> fetchData = new LinkedHashMap<TopicPartition, FetchRequest.PartitionData>();
+        fetchData.put(new TopicPartition("a", 0), new FetchRequest.PartitionData(5L, 1024));
+        fetchData.put(new TopicPartition("b", 0), new FetchRequest.PartitionData(0L, 2048));
+        fetchData.put(new TopicPartition("a", 1), new FetchRequest.PartitionData(7L, 4096));
+        FetchRequest request = new FetchRequest(FetchRequest.CONSUMER_REPLICA_ID, 100, 1, fetchData);
+        Schema schema = ProtoUtils.currentRequestSchema(1);
+        Struct struct = (Struct) schema.read(serialize(request, schema));
+        assertEquals("Partitions should be grouped by topic", 2, struct.getArray("topics").length);
+        FetchRequest parsed = FetchRequest.parse(serialize(struct, schema));
+        assertEquals(-1, parsed.replicaId());
+        assertEquals(100, parsed.maxWait());
+        assertEquals(1, parsed.minBytes());
+        assertEquals(fetchData.keySet(), parsed.fetchData().keySet());
+        for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetchData.entrySet()) {
+            assertEquals(entry.getValue().offset, parsed.fetchData().get(entry.getKey()).offset);
+            assertEquals(entry.getValue().maxBytes, parsed.fetchData().get(entry.getKey()).maxBytes);
+        }
+    }
+
+    @Test
+    public void testFetchResponse() {
+        MemoryRecords records = new MemoryRecords(1024);
+        records.append(5L, "k".getBytes(), "v".getBytes(), CompressionType.NONE);
+        records.append(6L, "k".getBytes(), "w".getBytes(), CompressionType.NONE);
+        TopicPartition[] partitions = new TopicPartition[] { new TopicPartition("a", 0), new TopicPartition("b", 0) };
+        FetchResponse response = new FetchResponse(partitions,
+                                                   new short[] { 1, 0 },
+                                                   new long[] { -1L, 10L },
+                                                   new MemoryRecords[] { new MemoryRecords(0), records });
+        Schema schema = ProtoUtils.currentResponseSchema(1);
+        ByteBuffer buffer = serialize(response, schema);
+        FetchResponse parsed = FetchResponse.parse(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(2, parsed.size());
+        for (int i = 0; i < partitions.length; i++) {
+            assertEquals(partitions[i], parsed.partition(i));
+            assertEquals(response.errorCode(i), parsed.errorCode(i));
+            assertEquals(response.highWatermark(i), parsed.highWatermark(i));
+            assertEquals(response.records(i).sizeInBytes(), parsed.records(i).sizeInBytes());
+        }
+        Iterator<LogEntry> iter = parsed.records(1).iterator();
+        assertEquals(5L, iter.next().offset());
+        LogEntry entry = iter.next();
+        assertEquals(6L, entry.offset());
+        assertEquals(ByteBuffer.wrap("w".getBytes()), entry.record().value());
+        assertFalse(iter.hasNext());
+        assertFalse(parsed.records(0).iterator().hasNext());
+
+        // the record sets share the receive buffer rather than copying it
+        buffer.put(buffer.capacity() - 1, (byte) 'x');
+        ByteBuffer value = parsed.records(1).buffer();
+        assertEquals((byte) 'x', value.get(value.position() - 1));
+    }
+
+    @Test
+    public void testFetchResponsePartialRecord() {
+        MemoryRecords records = new MemoryRecords(1024);
+        records.append(0L, "k".getBytes(), "v".getBytes(), CompressionType.NONE);
+        records.append(1L, "k".getBytes(), "v".getBytes(), CompressionType.NONE);
+        ByteBuffer truncated = records.buffer();
+        truncated.flip();
+        truncated.limit(truncated.limit() - 1);
+        FetchResponse response = new FetchResponse(new TopicPartition[] { new TopicPartition("a", 0) },
+                                                   new short[] { 0 },
+                                                   new long[] { 2L },
+                                                   new MemoryRecords[] { MemoryRecords.readableRecords(truncated) });
+        FetchResponse parsed = FetchResponse.parse(serialize(response, ProtoUtils.currentResponseSchema(1)));
+        Iterator<LogEntry> iter = parsed.records(0).iterator();
+        assertEquals(0L, iter.next().offset());
+        assertFalse("The incomplete trailing record should be skipped", iter.hasNext());
+    }
+
+    /**
+     * Serialize the message, checking its size agrees with the generic schema
+     */
+    private ByteBuffer serialize(Message message, Schema schema) {
+        ByteBuffer buffer = ByteBuffer.allocate(message.sizeOf());
+        message.writeTo(buffer);
+        assertEquals("The message should fill its declared size", 0, buffer.remaining());
+        buffer.rewind();
+        Struct struct = (Struct) schema.read(buffer);
+        assertEquals("The generic schema should consume the whole message", 0, buffer.remaining());
+        assertEquals(message.sizeOf(), struct.sizeOf());
+        buffer.rewind();
+        return buffer;
+    }
+
+}
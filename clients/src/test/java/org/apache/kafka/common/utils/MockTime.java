@@ -28,6 +28,14 @@ public class MockTime implements Time {
         this.nanos = System.nanoTime();
     }
 
+    /**
+     * A mock time that starts from the given time in nanoseconds rather than the system clock, for tests that must not
+     * depend on where within a millisecond they start
+     */
+    public MockTime(long nanos) {
+        this.nanos = nanos;
+    }
+
     @Override
     public long milliseconds() {
         return TimeUnit.MILLISECONDS.convert(this.nanos, TimeUnit.NANOSECONDS);
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+public class PartitionIndexTest {
+
+    @Test
+    public void testPutAndGet() {
+        PartitionIndex<String> index = new PartitionIndex<String>();
+        TopicPartition tp = new TopicPartition("test", 5);
+        assertNull(index.get(tp));
+        assertNull(index.putIfAbsent(tp, "a"));
+        assertEquals("a", index.putIfAbsent(tp, "b"));
+        assertEquals("a", index.get(tp));
+        assertNull("Other partitions of the topic have no value", index.get(new TopicPartition("test", 2)));
+        assertNull("Partitions beyond the end of the topic have no value", index.get(new TopicPartition("test", 100)));
+        assertNull("Other topics have no value", index.get(new TopicPartition("other", 5)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testGrowthAndIteration() {
+        PartitionIndex<Integer> index = new PartitionIndex<Integer>();
+        Set<TopicPartition> expected = new HashSet<TopicPartition>();
+        for (int p = 0; p < 1000; p += 3) {
+            for (String topic : new String[] { "a", "b" }) {
+                TopicPartition tp = new TopicPartition(topic, p);
+                index.putIfAbsent(tp, p);
+                expected.add(tp);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        Set<TopicPartition> seen = new HashSet<TopicPartition>();
+        for (PartitionIndex.Entry<Integer> entry : index) {
+            assertEquals(entry.topicPartition().partition(), entry.value().intValue());
+            seen.add(entry.topicPartition());
+        }
+        assertEquals(expected, seen);
+        assertEquals(999, index.get(new TopicPartition("b", 999)).intValue());
+    }
+
+    @Test
+    public void testConcurrentInserts() throws Exception {
+        final PartitionIndex<Integer> index = new PartitionIndex<Integer>();
+        final int partitions = 10000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    // every thread tries to add every partition, in a different order
+                    for (int i = 0; i < partitions; i++) {
+                        int p = (i * 7 + offset * 2503) % partitions;
+                        index.putIfAbsent(new TopicPartition("test", p), offset);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(partitions, index.size());
+        for (int p = 0; p < partitions; p++)
+            assertEquals(index.get(new TopicPartition("test", p)), index.putIfAbsent(new TopicPartition("test", p), -1));
+    }
+
+}
@@ -18,6 +18,7 @@ package org.apache.kafka.test;
 
 import java.util.Arrays;
 
+import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.metrics.Sensor;
 import org.apache.kafka.common.metrics.stats.Avg;
@@ -26,19 +27,30 @@ import org.apache.kafka.common.metrics.stats.Max;
 import org.apache.kafka.common.metrics.stats.Percentile;
 import org.apache.kafka.common.metrics.stats.Percentiles;
 import org.apache.kafka.common.metrics.stats.Percentiles.BucketSizing;
+import org.apache.kafka.common.metrics.stats.Rate;
 
 
 public class MetricsBench {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         long iters = Long.parseLong(args[0]);
-        Metrics metrics = new Metrics();
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        System.out.println(String.format("Locked: %.2f ns per metric recording.", bench(iters, threads, 1)));
+        System.out.println(String.format("Striped: %.2f ns per metric recording.", bench(iters, threads, 2 * threads)));
+    }
+
+    /**
+     * Record from the given number of threads at once and return the average time per recording across all threads
+     */
+    private static double bench(final long iters, int threads, int stripes) throws Exception {
+        Metrics metrics = new Metrics(new MetricConfig().stripes(stripes));
         Sensor parent = metrics.sensor("parent");
-        Sensor child = metrics.sensor("child", parent);
+        final Sensor child = metrics.sensor("child", parent);
         for (Sensor sensor : Arrays.asList(parent, child)) {
             sensor.add(sensor.name() + ".avg", new Avg());
             sensor.add(sensor.name() + ".count", new Count());
             sensor.add(sensor.name() + ".max", new Max());
+            sensor.add(sensor.name() + ".rate", new Rate());
             sensor.add(new Percentiles(1024,
                                        0.0,
                                        iters,
@@ -46,10 +58,22 @@ public class MetricsBench {
                                        new Percentile(sensor.name() + ".median", 50.0),
                                        new Percentile(sensor.name() + ".p_99", 99.0)));
         }
+        Thread[] recorders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            recorders[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < iters; i++)
+                        child.record(i);
+                }
+            };
+        }
         long start = System.nanoTime();
-        for (int i = 0; i < iters; i++)
-            child.record(i);
-        double ellapsed = (System.nanoTime() - start) / (double) iters;
-        System.out.println(String.format("%.2f ns per metric recording.", ellapsed));
+        for (Thread recorder : recorders)
+            recorder.start();
+        for (Thread recorder : recorders)
+            recorder.join();
+        double ellapsed = (System.nanoTime() - start) / (double) (iters * threads);
+        metrics.close();
+        return ellapsed;
     }
 }
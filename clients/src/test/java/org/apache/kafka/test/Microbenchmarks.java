@@ -25,7 +25,9 @@ import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.utils.CopyOnWriteMap;
+import org.apache.kafka.common.utils.PartitionIndex;
 import org.apache.kafka.common.utils.SystemTime;
 
 
@@ -121,6 +123,19 @@ public class Microbenchmarks {
         benchMap(2, 1000000, new ConcurrentHashMap<String, Integer>(values));
         System.out.println("CopyOnWriteMap:");
         benchMap(2, 1000000, new CopyOnWriteMap<String, Integer>(values));
+
+        // test adding many partitions
+        int partitions = 50000;
+        start = System.nanoTime();
+        CopyOnWriteMap<TopicPartition, Integer> cow = new CopyOnWriteMap<TopicPartition, Integer>();
+        for (int i = 0; i < partitions; i++)
+            cow.putIfAbsent(new TopicPartition("test", i), i);
+        System.out.println("CopyOnWriteMap insert: " + (System.nanoTime() - start) / (double) partitions);
+        start = System.nanoTime();
+        PartitionIndex<Integer> index = new PartitionIndex<Integer>();
+        for (int i = 0; i < partitions; i++)
+            index.putIfAbsent(new TopicPartition("test", i), i);
+        System.out.println("PartitionIndex insert: " + (System.nanoTime() - start) / (double) partitions);
     }
 
     private static void benchMap(int numThreads, final int iters, final Map<String, Integer> map) throws Exception {
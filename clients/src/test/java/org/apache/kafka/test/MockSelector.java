@@ -35,6 +35,7 @@ public class MockSelector implements Selectable {
     private final Time time;
     private final List<NetworkSend> completedSends = new ArrayList<NetworkSend>();
     private final List<NetworkReceive> completedReceives = new ArrayList<NetworkReceive>();
+    private final List<NetworkReceive> pendingReceives = new ArrayList<NetworkReceive>();
     private final List<Integer> disconnected = new ArrayList<Integer>();
     private final List<Integer> connected = new ArrayList<Integer>();
 
@@ -63,6 +64,7 @@ public class MockSelector implements Selectable {
     public void clear() {
         this.completedSends.clear();
         this.completedReceives.clear();
+        this.pendingReceives.clear();
         this.disconnected.clear();
         this.connected.clear();
     }
@@ -70,6 +72,10 @@ public class MockSelector implements Selectable {
     @Override
     public void poll(long timeout, List<NetworkSend> sends) throws IOException {
         this.completedSends.addAll(sends);
+        // like a real selector, each receive is returned by a single poll
+        this.completedReceives.clear();
+        this.completedReceives.addAll(this.pendingReceives);
+        this.pendingReceives.clear();
         time.sleep(timeout);
     }
 
@@ -87,8 +93,11 @@ public class MockSelector implements Selectable {
         return completedReceives;
     }
 
+    /**
+     * Complete the given receive on the next poll
+     */
     public void completeReceive(NetworkReceive receive) {
-        this.completedReceives.add(receive);
+        this.pendingReceives.add(receive);
     }
 
     @Override
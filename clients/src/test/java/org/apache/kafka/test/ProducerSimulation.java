@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.clients.producer.internals.Metadata;
+import org.apache.kafka.clients.producer.internals.Partitioner;
+import org.apache.kafka.clients.producer.internals.PendingSends;
+import org.apache.kafka.clients.producer.internals.ProduceQuotas;
+import org.apache.kafka.clients.producer.internals.RecordAccumulator;
+import org.apache.kafka.clients.producer.internals.Sender;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.stats.Histogram.LogLinearBinScheme;
+import org.apache.kafka.common.metrics.stats.LogLinearHistogram;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.utils.MockTime;
+
+
+/**
+ * Drives the real {@link RecordAccumulator} and {@link Sender} against a {@link SimulatedSelector} in mock time, to see
+ * how linger, batch size and memory settings behave for a given load and cluster before deploying them.
+ * <p>
+ * Records arrive at a constant rate and are spread round robin over the partitions. When the accumulator is out of
+ * memory the simulated producer stalls and catches up once memory is freed. A real producer would block in the buffer
+ * pool; since the simulation runs on a single thread the record it would block on waits in a {@link PendingSends}
+ * queue instead, which the sender appends once memory is freed and which makes every partition ready just as a
+ * blocked thread does. Runs with the same parameters produce the same results.
+ * <p>
+ * Run with no arguments for a sweep over linger, batch size and memory settings.
+ */
+public class ProducerSimulation {
+
+    private final int nodes;
+    private final int partitions;
+    private final int recordSize;
+    private final int recordsPerMs;
+    private final long lingerMs;
+    private final int batchSize;
+    private final long totalMemory;
+    private final long latencyMs;
+    private final double bytesPerMs;
+    private final double errorRate;
+    private final long seed;
+
+    /**
+     * Create a simulation
+     * 
+     * @param nodes The number of brokers, which lead the partitions in turn
+     * @param partitions The number of partitions to send to
+     * @param recordSize The size of each record's value
+     * @param recordsPerMs The number of records sent per millisecond
+     * @param lingerMs The linger.ms setting
+     * @param batchSize The max.partition.bytes setting
+     * @param totalMemory The total.memory.bytes setting
+     * @param latencyMs The time each broker takes to respond once a request has arrived
+     * @param bytesPerMs The bandwidth of the link to each broker
+     * @param errorRate The probability of each partition of a produce request failing
+     * @param seed The seed for the error injection
+     */
+    public ProducerSimulation(int nodes,
+                              int partitions,
+                              int recordSize,
+                              int recordsPerMs,
+                              long lingerMs,
+                              int batchSize,
+                              long totalMemory,
+                              long latencyMs,
+                              double bytesPerMs,
+                              double errorRate,
+                              long seed) {
+        this.nodes = nodes;
+        this.partitions = partitions;
+        this.recordSize = recordSize;
+        this.recordsPerMs = recordsPerMs;
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.totalMemory = totalMemory;
+        this.latencyMs = latencyMs;
+        this.bytesPerMs = bytesPerMs;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    /**
+     * Send records for the given simulated time, then wait for the outstanding ones to complete
+     */
+    public Result run(long durationMs) throws Exception {
+        // start on a millisecond boundary, as the simulated selector steps in whole milliseconds
+        MockTime time = new MockTime(0L);
+        Metrics metrics = new Metrics(time);
+        Cluster cluster = cluster();
+        Metadata metadata = new Metadata(0L, Long.MAX_VALUE);
+        // register the topic up front so no metadata request goes to whichever node the cluster's shuffle puts first
+        metadata.add("test");
+        metadata.update(cluster, time.milliseconds());
+        RecordAccumulator accumulator = new RecordAccumulator(batchSize,
+                                                              batchSize,
+                                                              batchSize,
+                                                              totalMemory,
+                                                              lingerMs,
+                                                              false,
+                                                              new ProduceQuotas(metrics, time),
+                                                              Collections.<String, Integer>emptyMap(),
+                                                              0L,
+                                                              metrics,
+                                                              time);
+        PendingSends pending = new PendingSends(1,
+                                                Long.MAX_VALUE,
+                                                metadata,
+                                                new Partitioner(),
+                                                accumulator,
+                                                CompressionType.NONE,
+                                                false,
+                                                metrics,
+                                                time);
+        SimulatedSelector selector = new SimulatedSelector(time, cluster, latencyMs, bytesPerMs, errorRate, seed);
+        Sender sender = new Sender(selector,
+                                   metadata,
+                                   accumulator,
+                                   "",
+                                   1024 * 1024,
+                                   0L,
+                                   (short) 1,
+                                   30000,
+                                   64 * 1024,
+                                   64 * 1024,
+                                   null,
+                                   pending,
+                                   metrics,
+                                   time);
+        List<TopicPartition> tps = new ArrayList<TopicPartition>();
+        for (PartitionInfo partition : cluster.partitionsFor("test"))
+            tps.add(new TopicPartition("test", partition.partition()));
+        byte[] value = new byte[recordSize];
+        Result result = new Result();
+
+        long start = time.milliseconds();
+        long end = start + durationMs;
+        long lastStall = -1L;
+        while (time.milliseconds() < end) {
+            long now = time.milliseconds();
+            long due = (now - start + 1) * recordsPerMs;
+            while (result.sent < due) {
+                // the producer is blocked on its last record until the sender appends it
+                if (pending.size() > 0) {
+                    if (now != lastStall)
+                        result.stalledMs++;
+                    lastStall = now;
+                    break;
+                }
+                TopicPartition tp = tps.get((int) (result.sent % tps.size()));
+                pending.send(new ProducerRecord(tp.topic(), tp.partition(), null, value), result.callback(time));
+                result.sent++;
+            }
+            result.memoryHighWater = Math.max(result.memoryHighWater, totalMemory - (long) metrics.metrics().get("buffer_available_bytes").value());
+            sender.run(now);
+        }
+        // everything still buffered is sent and completed before the run ends
+        pending.close();
+        accumulator.close();
+        while (result.acknowledged + result.failed < result.sent)
+            sender.run(time.milliseconds());
+        result.elapsedMs = time.milliseconds() - start;
+        return result;
+    }
+
+    private Cluster cluster() {
+        List<Node> ns = new ArrayList<Node>();
+        for (int i = 0; i < nodes; i++)
+            ns.add(new Node(i, "localhost", 9092 + i));
+        List<PartitionInfo> parts = new ArrayList<PartitionInfo>();
+        for (int i = 0; i < partitions; i++) {
+            Node leader = ns.get(i % nodes);
+            parts.add(new PartitionInfo("test", i, leader, new Node[] { leader }, new Node[] { leader }));
+        }
+        return new Cluster(ns, parts);
+    }
+
+    /**
+     * The outcome of a simulation
+     */
+    public static final class Result {
+        public long sent;
+        public long acknowledged;
+        public long failed;
+        public long stalledMs;
+        public long memoryHighWater;
+        public long elapsedMs;
+        private final LogLinearHistogram latency = new LogLinearHistogram(new LogLinearBinScheme(0.05, 60 * 1000.0, 7));
+
+        private Callback callback(final MockTime time) {
+            final long sent = time.milliseconds();
+            return new Callback() {
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    if (exception == null)
+                        acknowledged++;
+                    else
+                        failed++;
+                    latency.record(time.milliseconds() - sent);
+                }
+            };
+        }
+
+        /**
+         * The acknowledged records per second of simulated time
+         */
+        public double throughput() {
+            return acknowledged * 1000.0 / elapsedMs;
+        }
+
+        /**
+         * The given quantile of the time in ms from appending a record to its completion
+         */
+        public double latency(double quantile) {
+            return this.latency.value(quantile);
+        }
+
+        public String toString() {
+            return String.format("%10.0f %8.1f %8.1f %8.1f %10d %8d %8d",
+                                 throughput(),
+                                 latency(0.5),
+                                 latency(0.99),
+                                 latency(0.999),
+                                 memoryHighWater,
+                                 stalledMs,
+                                 failed);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] lingers = { 0L, 5L, 20L };
+        int[] batchSizes = { 16 * 1024, 64 * 1024, 256 * 1024 };
+        long[] memories = { 1024 * 1024L, 8 * 1024 * 1024L };
+        System.out.println(String.format("%6s %8s %9s %10s %8s %8s %8s %10s %8s %8s",
+                                         "linger", "batch", "memory", "records/s", "p50", "p99", "p999", "mem_max", "stalled", "failed"));
+        for (long linger : lingers) {
+            for (int batchSize : batchSizes) {
+                for (long memory : memories) {
+                    // 3 brokers 2ms away with 100MB/s links, receiving 100MB/s of 1KB records
+                    ProducerSimulation simulation = new ProducerSimulation(3, 30, 1024, 100, linger, batchSize, memory, 2L, 100 * 1024.0, 0.001, 42L);
+                    System.out.println(String.format("%6d %8d %9d ", linger, batchSize, memory) + simulation.run(5000L));
+                }
+            }
+        }
+    }
+
+}
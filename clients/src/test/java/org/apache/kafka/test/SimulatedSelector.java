@@ -0,0 +1,296 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.NetworkSend;
+import org.apache.kafka.common.network.Selectable;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.record.LogEntry;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.requests.MetadataRequest;
+import org.apache.kafka.common.requests.MetadataResponse;
+import org.apache.kafka.common.requests.ProduceRequest;
+import org.apache.kafka.common.requests.ProduceResponse;
+import org.apache.kafka.common.requests.RequestSend;
+import org.apache.kafka.common.requests.ResponseHeader;
+import org.apache.kafka.common.utils.MockTime;
+
+
+/**
+ * A {@link Selectable} that simulates a cluster of brokers in {@link MockTime}, for driving the real client internals
+ * deterministically.
+ * <p>
+ * Each node has a link of limited bandwidth, over which requests are transmitted one after another, and a latency
+ * between a request arriving and its response being received. Produce requests are answered with the next offsets of
+ * each partition, or, with the configured probability, with an error for a partition; metadata requests are answered
+ * from the given cluster. Each poll advances the mock time to the next simulated event, but by no more than the poll
+ * timeout and one millisecond, so callers get a chance to act at least once per simulated millisecond. Given the same
+ * seed and starting time, the same sequence of calls produces the same results.
+ */
+public class SimulatedSelector implements Selectable {
+
+    private final MockTime time;
+    private final Cluster cluster;
+    private final Random random;
+    private final Link defaultLink;
+    private final Map<Integer, Link> links;
+    private final Map<TopicPartition, Long> offsets;
+    private final PriorityQueue<Event> events;
+    private final List<NetworkSend> completedSends;
+    private final List<NetworkReceive> completedReceives;
+    private final List<Integer> disconnected;
+    private final List<Integer> connected;
+    private final List<Integer> connecting;
+    private long sequence;
+
+    /**
+     * Create a simulated cluster
+     * 
+     * @param time The time to advance
+     * @param cluster The cluster to answer metadata requests from
+     * @param latencyMs The latency of nodes without their own settings
+     * @param bytesPerMs The bandwidth of nodes without their own settings
+     * @param errorRate The probability each partition in a produce response has an error, for nodes without their own
+     *        settings
+     * @param seed The seed for the error injection
+     */
+    public SimulatedSelector(MockTime time, Cluster cluster, long latencyMs, double bytesPerMs, double errorRate, long seed) {
+        this.time = time;
+        this.cluster = cluster;
+        this.random = new Random(seed);
+        this.defaultLink = new Link(latencyMs, bytesPerMs, errorRate);
+        this.links = new HashMap<Integer, Link>();
+        this.offsets = new HashMap<TopicPartition, Long>();
+        this.events = new PriorityQueue<Event>();
+        this.completedSends = new ArrayList<NetworkSend>();
+        this.completedReceives = new ArrayList<NetworkReceive>();
+        this.disconnected = new ArrayList<Integer>();
+        this.connected = new ArrayList<Integer>();
+        this.connecting = new ArrayList<Integer>();
+        this.sequence = 0L;
+    }
+
+    /**
+     * Give the given node its own latency, bandwidth and error rate
+     */
+    public void node(int id, long latencyMs, double bytesPerMs, double errorRate) {
+        this.links.put(id, new Link(latencyMs, bytesPerMs, errorRate));
+    }
+
+    @Override
+    public void connect(int id, InetSocketAddress address, int sendBufferSize, int receiveBufferSize) throws IOException {
+        this.connecting.add(id);
+    }
+
+    @Override
+    public void disconnect(int id) {
+        this.disconnected.add(id);
+    }
+
+    @Override
+    public void wakeup() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void poll(long timeout, List<NetworkSend> sends) throws IOException {
+        this.completedSends.clear();
+        this.completedReceives.clear();
+        this.disconnected.clear();
+        this.connected.clear();
+        this.connected.addAll(this.connecting);
+        this.connecting.clear();
+
+        long now = time.nanoseconds();
+        for (NetworkSend send : sends)
+            transmit((RequestSend) send, now);
+
+        if (timeout > 0) {
+            long stepMs = 1L;
+            if (!this.events.isEmpty()) {
+                // round up so an event due within the next millisecond is reached
+                long untilNext = Math.max(0L, this.events.peek().due - now);
+                stepMs = Math.min(stepMs, (untilNext + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            time.sleep(stepMs);
+            now = time.nanoseconds();
+        }
+        while (!this.events.isEmpty() && this.events.peek().due <= now) {
+            Event event = this.events.poll();
+            if (event.receive == null)
+                this.completedSends.add(event.send);
+            else
+                this.completedReceives.add(event.receive);
+        }
+    }
+
+    /**
+     * Schedule the transmission of the request and the receipt of its response
+     */
+    private void transmit(RequestSend send, long now) {
+        Link link = link(send.destination());
+        long start = Math.max(now, link.free);
+        long sent = start + (long) (send.remaining() / link.bytesPerMs * TimeUnit.MILLISECONDS.toNanos(1));
+        link.free = sent;
+        this.events.add(new Event(sent, this.sequence++, send, null));
+        Message response = respond(send, link);
+        if (response != null) {
+            ResponseHeader header = new ResponseHeader(send.header().correlationId());
+            ByteBuffer buffer = ByteBuffer.allocate(header.sizeOf() + response.sizeOf());
+            header.writeTo(buffer);
+            response.writeTo(buffer);
+            buffer.rewind();
+            NetworkReceive receive = new NetworkReceive(send.destination(), buffer);
+            this.events.add(new Event(sent + TimeUnit.MILLISECONDS.toNanos(link.latencyMs), this.sequence++, send, receive));
+        }
+    }
+
+    private Message respond(RequestSend send, Link link) {
+        if (send.header().apiKey() == ApiKeys.PRODUCE.id) {
+            ProduceRequest request = (ProduceRequest) send.body();
+            if (request.acks() == 0)
+                return null;
+            Map<TopicPartition, ByteBuffer> recordSets = request.recordSets();
+            TopicPartition[] partitions = new TopicPartition[recordSets.size()];
+            short[] errors = new short[recordSets.size()];
+            long[] offsets = new long[recordSets.size()];
+            int i = 0;
+            for (Map.Entry<TopicPartition, ByteBuffer> entry : recordSets.entrySet()) {
+                partitions[i] = entry.getKey();
+                if (this.random.nextDouble() < link.errorRate) {
+                    errors[i] = Errors.NOT_LEADER_FOR_PARTITION.code();
+                    offsets[i] = -1L;
+                } else {
+                    Long offset = this.offsets.get(entry.getKey());
+                    offsets[i] = offset == null ? 0L : offset;
+                    this.offsets.put(entry.getKey(), offsets[i] + records(entry.getValue()));
+                }
+                i++;
+            }
+            return new ProduceResponse(partitions, errors, offsets);
+        } else if (send.header().apiKey() == ApiKeys.METADATA.id) {
+            List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
+            for (String topic : ((MetadataRequest) send.body()).topics()) {
+                List<PartitionInfo> parts = this.cluster.partitionsFor(topic);
+                if (parts != null)
+                    partitions.addAll(parts);
+            }
+            return new MetadataResponse(this.cluster.nodes(), partitions);
+        } else {
+            throw new IllegalArgumentException("Unsupported request type " + send.header().apiKey());
+        }
+    }
+
+    private int records(ByteBuffer buffer) {
+        int count = 0;
+        for (Iterator<LogEntry> iter = MemoryRecords.readableRecords(buffer.duplicate()).iterator(); iter.hasNext(); iter.next())
+            count++;
+        return count;
+    }
+
+    private Link link(int node) {
+        Link link = this.links.get(node);
+        if (link == null) {
+            link = new Link(this.defaultLink.latencyMs, this.defaultLink.bytesPerMs, this.defaultLink.errorRate);
+            this.links.put(node, link);
+        }
+        return link;
+    }
+
+    @Override
+    public List<NetworkSend> completedSends() {
+        return this.completedSends;
+    }
+
+    @Override
+    public List<NetworkReceive> completedReceives() {
+        return this.completedReceives;
+    }
+
+    @Override
+    public List<Integer> disconnected() {
+        return this.disconnected;
+    }
+
+    @Override
+    public List<Integer> connected() {
+        return this.connected;
+    }
+
+    /**
+     * The latency, bandwidth and error rate of a node, and when its link is next free
+     */
+    private static final class Link {
+        private final long latencyMs;
+        private final double bytesPerMs;
+        private final double errorRate;
+        private long free;
+
+        public Link(long latencyMs, double bytesPerMs, double errorRate) {
+            this.latencyMs = latencyMs;
+            this.bytesPerMs = bytesPerMs;
+            this.errorRate = errorRate;
+            this.free = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * A send completing, or its response being received, at the given time. Events due at the same time are ordered by
+     * when they were scheduled.
+     */
+    private static final class Event implements Comparable<Event> {
+        private final long due;
+        private final long sequence;
+        private final NetworkSend send;
+        private final NetworkReceive receive;
+
+        public Event(long due, long sequence, NetworkSend send, NetworkReceive receive) {
+            this.due = due;
+            this.sequence = sequence;
+            this.send = send;
+            this.receive = receive;
+        }
+
+        public int compareTo(Event other) {
+            if (this.due != other.due)
+                return this.due < other.due ? -1 : 1;
+            return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+}
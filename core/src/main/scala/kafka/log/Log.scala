@@ -95,15 +95,17 @@ class Log(val dir: File,
         file.delete()
       } else if(filename.endsWith(SwapFileSuffix)) {
         // we crashed in the middle of a swap operation, to recover:
-        // if a log, swap it in and delete the .index file
+        // if a log, swap it in and delete the .index and .timeindex files
         // if an index just delete it, it will be rebuilt
         val baseName = new File(Utils.replaceSuffix(file.getPath, SwapFileSuffix, ""))
-        if(baseName.getPath.endsWith(IndexFileSuffix)) {
+        if(baseName.getPath.endsWith(IndexFileSuffix) || baseName.getPath.endsWith(TimeIndexFileSuffix)) {
           file.delete()
         } else if(baseName.getPath.endsWith(LogFileSuffix)){
-          // delete the index
+          // delete the indexes
           val index = new File(Utils.replaceSuffix(baseName.getPath, LogFileSuffix, IndexFileSuffix))
           index.delete()
+          val timeIndex = new File(Utils.replaceSuffix(baseName.getPath, LogFileSuffix, TimeIndexFileSuffix))
+          timeIndex.delete()
           // complete the swap operation
           val renamed = file.renameTo(baseName)
           if(renamed)
@@ -114,12 +116,13 @@ class Log(val dir: File,
       }
     }
 
-    // now do a second pass and load all the .log and .index files
+    // now do a second pass and load all the .log, .index and .timeindex files
     for(file <- dir.listFiles if file.isFile) {
       val filename = file.getName
-      if(filename.endsWith(IndexFileSuffix)) {
+      if(filename.endsWith(IndexFileSuffix) || filename.endsWith(TimeIndexFileSuffix)) {
         // if it is an index file, make sure it has a corresponding .log file
-        val logFile = new File(file.getAbsolutePath.replace(IndexFileSuffix, LogFileSuffix))
+        val suffix = if(filename.endsWith(IndexFileSuffix)) IndexFileSuffix else TimeIndexFileSuffix
+        val logFile = new File(Utils.replaceSuffix(file.getAbsolutePath, suffix, LogFileSuffix))
         if(!logFile.exists) {
           warn("Found an orphaned index file, %s, with no corresponding log file.".format(file.getAbsolutePath))
           file.delete()
@@ -128,6 +131,7 @@ class Log(val dir: File,
         // if its a log file, load the corresponding log segment
         val start = filename.substring(0, filename.length - LogFileSuffix.length).toLong
         val hasIndex = Log.indexFilename(dir, start).exists
+        val hasTimeIndex = Log.timeIndexFilename(dir, start).exists
         val segment = new LogSegment(dir = dir, 
                                      startOffset = start,
                                      indexIntervalBytes = config.indexInterval, 
@@ -136,6 +140,9 @@ class Log(val dir: File,
         if(!hasIndex) {
           error("Could not find index file corresponding to log file %s, rebuilding index...".format(segment.log.file.getAbsolutePath))
           segment.recover(config.maxMessageSize)
+        } else if(!hasTimeIndex) {
+          // segments written before there were time indexes get an empty one, timestamp lookups then scan the segment
+          segment.timeIndex.trimToValidSize()
         }
         segments.put(start, segment)
       }
@@ -152,11 +159,14 @@ class Log(val dir: File,
       recoverLog()
       // reset the index size of the currently active log segment to allow more entries
       activeSegment.index.resize(config.maxIndexSize)
+      activeSegment.timeIndex.resize(config.maxIndexSize)
     }
 
-    // sanity check the index file of every segment to ensure we don't proceed with a corrupt segment
-    for (s <- logSegments)
+    // sanity check the index files of every segment to ensure we don't proceed with a corrupt segment
+    for (s <- logSegments) {
       s.index.sanityCheck()
+      s.timeIndex.sanityCheck()
+    }
   }
   
   private def recoverLog() {
@@ -263,10 +273,12 @@ class Log(val dir: File,
           if(MessageSet.entrySize(messageAndOffset.message) > config.maxMessageSize)
             throw new MessageSizeTooLargeException("Message size is %d bytes which exceeds the maximum configured message size of %d."
               .format(MessageSet.entrySize(messageAndOffset.message), config.maxMessageSize))
+          // expanding a compact message can turn up timestamps larger than its own
+          appendInfo.maxTimestamp = math.max(appendInfo.maxTimestamp, messageAndOffset.message.timestamp)
         }
 
         // now append to the log
-        segment.append(appendInfo.firstOffset, validMessages)
+        segment.append(appendInfo.firstOffset, appendInfo.lastOffset, appendInfo.maxTimestamp, validMessages)
 
         // increment the log end offset
         nextOffset.set(appendInfo.lastOffset + 1)
@@ -287,10 +299,11 @@ class Log(val dir: File,
   /** Struct to hold various quantities we compute about each message set before appending to the log
    * @param firstOffset The first offset in the message set
    * @param lastOffset The last offset in the message set
+   * @param maxTimestamp The largest timestamp of the messages in the message set
    * @param codec The codec used in the message set
    * @param offsetsMonotonic Are the offsets in this message set monotonically increasing
    */
-  case class LogAppendInfo(var firstOffset: Long, var lastOffset: Long, codec: CompressionCodec, shallowCount: Int, offsetsMonotonic: Boolean)
+  case class LogAppendInfo(var firstOffset: Long, var lastOffset: Long, var maxTimestamp: Long, codec: CompressionCodec, shallowCount: Int, offsetsMonotonic: Boolean)
   
   /**
    * Validate the following:
@@ -302,6 +315,7 @@ class Log(val dir: File,
    * <ol>
    * <li> First offset in the message set
    * <li> Last offset in the message set
+   * <li> Largest timestamp in the message set
    * <li> Number of messages
    * <li> Whether the offsets are monotonically increasing
    * <li> Whether any compression codec is used (if many are used, then the last one is given)
@@ -310,6 +324,7 @@ class Log(val dir: File,
   private def analyzeAndValidateMessageSet(messages: ByteBufferMessageSet): LogAppendInfo = {
     var messageCount = 0
     var firstOffset, lastOffset = -1L
+    var maxTimestamp = Message.NoTimestamp
     var codec: CompressionCodec = NoCompressionCodec
     var monotonic = true
     for(messageAndOffset <- messages.shallowIterator) {
@@ -327,11 +342,14 @@ class Log(val dir: File,
       m.ensureValid()
       messageCount += 1;
       
+      // a compressed message carries the largest timestamp of the messages it wraps
+      maxTimestamp = math.max(maxTimestamp, m.timestamp)
+      
       val messageCodec = m.compressionCodec
       if(messageCodec != NoCompressionCodec)
         codec = messageCodec
     }
-    LogAppendInfo(firstOffset, lastOffset, codec, messageCount, monotonic)
+    LogAppendInfo(firstOffset, lastOffset, maxTimestamp, codec, messageCount, monotonic)
   }
   
   /**
@@ -391,6 +409,28 @@ class Log(val dir: File,
     MessageSet.Empty
   }
 
+  /**
+   * Find the offset of the first message with a timestamp greater than or equal to the given one.
+   * 
+   * The last time index entry of every segment but the active one covers all of its messages, so a segment whose last
+   * entry has a smaller timestamp, or which has no entries because none of its messages have timestamps, is skipped
+   * without reading it.
+   * 
+   * @param timestamp The timestamp to search for
+   * @return The offset found or None if no message has a timestamp that large
+   */
+  def offsetForTimestamp(timestamp: Long): Option[Long] = {
+    val last = activeSegment
+    for(segment <- logSegments) {
+      if(segment.baseOffset == last.baseOffset || segment.timeIndex.lastTimestamp >= timestamp) {
+        val found = segment.findOffsetByTimestamp(timestamp)
+        if(found.isDefined)
+          return found
+      }
+    }
+    None
+  }
+
   /**
    * Delete any log segments matching the given predicate function,
    * starting with the oldest segment and moving forward until a segment doesn't match.
@@ -433,13 +473,15 @@ class Log(val dir: File,
     val segment = activeSegment
     if (segment.size > config.segmentSize || 
         segment.size > 0 && time.milliseconds - segment.created > config.segmentMs ||
-        segment.index.isFull) {
-      debug("Rolling new log segment in %s (log_size = %d/%d, index_size = %d/%d, age_ms = %d/%d)."
+        segment.index.isFull || segment.timeIndex.isFullExceptLast) {
+      debug("Rolling new log segment in %s (log_size = %d/%d, index_size = %d/%d, time_index_size = %d/%d, age_ms = %d/%d)."
             .format(name,
                     segment.size,
                     config.segmentSize,
                     segment.index.entries,
                     segment.index.maxEntries,
+                    segment.timeIndex.entries,
+                    segment.timeIndex.maxEntries,
                     time.milliseconds - segment.created,
                     config.segmentMs))
       roll()
@@ -459,14 +501,17 @@ class Log(val dir: File,
       val newOffset = logEndOffset
       val logFile = logFilename(dir, newOffset)
       val indexFile = indexFilename(dir, newOffset)
-      for(file <- List(logFile, indexFile); if file.exists) {
+      val timeIndexFile = timeIndexFilename(dir, newOffset)
+      for(file <- List(logFile, indexFile, timeIndexFile); if file.exists) {
         warn("Newly rolled segment file " + file.getName + " already exists; deleting it first")
         file.delete()
       }
     
       segments.lastEntry() match {
         case null => 
-        case entry => entry.getValue.index.trimToValidSize()
+        case entry => 
+          entry.getValue.index.trimToValidSize()
+          entry.getValue.completeTimeIndex()
       }
       val segment = new LogSegment(dir, 
                                    startOffset = newOffset,
@@ -684,6 +729,9 @@ object Log {
   /** an index file */
   val IndexFileSuffix = ".index"
     
+  /** a time index file */
+  val TimeIndexFileSuffix = ".timeindex"
+    
   /** a file that is scheduled to be deleted */
   val DeletedFileSuffix = ".deleted"
     
@@ -728,6 +776,14 @@ object Log {
   def indexFilename(dir: File, offset: Long) = 
     new File(dir, filenamePrefixFromOffset(offset) + IndexFileSuffix)
   
+  /**
+   * Construct a time index file name in the given dir using the given base offset
+   * @param dir The directory in which the log will reside
+   * @param offset The base offset of the log file
+   */
+  def timeIndexFilename(dir: File, offset: Long) = 
+    new File(dir, filenamePrefixFromOffset(offset) + TimeIndexFileSuffix)
+  
 
   /**
    * Parse the topic and partition out of the directory name of a log
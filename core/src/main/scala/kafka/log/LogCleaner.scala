@@ -287,14 +287,17 @@ private[log] class Cleaner(val id: Int,
                                  segments: Seq[LogSegment], 
                                  map: OffsetMap, 
                                  deleteHorizonMs: Long) {
-    // create a new segment with the suffix .cleaned appended to both the log and index name
+    // create a new segment with the suffix .cleaned appended to the log and both index names
     val logFile = new File(segments.head.log.file.getPath + Log.CleanedFileSuffix)
     logFile.delete()
     val indexFile = new File(segments.head.index.file.getPath + Log.CleanedFileSuffix)
     indexFile.delete()
+    val timeIndexFile = new File(segments.head.timeIndex.file.getPath + Log.CleanedFileSuffix)
+    timeIndexFile.delete()
     val messages = new FileMessageSet(logFile)
     val index = new OffsetIndex(indexFile, segments.head.baseOffset, segments.head.index.maxIndexSize)
-    val cleaned = new LogSegment(messages, index, segments.head.baseOffset, segments.head.indexIntervalBytes, time)
+    val timeIndex = new TimeIndex(timeIndexFile, segments.head.baseOffset, segments.head.timeIndex.maxIndexSize)
+    val cleaned = new LogSegment(messages, index, timeIndex, segments.head.baseOffset, segments.head.indexIntervalBytes, time)
 
     try {
       // clean segments into the new destination segment
@@ -307,6 +310,7 @@ private[log] class Cleaner(val id: Int,
 
       // trim excess index
       index.trimToValidSize()
+      cleaned.completeTimeIndex()
 
       // flush new segment to disk before swap
       cleaned.flush()
@@ -348,6 +352,8 @@ private[log] class Cleaner(val id: Int,
       throttler.maybeThrottle(messages.sizeInBytes)
       // check each message to see if it is to be retained
       var messagesRead = 0
+      var lastRetained = -1L
+      var maxTimestamp = Message.NoTimestamp
       for (entry <- messages) {
         messagesRead += 1
         val size = MessageSet.entrySize(entry.message)
@@ -364,6 +370,8 @@ private[log] class Cleaner(val id: Int,
         val obsoleteDelete = !retainDeletes && entry.message.isNull
         if (!redundant && !obsoleteDelete) {
           ByteBufferMessageSet.writeMessage(writeBuffer, entry.message, entry.offset)
+          lastRetained = entry.offset
+          maxTimestamp = math.max(maxTimestamp, entry.message.timestamp)
           stats.recopyMessage(size)
         }
       }
@@ -371,7 +379,7 @@ private[log] class Cleaner(val id: Int,
       if(writeBuffer.position > 0) {
         writeBuffer.flip()
         val retained = new ByteBufferMessageSet(writeBuffer)
-        dest.append(retained.head.offset, retained)
+        dest.append(retained.head.offset, lastRetained, maxTimestamp, retained)
         throttler.maybeThrottle(writeBuffer.limit)
       }
       
@@ -23,15 +23,17 @@ import kafka.common._
 import kafka.utils._
 
 /**
- * A segment of the log. Each segment has two components: a log and an index. The log is a FileMessageSet containing
- * the actual messages. The index is an OffsetIndex that maps from logical offsets to physical file positions. Each 
- * segment has a base offset which is an offset <= the least offset of any message in this segment and > any offset in
- * any previous segment.
+ * A segment of the log. Each segment has three components: a log, an index and a time index. The log is a FileMessageSet
+ * containing the actual messages. The index is an OffsetIndex that maps from logical offsets to physical file positions.
+ * The time index is a TimeIndex that maps from message timestamps to logical offsets. Each segment has a base offset
+ * which is an offset <= the least offset of any message in this segment and > any offset in any previous segment.
  * 
- * A segment with a base offset of [base_offset] would be stored in two files, a [base_offset].index and a [base_offset].log file. 
+ * A segment with a base offset of [base_offset] would be stored in three files, a [base_offset].index, a
+ * [base_offset].timeindex and a [base_offset].log file. 
  * 
  * @param log The message set containing log entries
  * @param index The offset index
+ * @param timeIndex The time index
  * @param baseOffset A lower bound on the offsets in this segment
  * @param indexIntervalBytes The approximate number of bytes between entries in the index
  * @param time The time instance
@@ -39,6 +41,7 @@ import kafka.utils._
 @nonthreadsafe
 class LogSegment(val log: FileMessageSet, 
                  val index: OffsetIndex, 
+                 val timeIndex: TimeIndex,
                  val baseOffset: Long, 
                  val indexIntervalBytes: Int,
                  time: Time) extends Logging {
@@ -48,9 +51,15 @@ class LogSegment(val log: FileMessageSet,
   /* the number of bytes since we last added an entry in the offset index */
   private var bytesSinceLastIndexEntry = 0
   
+  /* the largest timestamp and the last offset in this segment, for the next time index entry, loaded on first append */
+  private var maxTimestampSoFar = Message.NoTimestamp
+  private var lastOffsetSoFar = -1L
+  private var timestampsLoaded = false
+  
   def this(dir: File, startOffset: Long, indexIntervalBytes: Int, maxIndexSize: Int, time: Time) = 
     this(new FileMessageSet(file = Log.logFilename(dir, startOffset)), 
          new OffsetIndex(file = Log.indexFilename(dir, startOffset), baseOffset = startOffset, maxIndexSize = maxIndexSize),
+         new TimeIndex(file = Log.timeIndexFilename(dir, startOffset), baseOffset = startOffset, maxIndexSize = maxIndexSize),
          startOffset,
          indexIntervalBytes,
          time)
@@ -65,20 +74,27 @@ class LogSegment(val log: FileMessageSet,
    * It is assumed this method is being called from within a lock.
    * 
    * @param offset The first offset in the message set.
+   * @param lastOffset The last offset in the message set.
+   * @param maxTimestamp The largest timestamp of the messages in the message set.
    * @param messages The messages to append.
    */
   @nonthreadsafe
-  def append(offset: Long, messages: ByteBufferMessageSet) {
+  def append(offset: Long, lastOffset: Long, maxTimestamp: Long, messages: ByteBufferMessageSet) {
     if (messages.sizeInBytes > 0) {
       trace("Inserting %d bytes at offset %d at position %d".format(messages.sizeInBytes, offset, log.sizeInBytes()))
+      if(!timestampsLoaded)
+        loadTimestamps()
       // append an entry to the index (if needed)
       if(bytesSinceLastIndexEntry > indexIntervalBytes) {
         index.append(offset, log.sizeInBytes())
+        maybeAppendTimeIndex()
         this.bytesSinceLastIndexEntry = 0
       }
       // append the messages
       log.append(messages)
       this.bytesSinceLastIndexEntry += messages.sizeInBytes
+      maxTimestampSoFar = max(maxTimestampSoFar, maxTimestamp)
+      lastOffsetSoFar = lastOffset
     }
   }
   
@@ -100,6 +116,76 @@ class LogSegment(val log: FileMessageSet,
     log.searchFor(offset, max(mapping.position, startingFilePosition))
   }
   
+  /* add a time index entry for the messages appended so far if there is room, keeping the last slot for completion */
+  private def maybeAppendTimeIndex(complete: Boolean = false) {
+    if(lastOffsetSoFar >= 0 && !(if(complete) timeIndex.isFull else timeIndex.isFullExceptLast))
+      timeIndex.maybeAppend(maxTimestampSoFar, lastOffsetSoFar)
+  }
+  
+  /**
+   * Add a final entry to the time index covering every message in this segment and trim it to its valid size. This
+   * is done when the segment stops being the active one so that the last entry bounds all of its timestamps.
+   */
+  @nonthreadsafe
+  def completeTimeIndex() {
+    if(!timestampsLoaded)
+      loadTimestamps()
+    maybeAppendTimeIndex(complete = true)
+    timeIndex.trimToValidSize()
+  }
+  
+  /**
+   * Find the largest timestamp and the last offset in this segment. Every message before the last time index entry has
+   * a smaller timestamp than it. A time index entry is also tried with each offset index entry, and is only skipped
+   * when no message since the last one has a larger timestamp, so unless the time index has stopped taking interval
+   * entries the same holds for the messages before the last offset index entry. Only the messages from the later of
+   * the two need to be read, at most one index interval of them.
+   */
+  private def loadTimestamps() {
+    maxTimestampSoFar = timeIndex.lastTimestamp
+    lastOffsetSoFar = -1L
+    val startOffset = if(timeIndex.isFullExceptLast) timeIndex.lastOffset else max(timeIndex.lastOffset, index.lastOffset)
+    val start = translateOffset(startOffset)
+    if(start != null) {
+      for(entry <- log.read(start.position, log.sizeInBytes - start.position)) {
+        maxTimestampSoFar = max(maxTimestampSoFar, entry.message.timestamp)
+        lastOffsetSoFar = entry.offset
+      }
+    }
+    timestampsLoaded = true
+  }
+  
+  /**
+   * Find the offset of the first message in this segment with a timestamp greater than or equal to the given one.
+   * The time index gives an offset before which every message has a smaller timestamp, and we scan forwards from there.
+   * 
+   * @param timestamp The timestamp to search for
+   * 
+   * @return The offset found, or None if no message in this segment has a timestamp that large
+   */
+  @threadsafe
+  def findOffsetByTimestamp(timestamp: Long): Option[Long] = {
+    val startOffset = timeIndex.lookup(timestamp)
+    val startPosition = translateOffset(startOffset)
+    if(startPosition == null)
+      return None
+    for(entry <- log.read(startPosition.position, log.sizeInBytes - startPosition.position)) {
+      // a wrapper's timestamp is the largest of the messages it holds, so only open those that may match
+      if(entry.message.timestamp >= timestamp) {
+        val messages = 
+          entry.message.compressionCodec match {
+            case NoCompressionCodec => Iterator(entry)
+            case CompactCompressionCodec => ByteBufferMessageSet.expand(entry.message, entry.offset).iterator
+            case _ => ByteBufferMessageSet.decompress(entry.message).iterator
+          }
+        for(inner <- messages)
+          if(inner.offset >= startOffset && inner.message.timestamp >= timestamp)
+            return Some(inner.offset)
+      }
+    }
+    None
+  }
+  
   /**
    * Read a message set from this segment beginning with the first offset >= startOffset. The message set will include
    * no more than maxSize bytes and will end before maxOffset if a maxOffset is specified.
@@ -158,6 +244,11 @@ class LogSegment(val log: FileMessageSet,
   def recover(maxMessageSize: Int): Int = {
     index.truncate()
     index.resize(index.maxIndexSize)
+    timeIndex.truncate()
+    timeIndex.resize(timeIndex.maxIndexSize)
+    maxTimestampSoFar = Message.NoTimestamp
+    lastOffsetSoFar = -1L
+    timestampsLoaded = true
     var validBytes = 0
     var lastIndexEntry = 0
     val iter = log.iterator(maxMessageSize)
@@ -175,8 +266,11 @@ class LogSegment(val log: FileMessageSet,
                 ByteBufferMessageSet.decompress(entry.message).head.offset
           }
           index.append(startOffset, validBytes)
+          maybeAppendTimeIndex()
           lastIndexEntry = validBytes
         }
+        maxTimestampSoFar = max(maxTimestampSoFar, entry.message.timestamp)
+        lastOffsetSoFar = entry.offset
         validBytes += MessageSet.entrySize(entry.message)
       }
     } catch {
@@ -186,6 +280,8 @@ class LogSegment(val log: FileMessageSet,
     val truncated = log.sizeInBytes - validBytes
     log.truncateTo(validBytes)
     index.trimToValidSize()
+    maybeAppendTimeIndex()
+    timeIndex.trimToValidSize()
     truncated
   }
 
@@ -203,12 +299,16 @@ class LogSegment(val log: FileMessageSet,
     if(mapping == null)
       return 0
     index.truncateTo(offset)
+    timeIndex.truncateTo(offset)
     // after truncation, reset and allocate more space for the (new currently  active) index
     index.resize(index.maxIndexSize)
+    timeIndex.resize(timeIndex.maxIndexSize)
     val bytesTruncated = log.truncateTo(mapping.position)
     if(log.sizeInBytes == 0)
       created = time.milliseconds
     bytesSinceLastIndexEntry = 0
+    // the messages truncated may have held the largest timestamp
+    timestampsLoaded = false
     bytesTruncated
   }
   
@@ -237,11 +337,12 @@ class LogSegment(val log: FileMessageSet,
     LogFlushStats.logFlushTimer.time {
       log.flush()
       index.flush()
+      timeIndex.flush()
     }
   }
   
   /**
-   * Change the suffix for the index and log file for this log segment
+   * Change the suffix for the index, time index and log file for this log segment
    */
   def changeFileSuffixes(oldSuffix: String, newSuffix: String) {
     val logRenamed = log.renameTo(new File(Utils.replaceSuffix(log.file.getPath, oldSuffix, newSuffix)))
@@ -250,6 +351,9 @@ class LogSegment(val log: FileMessageSet,
     val indexRenamed = index.renameTo(new File(Utils.replaceSuffix(index.file.getPath, oldSuffix, newSuffix)))
     if(!indexRenamed)
       throw new KafkaStorageException("Failed to change the index file suffix from %s to %s for log segment %d".format(oldSuffix, newSuffix, baseOffset))
+    val timeIndexRenamed = timeIndex.renameTo(new File(Utils.replaceSuffix(timeIndex.file.getPath, oldSuffix, newSuffix)))
+    if(!timeIndexRenamed)
+      throw new KafkaStorageException("Failed to change the time index file suffix from %s to %s for log segment %d".format(oldSuffix, newSuffix, baseOffset))
   }
   
   /**
@@ -257,6 +361,7 @@ class LogSegment(val log: FileMessageSet,
    */
   def close() {
     Utils.swallow(index.close)
+    Utils.swallow(timeIndex.close)
     Utils.swallow(log.close)
   }
   
@@ -267,10 +372,13 @@ class LogSegment(val log: FileMessageSet,
   def delete() {
     val deletedLog = log.delete()
     val deletedIndex = index.delete()
+    val deletedTimeIndex = timeIndex.delete()
     if(!deletedLog && log.file.exists)
       throw new KafkaStorageException("Delete of log " + log.file.getName + " failed.")
     if(!deletedIndex && index.file.exists)
       throw new KafkaStorageException("Delete of index " + index.file.getName + " failed.")
+    if(!deletedTimeIndex && timeIndex.file.exists)
+      throw new KafkaStorageException("Delete of time index " + timeIndex.file.getName + " failed.")
   }
   
   /**
@@ -284,5 +392,6 @@ class LogSegment(val log: FileMessageSet,
   def lastModified_=(ms: Long) = {
     log.file.setLastModified(ms)
     index.file.setLastModified(ms)
+    timeIndex.file.setLastModified(ms)
   }
 }
\ No newline at end of file
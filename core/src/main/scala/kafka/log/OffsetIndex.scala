@@ -36,6 +36,10 @@ import kafka.common.InvalidOffsetException
  * The index supports lookups against a memory-map of this file. These lookups are done using a simple binary search variant
  * to locate the offset/location pair for the greatest offset less than or equal to the target offset.
  * 
+ * To keep the upper levels of that search off the memory-mapped pages, an on-heap summary holds the offset of every 64th
+ * entry. A lookup first picks a block of 64 entries using the summary, checking the last block before anything else
+ * since consumers that are caught up fetch from the tail of the log, and then only searches that block in the file.
+ * 
  * Index files can be opened in two ways: either as an empty, mutable index that allows appends or
  * an immutable read-only index file that has previously been populated. The makeReadOnly method will turn a mutable file into an 
  * immutable one and truncate off any extra bytes. This is done when the index file is rolled over.
@@ -94,6 +98,10 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
   @volatile
   var maxEntries = mmap.limit / 8
   
+  /* the relative offset of every SummaryInterval-th entry, the first (entries + SummaryInterval - 1) / SummaryInterval are valid */
+  @volatile
+  private var summary: Array[Int] = loadSummary(new Array[Int](summarySlots(maxEntries)))
+  
   /* the last offset in the index */
   var lastOffset = readLastEntry.offset
   
@@ -124,7 +132,8 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
    */
   def lookup(targetOffset: Long): OffsetPosition = {
     maybeLock(lock) {
-      val idx = mmap.duplicate
+      // lookups only do absolute reads so they can share the buffer
+      val idx = mmap
       val slot = indexSlotFor(idx, targetOffset)
       if(slot == -1)
         OffsetPosition(baseOffset, 0)
@@ -146,17 +155,37 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
     // we only store the difference from the base offset so calculate that
     val relOffset = targetOffset - baseOffset
     
+    // read the size first, the summary entries for all of these entries were written before it was incremented
+    val n = entries
+    val summary = this.summary
+    
     // check if the index is empty
-    if(entries == 0)
+    if(n == 0)
       return -1
     
     // check if the target offset is smaller than the least offset
-    if(relativeOffset(idx, 0) > relOffset)
+    if(summary(0) > relOffset)
       return -1
+    
+    // find the block holding the entry, trying the last block first
+    val blocks = summarySlots(n)
+    var block = blocks - 1
+    if(summary(block) > relOffset) {
+      var lo = 0
+      var hi = blocks - 2
+      while(lo < hi) {
+        val mid = (lo + hi + 1) >>> 1
+        if(summary(mid) <= relOffset)
+          lo = mid
+        else
+          hi = mid - 1
+      }
+      block = lo
+    }
       
-    // binary search for the entry
-    var lo = 0
-    var hi = entries-1
+    // binary search for the entry within the block
+    var lo = block * OffsetIndex.SummaryInterval
+    var hi = min(lo + OffsetIndex.SummaryInterval, n) - 1
     while(lo < hi) {
       val mid = ceil(hi/2.0 + lo/2.0).toInt
       val found = relativeOffset(idx, mid)
@@ -200,6 +229,8 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
         debug("Adding index entry %d => %d to %s.".format(offset, position, file.getName))
         this.mmap.putInt((offset - baseOffset).toInt)
         this.mmap.putInt(position)
+        if(size.get % OffsetIndex.SummaryInterval == 0)
+          this.summary(size.get / OffsetIndex.SummaryInterval) = (offset - baseOffset).toInt
         this.size.incrementAndGet()
         this.lastOffset = offset
         require(entries * 8 == mmap.position, entries + " entries but file position in index is " + mmap.position + ".")
@@ -245,6 +276,16 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
     }
   }
 
+  /* the number of summary slots needed for the given number of entries */
+  private def summarySlots(entries: Int): Int = (entries + OffsetIndex.SummaryInterval - 1) / OffsetIndex.SummaryInterval
+  
+  /* fill the given summary from the entries in the file */
+  private def loadSummary(summary: Array[Int]): Array[Int] = {
+    for(slot <- 0 until summarySlots(size.get))
+      summary(slot) = relativeOffset(mmap, slot * OffsetIndex.SummaryInterval)
+    summary
+  }
+
   /**
    * Truncates index to a known number of entries.
    */
@@ -286,6 +327,8 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
         this.mmap = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, roundedNewSize)
         this.maxEntries = this.mmap.limit / 8
         this.mmap.position(position)
+        if(summarySlots(maxEntries) != summary.length)
+          this.summary = loadSummary(new Array[Int](summarySlots(maxEntries)))
       } finally {
         Utils.swallow(raf.close())
       }
@@ -379,4 +422,9 @@ class OffsetIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSi
         lock.unlock()
     }
   }
-}
\ No newline at end of file
+}
+
+object OffsetIndex {
+  /* the number of entries between the entries kept in the on-heap summary */
+  val SummaryInterval = 64
+}
@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io._
+import java.nio._
+import java.nio.channels._
+import java.util.concurrent.locks._
+import java.util.concurrent.atomic._
+import kafka.utils._
+import kafka.utils.Utils.inLock
+import kafka.message.Message
+
+/**
+ * An index that maps message timestamps to offsets for a particular log segment. Like the offset index it is sparse and
+ * is kept in a pre-allocated, memory-mapped file next to the segment.
+ * 
+ * Each entry is a 12-byte pair of an 8 byte timestamp and a 4 byte offset relative to the base offset of the segment.
+ * An entry (t, o) means that no message with an offset less than or equal to o has a timestamp greater than t. Entries
+ * are only appended with a larger timestamp and a larger offset than the last entry, so both columns are increasing and
+ * a lookup is a binary search on the timestamp.
+ * 
+ * As with the offset index, no attempt is made to checksum the contents of this file, in the event of a crash it is
+ * rebuilt from the log.
+ */
+class TimeIndex(@volatile var file: File, val baseOffset: Long, val maxIndexSize: Int = -1) extends Logging {
+  
+  private val lock = new ReentrantLock
+  
+  /* initialize the memory mapping for this index */
+  private var mmap: MappedByteBuffer = 
+    {
+      val newlyCreated = file.createNewFile()
+      val raf = new RandomAccessFile(file, "rw")
+      try {
+        /* pre-allocate the file if necessary */
+        if(newlyCreated) {
+          if(maxIndexSize < TimeIndex.EntrySize)
+            throw new IllegalArgumentException("Invalid max index size: " + maxIndexSize)
+          raf.setLength(roundToExactMultiple(maxIndexSize, TimeIndex.EntrySize))
+        }
+          
+        /* memory-map the file */
+        val len = raf.length()
+        val idx = raf.getChannel.map(FileChannel.MapMode.READ_WRITE, 0, len)
+          
+        /* set the position in the index for the next entry */
+        if(newlyCreated)
+          idx.position(0)
+        else
+          // if this is a pre-existing index, assume it is all valid and set position to last entry
+          idx.position(roundToExactMultiple(idx.limit, TimeIndex.EntrySize))
+        idx
+      } finally {
+        Utils.swallow(raf.close())
+      }
+    }
+  
+  /* the number of entries currently in the index */
+  private var size = new AtomicInteger(mmap.position / TimeIndex.EntrySize)
+  
+  /**
+   * The maximum number of entries this index can hold
+   */
+  @volatile
+  var maxEntries = mmap.limit / TimeIndex.EntrySize
+  
+  /* the last timestamp in the index */
+  @volatile
+  var lastTimestamp = readLastEntry._1
+  
+  /* the last offset in the index */
+  @volatile
+  var lastOffset = readLastEntry._2
+  
+  debug("Loaded time index file %s with maxEntries = %d, maxIndexSize = %d, entries = %d, lastTimestamp = %d, file position = %d"
+    .format(file.getAbsolutePath, maxEntries, maxIndexSize, entries(), lastTimestamp, mmap.position))
+
+  /**
+   * The last entry in the index as a (timestamp, offset) pair, or (NoTimestamp, baseOffset) if the index is empty
+   */
+  def readLastEntry(): (Long, Long) = {
+    inLock(lock) {
+      size.get match {
+        case 0 => (Message.NoTimestamp, baseOffset)
+        case s => (timestamp(this.mmap, s-1), baseOffset + relativeOffset(this.mmap, s-1))
+      }
+    }
+  }
+
+  /**
+   * Find an offset from which to scan for the first message with a timestamp greater than or equal to the given one.
+   * Every message before the offset returned has a smaller timestamp.
+   * 
+   * @param targetTimestamp The timestamp to look up
+   * 
+   * @return The offset of the last entry with a timestamp less than the target, or the base offset if there is none
+   */
+  def lookup(targetTimestamp: Long): Long = {
+    maybeLock(lock) {
+      val idx = mmap.duplicate
+      val slot = indexSlotFor(idx, targetTimestamp)
+      if(slot == -1)
+        baseOffset
+      else
+        baseOffset + relativeOffset(idx, slot)
+    }
+  }
+  
+  /**
+   * Find the slot of the last entry with a timestamp less than the target timestamp, or -1 if there is none
+   */
+  private def indexSlotFor(idx: ByteBuffer, targetTimestamp: Long): Int = {
+    if(entries == 0 || timestamp(idx, 0) >= targetTimestamp)
+      return -1
+    // binary search for the entry, timestamp(idx, lo) < targetTimestamp holds throughout
+    var lo = 0
+    var hi = entries - 1
+    while(lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if(timestamp(idx, mid) < targetTimestamp)
+        lo = mid
+      else
+        hi = mid - 1
+    }
+    lo
+  }
+  
+  /* return the nth timestamp */
+  private def timestamp(buffer: ByteBuffer, n: Int): Long = buffer.getLong(n * TimeIndex.EntrySize)
+  
+  /* return the nth offset relative to the base offset */
+  private def relativeOffset(buffer: ByteBuffer, n: Int): Int = buffer.getInt(n * TimeIndex.EntrySize + 8)
+  
+  /**
+   * Append an entry saying that no message up to and including the given offset has a timestamp larger than the given
+   * one. The entry is skipped if it doesn't advance both the timestamp and the offset of the last entry.
+   */
+  def maybeAppend(timestamp: Long, offset: Long) {
+    inLock(lock) {
+      require(!isFull, "Attempt to append to a full time index (size = " + size + ").")
+      if(timestamp > lastTimestamp && (size.get == 0 || offset > lastOffset)) {
+        debug("Adding time index entry %d => %d to %s.".format(timestamp, offset, file.getName))
+        this.mmap.putLong(timestamp)
+        this.mmap.putInt((offset - baseOffset).toInt)
+        this.size.incrementAndGet()
+        this.lastTimestamp = timestamp
+        this.lastOffset = offset
+        require(entries * TimeIndex.EntrySize == mmap.position, entries + " entries but file position in time index is " + mmap.position + ".")
+      }
+    }
+  }
+  
+  /**
+   * True iff there are no more slots available in this index
+   */
+  def isFull: Boolean = entries >= this.maxEntries
+  
+  /**
+   * True iff at most the last slot is left. That slot is kept for the entry that completes the segment, so the
+   * segment stops taking interval entries and is rolled once this holds.
+   */
+  def isFullExceptLast: Boolean = entries >= this.maxEntries - 1
+  
+  /**
+   * Truncate the entire index, deleting all entries
+   */
+  def truncate() = truncateToEntries(0)
+  
+  /**
+   * Remove all entries from the index which have an offset greater than or equal to the given offset.
+   */
+  def truncateTo(offset: Long) {
+    inLock(lock) {
+      val idx = mmap.duplicate
+      var newEntries = entries
+      while(newEntries > 0 && baseOffset + relativeOffset(idx, newEntries - 1) >= offset)
+        newEntries -= 1
+      truncateToEntries(newEntries)
+    }
+  }
+
+  /**
+   * Truncates index to a known number of entries.
+   */
+  private def truncateToEntries(entries: Int) {
+    inLock(lock) {
+      this.size.set(entries)
+      mmap.position(this.size.get * TimeIndex.EntrySize)
+      val (lastTimestamp, lastOffset) = readLastEntry
+      this.lastTimestamp = lastTimestamp
+      this.lastOffset = lastOffset
+    }
+  }
+  
+  /**
+   * Trim this index to fit just the valid entries, deleting all trailing unwritten bytes from the file.
+   */
+  def trimToValidSize() {
+    inLock(lock) {
+      resize(entries * TimeIndex.EntrySize)
+    }
+  }
+
+  /**
+   * Reset the size of the memory map and the underlying file, see OffsetIndex.resize
+   */
+  def resize(newSize: Int) {
+    inLock(lock) {
+      val raf = new RandomAccessFile(file, "rws")
+      val roundedNewSize = roundToExactMultiple(newSize, TimeIndex.EntrySize)
+      val position = this.mmap.position
+      
+      /* Windows won't let us modify the file length while the file is mmapped :-( */
+      if(Os.isWindows)
+        forceUnmap(this.mmap)
+      try {
+        raf.setLength(roundedNewSize)
+        this.mmap = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, roundedNewSize)
+        this.maxEntries = this.mmap.limit / TimeIndex.EntrySize
+        this.mmap.position(position)
+      } finally {
+        Utils.swallow(raf.close())
+      }
+    }
+  }
+  
+  /**
+   * Forcefully free the buffer's mmap. We do this only on windows.
+   */
+  private def forceUnmap(m: MappedByteBuffer) {
+    try {
+      if(m.isInstanceOf[sun.nio.ch.DirectBuffer])
+        (m.asInstanceOf[sun.nio.ch.DirectBuffer]).cleaner().clean()
+    } catch {
+      case t: Throwable => warn("Error when freeing time index buffer", t)
+    }
+  }
+  
+  /**
+   * Flush the data in the index to disk
+   */
+  def flush() {
+    inLock(lock) {
+      mmap.force()
+    }
+  }
+  
+  /**
+   * Delete this index file
+   */
+  def delete(): Boolean = {
+    info("Deleting time index " + this.file.getAbsolutePath)
+    this.file.delete()
+  }
+  
+  /** The number of entries in this index */
+  def entries() = size.get
+  
+  /**
+   * The number of bytes actually used by this index
+   */
+  def sizeInBytes() = TimeIndex.EntrySize * entries
+  
+  /** Close the index */
+  def close() {
+    trimToValidSize()
+  }
+  
+  /**
+   * Rename the file that backs this time index
+   * @return true iff the rename was successful
+   */
+  def renameTo(f: File): Boolean = {
+    val success = this.file.renameTo(f)
+    this.file = f
+    success
+  }
+  
+  /**
+   * Do a basic sanity check on this index to detect obvious problems
+   * @throw IllegalArgumentException if any problems are found
+   */
+  def sanityCheck() {
+    val len = file.length()
+    require(len % TimeIndex.EntrySize == 0, 
+            "Time index file " + file.getName + " is corrupt, found " + len + 
+            " bytes which is not a multiple of " + TimeIndex.EntrySize + ".")
+  }
+  
+  /**
+   * Round a number to the greatest exact multiple of the given factor less than the given number.
+   */
+  private def roundToExactMultiple(number: Int, factor: Int) = factor * (number / factor)
+  
+  /**
+   * Execute the given function in a lock only if we are running on windows, see OffsetIndex.maybeLock
+   */
+  private def maybeLock[T](lock: Lock)(fun: => T): T = {
+    if(Os.isWindows)
+      lock.lock()
+    try {
+      return fun
+    } finally {
+      if(Os.isWindows)
+        lock.unlock()
+    }
+  }
+}
+
+object TimeIndex {
+  /* the size of an entry: an 8 byte timestamp and a 4 byte relative offset */
+  val EntrySize = 12
+}
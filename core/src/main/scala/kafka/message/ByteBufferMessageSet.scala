@@ -19,11 +19,12 @@ package kafka.message
 
 import scala.reflect.BeanProperty
 import kafka.utils.Logging
-import java.nio.ByteBuffer
+import java.nio.{BufferUnderflowException, ByteBuffer}
 import java.nio.channels._
 import java.io.{InputStream, ByteArrayOutputStream, DataOutputStream}
 import java.util.concurrent.atomic.AtomicLong
-import kafka.utils.IteratorTemplate
+import kafka.utils.{IteratorTemplate, Utils}
+import scala.collection.mutable.ArrayBuffer
 
 object ByteBufferMessageSet {
   
@@ -51,7 +52,8 @@ object ByteBufferMessageSet {
         output.close()
       }
       val bytes = byteArrayStream.toByteArray
-      val message = new Message(bytes, compressionCodec)
+      // the wrapper carries the latest timestamp of the messages it holds so the log can index it
+      val message = new Message(bytes, null, messages.map(_.timestamp).max, compressionCodec)
       val buffer = ByteBuffer.allocate(message.size + MessageSet.LogOverhead)
       writeMessage(buffer, message, offset)
       buffer.rewind()
@@ -77,6 +79,50 @@ object ByteBufferMessageSet {
     new ByteBufferMessageSet(outputBuffer)
   }
     
+  /**
+   * Expand a message in the compact format written by the clients into a set of uncompressed messages. The payload of
+   * a compact message holds, for each message in turn, the zig-zag varint delta of its offset from the offset of the
+   * compact message, the delta of its timestamp from that of the compact message if it has one, then its key and its
+   * value each preceded by a varint length that is -1 for null. The messages share the CRC of the compact message.
+   */
+  def expand(message: Message, offset: Long): ByteBufferMessageSet = {
+    val payload = message.payload
+    val baseTimestamp = message.timestamp
+    val messages = new ArrayBuffer[(Long, Message)]
+    try {
+      while(payload != null && payload.hasRemaining) {
+        val messageOffset = offset + Utils.readVarlong(payload)
+        val timestamp =
+          if(baseTimestamp == Message.NoTimestamp) Message.NoTimestamp
+          else baseTimestamp + Utils.readVarlong(payload)
+        val key = readDelimited(payload)
+        val value = readDelimited(payload)
+        messages += ((messageOffset, new Message(value, key, timestamp, NoCompressionCodec)))
+      }
+    } catch {
+      case e: BufferUnderflowException =>
+        throw new InvalidMessageException("Compact message is truncated")
+      case e: IllegalArgumentException =>
+        throw new InvalidMessageException("Compact message is corrupt: " + e.getMessage)
+    }
+    val buffer = ByteBuffer.allocate(MessageSet.messageSetSize(messages.map(_._2)))
+    for((messageOffset, m) <- messages)
+      writeMessage(buffer, m, messageOffset)
+    buffer.rewind()
+    new ByteBufferMessageSet(buffer)
+  }
+  
+  private def readDelimited(buffer: ByteBuffer): Array[Byte] = {
+    val size = Utils.readVarint(buffer)
+    if(size < 0) {
+      null
+    } else {
+      val bytes = new Array[Byte](size)
+      buffer.get(bytes)
+      bytes
+    }
+  }
+    
   private[kafka] def writeMessage(buffer: ByteBuffer, message: Message, offset: Long) {
     buffer.putLong(offset)
     buffer.putInt(message.size)
@@ -174,6 +220,11 @@ class ByteBufferMessageSet(@BeanProperty val buffer: ByteBuffer) extends Message
             case NoCompressionCodec =>
               innerIter = null
               new MessageAndOffset(newMessage, offset)
+            case CompactCompressionCodec =>
+              innerIter = ByteBufferMessageSet.expand(newMessage, offset).internalIterator()
+              if(!innerIter.hasNext)
+                innerIter = null
+              makeNext()
             case _ =>
               innerIter = ByteBufferMessageSet.decompress(newMessage).internalIterator()
               if(!innerIter.hasNext)
@@ -199,10 +250,14 @@ class ByteBufferMessageSet(@BeanProperty val buffer: ByteBuffer) extends Message
   
   /**
    * Update the offsets for this message set. This method attempts to do an in-place conversion
-   * if there is no compression, but otherwise recopies the messages
+   * if there is no compression, but otherwise recopies the messages. Compact messages are expanded
+   * and stored uncompressed, so consumers never see the compact format.
    */
   private[kafka] def assignOffsets(offsetCounter: AtomicLong, codec: CompressionCodec): ByteBufferMessageSet = {
-    if(codec == NoCompressionCodec) {
+    if(codec == CompactCompressionCodec) {
+      val messages = this.internalIterator(isShallow = false).map(_.message)
+      new ByteBufferMessageSet(compressionCodec = NoCompressionCodec, offsetCounter = offsetCounter, messages = messages.toBuffer:_*)
+    } else if(codec == NoCompressionCodec) {
       // do an in-place conversion
       var position = 0
       buffer.mark()
@@ -23,6 +23,7 @@ object CompressionCodec {
       case NoCompressionCodec.codec => NoCompressionCodec
       case GZIPCompressionCodec.codec => GZIPCompressionCodec
       case SnappyCompressionCodec.codec => SnappyCompressionCodec
+      case CompactCompressionCodec.codec => CompactCompressionCodec
       case _ => throw new kafka.common.UnknownCodecException("%d is an unknown compression codec".format(codec))
     }
   }
@@ -31,6 +32,7 @@ object CompressionCodec {
       case NoCompressionCodec.name => NoCompressionCodec
       case GZIPCompressionCodec.name => GZIPCompressionCodec
       case SnappyCompressionCodec.name => SnappyCompressionCodec
+      case CompactCompressionCodec.name => CompactCompressionCodec
       case _ => throw new kafka.common.UnknownCodecException("%s is an unknown compression codec".format(name))
     }
   }
@@ -53,6 +55,15 @@ case object SnappyCompressionCodec extends CompressionCodec {
   val name = "snappy"
 }
 
+/**
+ * Not a compression codec as such: the payload of a compact message is a batch of messages sharing its header, in the
+ * format the clients write. The broker only accepts it, see ByteBufferMessageSet.expand.
+ */
+case object CompactCompressionCodec extends CompressionCodec {
+  val codec = 3
+  val name = "compact"
+}
+
 case object NoCompressionCodec extends CompressionCodec {
   val codec = 0
   val name = "none"
@@ -36,6 +36,8 @@ object Message {
   val AttributesOffset = MagicOffset + MagicLength
   val AttributesLength = 1
   val KeySizeOffset = AttributesOffset + AttributesLength
+  val TimestampOffset = AttributesOffset + AttributesLength
+  val TimestampLength = 8
   val KeySizeLength = 4
   val KeyOffset = KeySizeOffset + KeySizeLength
   val ValueSizeLength = 4
@@ -53,6 +55,16 @@ object Message {
    */
   val CurrentMagicValue: Byte = 0
 
+  /**
+   * The "magic" value of messages that have a timestamp
+   */
+  val MagicValueV1: Byte = 1
+
+  /**
+   * The timestamp of a message that doesn't have one
+   */
+  val NoTimestamp: Long = -1L
+
   /**
    * Specifies the mask for the compression code. 2 bits to hold the compression codec.
    * 0 is reserved to indicate no compression
@@ -70,12 +82,13 @@ object Message {
  * A message. The format of an N byte message is the following:
  *
  * 1. 4 byte CRC32 of the message
- * 2. 1 byte "magic" identifier to allow format changes, value is 2 currently
+ * 2. 1 byte "magic" identifier to allow format changes, value is 0 or 1 currently
  * 3. 1 byte "attributes" identifier to allow annotations on the message independent of the version (e.g. compression enabled, type of codec used)
- * 4. 4 byte key length, containing length K
- * 5. K byte key
- * 6. 4 byte payload length, containing length V
- * 7. V byte payload
+ * 4. 8 byte timestamp, only if the magic value is 1
+ * 5. 4 byte key length, containing length K
+ * 6. K byte key
+ * 7. 4 byte payload length, containing length V
+ * 8. V byte payload
  *
  * Default constructor wraps an existing ByteBuffer with the Message object with no change to the contents.
  */
@@ -88,17 +101,20 @@ class Message(val buffer: ByteBuffer) {
    * @param bytes The payload of the message
    * @param compressionCodec The compression codec used on the contents of the message (if any)
    * @param key The key of the message (null, if none)
+   * @param timestamp The timestamp of the message, or NoTimestamp to create a message without one
    * @param payloadOffset The offset into the payload array used to extract payload
    * @param payloadSize The size of the payload to use
    */
   def this(bytes: Array[Byte], 
            key: Array[Byte],            
+           timestamp: Long,
            codec: CompressionCodec, 
            payloadOffset: Int, 
            payloadSize: Int) = {
     this(ByteBuffer.allocate(Message.CrcLength + 
                              Message.MagicLength + 
                              Message.AttributesLength + 
+                             (if(timestamp == Message.NoTimestamp) 0 else Message.TimestampLength) +
                              Message.KeySizeLength + 
                              (if(key == null) 0 else key.length) + 
                              Message.ValueSizeLength + 
@@ -107,11 +123,13 @@ class Message(val buffer: ByteBuffer) {
                               else bytes.length - payloadOffset)))
     // skip crc, we will fill that in at the end
     buffer.position(MagicOffset)
-    buffer.put(CurrentMagicValue)
+    buffer.put(if(timestamp == NoTimestamp) CurrentMagicValue else MagicValueV1)
     var attributes: Byte = 0
     if (codec.codec > 0)
       attributes =  (attributes | (CompressionCodeMask & codec.codec)).toByte
     buffer.put(attributes)
+    if(timestamp != NoTimestamp)
+      buffer.putLong(timestamp)
     if(key == null) {
       buffer.putInt(-1)
     } else {
@@ -130,8 +148,18 @@ class Message(val buffer: ByteBuffer) {
     Utils.writeUnsignedInt(buffer, CrcOffset, computeChecksum)
   }
   
+  def this(bytes: Array[Byte], 
+           key: Array[Byte],            
+           codec: CompressionCodec, 
+           payloadOffset: Int, 
+           payloadSize: Int) = 
+    this(bytes = bytes, key = key, timestamp = Message.NoTimestamp, codec = codec, payloadOffset = payloadOffset, payloadSize = payloadSize)
+  
+  def this(bytes: Array[Byte], key: Array[Byte], timestamp: Long, codec: CompressionCodec) = 
+    this(bytes = bytes, key = key, timestamp = timestamp, codec = codec, payloadOffset = 0, payloadSize = -1)
+  
   def this(bytes: Array[Byte], key: Array[Byte], codec: CompressionCodec) = 
-    this(bytes = bytes, key = key, codec = codec, payloadOffset = 0, payloadSize = -1)
+    this(bytes = bytes, key = key, timestamp = Message.NoTimestamp, codec = codec)
   
   def this(bytes: Array[Byte], codec: CompressionCodec) = 
     this(bytes = bytes, key = null, codec = codec)
@@ -174,7 +202,13 @@ class Message(val buffer: ByteBuffer) {
   /**
    * The length of the key in bytes
    */
-  def keySize: Int = buffer.getInt(Message.KeySizeOffset)
+  def keySize: Int = buffer.getInt(keySizeOffset)
+  
+  /**
+   * The position where the key size is stored, which follows the timestamp if there is one
+   */
+  private def keySizeOffset = 
+    if(magic == CurrentMagicValue) Message.KeySizeOffset else Message.KeySizeOffset + Message.TimestampLength
   
   /**
    * Does the message have a key?
@@ -184,7 +218,7 @@ class Message(val buffer: ByteBuffer) {
   /**
    * The position where the payload size is stored
    */
-  private def payloadSizeOffset = Message.KeyOffset + max(0, keySize)
+  private def payloadSizeOffset = keySizeOffset + Message.KeySizeLength + max(0, keySize)
   
   /**
    * The length of the message value in bytes
@@ -206,6 +240,12 @@ class Message(val buffer: ByteBuffer) {
    */
   def attributes: Byte = buffer.get(AttributesOffset)
   
+  /**
+   * The timestamp of this message, or NoTimestamp if it doesn't have one
+   */
+  def timestamp: Long = 
+    if(magic == CurrentMagicValue) NoTimestamp else buffer.getLong(TimestampOffset)
+  
   /**
    * The compression codec used with this message
    */
@@ -220,7 +260,7 @@ class Message(val buffer: ByteBuffer) {
   /**
    * A ByteBuffer containing the message key
    */
-  def key: ByteBuffer = sliceDelimited(KeySizeOffset)
+  def key: ByteBuffer = sliceDelimited(keySizeOffset)
   
   /**
    * Read a size-delimited byte buffer starting at the given offset
@@ -240,7 +280,7 @@ class Message(val buffer: ByteBuffer) {
   }
 
   override def toString(): String = 
-    "Message(magic = %d, attributes = %d, crc = %d, key = %s, payload = %s)".format(magic, attributes, checksum, key, payload)
+    "Message(magic = %d, attributes = %d, timestamp = %d, crc = %d, key = %s, payload = %s)".format(magic, attributes, timestamp, checksum, key, payload)
   
   override def equals(any: Any): Boolean = {
     any match {
@@ -508,6 +508,15 @@ class KafkaApis(val requestChannel: RequestChannel,
   
   def fetchOffsetsBefore(log: Log, timestamp: Long, maxNumOffsets: Int): Seq[Long] = {
     val segsArray = log.logSegments.toArray
+    // if the messages carry timestamps answer with the first offset at or after the timestamp, followed by the base
+    // offsets of the segments before it, rather than going by the modification times of the segments
+    if(timestamp != OffsetRequest.LatestTime && timestamp != OffsetRequest.EarliestTime) {
+      log.offsetForTimestamp(timestamp) match {
+        case Some(offset) =>
+          return (offset +: segsArray.map(_.baseOffset).filter(_ < offset).reverse).take(maxNumOffsets).toSeq
+        case None =>
+      }
+    }
     var offsetTimeArray: Array[(Long, Long)] = null
     if(segsArray.last.size > 0)
       offsetTimeArray = new Array[(Long, Long)](segsArray.length + 1)
@@ -315,6 +315,46 @@ object Utils extends Logging {
   def writeUnsignedInt(buffer: ByteBuffer, index: Int, value: Long): Unit = 
     buffer.putInt(index, (value & 0xffffffffL).asInstanceOf[Int])
   
+  /**
+   * Read a zig-zag encoded variable length integer of at most 5 bytes, such as the clients write in compact message
+   * sets, incrementing the position by the size of the encoding
+   * @param buffer The buffer to read from
+   * @return The integer read
+   */
+  def readVarint(buffer: ByteBuffer): Int = {
+    var value = 0
+    var shift = 0
+    var b = 0
+    do {
+      if(shift > 28)
+        throw new IllegalArgumentException("Varint is too long.")
+      b = buffer.get()
+      value |= (b & 0x7f) << shift
+      shift += 7
+    } while((b & 0x80) != 0)
+    (value >>> 1) ^ -(value & 1)
+  }
+  
+  /**
+   * Read a zig-zag encoded variable length long of at most 10 bytes, incrementing the position by the size of the
+   * encoding
+   * @param buffer The buffer to read from
+   * @return The long read
+   */
+  def readVarlong(buffer: ByteBuffer): Long = {
+    var value = 0L
+    var shift = 0
+    var b = 0L
+    do {
+      if(shift > 63)
+        throw new IllegalArgumentException("Varlong is too long.")
+      b = buffer.get()
+      value |= (b & 0x7f) << shift
+      shift += 7
+    } while((b & 0x80) != 0)
+    (value >>> 1) ^ -(value & 1)
+  }
+  
   /**
    * Compute the CRC32 of the byte array
    * @param bytes The array to compute the checksum for
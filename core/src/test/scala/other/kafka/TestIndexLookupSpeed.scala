@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package kafka.log
+
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.Random
+import scala.math._
+import kafka.utils.{TestUtils, Utils}
+
+/**
+ * Measures offset index lookups as done on the fetch path for a segment of the given size. Consumers that are caught
+ * up look up offsets near the end of the index, consumers that are catching up look up offsets anywhere in it. Each
+ * workload is run against the index and against a plain binary search over the same memory-mapped file.
+ */
+object TestIndexLookupSpeed {
+
+  def main(args: Array[String]): Unit = {
+    if(args.length < 3)
+      Utils.croak("USAGE: java " + getClass().getName() + " segment_bytes index_interval_bytes num_lookups [message_size]")
+    val segmentBytes = args(0).toLong
+    val indexInterval = args(1).toInt
+    val numLookups = args(2).toInt
+    val messageSize = if(args.length > 3) args(3).toInt else 1024
+    // file positions in a segment are ints, so this is the largest segment there can be
+    if(segmentBytes > Int.MaxValue)
+      Utils.croak("The segment size can be at most " + Int.MaxValue + " bytes.")
+    
+    // build an index with an entry every indexInterval bytes of the segment
+    val numEntries = (segmentBytes / indexInterval).toInt
+    val offsetsPerEntry = max(1, indexInterval / messageSize)
+    val file = TestUtils.tempFile()
+    file.delete()
+    val index = new OffsetIndex(file, baseOffset = 0L, maxIndexSize = numEntries * 8)
+    for(i <- 0 until numEntries)
+      index.append(i.toLong * offsetsPerEntry, i * indexInterval)
+    index.flush()
+    val lastOffset = numEntries.toLong * offsetsPerEntry
+    println("%d index entries for a %d byte segment (%d bytes of index).".format(numEntries, segmentBytes, index.sizeInBytes))
+    
+    val raf = new RandomAccessFile(file, "r")
+    val mmap = raf.getChannel.map(FileChannel.MapMode.READ_ONLY, 0, index.sizeInBytes)
+    val random = new Random(1)
+    // caught up consumers fetch from roughly the last second of messages, the rest from anywhere
+    val tail = Array.fill(numLookups)(lastOffset - 1 - random.nextInt(max(1, min(lastOffset, 10000L).toInt)))
+    val uniform = Array.fill(numLookups)((random.nextDouble * lastOffset).toLong)
+    
+    for(iteration <- 0 until 3) {
+      println("Iteration " + iteration)
+      time("caught-up, index", tail, o => index.lookup(o).position)
+      time("caught-up, binary search", tail, o => binarySearch(mmap, numEntries, o))
+      time("uniform, index", uniform, o => index.lookup(o).position)
+      time("uniform, binary search", uniform, o => binarySearch(mmap, numEntries, o))
+    }
+    
+    Utils.swallow(raf.close())
+    index.delete()
+  }
+  
+  private def time(name: String, targets: Array[Long], lookup: Long => Int) {
+    var checksum = 0L
+    val start = System.nanoTime
+    for(target <- targets)
+      checksum += lookup(target)
+    val ellapsed = System.nanoTime - start
+    println("  %-26s %8.1f ns per lookup (checksum %d)".format(name, ellapsed / targets.length.toDouble, checksum))
+  }
+  
+  /* the position of the largest entry less than or equal to the target, searching the whole file */
+  private def binarySearch(idx: ByteBuffer, entries: Int, target: Long): Int = {
+    var lo = 0
+    var hi = entries - 1
+    while(lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if(idx.getInt(mid * 8) <= target)
+        lo = mid
+      else
+        hi = mid - 1
+    }
+    idx.getInt(lo * 8 + 4)
+  }
+}
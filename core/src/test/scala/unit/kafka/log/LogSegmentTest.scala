@@ -39,7 +39,10 @@ class LogSegmentTest extends JUnit3Suite {
     val idxFile = TestUtils.tempFile()
     idxFile.delete()
     val idx = new OffsetIndex(idxFile, offset, 1000)
-    val seg = new LogSegment(ms, idx, offset, 10, SystemTime)
+    val timeIdxFile = TestUtils.tempFile()
+    timeIdxFile.delete()
+    val timeIdx = new TimeIndex(timeIdxFile, offset, 1200)
+    val seg = new LogSegment(ms, idx, timeIdx, offset, 10, SystemTime)
     segments += seg
     seg
   }
@@ -51,10 +54,16 @@ class LogSegmentTest extends JUnit3Suite {
                              messages = messages.map(s => new Message(s.getBytes)):_*)
   }
   
+  /* append the given messages to the segment, passing the last offset and largest timestamp as the log does */
+  def append(seg: LogSegment, offset: Long, ms: ByteBufferMessageSet) {
+    seg.append(offset, ms.shallowIterator.map(_.offset).max, ms.shallowIterator.map(_.message.timestamp).max, ms)
+  }
+  
   @After
   def teardown() {
     for(seg <- segments) {
       seg.index.delete()
+      seg.timeIndex.delete()
       seg.log.delete()
     }
   }
@@ -77,7 +86,7 @@ class LogSegmentTest extends JUnit3Suite {
   def testReadBeforeFirstOffset() {
     val seg = createSegment(40)
     val ms = messages(50, "hello", "there", "little", "bee")
-    seg.append(50, ms)
+    append(seg, 50, ms)
     val read = seg.read(startOffset = 41, maxSize = 300, maxOffset = None)
     assertEquals(ms.toList, read.toList)
   }
@@ -91,7 +100,7 @@ class LogSegmentTest extends JUnit3Suite {
     val baseOffset = 50
     val seg = createSegment(baseOffset)
     val ms = messages(baseOffset, "hello", "there", "beautiful")
-    seg.append(baseOffset, ms)
+    append(seg, baseOffset, ms)
     def validate(offset: Long) = 
       assertEquals(ms.filter(_.offset == offset).toList, 
                    seg.read(startOffset = offset, maxSize = 1024, maxOffset = Some(offset+1)).toList)
@@ -107,7 +116,7 @@ class LogSegmentTest extends JUnit3Suite {
   def testReadAfterLast() {
     val seg = createSegment(40)
     val ms = messages(50, "hello", "there")
-    seg.append(50, ms)
+    append(seg, 50, ms)
     val read = seg.read(startOffset = 52, maxSize = 200, maxOffset = None)
     assertNull("Read beyond the last offset in the segment should give null", null)
   }
@@ -120,9 +129,9 @@ class LogSegmentTest extends JUnit3Suite {
   def testReadFromGap() {
     val seg = createSegment(40)
     val ms = messages(50, "hello", "there")
-    seg.append(50, ms)
+    append(seg, 50, ms)
     val ms2 = messages(60, "alpha", "beta")
-    seg.append(60, ms2)
+    append(seg, 60, ms2)
     val read = seg.read(startOffset = 55, maxSize = 200, maxOffset = None)
     assertEquals(ms2.toList, read.toList)
   }
@@ -137,9 +146,9 @@ class LogSegmentTest extends JUnit3Suite {
     var offset = 40
     for(i <- 0 until 30) {
       val ms1 = messages(offset, "hello")
-      seg.append(offset, ms1)
+      append(seg, offset, ms1)
       val ms2 = messages(offset+1, "hello")
-      seg.append(offset+1, ms2)
+      append(seg, offset+1, ms2)
       // check that we can read back both messages
       val read = seg.read(offset, None, 10000)
       assertEquals(List(ms1.head, ms2.head), read.toList)
@@ -159,10 +168,10 @@ class LogSegmentTest extends JUnit3Suite {
   def testTruncateFull() {
     // test the case where we fully truncate the log
     val seg = createSegment(40)
-    seg.append(40, messages(40, "hello", "there"))
+    append(seg, 40, messages(40, "hello", "there"))
     seg.truncateTo(0)
     assertNull("Segment should be empty.", seg.read(0, None, 1024))
-    seg.append(40, messages(40, "hello", "there"))    
+    append(seg, 40, messages(40, "hello", "there"))    
   }
   
   /**
@@ -172,7 +181,7 @@ class LogSegmentTest extends JUnit3Suite {
   def testNextOffsetCalculation() {
     val seg = createSegment(40)
     assertEquals(40, seg.nextOffset)
-    seg.append(50, messages(50, "hello", "there", "you"))
+    append(seg, 50, messages(50, "hello", "there", "you"))
     assertEquals(53, seg.nextOffset())
   }
   
@@ -184,11 +193,76 @@ class LogSegmentTest extends JUnit3Suite {
     val seg = createSegment(40)
     val logFile = seg.log.file
     val indexFile = seg.index.file
+    val timeIndexFile = seg.timeIndex.file
     seg.changeFileSuffixes("", ".deleted")
     assertEquals(logFile.getAbsolutePath + ".deleted", seg.log.file.getAbsolutePath)
     assertEquals(indexFile.getAbsolutePath + ".deleted", seg.index.file.getAbsolutePath)
+    assertEquals(timeIndexFile.getAbsolutePath + ".deleted", seg.timeIndex.file.getAbsolutePath)
     assertTrue(seg.log.file.exists)
     assertTrue(seg.index.file.exists)
+    assertTrue(seg.timeIndex.file.exists)
+  }
+  
+  /**
+   * Append timestamped messages, some of them compressed, and check that the first message at or after any
+   * timestamp is found, both from the time index and after rebuilding it
+   */
+  @Test
+  def testFindOffsetByTimestamp() {
+    val seg = createSegment(40)
+    for(i <- 0 until 10) {
+      val offset = 40 + 2 * i
+      val codec = if(i % 2 == 0) NoCompressionCodec else GZIPCompressionCodec
+      val ms = new ByteBufferMessageSet(compressionCodec = codec, 
+                                        offsetCounter = new AtomicLong(offset), 
+                                        messages = new Message(("a" + i).getBytes, null, 1000L * offset, NoCompressionCodec),
+                                                   new Message(("b" + i).getBytes, null, 1000L * offset + 500, NoCompressionCodec))
+      append(seg, offset, ms)
+    }
+    assertTrue("The time index should have entries.", seg.timeIndex.entries > 0)
+    def validate() {
+      assertEquals(Some(40L), seg.findOffsetByTimestamp(0L))
+      for(offset <- 40 until 60) {
+        val timestamp = 1000L * (offset - offset % 2) + 500 * (offset % 2)
+        assertEquals(Some(offset.toLong), seg.findOffsetByTimestamp(timestamp))
+        assertEquals(Some(offset.toLong), seg.findOffsetByTimestamp(timestamp - 1))
+      }
+      assertEquals(None, seg.findOffsetByTimestamp(58501L))
+    }
+    validate()
+    seg.recover(64*1024)
+    validate()
+  }
+  
+  /**
+   * Reopen a segment of timestamped messages and check that appending after loading its timestamps from the
+   * indexes, rather than from the whole segment, still bounds every timestamp in the final time index entry
+   */
+  @Test
+  def testTimestampsAfterReopen() {
+    val seg = createSegment(40)
+    for(offset <- 40 until 60)
+      append(seg, offset, new ByteBufferMessageSet(NoCompressionCodec, new AtomicLong(offset), 
+                                                   new Message(offset.toString.getBytes, null, 1000L * offset, NoCompressionCodec)))
+    assertTrue("The offset index should have entries.", seg.index.entries > 0)
+    seg.index.close()
+    seg.timeIndex.close()
+    val reopened = new LogSegment(new FileMessageSet(seg.log.file), 
+                                  new OffsetIndex(seg.index.file, 40, 1000), 
+                                  new TimeIndex(seg.timeIndex.file, 40, 1200), 
+                                  40, 
+                                  10, 
+                                  SystemTime)
+    segments += reopened
+    // as the log does for its active segment, make room in the indexes trimmed on close
+    reopened.index.resize(1000)
+    reopened.timeIndex.resize(1200)
+    append(reopened, 60, new ByteBufferMessageSet(NoCompressionCodec, new AtomicLong(60), 
+                                                  new Message("60".getBytes, null, 500L, NoCompressionCodec)))
+    reopened.completeTimeIndex()
+    assertEquals(59000L, reopened.timeIndex.lastTimestamp)
+    assertEquals(60L, reopened.timeIndex.lastOffset)
+    assertEquals(Some(59L), reopened.findOffsetByTimestamp(58001L))
   }
   
   /**
@@ -199,7 +273,7 @@ class LogSegmentTest extends JUnit3Suite {
   def testRecoveryFixesCorruptIndex() {
     val seg = createSegment(0)
     for(i <- 0 until 100)
-      seg.append(i, messages(i, i.toString))
+      append(seg, i, messages(i, i.toString))
     val indexFile = seg.index.file
     TestUtils.writeNonsenseToFile(indexFile, 5, indexFile.length.toInt)
     seg.recover(64*1024)
@@ -216,7 +290,7 @@ class LogSegmentTest extends JUnit3Suite {
     for(iteration <- 0 until 10) {
       val seg = createSegment(0)
       for(i <- 0 until messagesAppended)
-        seg.append(i, messages(i, i.toString))
+        append(seg, i, messages(i, i.toString))
       val offsetToBeginCorruption = TestUtils.random.nextInt(messagesAppended)
       // start corrupting somewhere in the middle of the chosen record all the way to the end
       val position = seg.log.searchFor(offsetToBeginCorruption, 0).position + TestUtils.random.nextInt(15)
@@ -448,6 +448,27 @@ class LogTest extends JUnitSuite {
     assertEquals("There should be exactly 1 segment.", 1, log.numberOfSegments)
   }
 
+  /**
+   * Roll on a full time index and check that the messages after its last interval entry can still be found by
+   * timestamp once the segment is no longer the active one
+   */
+  @Test
+  def testOffsetForTimestampAfterTimeIndexRoll() {
+    // room for three time index entries but four offset index entries, with an index entry before every message but the first
+    val config = logConfig.copy(maxIndexSize = 3 * TimeIndex.EntrySize, indexInterval = 1)
+    val log = new Log(logDir, config, recoveryPoint = 0L, scheduler = time.scheduler, time = time)
+    val numMessages = 10
+    for(i <- 0 until numMessages)
+      log.append(new ByteBufferMessageSet(NoCompressionCodec, new Message(i.toString.getBytes, null, 1000L * (i + 1), NoCompressionCodec)))
+    assertTrue("The time index should have rolled the log", log.numberOfSegments > 1)
+    val segments = log.logSegments.toList
+    assertEquals("The last time index entry should cover the whole first segment",
+                 1000L * segments(1).baseOffset, segments(0).timeIndex.lastTimestamp)
+    for(i <- 0 until numMessages)
+      assertEquals(Some(i.toLong), log.offsetForTimestamp(1000L * (i + 1)))
+    assertEquals(None, log.offsetForTimestamp(1000L * numMessages + 1))
+  }
+
   /**
    * When we open a log any index segments without an associated log segment should be deleted.
    */
@@ -71,6 +71,41 @@ class OffsetIndexTest extends JUnitSuite {
     }
   }
   
+  @Test
+  def lookupAcrossSummaryBlocks() {
+    val idx = new OffsetIndex(file = nonExistantTempFile(), baseOffset = 0L, maxIndexSize = 1000 * 8)
+    try {
+      val vals: Seq[(Long, Int)] = monotonicSeq(1, 1000).map(_.toLong).zip(monotonicSeq(0, 1000))
+      vals.foreach{x => idx.append(x._1, x._2)}
+      // check every offset against the first n entries appended
+      def validate(index: OffsetIndex, n: Int) {
+        val valMap = new immutable.TreeMap[Long, (Long, Int)]() ++ vals.take(n).map(p => (p._1, p))
+        for(offset <- 0L to valMap.lastKey + 10) {
+          val rightAnswer = 
+            if(offset < valMap.firstKey)
+              OffsetPosition(index.baseOffset, 0)
+            else
+              OffsetPosition(valMap.to(offset).last._1, valMap.to(offset).last._2._2)
+          assertEquals("The index should give the same answer as the sorted map", rightAnswer, index.lookup(offset))
+        }
+      }
+      validate(idx, 1000)
+      
+      // truncate into the middle of a block and append again, then check the index survives a reopen
+      val truncateOffset = vals(200)._1
+      idx.truncateTo(truncateOffset)
+      assertEquals(200, idx.entries)
+      validate(idx, 200)
+      vals.drop(200).foreach{x => idx.append(x._1, x._2)}
+      validate(idx, 1000)
+      idx.close()
+      val reopened = new OffsetIndex(file = idx.file, baseOffset = idx.baseOffset)
+      validate(reopened, 1000)
+    } finally {
+      idx.file.delete()
+    }
+  }
+  
   @Test
   def lookupExtremeCases() {
     assertEquals("Lookup on empty file", OffsetPosition(idx.baseOffset, 0), idx.lookup(idx.baseOffset))
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io._
+import junit.framework.Assert._
+import org.junit._
+import org.scalatest.junit.JUnitSuite
+import kafka.utils.TestUtils
+import kafka.message.Message
+
+class TimeIndexTest extends JUnitSuite {
+  
+  var idx: TimeIndex = null
+  
+  @Before
+  def setup() {
+    this.idx = new TimeIndex(file = nonExistantTempFile(), baseOffset = 45L, maxIndexSize = 30 * TimeIndex.EntrySize)
+  }
+  
+  @After
+  def teardown() {
+    if(this.idx != null)
+      this.idx.file.delete()
+  }
+  
+  @Test
+  def testLookup() {
+    assertEquals("Lookup on an empty index should give the base offset", idx.baseOffset, idx.lookup(1000L))
+    // entries (100, 50), (200, 55), ..., (3000, 190)
+    for(i <- 1 to idx.maxEntries)
+      idx.maybeAppend(100L * i, idx.baseOffset + 5 * i)
+    assertEquals(30, idx.entries)
+    assertEquals("No entry has a smaller timestamp", idx.baseOffset, idx.lookup(100L))
+    for(i <- 1 to idx.maxEntries) {
+      assertEquals(idx.baseOffset + 5 * i, idx.lookup(100L * i + 1))
+      assertEquals(idx.baseOffset + 5 * i, idx.lookup(100L * (i + 1)))
+    }
+    assertEquals(idx.baseOffset + 5 * idx.maxEntries, idx.lookup(Long.MaxValue))
+  }
+  
+  @Test
+  def testAppendSkipsEntriesThatDontAdvance() {
+    idx.maybeAppend(Message.NoTimestamp, 50L)
+    assertEquals("An entry without a timestamp should be skipped", 0, idx.entries)
+    idx.maybeAppend(100L, 50L)
+    idx.maybeAppend(100L, 51L)
+    idx.maybeAppend(90L, 52L)
+    idx.maybeAppend(200L, 50L)
+    assertEquals(1, idx.entries)
+    idx.maybeAppend(200L, 53L)
+    assertEquals(2, idx.entries)
+    assertEquals((200L, 53L), idx.readLastEntry)
+  }
+  
+  @Test
+  def testTruncate() {
+    for(i <- 1 to 10)
+      idx.maybeAppend(100L * i, idx.baseOffset + i)
+    idx.truncateTo(idx.baseOffset + 20)
+    assertEquals("Truncating past the end should leave the index unchanged", 10, idx.entries)
+    idx.truncateTo(idx.baseOffset + 6)
+    assertEquals(5, idx.entries)
+    assertEquals(500L, idx.lastTimestamp)
+    assertEquals(idx.baseOffset + 5, idx.lastOffset)
+    idx.maybeAppend(600L, idx.baseOffset + 6)
+    assertEquals(6, idx.entries)
+    idx.truncate()
+    assertEquals(0, idx.entries)
+    assertEquals(Message.NoTimestamp, idx.lastTimestamp)
+    idx.maybeAppend(100L, idx.baseOffset)
+    assertEquals(1, idx.entries)
+  }
+  
+  @Test
+  def testReopen() {
+    idx.maybeAppend(100L, 50L)
+    idx.maybeAppend(200L, 52L)
+    idx.close()
+    val reopened = new TimeIndex(file = idx.file, baseOffset = idx.baseOffset)
+    assertEquals(2, reopened.entries)
+    assertEquals(200L, reopened.lastTimestamp)
+    assertEquals(52L, reopened.lastOffset)
+    assertEquals(50L, reopened.lookup(150L))
+    assertTrue("A trimmed index should be full", reopened.isFull)
+  }
+  
+  def nonExistantTempFile(): File = {
+    val file = TestUtils.tempFile()
+    file.delete()
+    file
+  }
+}
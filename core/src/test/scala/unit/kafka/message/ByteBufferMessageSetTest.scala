@@ -21,7 +21,7 @@ import java.nio._
 import java.util.concurrent.atomic.AtomicLong
 import junit.framework.Assert._
 import org.junit.Test
-import kafka.utils.TestUtils
+import kafka.utils.{TestUtils, Utils}
 
 class ByteBufferMessageSetTest extends BaseMessageSetTestCases {
 
@@ -154,6 +154,37 @@ class ByteBufferMessageSetTest extends BaseMessageSetTestCases {
     checkOffsets(compressedMessages.assignOffsets(new AtomicLong(offset), DefaultCompressionCodec), offset)
   }
   
+  @Test
+  def testCompactExpansion() {
+    val values = List("hello", "there", "beautiful")
+    // zig-zag varints of small values are a single byte holding twice the value, or 1 for -1
+    val payload = ByteBuffer.allocate(values.map(_.length + 3).sum)
+    for((value, i) <- values.zipWithIndex) {
+      payload.put((2 * i).toByte)
+      payload.put(1.toByte)
+      payload.put((2 * value.length).toByte)
+      payload.put(value.getBytes)
+    }
+    val compact = new Message(payload.array, CompactCompressionCodec)
+    val buffer = ByteBuffer.allocate(MessageSet.entrySize(compact))
+    ByteBufferMessageSet.writeMessage(buffer, compact, 0L)
+    buffer.rewind()
+    val messages = new ByteBufferMessageSet(buffer)
+
+    assertEquals(List(CompactCompressionCodec), messages.shallowIterator.map(_.message.compressionCodec).toList)
+    assertEquals(values, messages.map(m => Utils.readString(m.message.payload)).toList)
+    assertTrue(messages.forall(!_.message.hasKey))
+    checkOffsets(messages, 0)
+
+    // the broker stores the expanded messages uncompressed
+    val offset = 1234567
+    val assigned = messages.assignOffsets(new AtomicLong(offset), CompactCompressionCodec)
+    checkOffsets(assigned, offset)
+    assertEquals(values.size, assigned.shallowIterator.size)
+    assertTrue(assigned.shallowIterator.forall(_.message.compressionCodec == NoCompressionCodec))
+    assertEquals(values, assigned.map(m => Utils.readString(m.message.payload)).toList)
+  }
+
   /* check that offsets are assigned based on byte offset from the given base offset */
   def checkOffsets(messages: ByteBufferMessageSet, baseOffset: Long) {
     var offset = baseOffset